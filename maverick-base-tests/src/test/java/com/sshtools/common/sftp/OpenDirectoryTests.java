@@ -0,0 +1,99 @@
+package com.sshtools.common.sftp;
+
+/*-
+ * #%L
+ * Base API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.sshtools.common.files.direct.NioFileFactory.NioFileFactoryBuilder;
+import com.sshtools.common.policy.FileSystemPolicy;
+import com.sshtools.common.ssh.SshConnection;
+import com.sshtools.common.tests.MockConnection;
+import com.sshtools.common.tests.MockContext;
+import com.sshtools.common.util.FileUtils;
+
+import junit.framework.TestCase;
+
+public class OpenDirectoryTests extends TestCase {
+
+	File folder;
+	AbstractFileSystem fs;
+	
+	protected void setUp() throws Exception {
+		folder = Files.createTempDirectory("opendir").toFile();
+		for(int i = 0; i < 250; i++) {
+			assertTrue(new File(folder, "file" + i).createNewFile());
+		}
+		
+		SshConnection con = new MockConnection("lee", 
+				UUID.randomUUID().toString(),
+				new InetSocketAddress(InetAddress.getLocalHost(), 22),
+				new InetSocketAddress(InetAddress.getLocalHost(), 22),
+				new MockContext());
+		con.getContext().getPolicy(FileSystemPolicy.class).setFileFactory(
+				(c) -> NioFileFactoryBuilder.create().withHome(folder).withoutSandbox().build());
+		fs = new AbstractFileSystem(con, "sftp");
+	}
+	
+	protected void tearDown() {
+		fs.closeFilesystem();
+		FileUtils.deleteFolder(folder);
+	}
+	
+	public void testSetPosition() throws Exception {
+		
+		byte[] handle = fs.openDirectory(folder.getAbsolutePath());
+		AbstractFileSystem.OpenDirectory dir = fs.openDirectories.get(fs.handleToString(handle));
+		
+		SftpFile[] first = fs.readDirectory(handle);
+		assertEquals(100, dir.getPosition());
+		
+		dir.setPosition(50);
+		assertEquals(50, dir.getPosition());
+		SftpFile[] again = fs.readDirectory(handle);
+		assertEquals(100, again.length);
+		for(int i = 0; i < 50; i++) {
+			assertEquals(first[50 + i].getFilename(), again[i].getFilename());
+		}
+		assertEquals(150, dir.getPosition());
+		
+		dir.setPosition(200);
+		assertEquals(50, fs.readDirectory(handle).length);
+		assertEquals(250, dir.getPosition());
+	}
+	
+	public void testPositionExcludesDeclinedEntry() throws Exception {
+		
+		byte[] handle = fs.openDirectory(folder.getAbsolutePath());
+		AbstractFileSystem.OpenDirectory dir = fs.openDirectories.get(fs.handleToString(handle));
+		
+		List<SftpFile> first = new ArrayList<>();
+		fs.readDirectory(handle, (file) -> first.size() < 10 && first.add(file));
+		
+		assertEquals(10, dir.getPosition());
+	}
+}
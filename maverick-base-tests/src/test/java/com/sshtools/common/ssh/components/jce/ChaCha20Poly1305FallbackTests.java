@@ -0,0 +1,85 @@
+package com.sshtools.common.ssh.components.jce;
+
+/*-
+ * #%L
+ * Base API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.Random;
+
+import com.sshtools.common.ssh.components.AbstractSshCipher;
+import com.sshtools.common.util.Arrays;
+import com.sshtools.common.util.UnsignedInteger64;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the JDK cipher and the pure Java fallback, which is only used
+ * when the JDK has no ChaCha20, produce the same packets.
+ */
+public class ChaCha20Poly1305FallbackTests extends TestCase {
+
+	public void setUp() {
+		JCEProvider.disableBouncyCastle();
+	}
+	
+	public void testJCEToFallback() throws IOException {
+		ChaCha20Poly1305 jce = new ChaCha20Poly1305(true);
+		assertNotNull("The JDK does not provide ChaCha20", jce.cipher);
+		assertInterop(jce, new ChaCha20Poly1305(false));
+	}
+	
+	public void testFallbackToJCE() throws IOException {
+		ChaCha20Poly1305 jce = new ChaCha20Poly1305(true);
+		assertNotNull("The JDK does not provide ChaCha20", jce.cipher);
+		assertInterop(new ChaCha20Poly1305(false), jce);
+	}
+	
+	private void assertInterop(ChaCha20Poly1305 encrypt, ChaCha20Poly1305 decrypt) throws IOException {
+		
+		Random r = new Random(4);
+		byte[] key = new byte[64];
+		r.nextBytes(key);
+		
+		encrypt.init(AbstractSshCipher.ENCRYPT_MODE, null, key);
+		decrypt.init(AbstractSshCipher.DECRYPT_MODE, null, key);
+		
+		for(long seq = 0; seq < 500; seq++) {
+			int msglen = 8 * (1 + r.nextInt(512));
+			byte[] data = new byte[msglen];
+			r.nextBytes(data);
+			
+			/**
+			 * Include sequence numbers that use the high bytes of the nonce
+			 */
+			UnsignedInteger64 sequenceNo = new UnsignedInteger64(seq < 250 ? seq : Long.MAX_VALUE - seq);
+			
+			byte[] packet = new byte[4 + msglen + 16];
+			System.arraycopy(data, 0, packet, 4, msglen);
+			System.arraycopy(encrypt.writePacketLength(msglen, sequenceNo), 0, packet, 0, 4);
+			encrypt.transform(packet, 4, packet, 4, msglen + 16);
+			
+			assertEquals(msglen, decrypt.readPacketLength(packet, sequenceNo));
+			decrypt.transform(packet, 4, packet, 4, msglen + 16);
+			assertTrue("Encrypt/Decrypt failure", Arrays.areEqual(data, java.util.Arrays.copyOfRange(packet, 4, 4 + msglen)));
+		}
+	}
+}
@@ -39,7 +39,9 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.sshtools.common.files.AbstractFile;
+import com.sshtools.common.files.DirectoryIterator;
 import com.sshtools.common.permissions.PermissionDeniedException;
+import com.sshtools.common.sftp.SftpFile;
 import com.sshtools.common.util.Arrays;
 import com.sshtools.common.util.FileUtils;
 import com.sshtools.common.util.IOUtils;
@@ -402,6 +404,38 @@ public abstract class AbstractFileTest {
 		
 	}
 	
+	@Test
+	public void testDirectoryIterator() throws IOException, PermissionDeniedException {
+		
+		createFolder("iterated");
+		createFile("iterated/1");
+		createFile("iterated/2");
+		createFile("iterated/skip");
+		createFolder("iterated/leaf");
+		
+		try {
+			Set<String> names = new HashSet<>();
+			AbstractFile dir = getFile("iterated");
+			try(DirectoryIterator it = dir.directoryIterator((name) -> !name.equals("skip"))) {
+				SftpFile file;
+				while((file = it.next()) != null) {
+					assertTrue("Entry returned twice", names.add(file.getFilename()));
+					assertEquals("Entry type does not match", dir.resolveFile(file.getFilename()).isDirectory(), 
+							file.getAttributes().isDirectory());
+				}
+				assertEquals("Exhausted iterator must keep returning null", null, it.next());
+			}
+			
+			assertEquals(new HashSet<>(java.util.Arrays.asList("1", "2", "leaf")), names);
+		} finally {
+			deleteFile("iterated/1");
+			deleteFile("iterated/2");
+			deleteFile("iterated/skip");
+			deleteFolder("iterated/leaf");
+			deleteFolder("iterated");
+		}
+	}
+	
 	@Test
 	public void testEquals() throws IOException, PermissionDeniedException {
 		
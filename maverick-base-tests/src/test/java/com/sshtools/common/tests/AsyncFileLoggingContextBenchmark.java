@@ -0,0 +1,72 @@
+package com.sshtools.common.tests;
+
+/*-
+ * #%L
+ * Base API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import com.sshtools.common.logger.AsyncFileLoggingContext;
+import com.sshtools.common.logger.AsyncFileLoggingContext.OverflowPolicy;
+import com.sshtools.common.logger.FileLoggingContext;
+import com.sshtools.common.logger.Log.Level;
+
+import junit.framework.TestCase;
+
+/**
+ * Reports how long logging threads are held up by the synchronous and asynchronous
+ * file contexts.
+ */
+public class AsyncFileLoggingContextBenchmark extends TestCase {
+
+	static final int THREADS = 8;
+	static final int RECORDS = 20000;
+	
+	Path dir;
+	
+	protected void setUp() throws Exception {
+		dir = Files.createTempDirectory("asynclog");
+	}
+	
+	protected void tearDown() throws Exception {
+		try(Stream<Path> paths = Files.walk(dir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+	
+	public void testLoggingThroughput() throws Exception {
+		
+		FileLoggingContext sync = new FileLoggingContext(Level.DEBUG, dir.resolve("sync.log").toFile(), 10, Long.MAX_VALUE);
+		long syncElapsed = AsyncFileLoggingContextTests.log(sync, THREADS, RECORDS);
+		sync.close();
+		
+		AsyncFileLoggingContext async = new AsyncFileLoggingContext(Level.DEBUG, dir.resolve("async.log").toFile(), 
+				10, Long.MAX_VALUE, 65536, OverflowPolicy.BLOCK);
+		long asyncElapsed = AsyncFileLoggingContextTests.log(async, THREADS, RECORDS);
+		async.close();
+		
+		System.out.println(String.format("%d threads logged %d records in %dms synchronously and %dms asynchronously", 
+				THREADS, THREADS * RECORDS, syncElapsed, asyncElapsed));
+	}
+}
@@ -0,0 +1,131 @@
+package com.sshtools.common.tests;
+
+/*-
+ * #%L
+ * Base API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.sshtools.common.logger.AsyncFileLoggingContext;
+import com.sshtools.common.logger.AsyncFileLoggingContext.OverflowPolicy;
+import com.sshtools.common.logger.Log.Level;
+import com.sshtools.common.logger.LoggerContext;
+
+import junit.framework.TestCase;
+
+public class AsyncFileLoggingContextTests extends TestCase {
+
+	static final int THREADS = 8;
+	static final int RECORDS = 20000;
+	
+	Path dir;
+	
+	protected void setUp() throws Exception {
+		dir = Files.createTempDirectory("asynclog");
+	}
+	
+	protected void tearDown() throws Exception {
+		try(Stream<Path> paths = Files.walk(dir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+	
+	public void testAllRecordsWrittenWhenBlocking() throws Exception {
+		
+		File file = dir.resolve("block.log").toFile();
+		AsyncFileLoggingContext ctx = new AsyncFileLoggingContext(Level.DEBUG, file, 10, Long.MAX_VALUE, 16, OverflowPolicy.BLOCK);
+		
+		log(ctx, THREADS, RECORDS);
+		ctx.close();
+		
+		assertEquals(0, ctx.getDroppedCount());
+		assertEquals(THREADS * RECORDS + 1, ctx.getWrittenCount());
+		assertEquals(THREADS * RECORDS, countRecords(file));
+	}
+	
+	public void testDroppedRecordsAreCounted() throws Exception {
+		
+		File file = dir.resolve("drop.log").toFile();
+		AsyncFileLoggingContext ctx = new AsyncFileLoggingContext(Level.DEBUG, file, 10, Long.MAX_VALUE, 16, OverflowPolicy.DROP);
+		
+		log(ctx, THREADS, RECORDS);
+		ctx.close();
+		
+		assertEquals(THREADS * RECORDS + 1, ctx.getWrittenCount() + ctx.getDroppedCount());
+		assertEquals(ctx.getWrittenCount() - 1, countRecords(file));
+	}
+	
+	public void testLogIsRolled() throws Exception {
+		
+		File file = dir.resolve("roll.log").toFile();
+		AsyncFileLoggingContext ctx = new AsyncFileLoggingContext(Level.DEBUG, file, 3, 64 * 1024, 1024, OverflowPolicy.BLOCK);
+		
+		log(ctx, 1, RECORDS);
+		ctx.close();
+		
+		try(Stream<Path> paths = Files.list(dir)) {
+			assertEquals("Current log and three backups", 4, paths.count());
+		}
+		assertTrue(file.length() < 128 * 1024);
+	}
+	
+	static long log(LoggerContext ctx, int threads, int records) throws InterruptedException {
+		
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch finished = new CountDownLatch(threads);
+		
+		for(int i=0;i<threads;i++) {
+			final int thread = i;
+			Thread t = new Thread(() -> {
+				try {
+					start.await();
+					for(int j=0;j<records;j++) {
+						ctx.log(Level.DEBUG, "Record {} from thread {}", null, j, thread);
+					}
+				} catch (InterruptedException e) {
+				} finally {
+					finished.countDown();
+				}
+			});
+			t.setDaemon(true);
+			t.start();
+		}
+		
+		long started = System.currentTimeMillis();
+		start.countDown();
+		assertTrue(finished.await(5, TimeUnit.MINUTES));
+		return System.currentTimeMillis() - started;
+	}
+	
+	private long countRecords(File file) throws IOException {
+		List<String> lines = Files.readAllLines(file.toPath());
+		return lines.stream().filter(l -> l.contains("Record ")).collect(Collectors.counting());
+	}
+}
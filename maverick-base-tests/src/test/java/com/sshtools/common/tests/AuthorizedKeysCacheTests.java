@@ -0,0 +1,216 @@
+package com.sshtools.common.tests;
+
+/*-
+ * #%L
+ * Base API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+import com.sshtools.common.auth.AuthorizedKeysPublicKeyAuthenticationProvider;
+import com.sshtools.common.files.AbstractFile;
+import com.sshtools.common.files.AbstractFileAdapter;
+import com.sshtools.common.files.AbstractFileFactory;
+import com.sshtools.common.files.direct.NioFileFactory;
+import com.sshtools.common.files.direct.NioFileFactory.NioFileFactoryBuilder;
+import com.sshtools.common.permissions.PermissionDeniedException;
+import com.sshtools.common.publickey.SshKeyPairGenerator;
+import com.sshtools.common.publickey.SshPublicKeyFileFactory;
+import com.sshtools.common.publickey.authorized.AuthorizedKeyFile;
+import com.sshtools.common.publickey.authorized.PublicKeyEntry;
+import com.sshtools.common.ssh.SshConnection;
+import com.sshtools.common.ssh.components.SshPublicKey;
+import com.sshtools.common.util.FileUtils;
+
+import junit.framework.TestCase;
+
+public class AuthorizedKeysCacheTests extends TestCase {
+
+	File home;
+	Path authorizedKeys;
+	NioFileFactory factory;
+	TestProvider provider;
+	
+	SshPublicKey first;
+	SshPublicKey second;
+	
+	protected void setUp() throws Exception {
+		home = Files.createTempDirectory("authorized-keys").toFile();
+		authorizedKeys = home.toPath().resolve("authorized_keys");
+		factory = NioFileFactoryBuilder.create().withHome(home).build();
+		provider = new TestProvider();
+		first = SshKeyPairGenerator.generateKeyPair(SshKeyPairGenerator.ED25519).getPublicKey();
+		second = SshKeyPairGenerator.generateKeyPair(SshKeyPairGenerator.ED25519).getPublicKey();
+	}
+	
+	protected void tearDown() throws Exception {
+		FileUtils.deleteFolder(home);
+	}
+	
+	public void testParsedOnceUntilChanged() throws Exception {
+		
+		append("# keys\n" + line(first));
+		
+		assertTrue(provider.checkKey(first, null));
+		assertFalse(provider.checkKey(second, null));
+		
+		AuthorizedKeyFile parsed = provider.getAuthorizedKeys(null);
+		assertSame(parsed, provider.getAuthorizedKeys(null));
+		
+		append("no-pty " + line(second));
+		
+		assertNotSame(parsed, provider.getAuthorizedKeys(null));
+		assertTrue(provider.checkKey(first, null));
+		assertTrue(provider.checkKey(second, null));
+	}
+	
+	public void testKeySwappedWithinModificationTimeGranularity() throws Exception {
+		
+		/**
+		 * Both keys have the same type and comment so the file keeps its size
+		 */
+		Files.write(authorizedKeys, line(first, "key").getBytes(StandardCharsets.US_ASCII));
+		FileTime modified = Files.getLastModifiedTime(authorizedKeys);
+		assertTrue(provider.checkKey(first, null));
+		
+		Files.write(authorizedKeys, line(second, "key").getBytes(StandardCharsets.US_ASCII));
+		Files.setLastModifiedTime(authorizedKeys, modified);
+		
+		assertFalse("Replaced key is still authorized", provider.checkKey(first, null));
+		assertTrue(provider.checkKey(second, null));
+	}
+	
+	public void testSettledFileIsNotReadAgain() throws Exception {
+		
+		append(line(first));
+		Files.setLastModifiedTime(authorizedKeys, FileTime.fromMillis(System.currentTimeMillis() - 60000));
+		
+		AuthorizedKeyFile parsed = provider.getAuthorizedKeys(null);
+		provider.reads = 0;
+		assertSame(parsed, provider.getAuthorizedKeys(null));
+		assertEquals(0, provider.reads);
+	}
+	
+	public void testCacheIsBounded() throws Exception {
+		
+		provider.setMaximumCachedFiles(2);
+		for(int i = 0; i < 5; i++) {
+			provider.name = "authorized_keys" + i;
+			Files.write(home.toPath().resolve(provider.name), line(first).getBytes(StandardCharsets.US_ASCII));
+			assertTrue(provider.checkKey(first, null));
+			assertTrue(provider.cacheSize() <= 2);
+		}
+	}
+	
+	public void testAddAndRemove() throws Exception {
+		
+		assertFalse(provider.checkKey(first, null));
+		
+		append("");
+		assertFalse(provider.checkKey(first, null));
+		
+		provider.add(first, "first", null);
+		provider.add(second, "second", null);
+		assertTrue(provider.checkKey(first, null));
+		assertTrue(provider.checkKey(second, null));
+		
+		provider.remove(first, null);
+		assertFalse(provider.checkKey(first, null));
+		assertTrue(provider.checkKey(second, null));
+		
+		Files.delete(authorizedKeys);
+		assertFalse(provider.checkKey(second, null));
+	}
+	
+	public void testIndexedLookup() throws Exception {
+		
+		AuthorizedKeyFile file = new AuthorizedKeyFile(line(first) 
+				+ "unknown-option " + line(second)
+				+ "no-pty " + line(first));
+		
+		assertTrue(file.isAuthorizedKey(first));
+		assertFalse(file.isAuthorizedKey(second));
+		
+		PublicKeyEntry entry = file.getKeyEntry(first);
+		assertTrue(entry.supportsPty());
+		
+		file.removeKey(entry);
+		assertFalse(file.getKeyEntry(first).supportsPty());
+		assertTrue(file.isAuthorizedKey(first));
+		
+		file.removeKeys(first);
+		assertFalse(file.isAuthorizedKey(first));
+		
+		file.addKey(second, "second");
+		assertTrue(file.isAuthorizedKey(second));
+	}
+	
+	class TestProvider extends AuthorizedKeysPublicKeyAuthenticationProvider {
+		
+		String name = "authorized_keys";
+		int reads;
+		
+		@Override
+		protected AbstractFile getFile(SshConnection con) throws PermissionDeniedException, IOException {
+			return new AbstractFileAdapter(factory.getFile(name)) {
+				@Override
+				public InputStream getInputStream() throws IOException, PermissionDeniedException {
+					reads++;
+					return super.getInputStream();
+				}
+				
+				@Override
+				public AbstractFileFactory<? extends AbstractFile> getFileFactory() {
+					return factory;
+				}
+			};
+		}
+		
+		int cacheSize() {
+			return cache.size();
+		}
+		
+		@Override
+		public AuthorizedKeyFile getAuthorizedKeys(SshConnection con) throws PermissionDeniedException, IOException {
+			return super.getAuthorizedKeys(con);
+		}
+	}
+	
+	String line(SshPublicKey key) throws IOException {
+		return line(key, key == first ? "first" : "second");
+	}
+	
+	String line(SshPublicKey key, String comment) throws IOException {
+		return SshPublicKeyFileFactory.create(key, comment, 
+				SshPublicKeyFileFactory.OPENSSH_FORMAT).toString() + "\n";
+	}
+	
+	void append(String text) throws IOException {
+		Files.write(authorizedKeys, text.getBytes(StandardCharsets.US_ASCII), 
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+}
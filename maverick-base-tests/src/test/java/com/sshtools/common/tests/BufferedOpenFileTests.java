@@ -0,0 +1,201 @@
+package com.sshtools.common.tests;
+
+/*-
+ * #%L
+ * Base API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sshtools.common.events.Event;
+import com.sshtools.common.files.AbstractFile;
+import com.sshtools.common.sftp.AbstractFileSystem;
+import com.sshtools.common.sftp.OpenFile;
+import com.sshtools.common.sftp.files.BufferedOpenFile;
+import com.sshtools.common.util.UnsignedInteger32;
+
+import junit.framework.TestCase;
+
+public class BufferedOpenFileTests extends TestCase {
+
+	ExecutorService executor;
+	
+	protected void setUp() {
+		executor = Executors.newCachedThreadPool();
+	}
+	
+	protected void tearDown() {
+		executor.shutdownNow();
+	}
+	
+	public void testSequentialReadsArePrefetched() throws Exception {
+		
+		byte[] data = new byte[1024 * 1024];
+		new Random(1).nextBytes(data);
+		MemoryFile mem = new MemoryFile(data);
+		AtomicInteger closed = new AtomicInteger();
+		BufferedOpenFile file = new BufferedOpenFile(mem, executor, 256 * 1024, 0, () -> closed.incrementAndGet());
+		
+		byte[] result = new byte[data.length];
+		int offset = 0;
+		int r;
+		while((r = file.read(offset, result, offset, Math.min(32768, data.length - offset))) > 0) {
+			offset += r;
+		}
+		
+		assertEquals(data.length, offset);
+		assertTrue(Arrays.equals(data, result));
+		assertTrue("Expected fewer reads than requests but got " + mem.reads.get(), mem.reads.get() < 32);
+		
+		file.close();
+		file.close();
+		assertEquals(1, closed.get());
+		assertTrue(mem.closed);
+	}
+	
+	public void testRandomReadsAreNotBuffered() throws Exception {
+		
+		byte[] data = new byte[256 * 1024];
+		new Random(2).nextBytes(data);
+		MemoryFile mem = new MemoryFile(data);
+		BufferedOpenFile file = new BufferedOpenFile(mem, executor, 64 * 1024, 0, () -> { });
+		
+		byte[] buf = new byte[1024];
+		for(int offset : new int[] { 100000, 5000, 200000, 1000 }) {
+			assertEquals(buf.length, file.read(offset, buf, 0, buf.length));
+			assertTrue(Arrays.equals(Arrays.copyOfRange(data, offset, offset + buf.length), buf));
+		}
+		assertEquals(4, mem.reads.get());
+		file.close();
+	}
+	
+	public void testSequentialWritesAreCoalesced() throws Exception {
+		
+		MemoryFile mem = new MemoryFile(new byte[0]);
+		BufferedOpenFile file = new BufferedOpenFile(mem, executor, 0, 64 * 1024, () -> { });
+		
+		byte[] data = new byte[100 * 1024];
+		new Random(3).nextBytes(data);
+		for(int offset = 0; offset < data.length; offset += 4096) {
+			file.write(offset, data, offset, Math.min(4096, data.length - offset));
+		}
+		
+		assertEquals(1, mem.writes.get());
+		
+		byte[] check = new byte[10];
+		assertEquals(10, file.read(data.length - 10, check, 0, 10));
+		assertEquals(2, mem.writes.get());
+		assertTrue(Arrays.equals(data, Arrays.copyOf(mem.data, mem.length)));
+		
+		file.write(data.length, data, 0, 10);
+		file.close();
+		assertEquals(3, mem.writes.get());
+		assertEquals(data.length + 10, mem.length);
+	}
+	
+	static class MemoryFile implements OpenFile {
+
+		byte[] data;
+		int length;
+		boolean closed;
+		AtomicInteger reads = new AtomicInteger();
+		AtomicInteger writes = new AtomicInteger();
+		
+		MemoryFile(byte[] data) {
+			this.data = data;
+			this.length = data.length;
+		}
+		
+		@Override
+		public synchronized int read(long offset, byte[] buf, int start, int numBytesToRead) {
+			reads.incrementAndGet();
+			if(offset >= length) {
+				return -1;
+			}
+			int count = (int) Math.min(numBytesToRead, length - offset);
+			System.arraycopy(data, (int) offset, buf, start, count);
+			return count;
+		}
+		
+		@Override
+		public synchronized void write(long offset, byte[] buf, int off, int len) {
+			writes.incrementAndGet();
+			if(offset + len > data.length) {
+				data = Arrays.copyOf(data, (int) (offset + len) * 2);
+			}
+			System.arraycopy(buf, off, data, (int) offset, len);
+			length = Math.max(length, (int) (offset + len));
+		}
+		
+		@Override
+		public AbstractFile getFile() {
+			return null;
+		}
+
+		@Override
+		public UnsignedInteger32 getFlags() {
+			return new UnsignedInteger32(AbstractFileSystem.OPEN_READ | AbstractFileSystem.OPEN_WRITE);
+		}
+
+		@Override
+		public boolean isTextMode() {
+			return false;
+		}
+
+		@Override
+		public long getFilePointer() throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void seek(long longValue) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int read(byte[] buf, int start, int numBytesToRead) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void write(byte[] data, int off, int len) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+
+		@Override
+		public void processEvent(Event evt) {
+		}
+
+		@Override
+		public byte[] getHandle() {
+			return null;
+		}
+	}
+}
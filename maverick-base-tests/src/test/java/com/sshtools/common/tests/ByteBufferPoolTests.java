@@ -0,0 +1,151 @@
+package com.sshtools.common.tests;
+
+/*-
+ * #%L
+ * Base API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+import com.sshtools.common.util.ByteBufferPool;
+
+import junit.framework.TestCase;
+
+public class ByteBufferPoolTests extends TestCase {
+
+	public void testDirectBuffers() {
+		
+		assertTrue(new ByteBufferPool(8192, true).get().isDirect());
+		assertFalse(new ByteBufferPool(8192, false).get().isDirect());
+	}
+	
+	public void testBuffersAreSizeClassed() {
+		
+		ByteBufferPool pool = new ByteBufferPool(69632, false);
+		
+		assertEquals(69632, pool.get().capacity());
+		assertEquals(1024, pool.get(1).capacity());
+		assertEquals(4096, pool.get(4000).capacity());
+		assertEquals(65536, pool.get(65536).capacity());
+		assertEquals(69632, pool.get(65537).capacity());
+		assertEquals(100000, pool.get(100000).capacity());
+	}
+	
+	public void testBuffersAreReused() {
+		
+		ByteBufferPool pool = new ByteBufferPool(8192, false);
+		
+		ByteBuffer buffer = pool.get();
+		buffer.putInt(1);
+		pool.add(buffer);
+		
+		assertEquals(1, pool.getFreeBuffers());
+		assertEquals(8192, pool.getRetainedBytes());
+		
+		ByteBuffer reused = pool.get();
+		assertSame(buffer, reused);
+		assertEquals(0, reused.position());
+		assertEquals(1, pool.getHitCount());
+		assertEquals(1, pool.getMissCount());
+		assertEquals(0, pool.getRetainedBytes());
+	}
+	
+	public void testRetainedBytesAreCapped() {
+		
+		ByteBufferPool pool = new ByteBufferPool(8192, false, 16384, 0);
+		
+		for(int i=0;i<4;i++) {
+			pool.add(ByteBuffer.allocate(8192));
+		}
+		
+		assertEquals(2, pool.getFreeBuffers());
+		assertEquals(16384, pool.getRetainedBytes());
+	}
+	
+	public void testForeignBuffersAreIgnored() {
+		
+		ByteBufferPool pool = new ByteBufferPool(8192, false);
+		
+		pool.add(ByteBuffer.allocate(5000));
+		pool.add(ByteBuffer.allocateDirect(8192));
+		pool.add(ByteBuffer.allocate(16384));
+		
+		assertEquals(0, pool.getFreeBuffers());
+	}
+	
+	public void testBuffersAreSharedBetweenThreads() throws InterruptedException {
+		
+		final ByteBufferPool pool = new ByteBufferPool(8192, false, 1024 * 1024, 1);
+		
+		Thread t = new Thread(() -> {
+			for(int i=0;i<3;i++) {
+				pool.add(ByteBuffer.allocate(8192));
+			}
+		});
+		t.start();
+		t.join();
+		
+		assertEquals(3, pool.getFreeBuffers());
+		
+		/**
+		 * One buffer remains cached by the exited thread, the others
+		 * are available to this thread.
+		 */
+		assertNotNull(pool.get());
+		assertNotNull(pool.get());
+		assertEquals(2, pool.getHitCount());
+		pool.get();
+		assertEquals(1, pool.getMissCount());
+	}
+	
+	public void testVirtualThreadsUseSharedPool() throws Exception {
+		
+		Method ofVirtual;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+		} catch(NoSuchMethodException e) {
+			// Virtual threads need Java 21
+			return;
+		}
+		Object builder = ofVirtual.invoke(null);
+		Method start = Class.forName("java.lang.Thread$Builder").getMethod("start", Runnable.class);
+		
+		final ByteBufferPool pool = new ByteBufferPool(8192, false, 1024 * 1024, 4);
+		
+		for(int i=0;i<100;i++) {
+			Thread t = (Thread) start.invoke(builder, (Runnable) () -> {
+				ByteBuffer first = pool.get();
+				ByteBuffer second = pool.get();
+				pool.add(first);
+				pool.add(second);
+			});
+			t.join();
+		}
+		
+		/**
+		 * Every buffer a virtual thread released went back to the shared free
+		 * list, so only the first thread had to allocate.
+		 */
+		assertEquals(2, pool.getAllocatedBuffers());
+		assertEquals(2, pool.getFreeBuffers());
+		assertEquals(198, pool.getHitCount());
+	}
+}
@@ -0,0 +1,85 @@
+package com.sshtools.common.tests;
+
+/*-
+ * #%L
+ * Base API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.Random;
+
+import com.sshtools.common.ssh.components.AbstractSshCipher;
+import com.sshtools.common.ssh.components.jce.AES256Gcm;
+import com.sshtools.common.ssh.components.jce.ChaCha20Poly1305;
+import com.sshtools.common.ssh.components.jce.JCEProvider;
+import com.sshtools.common.util.UnsignedInteger64;
+
+import junit.framework.TestCase;
+
+/**
+ * Reports the rate at which chacha20-poly1305 and aes256-gcm encrypt full size
+ * packets, to inform the default cipher preference.
+ */
+public class ChaCha20Poly1305Benchmark extends TestCase {
+
+	static final int PACKET_SIZE = 32768;
+	static final int PACKETS = 5000;
+	
+	public void setUp() {
+		JCEProvider.disableBouncyCastle();
+	}
+	
+	public void testThroughputAgainstAESGCM() throws IOException {
+		
+		byte[] key = new byte[64];
+		byte[] iv = new byte[12];
+		new Random(3).nextBytes(key);
+		byte[] packet = new byte[4 + PACKET_SIZE + 16];
+		
+		ChaCha20Poly1305 chacha = new ChaCha20Poly1305();
+		chacha.init(AbstractSshCipher.ENCRYPT_MODE, null, key);
+		AES256Gcm gcm = new AES256Gcm();
+		gcm.init(AbstractSshCipher.ENCRYPT_MODE, iv, key);
+		
+		for(int round = 0; round < 2; round++) {
+			long started = System.nanoTime();
+			for(int i=0;i<PACKETS;i++) {
+				chacha.writePacketLength(PACKET_SIZE, new UnsignedInteger64(i));
+				chacha.transform(packet, 4, packet, 4, PACKET_SIZE + 16);
+			}
+			long chachaElapsed = System.nanoTime() - started;
+			
+			started = System.nanoTime();
+			for(int i=0;i<PACKETS;i++) {
+				gcm.transform(packet, 0, packet, 0, PACKET_SIZE + 4);
+			}
+			long gcmElapsed = System.nanoTime() - started;
+			
+			if(round > 0) {
+				System.out.println(String.format("chacha20-poly1305 (%s) %d MB/s, aes256-gcm (%s) %d MB/s", 
+						chacha.getProviderName(), rate(chachaElapsed), gcm.getProviderName(), rate(gcmElapsed)));
+			}
+		}
+	}
+	
+	private long rate(long elapsedNanos) {
+		return (long) ((double) PACKETS * PACKET_SIZE / (1024 * 1024) / (elapsedNanos / 1000000000D));
+	}
+}
@@ -0,0 +1,159 @@
+package com.sshtools.common.tests;
+
+/*-
+ * #%L
+ * Base API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import com.sshtools.common.ssh.components.AbstractSshCipher;
+import com.sshtools.common.ssh.components.jce.ChaCha20Poly1305;
+import com.sshtools.common.ssh.components.jce.JCEProvider;
+import com.sshtools.common.util.Arrays;
+import com.sshtools.common.util.UnsignedInteger64;
+import com.sshtools.common.util.Utils;
+
+import junit.framework.TestCase;
+
+public class ChaCha20Poly1305Tests extends TestCase {
+
+	/**
+	 * A packet with a 48 byte body, sequence number 7 and the key bytes 0 to 63,
+	 * as encrypted by the original pure Java implementation.
+	 */
+	static final String EXPECTED_PACKET = "a39afc9a2845134a428c384b7476a5d1f3a8f9010481060f42dc7fc6"
+			+ "0821558ed4045909c43497cc790d86ccd4a918af97b581fa12416bf4567b1e71d85d67b78b4a941d";
+	
+	public void setUp() {
+		JCEProvider.disableBouncyCastle();
+	}
+	
+	public void testKnownPacket() throws IOException {
+		
+		byte[] key = new byte[64];
+		for(int i=0;i<key.length;i++) {
+			key[i] = (byte) i;
+		}
+		
+		ChaCha20Poly1305 cipher = new ChaCha20Poly1305();
+		cipher.init(AbstractSshCipher.ENCRYPT_MODE, null, key);
+		
+		byte[] packet = new byte[4 + 48 + 16];
+		for(int i=0;i<48;i++) {
+			packet[4 + i] = (byte) (i * 3);
+		}
+		System.arraycopy(cipher.writePacketLength(48, new UnsignedInteger64(7)), 0, packet, 0, 4);
+		cipher.transform(packet, 4, packet, 4, 48 + 16);
+		
+		assertEquals(EXPECTED_PACKET, Utils.bytesToHex(packet).toLowerCase());
+	}
+	
+	public void testEncryptDecrypt() throws IOException {
+		
+		Random r = new Random(1);
+		byte[] key = new byte[64];
+		r.nextBytes(key);
+		
+		ChaCha20Poly1305 encrypt = new ChaCha20Poly1305();
+		ChaCha20Poly1305 decrypt = new ChaCha20Poly1305();
+		encrypt.init(AbstractSshCipher.ENCRYPT_MODE, null, key);
+		decrypt.init(AbstractSshCipher.DECRYPT_MODE, null, key);
+		
+		for(long seq = 0; seq < 1000; seq++) {
+			int msglen = 8 * (1 + r.nextInt(512));
+			byte[] data = new byte[msglen];
+			r.nextBytes(data);
+			
+			byte[] packet = new byte[4 + msglen + 16];
+			System.arraycopy(data, 0, packet, 4, msglen);
+			System.arraycopy(encrypt.writePacketLength(msglen, new UnsignedInteger64(seq)), 0, packet, 0, 4);
+			encrypt.transform(packet, 4, packet, 4, msglen + 16);
+			
+			assertEquals(msglen, decrypt.readPacketLength(packet, new UnsignedInteger64(seq)));
+			decrypt.transform(packet, 4, packet, 4, msglen + 16);
+			assertTrue("Encrypt/Decrypt failure", Arrays.areEqual(data, java.util.Arrays.copyOfRange(packet, 4, 4 + msglen)));
+		}
+	}
+	
+	public void testCorruptTagIsRejected() throws IOException {
+		
+		byte[] key = new byte[64];
+		new Random(2).nextBytes(key);
+		
+		ChaCha20Poly1305 encrypt = new ChaCha20Poly1305();
+		ChaCha20Poly1305 decrypt = new ChaCha20Poly1305();
+		encrypt.init(AbstractSshCipher.ENCRYPT_MODE, null, key);
+		decrypt.init(AbstractSshCipher.DECRYPT_MODE, null, key);
+		
+		byte[] packet = new byte[4 + 64 + 16];
+		System.arraycopy(encrypt.writePacketLength(64, new UnsignedInteger64(1)), 0, packet, 0, 4);
+		encrypt.transform(packet, 4, packet, 4, 64 + 16);
+		packet[10] ^= 1;
+		
+		decrypt.readPacketLength(packet, new UnsignedInteger64(1));
+		try {
+			decrypt.transform(packet, 4, packet, 4, 64 + 16);
+			fail("Corrupt packet must be rejected");
+		} catch(IOException e) {
+		}
+	}
+	
+	public void testDirectBuffer() throws IOException {
+		
+		byte[] key = new byte[64];
+		for(int i=0;i<key.length;i++) {
+			key[i] = (byte) i;
+		}
+		
+		ChaCha20Poly1305 encrypt = new ChaCha20Poly1305();
+		ChaCha20Poly1305 decrypt = new ChaCha20Poly1305();
+		encrypt.init(AbstractSshCipher.ENCRYPT_MODE, null, key);
+		decrypt.init(AbstractSshCipher.DECRYPT_MODE, null, key);
+		
+		/**
+		 * The packet starts part way into the buffer, as it does when several
+		 * packets are written together
+		 */
+		ByteBuffer buf = ByteBuffer.allocateDirect(8 + 4 + 48 + 16);
+		buf.position(8);
+		encrypt.writePacketLength(48, 7, buf);
+		for(int i=0;i<48;i++) {
+			buf.put((byte) (i * 3));
+		}
+		encrypt.transform(buf, 12, 48 + 16);
+		assertEquals("Buffer position was changed", 8 + 4 + 48, buf.position());
+		
+		byte[] packet = new byte[4 + 48 + 16];
+		buf.position(8);
+		buf.get(packet);
+		assertEquals(EXPECTED_PACKET, Utils.bytesToHex(packet).toLowerCase());
+		
+		buf.position(8);
+		buf.get(packet, 0, 4);
+		assertEquals(48, decrypt.readPacketLength(packet, 7));
+		decrypt.transform(buf, 12, 48 + 16);
+		for(int i=0;i<48;i++) {
+			assertEquals((byte) (i * 3), buf.get(12 + i));
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.sshtools.common.tests;
+
+/*-
+ * #%L
+ * Base API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sshtools.common.logger.DefaultLoggerContext;
+import com.sshtools.common.logger.Log;
+import com.sshtools.common.logger.Log.Level;
+import com.sshtools.common.logger.RootLoggerContext;
+
+import junit.framework.TestCase;
+
+/**
+ * Reports the cost of the level check made around every packet when many threads
+ * are making it at once and the level is not enabled.
+ */
+public class LogGuardBenchmark extends TestCase {
+
+	static final int THREADS = 32;
+	static final int CHECKS = 10000000;
+	
+	RootLoggerContext previous;
+	DefaultLoggerContext context;
+	
+	protected void setUp() throws Exception {
+		System.setProperty("maverick.log.nothread", "true");
+		previous = Log.getDefaultContext();
+		context = new DefaultLoggerContext();
+		Log.setDefaultContext(context);
+	}
+	
+	protected void tearDown() throws Exception {
+		context.reset();
+		Log.setDefaultContext(previous);
+	}
+	
+	public void testGuardThroughput() throws InterruptedException {
+		
+		context.reset();
+		context.enableConsole(Level.INFO);
+		
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch finished = new CountDownLatch(THREADS);
+		final AtomicLong enabled = new AtomicLong();
+		
+		for(int i=0;i<THREADS;i++) {
+			Thread t = new Thread(() -> {
+				try {
+					start.await();
+					long count = 0;
+					for(int j=0;j<CHECKS;j++) {
+						if(Log.isTraceEnabled()) {
+							count++;
+						}
+					}
+					enabled.addAndGet(count);
+				} catch (InterruptedException e) {
+				} finally {
+					finished.countDown();
+				}
+			});
+			t.setDaemon(true);
+			t.start();
+		}
+		
+		long started = System.nanoTime();
+		start.countDown();
+		assertTrue(finished.await(5, TimeUnit.MINUTES));
+		long elapsed = System.nanoTime() - started;
+		
+		assertEquals(0, enabled.get());
+		System.out.println(String.format("%d threads made %d level checks in %dms (%.2f ns per check)", 
+				THREADS, (long) THREADS * CHECKS, TimeUnit.NANOSECONDS.toMillis(elapsed), 
+				(double) elapsed / CHECKS));
+	}
+}
@@ -0,0 +1,62 @@
+package com.sshtools.common.tests;
+
+/*-
+ * #%L
+ * Base API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import com.sshtools.common.logger.DefaultLoggerContext;
+import com.sshtools.common.logger.Log;
+import com.sshtools.common.logger.Log.Level;
+import com.sshtools.common.logger.RootLoggerContext;
+
+import junit.framework.TestCase;
+
+public class LogGuardTests extends TestCase {
+
+	RootLoggerContext previous;
+	DefaultLoggerContext context;
+	
+	protected void setUp() throws Exception {
+		System.setProperty("maverick.log.nothread", "true");
+		previous = Log.getDefaultContext();
+		context = new DefaultLoggerContext();
+		Log.setDefaultContext(context);
+	}
+	
+	protected void tearDown() throws Exception {
+		context.reset();
+		Log.setDefaultContext(previous);
+	}
+	
+	public void testLevelFollowsContexts() {
+		
+		context.reset();
+		assertFalse(Log.isErrorEnabled());
+		
+		context.enableConsole(Level.DEBUG);
+		assertTrue(Log.isInfoEnabled());
+		assertTrue(Log.isDebugEnabled());
+		assertFalse(Log.isTraceEnabled());
+		
+		context.reset();
+		assertFalse(Log.isInfoEnabled());
+	}
+}
@@ -30,6 +30,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 
 import com.sshtools.common.ssh.Context;
+import com.sshtools.common.ssh.PacketPool;
 import com.sshtools.common.ssh.components.ComponentManager;
 import com.sshtools.common.ssh.components.jce.JCEComponentManager;
 import com.sshtools.common.util.ByteBufferPool;
@@ -38,6 +39,7 @@ public class MockContext implements Context {
 
 	Map<Class<?>, Object> policy = new HashMap<>();
 	ByteBufferPool bbp = new ByteBufferPool();
+	PacketPool packetPool = new PacketPool();
 	ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
         public Thread newThread(Runnable r) {
             Thread t = Executors.defaultThreadFactory().newThread(r);
@@ -79,6 +81,11 @@ public class MockContext implements Context {
 		return 65536;
 	}
 
+	@Override
+	public PacketPool getPacketPool() {
+		return packetPool;
+	}
+
 	@Override
 	public ByteBufferPool getByteBufferPool() {
 		return bbp;
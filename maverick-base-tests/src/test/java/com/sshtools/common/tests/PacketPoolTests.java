@@ -0,0 +1,104 @@
+package com.sshtools.common.tests;
+
+/*-
+ * #%L
+ * Base API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+
+import com.sshtools.common.ssh.Packet;
+import com.sshtools.common.ssh.PacketPool;
+
+import junit.framework.TestCase;
+
+public class PacketPoolTests extends TestCase {
+
+	public void testPacketsAreSizeClassed() {
+		
+		PacketPool pool = new PacketPool();
+		
+		assertEquals(1024, pool.getPacket(1).array().length);
+		assertEquals(1536, pool.getPacket(1021).array().length);
+		assertEquals(49152, pool.getPacket().array().length);
+		assertEquals(49152, pool.getPacket(32768 + 13).array().length);
+		assertEquals(1024 * 1024 + 4, pool.getPacket(1024 * 1024).array().length);
+	}
+	
+	public void testPacketsAreReused() throws IOException {
+		
+		PacketPool pool = new PacketPool();
+		
+		Packet packet = pool.getPacket(32768);
+		packet.writeInt(100);
+		pool.putPacket(packet);
+		
+		assertEquals(packet.array().length, pool.getRetainedBytes());
+		
+		Packet reused = pool.getPacket(40000);
+		assertSame(packet, reused);
+		assertEquals(4, reused.size());
+		assertEquals(1, pool.getHitCount());
+		assertEquals(1, pool.getMissCount());
+		assertEquals(0, pool.getRetainedBytes());
+	}
+	
+	public void testGrownPacketsAreReclassified() throws IOException {
+		
+		PacketPool pool = new PacketPool();
+		
+		Packet packet = pool.getPacket(1000);
+		packet.write(new byte[5000]);
+		pool.putPacket(packet);
+		
+		assertNotSame(packet, pool.getPacket(1000));
+		assertSame(packet, pool.getPacket(4000));
+	}
+	
+	public void testRetainedBytesAreCapped() {
+		
+		PacketPool pool = new PacketPool(4096);
+		
+		Packet[] packets = new Packet[3];
+		for(int i=0;i<packets.length;i++) {
+			packets[i] = pool.getPacket(2000);
+		}
+		for(Packet packet : packets) {
+			pool.putPacket(packet);
+		}
+		
+		assertEquals(4096, pool.getRetainedBytes());
+		assertEquals(1, pool.getDiscardCount());
+	}
+	
+	public void testPacketsAreSharedBetweenThreads() throws InterruptedException {
+		
+		final PacketPool pool = new PacketPool();
+		
+		Thread t = new Thread(() -> {
+			pool.putPacket(pool.getPacket(8000));
+		});
+		t.start();
+		t.join();
+		
+		pool.getPacket(8000);
+		assertEquals(1, pool.getHitCount());
+	}
+}
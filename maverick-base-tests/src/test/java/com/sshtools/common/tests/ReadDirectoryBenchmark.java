@@ -0,0 +1,86 @@
+package com.sshtools.common.tests;
+
+/*-
+ * #%L
+ * Base API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import com.sshtools.common.files.AbstractFile;
+import com.sshtools.common.files.DirectoryIterator;
+import com.sshtools.common.files.direct.NioFileFactory.NioFileFactoryBuilder;
+import com.sshtools.common.permissions.PermissionDeniedException;
+import com.sshtools.common.util.FileUtils;
+
+import junit.framework.TestCase;
+
+/**
+ * Reports the rate at which a large folder is listed with attributes by the directory
+ * iterator, compared with listing the children and then reading the attributes of each.
+ */
+public class ReadDirectoryBenchmark extends TestCase {
+
+	File folder;
+	
+	protected void setUp() throws Exception {
+		folder = Files.createTempDirectory("readdir").toFile();
+		for(int i = 0; i < 10000; i++) {
+			assertTrue(new File(folder, "file" + i).createNewFile());
+		}
+	}
+	
+	protected void tearDown() {
+		FileUtils.deleteFolder(folder);
+	}
+	
+	public void testDirectoryIteratorThroughput() throws IOException, PermissionDeniedException {
+		
+		AbstractFile dir = NioFileFactoryBuilder.create().withHome(folder).build().getFile("");
+		
+		for(int round = 0; round < 2; round++) {
+			long started = System.currentTimeMillis();
+			int listed = 0;
+			for(AbstractFile child : dir.getChildren()) {
+				child.getAttributes();
+				listed++;
+			}
+			long childrenElapsed = System.currentTimeMillis() - started;
+			assertEquals(10000, listed);
+			
+			started = System.currentTimeMillis();
+			listed = 0;
+			try(DirectoryIterator it = dir.directoryIterator(null)) {
+				while(it.next() != null) {
+					listed++;
+				}
+			}
+			long iteratorElapsed = System.currentTimeMillis() - started;
+			assertEquals(10000, listed);
+			
+			if(round > 0) {
+				System.out.println(String.format("Listed 10000 entries in %dms with getChildren and %dms with directoryIterator", 
+						childrenElapsed, iteratorElapsed));
+			}
+		}
+	}
+}
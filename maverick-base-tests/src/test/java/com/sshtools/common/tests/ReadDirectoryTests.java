@@ -0,0 +1,161 @@
+package com.sshtools.common.tests;
+
+/*-
+ * #%L
+ * Base API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import com.sshtools.common.files.AbstractFile;
+import com.sshtools.common.files.direct.NioFileFactory.NioFileFactoryBuilder;
+import com.sshtools.common.policy.FileSystemPolicy;
+import com.sshtools.common.sftp.AbstractFileSystem;
+import com.sshtools.common.sftp.SftpFile;
+import com.sshtools.common.ssh.SshConnection;
+import com.sshtools.common.util.FileUtils;
+
+import junit.framework.TestCase;
+
+public class ReadDirectoryTests extends TestCase {
+
+	File folder;
+	AbstractFileSystem fs;
+	
+	protected void setUp() throws Exception {
+		folder = Files.createTempDirectory("readdir").toFile();
+		for(int i = 0; i < 250; i++) {
+			assertTrue(new File(folder, "file" + i).createNewFile());
+		}
+		
+		SshConnection con = new MockConnection("lee", 
+				UUID.randomUUID().toString(),
+				new InetSocketAddress(InetAddress.getLocalHost(), 22),
+				new InetSocketAddress(InetAddress.getLocalHost(), 22),
+				new MockContext());
+		con.getContext().getPolicy(FileSystemPolicy.class).setFileFactory(
+				(c) -> NioFileFactoryBuilder.create().withHome(folder).withoutSandbox().build());
+		fs = new AbstractFileSystem(con, "sftp");
+	}
+	
+	protected void tearDown() {
+		fs.closeFilesystem();
+		FileUtils.deleteFolder(folder);
+	}
+	
+	public void testReadInBatches() throws Exception {
+		
+		byte[] handle = fs.openDirectory(folder.getAbsolutePath());
+		Set<String> names = new HashSet<>();
+		
+		assertEquals(100, addAll(names, fs.readDirectory(handle)));
+		assertEquals(100, addAll(names, fs.readDirectory(handle)));
+		assertEquals(50, addAll(names, fs.readDirectory(handle)));
+		
+		try {
+			fs.readDirectory(handle);
+			fail("Directory must be exhausted");
+		} catch(EOFException e) {
+		}
+		
+		assertEquals(250, names.size());
+	}
+	
+	public void testDeclinedEntryIsReadAgain() throws Exception {
+		
+		byte[] handle = fs.openDirectory(folder.getAbsolutePath());
+		List<SftpFile> first = new ArrayList<>();
+		fs.readDirectory(handle, (file) -> first.size() < 10 && first.add(file));
+		
+		Set<String> names = new HashSet<>();
+		for(SftpFile file : first) {
+			names.add(file.getFilename());
+		}
+		
+		int remaining = 0;
+		try {
+			while(true) {
+				remaining += addAll(names, fs.readDirectory(handle));
+			}
+		} catch(EOFException e) {
+		}
+		
+		assertEquals(240, remaining);
+		assertEquals(250, names.size());
+	}
+	
+	public void testEntryKeptWhenConsumerFails() throws Exception {
+		
+		byte[] handle = fs.openDirectory(folder.getAbsolutePath());
+		List<SftpFile> first = new ArrayList<>();
+		try {
+			fs.readDirectory(handle, (file) -> {
+				if(first.size() == 10) {
+					throw new IOException("Consumer failed");
+				}
+				return first.add(file);
+			});
+			fail("Consumer exception must be thrown");
+		} catch(IOException e) {
+			assertEquals("Consumer failed", e.getMessage());
+		}
+		
+		Set<String> names = new HashSet<>();
+		addAll(names, first.toArray(new SftpFile[0]));
+		try {
+			while(true) {
+				addAll(names, fs.readDirectory(handle));
+			}
+		} catch(EOFException e) {
+		}
+		
+		assertEquals(250, names.size());
+	}
+	
+	public void testFilteredRead() throws Exception {
+		
+		byte[] handle = fs.openDirectory(folder.getAbsolutePath(), (name) -> name.startsWith("file1"));
+		Set<String> names = new HashSet<>();
+		addAll(names, fs.readDirectory(handle));
+		
+		/**
+		 * file1, file10-19 and file100-199
+		 */
+		assertEquals(100, names.size());
+		assertEquals(11, addAll(names, fs.readDirectory(handle)));
+	}
+	
+	private int addAll(Set<String> names, SftpFile[] files) {
+		for(SftpFile file : files) {
+			assertTrue("Entry returned twice", names.add(file.getFilename()));
+		}
+		return files.length;
+	}
+}
@@ -0,0 +1,257 @@
+package com.sshtools.common.tests;
+
+/*-
+ * #%L
+ * Base API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sshtools.common.sftp.SftpOperationScheduler;
+
+import junit.framework.TestCase;
+
+public class SftpOperationSchedulerTests extends TestCase {
+
+	ExecutorService executor;
+	
+	protected void setUp() {
+		executor = Executors.newCachedThreadPool();
+	}
+	
+	protected void tearDown() {
+		executor.shutdownNow();
+	}
+	
+	public void testOperationsWithSameKeyAreOrdered() throws InterruptedException {
+		
+		SftpOperationScheduler scheduler = new SftpOperationScheduler(executor, 8);
+		
+		List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch done = new CountDownLatch(100);
+		for(int i=0;i<100;i++) {
+			final int idx = i;
+			scheduler.execute("h:1", () -> {
+				order.add(idx);
+				done.countDown();
+			});
+		}
+		
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		for(int i=0;i<100;i++) {
+			assertEquals(i, order.get(i).intValue());
+		}
+	}
+	
+	public void testOperationsWithDifferentKeysRunInParallel() throws InterruptedException {
+		
+		SftpOperationScheduler scheduler = new SftpOperationScheduler(executor, 2);
+		
+		CountDownLatch started = new CountDownLatch(2);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger concurrent = new AtomicInteger();
+		
+		for(String key : new String[] { "h:1", "h:2", "h:3" }) {
+			scheduler.execute(key, () -> {
+				concurrent.incrementAndGet();
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+				}
+			});
+		}
+		
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		assertEquals(2, scheduler.getRunningCount());
+		assertEquals(1, scheduler.getPendingCount());
+		
+		release.countDown();
+		waitForIdle(scheduler);
+		assertEquals(3, concurrent.get());
+	}
+	
+	public void testSharedOperationsRunInParallelWithinKey() throws InterruptedException {
+		
+		SftpOperationScheduler scheduler = new SftpOperationScheduler(executor, 4);
+		
+		CountDownLatch started = new CountDownLatch(2);
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		
+		for(int i=0;i<2;i++) {
+			scheduler.execute("h:1", true, () -> {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+				}
+				order.add("read");
+			});
+		}
+		scheduler.execute("h:1", () -> order.add("close"));
+		scheduler.execute("h:1", true, () -> order.add("late read"));
+		
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		assertEquals(2, scheduler.getRunningCount());
+		assertEquals(2, scheduler.getPendingCount());
+		
+		release.countDown();
+		waitForIdle(scheduler);
+		
+		assertEquals(4, order.size());
+		assertEquals("close", order.get(2));
+		assertEquals("late read", order.get(3));
+	}
+	
+	public void testBarrierRunsAlone() throws InterruptedException {
+		
+		SftpOperationScheduler scheduler = new SftpOperationScheduler(executor, 4);
+		
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger maximumWithBarrier = new AtomicInteger();
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch release = new CountDownLatch(1);
+		
+		scheduler.execute("h:1", () -> {
+			active.incrementAndGet();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+			}
+			order.add("read");
+			active.decrementAndGet();
+		});
+		scheduler.execute(null, () -> {
+			maximumWithBarrier.set(active.incrementAndGet());
+			order.add("rename");
+			active.decrementAndGet();
+		});
+		scheduler.execute("h:2", () -> {
+			order.add("stat");
+		});
+		
+		assertEquals(2, scheduler.getPendingCount());
+		release.countDown();
+		waitForIdle(scheduler);
+		
+		assertEquals(1, maximumWithBarrier.get());
+		assertEquals("read", order.get(0));
+		assertEquals("rename", order.get(1));
+		assertEquals("stat", order.get(2));
+	}
+	
+	public void testShutdownDiscardsPendingOperations() throws InterruptedException {
+		
+		SftpOperationScheduler scheduler = new SftpOperationScheduler(executor, 1);
+		
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger executed = new AtomicInteger();
+		
+		scheduler.execute("h:1", () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+			}
+			executed.incrementAndGet();
+		});
+		scheduler.execute("h:2", () -> executed.incrementAndGet());
+		
+		scheduler.shutdown();
+		release.countDown();
+		waitForIdle(scheduler);
+		
+		scheduler.execute("h:3", () -> executed.incrementAndGet());
+		assertEquals(1, executed.get());
+	}
+	
+	public void testSaturationPausesAndResumes() throws InterruptedException {
+		
+		AtomicInteger saturated = new AtomicInteger();
+		AtomicInteger resumed = new AtomicInteger();
+		SftpOperationScheduler scheduler = new SftpOperationScheduler(executor, 1, 4, 
+				() -> saturated.incrementAndGet(), () -> resumed.incrementAndGet());
+		
+		CountDownLatch release = new CountDownLatch(1);
+		scheduler.execute("h:1", () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+			}
+		});
+		for(int i=0;i<6;i++) {
+			scheduler.execute("h:1", () -> { });
+		}
+		
+		assertEquals(6, scheduler.getPendingCount());
+		assertTrue(scheduler.isSaturated());
+		assertEquals(1, saturated.get());
+		assertEquals(0, resumed.get());
+		
+		release.countDown();
+		waitForIdle(scheduler);
+		
+		assertFalse(scheduler.isSaturated());
+		assertEquals(1, saturated.get());
+		assertEquals(1, resumed.get());
+	}
+	
+	public void testOperationsAfterBarriersKeepTheirOrder() throws InterruptedException {
+		
+		SftpOperationScheduler scheduler = new SftpOperationScheduler(executor, 4);
+		
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch release = new CountDownLatch(1);
+		
+		scheduler.execute("h:1", () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+			}
+			order.add("read");
+		});
+		scheduler.execute(null, () -> order.add("rename"));
+		scheduler.execute("h:2", () -> order.add("stat"));
+		scheduler.execute(null, () -> order.add("remove"));
+		scheduler.execute("h:1", () -> order.add("close"));
+		
+		assertEquals(4, scheduler.getPendingCount());
+		release.countDown();
+		waitForIdle(scheduler);
+		
+		assertEquals(Arrays.asList("read", "rename", "stat", "remove", "close"), order);
+	}
+	
+	private void waitForIdle(SftpOperationScheduler scheduler) throws InterruptedException {
+		long timeout = System.currentTimeMillis() + 10000;
+		while((scheduler.getRunningCount() > 0 || scheduler.getPendingCount() > 0) 
+				&& System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+	}
+}
@@ -25,15 +25,18 @@ package com.sshtools.common.auth;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.sshtools.common.files.AbstractFile;
 import com.sshtools.common.files.AbstractFileFactory;
@@ -41,10 +44,11 @@ import com.sshtools.common.permissions.PermissionDeniedException;
 import com.sshtools.common.policy.FileSystemPolicy;
 import com.sshtools.common.publickey.SshPublicKeyFile;
 import com.sshtools.common.publickey.SshPublicKeyFileFactory;
+import com.sshtools.common.publickey.authorized.AuthorizedKeyFile;
 import com.sshtools.common.ssh.SshConnection;
 import com.sshtools.common.ssh.SshException;
 import com.sshtools.common.ssh.components.SshPublicKey;
-import com.sshtools.common.ssh.components.jce.JCEComponentManager;
+import com.sshtools.common.util.IOUtils;
 
 /**
  * 
@@ -63,6 +67,23 @@ public class AuthorizedKeysPublicKeyAuthenticationProvider extends
 	 **/
 	protected String authorizedKeysFile = ".ssh/authorized_keys";
 
+	/**
+	 * A file whose modification time is this close to when it was read may be
+	 * changed again without its modification time changing, because file systems
+	 * record it with a granularity of up to 2 seconds.
+	 */
+	static final long MODIFICATION_TIME_GRANULARITY = 2000;
+	
+	/**
+	 * Parsed authorized_keys files keyed by the user and their absolute path
+	 **/
+	protected final Map<String, CachedKeys> cache = new ConcurrentHashMap<String, CachedKeys>();
+	
+	/**
+	 * The maximum number of parsed files to keep
+	 */
+	protected int maximumCachedFiles = 1024;
+
 	/**
 	 * Create a default <em>authorized_keys</em> store that reads keys from
 	 * <em>.ssh/authorized_keys</em>.
@@ -97,64 +118,118 @@ public class AuthorizedKeysPublicKeyAuthenticationProvider extends
 			SshConnection con) {
 
 		try {
-			AbstractFile file = getFile(con);
-
-			InputStream in = file.getInputStream();
+			AuthorizedKeyFile keys = getAuthorizedKeys(con);
+			return keys != null && keys.isAuthorizedKey(key);
+		} catch (Throwable ex) {
+			return false;
+		}
+	}
 
-			ByteArrayOutputStream out = new ByteArrayOutputStream();
-			int read;
-			byte[] buf = new byte[4096];
+	/**
+	 * Get the parsed <em>authorized_keys</em> file for a connection. The file
+	 * is only read again when its modification time or size has changed since
+	 * it was last parsed, or when it was read so soon after it was modified that
+	 * a further change may not have altered either. A file that is read again is
+	 * only parsed again when its content has changed. Otherwise the same instance
+	 * is returned to every caller and must not be modified.
+	 * 
+	 * @param con
+	 *            SshConnection
+	 * @return the parsed file, or null if the user has no authorized_keys file
+	 */
+	protected AuthorizedKeyFile getAuthorizedKeys(SshConnection con)
+			throws PermissionDeniedException, IOException {
 
-			try {
-				while ((read = in.read(buf, 0, buf.length)) > 0) {
-					out.write(buf, 0, read);
-				}
-			} catch (EOFException ex) {
-			}
+		AbstractFile file = getFile(con);
+		String path = getCacheKey(con, file);
 
-			in.close();
+		if (!file.exists()) {
+			cache.remove(path);
+			return null;
+		}
 
-			/**
-			 * Process the authorized keys
-			 */
-			BufferedReader reader = new BufferedReader(new InputStreamReader(
-					new ByteArrayInputStream(out.toByteArray())));
-			String line;
-			SshPublicKeyFile pubfile;
+		/**
+		 * Take the modification time and size before reading so that a change
+		 * made while the file is being read is picked up by the next attempt.
+		 */
+		long checked = System.currentTimeMillis();
+		long lastModified = file.lastModified();
+		long length = file.length();
 
-			while ((line = reader.readLine()) != null) {
-            	if(line.trim().equals("") || line.startsWith("#")) {
-            		continue;
-            	}
-				/**
-				 * Split up line and only reconstruct with key type as first token
-				 * ignoring any other tokens before hand.
-				 */
-				String[] tokens = line.split(" ");
-            	StringBuffer keyline = new StringBuffer();
-            	boolean skip = true;
-            	for(String t : tokens) {
-            		if(skip) {
-            			if(JCEComponentManager.getInstance().supportedPublicKeys().contains(t)) {
-            				skip = false;
-            			}
-            		}
-            		if(!skip) {
-            			if(keyline.length() > 0) {
-            				keyline.append(" ");
-            			}
-            			keyline.append(t);
-            		}
-            	}
-                pubfile = SshPublicKeyFileFactory.parse(keyline.toString().getBytes("US-ASCII"));
-                if (pubfile.toPublicKey().equals(key)) {
-                    return true;
-                }
+		CachedKeys cached = cache.get(path);
+		if (cached != null && cached.lastModified == lastModified
+				&& cached.length == length && !cached.isUnsettled()) {
+			cached.lastUsed = checked;
+			return cached.keys;
+		}
+		
+		byte[] content;
+		try(InputStream in = file.getInputStream()) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			IOUtils.copy(in, out);
+			content = out.toByteArray();
+		}
+		byte[] digest = digest(content);
+		
+		AuthorizedKeyFile keys;
+		if (cached != null && MessageDigest.isEqual(cached.digest, digest)) {
+			keys = cached.keys;
+		} else {
+			keys = new AuthorizedKeyFile();
+			keys.load(new ByteArrayInputStream(content));
+		}
+		
+		if (!cache.containsKey(path) && cache.size() >= maximumCachedFiles) {
+			evictLeastRecentlyUsed();
+		}
+		cache.put(path, new CachedKeys(lastModified, length, checked, digest, keys));
+		return keys;
+	}
+	
+	/**
+	 * Set the maximum number of parsed <em>authorized_keys</em> files to keep.
+	 * When a file is parsed and the cache is full, the file that was least recently
+	 * used is dropped.
+	 * 
+	 * @param maximumCachedFiles
+	 */
+	public void setMaximumCachedFiles(int maximumCachedFiles) {
+		this.maximumCachedFiles = maximumCachedFiles;
+	}
+	
+	/**
+	 * Get the key a parsed file is cached under. Virtual and sandboxed file systems
+	 * give every user the same absolute path for files in their own home directory,
+	 * so the path alone does not identify the file.
+	 * 
+	 * @param con
+	 * @param file
+	 * @return key
+	 */
+	protected String getCacheKey(SshConnection con, AbstractFile file) throws IOException, PermissionDeniedException {
+		String username = con == null ? null : con.getUsername();
+		return (username == null ? "" : username) + '\0' + file.getAbsolutePath();
+	}
+	
+	private void evictLeastRecentlyUsed() {
+		String eldest = null;
+		long eldestUse = Long.MAX_VALUE;
+		for (Map.Entry<String, CachedKeys> entry : cache.entrySet()) {
+			if (entry.getValue().lastUsed < eldestUse) {
+				eldest = entry.getKey();
+				eldestUse = entry.getValue().lastUsed;
 			}
-
-			return false;
-		} catch (Throwable ex) {
-			return false;
+		}
+		if (eldest != null) {
+			cache.remove(eldest);
+		}
+	}
+	
+	private static byte[] digest(byte[] content) throws IOException {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(content);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e.getMessage(), e);
 		}
 	}
 
@@ -174,6 +249,7 @@ public class AuthorizedKeysPublicKeyAuthenticationProvider extends
 		} finally {
 			out.close();
 		}
+		cache.remove(getCacheKey(con, file));
 	}
 
 	public void remove(SshPublicKey key, SshConnection con)
@@ -206,6 +282,7 @@ public class AuthorizedKeysPublicKeyAuthenticationProvider extends
 		} finally {
 			out.close();
 		}
+		cache.remove(getCacheKey(con, file));
 
 	}
 
@@ -244,4 +321,30 @@ public class AuthorizedKeysPublicKeyAuthenticationProvider extends
 	public boolean checkKey(SshPublicKey key, SshConnection con) throws IOException {
 		return isAuthorizedKey(key, con);
 	}
+
+	protected static class CachedKeys {
+		final long lastModified;
+		final long length;
+		final long read;
+		final byte[] digest;
+		final AuthorizedKeyFile keys;
+		volatile long lastUsed;
+
+		CachedKeys(long lastModified, long length, long read, byte[] digest, AuthorizedKeyFile keys) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.read = read;
+			this.digest = digest;
+			this.keys = keys;
+			this.lastUsed = read;
+		}
+		
+		/**
+		 * Whether the file was read so soon after it was modified that it may have
+		 * been changed since without its modification time changing.
+		 */
+		boolean isUnsettled() {
+			return read - lastModified < MODIFICATION_TIME_GRANULARITY;
+		}
+	}
 }
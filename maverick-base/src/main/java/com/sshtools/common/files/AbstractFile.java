@@ -33,6 +33,7 @@ import com.sshtools.common.permissions.PermissionDeniedException;
 import com.sshtools.common.sftp.MultipartTransfer;
 import com.sshtools.common.sftp.OpenFile;
 import com.sshtools.common.sftp.SftpFileAttributes;
+import com.sshtools.common.sftp.SftpFileFilter;
 import com.sshtools.common.sftp.files.PseduoRandomOpenFile;
 import com.sshtools.common.sftp.files.RandomAccessOpenFile;
 import com.sshtools.common.util.UnsignedInteger32;
@@ -52,6 +53,21 @@ public interface AbstractFile {
 	List<AbstractFile> getChildren() throws IOException,
 			PermissionDeniedException;
 
+	/**
+	 * Open an iterator over the entries of this folder and their attributes. The default
+	 * implementation lists the children and reads the attributes of each as it is reached; 
+	 * implementations that can read the folder incrementally or obtain attributes in bulk
+	 * should override this. The iterator must be closed when no longer required.
+	 * 
+	 * @param filter optional filter on the entry name, applied before attributes are read
+	 * @return iterator
+	 * @throws IOException
+	 * @throws PermissionDeniedException
+	 */
+	default DirectoryIterator directoryIterator(SftpFileFilter filter) throws IOException, PermissionDeniedException {
+		return DirectoryIterator.of(getChildren().iterator(), filter);
+	}
+
 	String getAbsolutePath() throws IOException, PermissionDeniedException;
 
 	AbstractFile getParentFile() throws IOException, PermissionDeniedException;
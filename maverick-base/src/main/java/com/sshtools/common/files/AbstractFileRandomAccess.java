@@ -24,6 +24,7 @@ package com.sshtools.common.files;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public interface AbstractFileRandomAccess extends Closeable {
 	public int read(byte[] buf, int off, int len) throws IOException;
@@ -32,4 +33,72 @@ public interface AbstractFileRandomAccess extends Closeable {
 	public void seek(long position) throws IOException;
 	public long getFilePointer() throws IOException;
 	public int read() throws IOException;
+	
+	/**
+	 * Read from a position in the file. Implementations that support positional I/O should
+	 * override this so that the file pointer is not used; this default seeks and reads whilst
+	 * holding the object's lock.
+	 * 
+	 * @param position
+	 * @param buf
+	 * @param off
+	 * @param len
+	 * @return the number of bytes read, or -1 at the end of the file
+	 * @throws IOException
+	 */
+	default int read(long position, byte[] buf, int off, int len) throws IOException {
+		synchronized(this) {
+			if(getFilePointer() != position) {
+				seek(position);
+			}
+			return read(buf, off, len);
+		}
+	}
+	
+	/**
+	 * Write to a position in the file. Implementations that support positional I/O should
+	 * override this so that the file pointer is not used; this default seeks and writes whilst
+	 * holding the object's lock.
+	 * 
+	 * @param position
+	 * @param buf
+	 * @param off
+	 * @param len
+	 * @throws IOException
+	 */
+	default void write(long position, byte[] buf, int off, int len) throws IOException {
+		synchronized(this) {
+			if(getFilePointer() != position) {
+				seek(position);
+			}
+			write(buf, off, len);
+		}
+	}
+	
+	/**
+	 * Determine if {@link #read(long, ByteBuffer)} reads directly from the underlying file
+	 * into the buffer rather than through an intermediate array.
+	 * 
+	 * @return boolean
+	 */
+	default boolean isDirectReadSupported() {
+		return false;
+	}
+	
+	/**
+	 * Read from a position in the file into the remaining space of a buffer.
+	 * 
+	 * @param position
+	 * @param dst
+	 * @return the number of bytes read, or -1 at the end of the file
+	 * @throws IOException
+	 */
+	default int read(long position, ByteBuffer dst) throws IOException {
+		byte[] tmp = new byte[dst.remaining()];
+		int read = read(position, tmp, 0, tmp.length);
+		if(read > 0) {
+			dst.put(tmp, 0, read);
+		}
+		return read;
+	}
 }
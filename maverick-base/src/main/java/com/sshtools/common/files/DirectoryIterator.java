@@ -0,0 +1,77 @@
+package com.sshtools.common.files;
+
+/*-
+ * #%L
+ * Base API
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+
+import com.sshtools.common.logger.Log;
+import com.sshtools.common.permissions.PermissionDeniedException;
+import com.sshtools.common.sftp.SftpFile;
+import com.sshtools.common.sftp.SftpFileFilter;
+
+/**
+ * Iterates over the entries of a folder, reading the attributes of each entry as it is 
+ * reached so that the whole listing does not have to be held in memory.
+ */
+@FunctionalInterface
+public interface DirectoryIterator extends Closeable {
+
+	/**
+	 * Get the next entry of the folder. Entries whose attributes cannot be read are skipped.
+	 * 
+	 * @return the next entry, or <code>null</code> when there are no more entries
+	 * @throws IOException
+	 * @throws PermissionDeniedException
+	 */
+	SftpFile next() throws IOException, PermissionDeniedException;
+	
+	@Override
+	default void close() throws IOException {
+	}
+	
+	/**
+	 * Create an iterator over files that have already been listed, reading their 
+	 * attributes one at a time.
+	 * 
+	 * @param children
+	 * @param filter optional filter on the entry name
+	 * @return iterator
+	 */
+	static DirectoryIterator of(Iterator<? extends AbstractFile> children, SftpFileFilter filter) {
+		return () -> {
+			while(children.hasNext()) {
+				AbstractFile child = children.next();
+				if(filter == null || filter.matches(child.getName())) {
+					try {
+						return new SftpFile(child.getName(), child.getAttributes());
+					} catch(IOException | PermissionDeniedException e) {
+						Log.debug("Could not access attributes of file {}", e, child.getName());
+					}
+				}
+			}
+			return null;
+		};
+	}
+}
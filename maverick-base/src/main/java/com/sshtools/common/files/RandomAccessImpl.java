@@ -25,6 +25,7 @@ package com.sshtools.common.files;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
 public class RandomAccessImpl implements AbstractFileRandomAccess {
 	
@@ -62,6 +63,29 @@ public class RandomAccessImpl implements AbstractFileRandomAccess {
 	public long getFilePointer() throws IOException {
 		return raf.getFilePointer();
 	}
+	
+	@Override
+	public int read(long position, byte[] buf, int off, int len) throws IOException {
+		return raf.getChannel().read(ByteBuffer.wrap(buf, off, len), position);
+	}
+	
+	@Override
+	public boolean isDirectReadSupported() {
+		return true;
+	}
+	
+	@Override
+	public int read(long position, ByteBuffer dst) throws IOException {
+		return raf.getChannel().read(dst, position);
+	}
+	
+	@Override
+	public void write(long position, byte[] buf, int off, int len) throws IOException {
+		ByteBuffer data = ByteBuffer.wrap(buf, off, len);
+		while(data.hasRemaining()) {
+			position += raf.getChannel().write(data, position);
+		}
+	}
 	@Override
 	public int read() throws IOException {
 		return raf.read();
@@ -30,6 +30,9 @@ import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
@@ -46,23 +49,29 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 import com.sshtools.common.events.Event;
 import com.sshtools.common.events.EventCodes;
 import com.sshtools.common.files.AbstractFile;
 import com.sshtools.common.files.AbstractFileFactory;
 import com.sshtools.common.files.AbstractFileRandomAccess;
+import com.sshtools.common.files.DirectoryIterator;
 import com.sshtools.common.files.FileVolume;
+import com.sshtools.common.logger.Log;
 import com.sshtools.common.permissions.PermissionDeniedException;
 import com.sshtools.common.sftp.AbstractFileSystem;
 import com.sshtools.common.sftp.OpenFile;
 import com.sshtools.common.sftp.PosixPermissions;
 import com.sshtools.common.sftp.PosixPermissions.PosixPermissionsBuilder;
+import com.sshtools.common.sftp.SftpFile;
 import com.sshtools.common.sftp.SftpFileAttributes;
 import com.sshtools.common.sftp.SftpFileAttributes.SftpFileAttributesBuilder;
+import com.sshtools.common.sftp.SftpFileFilter;
 import com.sshtools.common.util.IOUtils;
 import com.sshtools.common.util.UnsignedInteger32;
 import com.sshtools.common.util.UnsignedInteger64;
@@ -72,6 +81,12 @@ public final class NioFile implements AbstractFile {
 	public static final int SSH_FXE_STATVFS_ST_RDONLY = 0x1; /* read-only */
 	public static final int SSH_FXE_STATVFS_ST_NOSUID = 0x2; /* no setuid */
 	
+	/**
+	 * The attribute views each file system supports, checked once rather than by
+	 * trying the views on every file.
+	 */
+	private static final Map<FileSystem, Set<String>> attributeViews = Collections.synchronizedMap(new WeakHashMap<>());
+	
 	private Path path;
 	private Path home;
 	private final NioFileFactory fileFactory;
@@ -79,12 +94,9 @@ public final class NioFile implements AbstractFile {
 
 	NioFile(Path path, NioFileFactory fileFactory, Path home, boolean sandbox)
 			throws IOException, PermissionDeniedException {
-		if (sandbox) {
-			if ((Files.exists(path) && !path.toRealPath().startsWith(home.toRealPath()))
-					|| (!Files.exists(path) && !path.startsWith(home.toRealPath()))) {
-				throw new PermissionDeniedException(
-						MessageFormat.format("You cannot access paths outside of the sandbox path {0}. The path {1} was requested.", home.toRealPath(), path));
-			}
+		if (sandbox && isOutsideSandbox(path, home)) {
+			throw new PermissionDeniedException(
+					MessageFormat.format("You cannot access paths outside of the sandbox path {0}. The path {1} was requested.", home.toRealPath(), path));
 		}
 
 		this.home = home;
@@ -100,6 +112,11 @@ public final class NioFile implements AbstractFile {
 			throws IOException, PermissionDeniedException {
 		this(home.resolve(path), fileFactory, home, sandbox);
 	}
+	
+	private static boolean isOutsideSandbox(Path path, Path home) throws IOException {
+		return (Files.exists(path) && !path.toRealPath().startsWith(home.toRealPath()))
+				|| (!Files.exists(path) && !path.startsWith(home.toRealPath()));
+	}
 
 	@Override
 	public boolean existsNoFollowLinks() throws IOException, PermissionDeniedException {
@@ -196,6 +213,55 @@ public final class NioFile implements AbstractFile {
 		}
 	}
 
+	@Override
+	public DirectoryIterator directoryIterator(SftpFileFilter filter) throws IOException, PermissionDeniedException {
+		
+		DirectoryStream<Path> stream;
+		try {
+			stream = Files.newDirectoryStream(path);
+		} catch (IOException ioe) {
+			throw translateException(ioe);
+		}
+		
+		var it = stream.iterator();
+		return new DirectoryIterator() {
+			
+			@Override
+			public SftpFile next() throws IOException, PermissionDeniedException {
+				try {
+					while (it.hasNext()) {
+						var child = it.next();
+						var name = child.getFileName().toString();
+						if (filter != null && !filter.matches(name)) {
+							continue;
+						}
+						try {
+							var attrs = readAttributes(child);
+							/**
+							 * Only a link can lead outside of the sandbox from a folder within it
+							 */
+							if (sandbox && attrs.isLink() && isOutsideSandbox(child, home)) {
+								Log.debug("Skipping link {} as it leads outside of the sandbox", name);
+								continue;
+							}
+							return new SftpFile(name, attrs);
+						} catch (IOException e) {
+							Log.debug("Could not access attributes of file {}", e, name);
+						}
+					}
+					return null;
+				} catch (DirectoryIteratorException e) {
+					throw translateException(e.getCause());
+				}
+			}
+			
+			@Override
+			public void close() throws IOException {
+				stream.close();
+			}
+		};
+	}
+
 	@Override
 	public String getAbsolutePath() throws IOException, PermissionDeniedException {
 		return path.toAbsolutePath().toString();
@@ -394,6 +460,29 @@ public final class NioFile implements AbstractFile {
 				return flags;
 			}
 			
+			@Override
+			public int read(long position, byte[] buf, int off, int len) throws IOException {
+				return channel.read(ByteBuffer.wrap(buf, off, len), position);
+			}
+			
+			@Override
+			public boolean isDirectReadSupported() {
+				return true;
+			}
+			
+			@Override
+			public int read(long position, ByteBuffer dst) throws IOException {
+				return channel.read(dst, position);
+			}
+
+			@Override
+			public void write(long position, byte[] buf, int off, int len) throws IOException {
+				ByteBuffer data = ByteBuffer.wrap(buf, off, len);
+				while(data.hasRemaining()) {
+					position += channel.write(data, position);
+				}
+			}
+
 			@Override
 			public long getFilePointer() throws IOException {
 				return channel.position();
@@ -404,6 +493,11 @@ public final class NioFile implements AbstractFile {
 				return NioFile.this;
 			}
 			
+			@Override
+			public void sync() throws IOException {
+				channel.force(false);
+			}
+			
 			@Override
 			public void close() throws IOException {
 				channel.close();
@@ -412,10 +506,32 @@ public final class NioFile implements AbstractFile {
 	}
 
 	protected SftpFileAttributes doGetAttributes() throws FileNotFoundException, IOException {
+		return readAttributes(path);
+	}
+	
+	private SftpFileAttributes readAttributes(Path file) throws FileNotFoundException, IOException {
 
 		try {
+			
+			var views = attributeViews.computeIfAbsent(file.getFileSystem(), FileSystem::supportedFileAttributeViews);
+			
+			/**
+			 * Posix attributes include the basic attributes, so where they are supported
+			 * a single read provides everything we need. 
+			 */
+			if(views.contains("posix")) {
+				var posix = Files.readAttributes(file, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+				var bldr = SftpFileAttributesBuilder.ofType(getFileType(posix), "UTF-8");
+
+				bldr.withSize(new UnsignedInteger64(posix.size()));
+				bldr.withGroup(posix.group().getName());
+				bldr.withUsername(posix.owner().getName());
+				bldr.withLastAccessTime(posix.lastAccessTime());
+				bldr.withLastModifiedTime(posix.lastModifiedTime());
+				bldr.withPermissions(posix.permissions());
 
-			Path file = path;
+				return bldr.build();
+			}
 
 			var attr = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
 			var bldr = SftpFileAttributesBuilder.ofType(getFileType(attr), "UTF-8");
@@ -424,40 +540,27 @@ public final class NioFile implements AbstractFile {
 
 				bldr.withSize(new UnsignedInteger64(attr.size()));
 
-				try {
-					var posix = Files.readAttributes(file, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
-
-					bldr.withGroup(posix.group().getName());
-					bldr.withUsername(posix.owner().getName());
-					bldr.withLastAccessTime(posix.lastAccessTime());
-					bldr.withLastModifiedTime(posix.lastModifiedTime());
-					bldr.withPermissions(posix.permissions());
-
-					// We return now as we have enough information
-					return bldr.build();
-
-				} catch (UnsupportedOperationException | IOException e) {
-				}
-
 				bldr.withLastAccessTime(attr.lastAccessTime());
 				bldr.withLastModifiedTime(attr.lastModifiedTime());
 				bldr.withCreateTime(attr.creationTime());
 
-				try {
-					var dos = Files.readAttributes(file, DosFileAttributes.class);
-
-					var permsBldr = PosixPermissionsBuilder.create();
-					permsBldr.withAllRead();
-					if (!dos.isReadOnly()) {
-						permsBldr.withAllWrite();
-					}
-					var filename = path.getFileName();
-					if (filename != null &&  filename.toString().endsWith(".exe") || filename.toString().endsWith(".com") || filename.toString().endsWith(".cmd")) {
-						permsBldr.withAllExecute();
+				if(views.contains("dos")) {
+					try {
+						var dos = Files.readAttributes(file, DosFileAttributes.class);
+	
+						var permsBldr = PosixPermissionsBuilder.create();
+						permsBldr.withAllRead();
+						if (!dos.isReadOnly()) {
+							permsBldr.withAllWrite();
+						}
+						var filename = file.getFileName();
+						if (filename != null &&  filename.toString().endsWith(".exe") || filename.toString().endsWith(".com") || filename.toString().endsWith(".cmd")) {
+							permsBldr.withAllExecute();
+						}
+						bldr.withPermissions(permsBldr.build());
+	
+					} catch (IOException e) {
 					}
-					bldr.withPermissions(permsBldr.build());
-
-				} catch (UnsupportedOperationException | IOException e) {
 				}
 
 			} catch (UnsupportedOperationException e) {
@@ -608,6 +711,42 @@ public final class NioFile implements AbstractFile {
 				return channel.read(ByteBuffer.wrap(buf, off, len));
 			}
 
+			@Override
+			public int read(long position, byte[] buf, int off, int len) throws IOException {
+				return read(position, ByteBuffer.wrap(buf, off, len));
+			}
+
+			@Override
+			public void write(long position, byte[] buf, int off, int len) throws IOException {
+				if(channel instanceof FileChannel) {
+					ByteBuffer data = ByteBuffer.wrap(buf, off, len);
+					while(data.hasRemaining()) {
+						position += ((FileChannel)channel).write(data, position);
+					}
+				} else {
+					synchronized(this) {
+						channel.position(position);
+						channel.write(ByteBuffer.wrap(buf, off, len));
+					}
+				}
+			}
+
+			@Override
+			public boolean isDirectReadSupported() {
+				return channel instanceof FileChannel;
+			}
+
+			@Override
+			public int read(long position, ByteBuffer dst) throws IOException {
+				if(channel instanceof FileChannel) {
+					return ((FileChannel)channel).read(dst, position);
+				}
+				synchronized(this) {
+					channel.position(position);
+					return channel.read(dst);
+				}
+			}
+
 			@Override
 			public long getFilePointer() throws IOException {
 				return channel.position();
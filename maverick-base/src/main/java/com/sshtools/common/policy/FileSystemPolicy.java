@@ -52,6 +52,12 @@ public class FileSystemPolicy extends Permissions {
 	boolean scpReadWriteEvents = false;
 	int maxConcurrentTransfers = 50;
 	int maximumSftpRequests = 10;
+	int sftpConcurrency = 1;
+	int sftpMaximumPendingOperations = 1024;
+	int sftpReadAheadSize = 0;
+	int sftpWriteBehindSize = 0;
+	long sftpMaximumBufferMemory = IOUtils.fromByteSize("16MB").longValue();
+	int sftpDirectoryReplySize = 32768;
 	String sftpLongnameDateFormat = "MMM dd  yyyy";
 	String sftpLongnameDateFormatWithTime = "MMM dd HH:mm";
 	List<SftpExtensionFactory> sftpExtensionFactories = new ArrayList<SftpExtensionFactory>();
@@ -176,6 +182,139 @@ public class FileSystemPolicy extends Permissions {
 		this.maximumSftpRequests = maximumSftpRequests;
 	}
 
+	/**
+	 * Get the maximum number of SFTP operations that a single session may execute in parallel.
+	 * 
+	 * @return int
+	 */
+	public int getSFTPConcurrency() {
+		return sftpConcurrency;
+	}
+	
+	/**
+	 * Set the maximum number of SFTP operations that a single session may execute in parallel. 
+	 * Requests on the same handle or path are always executed in the order they were received, and
+	 * operations that modify the file system such as remove or rename are executed on their own. The
+	 * default of 1 executes all requests one at a time.
+	 * 
+	 * @param sftpConcurrency
+	 */
+	public void setSFTPConcurrency(int sftpConcurrency) {
+		if(sftpConcurrency < 1) {
+			throw new IllegalArgumentException("SFTP concurrency must be at least 1");
+		}
+		this.sftpConcurrency = sftpConcurrency;
+	}
+
+	/**
+	 * Get the number of SFTP operations that may wait to execute before the session stops
+	 * accepting requests.
+	 * 
+	 * @return int
+	 */
+	public int getSFTPMaximumPendingOperations() {
+		return sftpMaximumPendingOperations;
+	}
+	
+	/**
+	 * Set the number of SFTP operations that may wait to execute before the session stops
+	 * accepting requests. This only applies when the SFTP concurrency is greater than 1. Once
+	 * exceeded, no more window space is given to the client until half of the waiting 
+	 * operations have started. The default is 1024.
+	 * 
+	 * @param sftpMaximumPendingOperations
+	 */
+	public void setSFTPMaximumPendingOperations(int sftpMaximumPendingOperations) {
+		if(sftpMaximumPendingOperations < 1) {
+			throw new IllegalArgumentException("SFTP maximum pending operations must be at least 1");
+		}
+		this.sftpMaximumPendingOperations = sftpMaximumPendingOperations;
+	}
+
+	/**
+	 * Get the size of the read-ahead buffer used for each file opened through SFTP.
+	 * 
+	 * @return int
+	 */
+	public int getSFTPReadAheadSize() {
+		return sftpReadAheadSize;
+	}
+	
+	/**
+	 * Set the size of the read-ahead buffer used for each file opened through SFTP. When
+	 * a client reads a file sequentially the next block of this size is read in the background
+	 * whilst the current response is sent. Two buffers of this size are used for each file. The
+	 * default of 0 disables read-ahead.
+	 * 
+	 * @param sftpReadAheadSize
+	 */
+	public void setSFTPReadAheadSize(int sftpReadAheadSize) {
+		this.sftpReadAheadSize = Math.max(0, sftpReadAheadSize);
+	}
+	
+	/**
+	 * Get the size of the write-behind buffer used for each file opened through SFTP.
+	 * 
+	 * @return int
+	 */
+	public int getSFTPWriteBehindSize() {
+		return sftpWriteBehindSize;
+	}
+	
+	/**
+	 * Set the size of the write-behind buffer used for each file opened through SFTP. Sequential
+	 * writes are collected in the buffer and written to the file together when it is full or when the 
+	 * file is closed or synced. The default of 0 disables write-behind.
+	 * 
+	 * @param sftpWriteBehindSize
+	 */
+	public void setSFTPWriteBehindSize(int sftpWriteBehindSize) {
+		this.sftpWriteBehindSize = Math.max(0, sftpWriteBehindSize);
+	}
+	
+	/**
+	 * Get the maximum amount of memory a single SFTP session may use for read-ahead and write-behind buffers.
+	 * 
+	 * @return long
+	 */
+	public long getSFTPMaximumBufferMemory() {
+		return sftpMaximumBufferMemory;
+	}
+	
+	/**
+	 * Set the maximum amount of memory a single SFTP session may use for read-ahead and write-behind
+	 * buffers. Files opened once this limit has been reached are not buffered.
+	 * 
+	 * @param sftpMaximumBufferMemory
+	 */
+	public void setSFTPMaximumBufferMemory(long sftpMaximumBufferMemory) {
+		this.sftpMaximumBufferMemory = sftpMaximumBufferMemory;
+	}
+
+	/**
+	 * Get the maximum size in bytes of the entries sent in each SSH_FXP_NAME reply to a directory read.
+	 * 
+	 * @return int
+	 */
+	public int getSFTPDirectoryReplySize() {
+		return sftpDirectoryReplySize;
+	}
+	
+	/**
+	 * Set the maximum size in bytes of the entries sent in each SSH_FXP_NAME reply to a directory 
+	 * read. Entries are added to a reply until the next would exceed this size, so a reply always 
+	 * holds at least one entry. The default of 32768 keeps replies within the 34000 byte packet 
+	 * size that all clients must accept.
+	 * 
+	 * @param sftpDirectoryReplySize
+	 */
+	public void setSFTPDirectoryReplySize(int sftpDirectoryReplySize) {
+		if(sftpDirectoryReplySize < 1024) {
+			throw new IllegalArgumentException("SFTP directory reply size must be at least 1024 bytes");
+		}
+		this.sftpDirectoryReplySize = sftpDirectoryReplySize;
+	}
+
 	public String getSFTPLongnameDateFormat() {
 		return sftpLongnameDateFormat; //"MMM dd yyyy";
 	}
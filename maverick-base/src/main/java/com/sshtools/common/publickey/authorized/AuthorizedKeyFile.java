@@ -32,9 +32,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
@@ -54,6 +56,7 @@ public class AuthorizedKeyFile {
 	
 	LinkedList<Entry<?>> allEntries = new LinkedList<Entry<?>>();
 	LinkedList<PublicKeyEntry> keyEntries = new LinkedList<PublicKeyEntry>();
+	Map<String,PublicKeyEntry> keysByFingerprint = new HashMap<String,PublicKeyEntry>();
 
 	Set<String> supportedOptions = new HashSet<String>(Arrays.asList("agent-forwarding",
 		"cert-authority", "command", "environment", "from", "no-agent-forwarding",
@@ -91,7 +94,7 @@ public class AuthorizedKeyFile {
 					// SSH1 style public key string without any options
 					try {
 						addSSH1KeyEntry("", tokens[0], tokens[1], tokens[2], tokens.length > 3 ? tokens[3] : "");
-					} catch (SshException e) {
+					} catch (SshException | IllegalArgumentException e) {
 						addErrorEntry(line);
 					}
 					
@@ -99,21 +102,21 @@ public class AuthorizedKeyFile {
 					// SSH2 style public key string without any options
 					try {
 						addSSH2KeyEntry("", tokens[0], tokens[1], tokens.length > 2 ? tokens[2] : "");
-					} catch (SshException e) {
+					} catch (SshException | IllegalArgumentException e) {
 						addErrorEntry(line);
 					}
 				} else if(isNumeric(tokens[1]) && tokens.length >= 4) {
 					// SSH1 style public key string with options
 					try {
 						addSSH1KeyEntry(tokens[0], tokens[1], tokens[2], tokens[3], tokens.length > 4 ? tokens[4] : "");
-					} catch (SshException e) {
+					} catch (SshException | IllegalArgumentException e) {
 						addErrorEntry(line);
 					}
 				} else if(tokens.length > 2 && isBase64(tokens[2])) {
 					// SSH2 style public key string with options
 					try {
 						addSSH2KeyEntry(tokens[0], tokens[1], tokens[2], tokens.length > 3 ? tokens[3] : "");
-					} catch (SshException e) {
+					} catch (SshException | IllegalArgumentException e) {
 						addErrorEntry(line);
 					}
 				}
@@ -129,16 +132,15 @@ public class AuthorizedKeyFile {
 	}
 	
 	public boolean isAuthorizedKey(SshPublicKey key) {
-		
-		for(PublicKeyEntry k : keyEntries) {
-			if(k.getValue().equals(key)) {
-				return true;
-			}
-		}
-		return false;
+		return getKeyEntry(key) != null;
 	}
 	
 	public PublicKeyEntry getKeyEntry(SshPublicKey key){
+		String fingerprint = fingerprint(key);
+		if(fingerprint != null) {
+			PublicKeyEntry k = keysByFingerprint.get(fingerprint);
+			return k != null && k.getValue().equals(key) ? k : null;
+		}
 		for(PublicKeyEntry k : keyEntries) {
 			if(k.getValue().equals(key)) {
 				return k;
@@ -162,14 +164,27 @@ public class AuthorizedKeyFile {
 	}
 	
 	public void removeKey(PublicKeyEntry entry) {
-		keyEntries.remove(entry);
+		if(!keyEntries.remove(entry)) {
+			return;
+		}
 		allEntries.remove(entry);
+		String fingerprint = fingerprint(entry.getValue());
+		if(fingerprint != null && keysByFingerprint.get(fingerprint) == entry) {
+			keysByFingerprint.remove(fingerprint);
+			for(PublicKeyEntry k : keyEntries) {
+				if(k.getValue().equals(entry.getValue())) {
+					keysByFingerprint.put(fingerprint, k);
+					break;
+				}
+			}
+		}
 	}
 	
 	public void addKey(SshPublicKey key, String comment) {
 		PublicKeyEntry entry = new PublicKeyEntry(key, new LinkedList<Option<?>>(), comment);
 		allEntries.addLast(entry);
 		keyEntries.addLast(entry);
+		index(entry);
 	}
 	
 	public void addKey(SshPublicKey key, String comment, Option<?>... options) {
@@ -181,6 +196,7 @@ public class AuthorizedKeyFile {
 				comment);
 		allEntries.addLast(entry);
 		keyEntries.addLast(entry);
+		index(entry);
 	}
 	
 	public void setOption(PublicKeyEntry entry, Option<?> option) {
@@ -191,6 +207,26 @@ public class AuthorizedKeyFile {
 		getKeyEntry(key).setOption(option);
 	}
 	
+	/**
+	 * Index an entry by the fingerprint of its key so that lookups do not have to
+	 * compare against every key in the file. Where a key appears more than once
+	 * the first entry wins, as it would in a scan of the file.
+	 */
+	void index(PublicKeyEntry entry) {
+		String fingerprint = fingerprint(entry.getValue());
+		if(fingerprint != null) {
+			keysByFingerprint.putIfAbsent(fingerprint, entry);
+		}
+	}
+	
+	static String fingerprint(SshPublicKey key) {
+		try {
+			return key.getFingerprint();
+		} catch (SshException e) {
+			return null;
+		}
+	}
+	
 	boolean isBase64(String line) {
 		return line.matches("^([A-Za-z0-9+/]{4})*([A-Za-z0-9+/]{4}|[A-Za-z0-9+/]{3}=|[A-Za-z0-9+/]{2}==)$");
 	}
@@ -246,6 +282,7 @@ public class AuthorizedKeyFile {
 			
 			keyEntries.add(entry);
 			allEntries.add(entry);
+			index(entry);
 	
 	}
 	
@@ -259,6 +296,7 @@ public class AuthorizedKeyFile {
 		
 		keyEntries.add(entry);
 		allEntries.add(entry);
+		index(entry);
 	}
 	
 	static String splitName(String option) {
@@ -48,6 +48,7 @@ import com.sshtools.common.sftp.SftpFile;
 import com.sshtools.common.sftp.SftpFileAttributes;
 import com.sshtools.common.sftp.SftpFileAttributes.SftpFileAttributesBuilder;
 import com.sshtools.common.ssh.ConnectionAwareTask;
+import com.sshtools.common.ssh.Packet;
 import com.sshtools.common.ssh.SshConnection;
 import com.sshtools.common.util.UnsignedInteger32;
 import com.sshtools.common.util.UnsignedInteger64;
@@ -682,61 +683,69 @@ public class ScpCommand extends AbstractExecutableCommand implements Runnable {
 				
 				UnsignedInteger64 offset = new UnsignedInteger64(count);
 				
-				byte[] buf = null;
+				/**
+				 * The channel's output stream blocks until each block has been sent
+				 * so a single pooled buffer is reused for the whole file.
+				 */
+				Packet packet = session.getConnection().getContext().getPacketPool().getPacket(BUFFER_SIZE);
+				byte[] buf = packet.array();
 				
-				while (count < attr.size().longValue()) {
+				try {
+					while (count < attr.size().longValue()) {
 
 					
-					try {
-						buf = new byte[BUFFER_SIZE];
-						int read = nfs.readFile(handle, offset, buf, 0,
-								buf.length);
-						if (read < 0)
-							break;
-						offset = UnsignedInteger64.add(offset, read);
-						count += read;
-						if(Log.isDebugEnabled())
-							Log.debug("Writing block of {} bytes", read);
-						getOutputStream().write(buf, 0, read);
+						try {
+							int read = nfs.readFile(handle, offset, buf, 0,
+									BUFFER_SIZE);
+							if (read < 0)
+								break;
+							offset = UnsignedInteger64.add(offset, read);
+							count += read;
+							if(Log.isDebugEnabled())
+								Log.debug("Writing block of {} bytes", read);
+							getOutputStream().write(buf, 0, read);
 						
 
-						if(session.getConnection().getContext().getPolicy(ScpPolicy.class).isSCPReadWriteEvents()) {
-							fireEvent(new Event(
-									this,
-									EventCodes.EVENT_SCP_FILE_READ,
-									true)
-									.addAttribute(
-											EventCodes.ATTRIBUTE_CONNECTION,
-											session.getConnection())
-									.addAttribute(
-											EventCodes.ATTRIBUTE_BYTES_TRANSFERED,
-											Long.valueOf(count))
-									.addAttribute(
-											EventCodes.ATTRIBUTE_BYTES_READ,
-											Long.valueOf(read))
-									.addAttribute(
-											EventCodes.ATTRIBUTE_FILE_NAME,
-											path)
-									.addAttribute(
-											EventCodes.ATTRIBUTE_OPERATION_STARTED,
-											started)
-									.addAttribute(
-											EventCodes.ATTRIBUTE_OPERATION_FINISHED,
-											new Date())
-									.addAttribute(
-											EventCodes.ATTRIBUTE_HANDLE,
-											handle)
-									.addAttribute(
-											EventCodes.ATTRIBUTE_FILE_FACTORY,
-											nfs.getFileFactory()));
-						}
+							if(session.getConnection().getContext().getPolicy(ScpPolicy.class).isSCPReadWriteEvents()) {
+								fireEvent(new Event(
+										this,
+										EventCodes.EVENT_SCP_FILE_READ,
+										true)
+										.addAttribute(
+												EventCodes.ATTRIBUTE_CONNECTION,
+												session.getConnection())
+										.addAttribute(
+												EventCodes.ATTRIBUTE_BYTES_TRANSFERED,
+												Long.valueOf(count))
+										.addAttribute(
+												EventCodes.ATTRIBUTE_BYTES_READ,
+												Long.valueOf(read))
+										.addAttribute(
+												EventCodes.ATTRIBUTE_FILE_NAME,
+												path)
+										.addAttribute(
+												EventCodes.ATTRIBUTE_OPERATION_STARTED,
+												started)
+										.addAttribute(
+												EventCodes.ATTRIBUTE_OPERATION_FINISHED,
+												new Date())
+										.addAttribute(
+												EventCodes.ATTRIBUTE_HANDLE,
+												handle)
+										.addAttribute(
+												EventCodes.ATTRIBUTE_FILE_FACTORY,
+												nfs.getFileFactory()));
+							}
 						
 
-					} catch (EOFException eofe) {
-						if(Log.isDebugEnabled())
-							Log.debug("End of file - finishing transfer");
-						break;
+						} catch (EOFException eofe) {
+							if(Log.isDebugEnabled())
+								Log.debug("End of file - finishing transfer");
+							break;
+						}
 					}
+				} finally {
+					session.getConnection().getContext().getPacketPool().putPacket(packet);
 				}
 
 				// pipeIn.flush();
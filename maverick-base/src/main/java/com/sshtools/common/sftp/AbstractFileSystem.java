@@ -26,28 +26,33 @@ import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.nio.file.FileAlreadyExistsException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
-import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.sshtools.common.events.Event;
 import com.sshtools.common.events.EventCodes;
 import com.sshtools.common.files.AbstractFile;
 import com.sshtools.common.files.AbstractFileFactory;
+import com.sshtools.common.files.DirectoryIterator;
 import com.sshtools.common.files.FileVolume;
 import com.sshtools.common.files.direct.NioFile;
 import com.sshtools.common.logger.Log;
 import com.sshtools.common.permissions.PermissionDeniedException;
 import com.sshtools.common.policy.FileSystemPolicy;
+import com.sshtools.common.sftp.files.BufferedOpenFile;
 import com.sshtools.common.ssh.SshConnection;
 import com.sshtools.common.ssh.SshIOException;
 import com.sshtools.common.util.FileUtils;
@@ -114,6 +119,8 @@ public final class AbstractFileSystem {
 
 	Map<String,MultipartTransfer> multipartUploads = new HashMap<>();
 	
+	final AtomicLong bufferMemory = new AtomicLong();
+	
 	public AbstractFileSystem(SshConnection con, String protocolInUse) throws IOException, PermissionDeniedException {
 		this.fileFactory = con.getContext().getPolicy(FileSystemPolicy.class).getFileFactory().getFileFactory(con);
 		this.con = con;
@@ -212,6 +219,7 @@ public final class AbstractFileSystem {
 			if(Log.isDebugEnabled())
 				Log.debug("Getting file attributes for " + f.getFile().getAbsolutePath());
 
+			f.flush();
 			return f.getFile().getAttributes();
 		}
 		throw new InvalidHandleException("The handle is invalid 1");
@@ -285,47 +293,74 @@ public final class AbstractFileSystem {
 	public SftpFile[] readDirectory(byte[] handle)
 			throws InvalidHandleException, EOFException, IOException, PermissionDeniedException {
 
-		String shandle = handleToString(handle);
-
-		if (openDirectories.containsKey(shandle)) {
-			OpenDirectory dir = openDirectories.get(shandle);
-
-			if (Log.isDebugEnabled())
-				Log.debug("Read directory for " + dir.getFile().getAbsolutePath());
-
-			int pos = dir.getPosition();
-			AbstractFile[] children = dir.getChildren();
-			
-			if (dir.children == null) {
-				throw new IOException("Permission denined.");
-			}
+		List<SftpFile> files = new ArrayList<>();
+		readDirectory(handle, (file) -> files.size() < 100 && files.add(file));
+		return files.toArray(new SftpFile[0]);
+	}
+	
+	/**
+	 * Read the next entries of an open directory, passing each to the consumer until it
+	 * declines one or the directory is exhausted. A declined entry is passed first on
+	 * the next read.
+	 * 
+	 * @param handle
+	 * @param consumer
+	 * @throws InvalidHandleException
+	 * @throws EOFException if there are no more entries
+	 * @throws IOException
+	 * @throws PermissionDeniedException
+	 */
+	public void readDirectory(byte[] handle, DirectoryEntryConsumer consumer)
+			throws InvalidHandleException, EOFException, IOException, PermissionDeniedException {
 
-			Vector<SftpFile> files = new Vector<SftpFile>();
-			while(files.size() < 100 && pos < children.length) {
-				AbstractFile f = children[pos++];
-				if(dir.getFilter()==null || dir.getFilter().matches(f.getName())) {
-					try {
-						SftpFile sftpfile = new SftpFile(f.getName(), f.getAttributes());
-						files.add(sftpfile);
-					} catch(IOException | PermissionDeniedException e) {
-						Log.debug("Could not access attributes of file {}", e, f.getName());
+		OpenDirectory dir = openDirectories.get(handleToString(handle));
+		if(Objects.isNull(dir)) {
+			throw new InvalidHandleException("Handle is not an open directory");
+		}
+		
+		if (Log.isDebugEnabled())
+			Log.debug("Read directory for " + dir.getFile().getAbsolutePath());
+
+		synchronized(dir) {
+			int count = 0;
+			SftpFile file;
+			while((file = dir.nextEntry()) != null) {
+				boolean accepted = false;
+				try {
+					accepted = consumer.accept(file);
+				} finally {
+					/**
+					 * Keep a declined entry, or one the consumer failed on, for the next read
+					 */
+					if(!accepted) {
+						dir.pending = file;
 					}
 				}
+				if(!accepted) {
+					break;
+				}
+				count++;
 			}
 			
-			dir.readpos = pos;
-			
-			if(files.size() > 0) {
-				SftpFile[] sf = new SftpFile[files.size()];
-				files.copyInto(sf);
-				return sf;
-			} else {
+			if(count == 0 && file == null) {
 				throw new EOFException("There are no more files");
 			}
 		}
-
-		throw new InvalidHandleException("Handle is not an open directory");
-
+	}
+	
+	/**
+	 * Receives the entries of a directory read.
+	 */
+	public interface DirectoryEntryConsumer {
+		
+		/**
+		 * Accept an entry.
+		 * 
+		 * @param file
+		 * @return false if the entry was not accepted and should be returned by the next read 
+		 * @throws IOException
+		 */
+		boolean accept(SftpFile file) throws IOException;
 	}
 
 	@Deprecated(since = "3.1.0")
@@ -355,12 +390,47 @@ public final class AbstractFileSystem {
 
 		// Record the open file
 		byte[] handle = createHandle();
-		openFiles.put(handleToString(handle), f.open(flags, accessFlags, handle));
+		openFiles.put(handleToString(handle), bufferFile(f.open(flags, accessFlags, handle)));
 		
 		// Return the handle
 		return handle;
 	}
 
+	/**
+	 * Wrap an open file with read-ahead and write-behind buffers if these are enabled
+	 * in the {@link FileSystemPolicy} and the session has not used its buffer memory.
+	 */
+	private OpenFile bufferFile(OpenFile file) {
+		
+		if(file.isTextMode()) {
+			return file;
+		}
+		
+		FileSystemPolicy policy = con.getContext().getPolicy(FileSystemPolicy.class);
+		long flags = file.getFlags().longValue();
+		int readAhead = (flags & OPEN_READ) != 0 ? policy.getSFTPReadAheadSize() : 0;
+		int writeBehind = (flags & OPEN_WRITE) != 0 && (flags & OPEN_APPEND) == 0 ? policy.getSFTPWriteBehindSize() : 0;
+		long required = (readAhead * 2L) + writeBehind;
+		if(required == 0) {
+			return file;
+		}
+		
+		long used;
+		do {
+			used = bufferMemory.get();
+			if(used + required > policy.getSFTPMaximumBufferMemory()) {
+				if(Log.isDebugEnabled()) {
+					Log.debug("Not buffering {} as the session is using {} bytes of buffer memory", 
+							file.getFile().getName(), used);
+				}
+				return file;
+			}
+		} while(!bufferMemory.compareAndSet(used, used + required));
+		
+		return new BufferedOpenFile(file, con.getContext().getExecutorService(), 
+				readAhead, writeBehind, () -> bufferMemory.addAndGet(-required));
+	}
+
 	@Deprecated
 	protected void checkOpenFlagsAndFileState(String path, UnsignedInteger32 flags, AbstractFile f)
 			throws IOException, PermissionDeniedException, FileNotFoundException {
@@ -406,6 +476,56 @@ public final class AbstractFileSystem {
 
 	public int readFile(byte[] handle, UnsignedInteger64 offset, byte[] buf, int start, int numBytesToRead)
 			throws InvalidHandleException, EOFException, IOException, PermissionDeniedException {
+		
+		int read = readFile(getReadableFile(handle), offset, buf, start, numBytesToRead);
+		if (read >= 0) {
+			return read;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Read from a file into the remaining space of a buffer. This is most efficient when
+	 * {@link #isDirectReadSupported(byte[])} returns true for the handle, as the file is
+	 * then read directly into the buffer.
+	 * 
+	 * @param handle
+	 * @param offset
+	 * @param dst
+	 * @return the number of bytes read, or -1 at the end of the file
+	 */
+	public int readFile(byte[] handle, UnsignedInteger64 offset, ByteBuffer dst)
+			throws InvalidHandleException, EOFException, IOException, PermissionDeniedException {
+		
+		OpenFile file = getReadableFile(handle);
+		int read;
+		if(file.isTextMode()) {
+			byte[] tmp = new byte[dst.remaining()];
+			read = file.read(tmp, 0, tmp.length);
+			if(read > 0) {
+				dst.put(tmp, 0, read);
+			}
+		} else {
+			read = file.read(offset.longValue(), dst);
+		}
+		if (read >= 0) {
+			return read;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Determine if the file behind a handle can be read directly into a {@link ByteBuffer}.
+	 * 
+	 * @param handle
+	 * @return boolean
+	 */
+	public boolean isDirectReadSupported(byte[] handle) {
+		OpenFile file = openFiles.get(handleToString(handle));
+		return file != null && !file.isTextMode() && file.isDirectReadSupported();
+	}
+	
+	private OpenFile getReadableFile(byte[] handle) throws InvalidHandleException {
 		String shandle = handleToString(handle);
 
 		if (openFiles.containsKey(shandle)) {
@@ -414,32 +534,13 @@ public final class AbstractFileSystem {
 			if(file.getAccessFlags().isPresent()) {
 				var accessFlag = file.getAccessFlags().get().intValue(); 
 				if ((accessFlag & ACL.ACE4_READ_DATA) != 0) {
-					if (!file.isTextMode() && file.getFilePointer() != offset.longValue()) {
-						file.seek(offset.longValue());
-					}
-
-					int read = file.read(buf, start, numBytesToRead);
-
-					if (read >= 0) {
-						return read;
-					}
-					return -1;
+					return file;
 				}  else {
 					throw new InvalidHandleException("The file was not opened for writing");
 				}
 			}
 			else if ((file.getFlags().longValue() & AbstractFileSystem.OPEN_READ) == AbstractFileSystem.OPEN_READ) {
-
-				if (!file.isTextMode() && file.getFilePointer() != offset.longValue()) {
-					file.seek(offset.longValue());
-				}
-
-				int read = file.read(buf, start, numBytesToRead);
-
-				if (read >= 0) {
-					return read;
-				}
-				return -1;
+				return file;
 			}
 			throw new InvalidHandleException("The file handle was not opened for reading");
 
@@ -460,15 +561,12 @@ public final class AbstractFileSystem {
 					// Force the data to be written to the end of the file
 					// by seeking to the end
 					file.seek(file.getFile().length());
+					file.write(data, off, len);
 				} else if ((accessFlag & ACL.ACE4_WRITE_DATA) != 0) {
-					// Move the file pointer if its not in the write place
-					if(!file.isTextMode() && file.getFilePointer() != offset.longValue())
-						 file.seek(offset.longValue());
+					writeFile(file, offset, data, off, len);
 				} else {
 					throw new InvalidHandleException("The file was not opened for writing");
 				}
-
-				file.write(data, off, len);
 			}
 			else if ((file.getFlags().longValue() & AbstractFileSystem.OPEN_WRITE) == AbstractFileSystem.OPEN_WRITE) {
 
@@ -476,12 +574,10 @@ public final class AbstractFileSystem {
 					// Force the data to be written to the end of the file
 					// by seeking to the end
 					file.seek(file.getFile().length());
-				} else if (!file.isTextMode() && file.getFilePointer() != offset.longValue()) {
-					// Move the file pointer if its not in the write place
-					file.seek(offset.longValue());
+					file.write(data, off, len);
+				} else {
+					writeFile(file, offset, data, off, len);
 				}
-
-				file.write(data, off, len);
 			} else {
 				throw new InvalidHandleException("The file was not opened for writing");
 			}
@@ -491,6 +587,35 @@ public final class AbstractFileSystem {
 		}
 	}
 
+	private int readFile(OpenFile file, UnsignedInteger64 offset, byte[] buf, int start, int numBytesToRead) 
+			throws IOException, PermissionDeniedException {
+		if(file.isTextMode()) {
+			return file.read(buf, start, numBytesToRead);
+		}
+		return file.read(offset.longValue(), buf, start, numBytesToRead);
+	}
+	
+	private void writeFile(OpenFile file, UnsignedInteger64 offset, byte[] data, int off, int len) 
+			throws IOException, PermissionDeniedException {
+		if(file.isTextMode()) {
+			file.write(data, off, len);
+		} else {
+			file.write(offset.longValue(), data, off, len);
+		}
+	}
+	
+	/**
+	 * Determine if the file behind a handle was opened in text mode, in which case reads 
+	 * and writes ignore the requested offset and must be performed in order.
+	 * 
+	 * @param handle
+	 * @return boolean
+	 */
+	public boolean isTextMode(byte[] handle) {
+		OpenFile file = openFiles.get(handleToString(handle));
+		return file != null && file.isTextMode();
+	}
+
 	public void closeFile(byte[] handle) throws InvalidHandleException, IOException {
 		closeFile(handleToString(handle));
 	}
@@ -507,6 +632,7 @@ public final class AbstractFileSystem {
 		OpenDirectory dir = openDirectories.get(h);
 		if(dir!=null) {
 			openDirectories.remove(h);
+			dir.close();
 		} else {
 			openFiles.remove(h);
 
@@ -517,7 +643,7 @@ public final class AbstractFileSystem {
 		
 		OpenDirectory dir = openDirectories.get(handle);
 		if(dir!=null)  {
-			// We don't close a directory as there is no resource attached to it
+			dir.close();
 			return;
 		}
 		
@@ -664,6 +790,7 @@ public final class AbstractFileSystem {
 		String shandle = handleToString(handle);
 		if (openFiles.containsKey(shandle)) {
 			OpenFile f = openFiles.get(shandle);
+			f.flush();
 			f.getFile().setAttributes(attrs);
 		} else if (openDirectories.containsKey(shandle)) {
 			OpenDirectory dir = openDirectories.get(shandle);
@@ -747,41 +874,122 @@ public final class AbstractFileSystem {
 			throw new InvalidHandleException("Invalid handle passed to getFileForHandle");
 		}
 		
-		return openFiles.get(handleToString(handle)).getFile();
+		OpenFile file = openFiles.get(handleToString(handle));
+		file.flush();
+		return file.getFile();
+	}
+	
+	/**
+	 * Write any data buffered for a file and commit it to storage.
+	 * 
+	 * @param handle
+	 * @throws IOException
+	 * @throws InvalidHandleException
+	 */
+	public void syncFile(byte[] handle) throws IOException, InvalidHandleException {
+		
+		OpenFile file = openFiles.get(handleToString(handle));
+		if(file == null) {
+			throw new InvalidHandleException("Invalid handle passed to syncFile");
+		}
+		file.sync();
 	}
 
 	
 
 	protected class OpenDirectory {
 		AbstractFile f;
-		AbstractFile[] children;
+		DirectoryIterator entries;
+		SftpFile pending;
 		int readpos = 0;
+		int seek = -1;
 		SftpFileFilter filter;
 
 		public OpenDirectory(AbstractFile f, SftpFileFilter filter) throws IOException, PermissionDeniedException {
 			this.f = f;
 			this.filter = filter;
-			this.children = f.getChildren().toArray(new AbstractFile[0]);
+			this.entries = f.directoryIterator(filter);
 		}
 
 		public AbstractFile getFile() {
 			return f;
 		}
 
+		SftpFile nextEntry() throws IOException, PermissionDeniedException {
+			if(seek > -1) {
+				int position = seek;
+				seek = -1;
+				seek(position);
+			}
+			SftpFile next = pending;
+			if(Objects.nonNull(next)) {
+				pending = null;
+			} else {
+				next = entries.next();
+				if(Objects.nonNull(next)) {
+					readpos++;
+				}
+			}
+			return next;
+		}
+		
+		/**
+		 * Directory reads no longer hold the listing, so this lists the directory again.
+		 * 
+		 * @deprecated entries are read as they are reached, use {@link AbstractFile#directoryIterator(SftpFileFilter)}.
+		 */
+		@Deprecated(since = "3.1.1", forRemoval = true)
 		public AbstractFile[] getChildren() throws IOException, PermissionDeniedException {
-			return children;
+			return f.getChildren().toArray(new AbstractFile[0]);
 		}
-
+		
+		/**
+		 * The number of entries returned so far, not counting an entry that was 
+		 * declined and will be returned again.
+		 * 
+		 * @return int
+		 */
 		public int getPosition() {
-			return readpos;
+			if(seek > -1) {
+				return seek;
+			}
+			return Objects.nonNull(pending) ? readpos - 1 : readpos;
+		}
+		
+		/**
+		 * Make the next read start at the given entry. Entries are skipped when it is 
+		 * reached, and an earlier entry is reached by listing the directory again.
+		 * 
+		 * @param readpos
+		 */
+		public void setPosition(int readpos) {
+			this.seek = Math.max(0, readpos);
+		}
+		
+		private void seek(int position) throws IOException, PermissionDeniedException {
+			if(position < getPosition()) {
+				entries.close();
+				entries = f.directoryIterator(filter);
+				pending = null;
+				readpos = 0;
+			}
+			while(getPosition() < position) {
+				if(Objects.isNull(nextEntry())) {
+					break;
+				}
+			}
 		}
 		
 		public SftpFileFilter getFilter() {
 			return filter;
 		}
 
-		public void setPosition(int readpos) {
-			this.readpos = readpos;
+		void close() {
+			try {
+				entries.close();
+			} catch (IOException e) {
+				Log.debug("Failed to close directory {}", e, f.getName());
+			}
 		}
 	}
 
@@ -23,6 +23,7 @@ package com.sshtools.common.sftp;
  */
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Optional;
 
 import com.sshtools.common.events.Event;
@@ -49,6 +50,63 @@ public interface OpenFile {
 	int read(byte[] buf, int start, int numBytesToRead) throws IOException, PermissionDeniedException;
 
 	void write(byte[] data, int off, int len) throws IOException, PermissionDeniedException;
+	
+	/**
+	 * Read from an offset in the file without relying on the file pointer, so that 
+	 * reads on the same handle may be served concurrently.
+	 */
+	default int read(long offset, byte[] buf, int start, int numBytesToRead) throws IOException, PermissionDeniedException {
+		synchronized(this) {
+			if(getFilePointer() != offset) {
+				seek(offset);
+			}
+			return read(buf, start, numBytesToRead);
+		}
+	}
+	
+	/**
+	 * Write to an offset in the file without relying on the file pointer.
+	 */
+	default void write(long offset, byte[] data, int off, int len) throws IOException, PermissionDeniedException {
+		synchronized(this) {
+			if(getFilePointer() != offset) {
+				seek(offset);
+			}
+			write(data, off, len);
+		}
+	}
+
+	/**
+	 * Determine if {@link #read(long, ByteBuffer)} reads directly from the file into the buffer.
+	 */
+	default boolean isDirectReadSupported() {
+		return false;
+	}
+	
+	/**
+	 * Read from an offset in the file into the remaining space of a buffer.
+	 */
+	default int read(long offset, ByteBuffer dst) throws IOException, PermissionDeniedException {
+		byte[] tmp = new byte[dst.remaining()];
+		int read = read(offset, tmp, 0, tmp.length);
+		if(read > 0) {
+			dst.put(tmp, 0, read);
+		}
+		return read;
+	}
+
+	/**
+	 * Write any data buffered by this file to the underlying file.
+	 */
+	default void flush() throws IOException {
+	}
+	
+	/**
+	 * Write any buffered data and ask the file system to commit the file to storage.
+	 */
+	default void sync() throws IOException {
+		flush();
+	}
 
 	void close() throws IOException;
 
@@ -0,0 +1,362 @@
+package com.sshtools.common.sftp;
+
+/*-
+ * #%L
+ * Base API
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.sshtools.common.logger.Log;
+
+/**
+ * Schedules the operations of a single SFTP session onto an {@link Executor}. Operations
+ * that share a key, for example the same file handle or path, are executed one at a time
+ * in the order they were received, whilst operations with different keys may execute in 
+ * parallel up to the maximum concurrency. Operations may also be scheduled as sharing their 
+ * key, for example reads that use positional I/O, and these may execute in parallel with each
+ * other but not with exclusive operations on the same key. An operation scheduled without a key acts as a
+ * barrier; it waits for all earlier operations to complete and no later operation is 
+ * started until it has completed.
+ * <p>
+ * Waiting operations are queued by key, and only keys whose next operation can start are
+ * considered when a thread becomes free. Operations cannot be rejected once the client has
+ * sent them, so when more than the maximum are waiting the scheduler is saturated and asks 
+ * the session to stop accepting requests. It asks the session to resume once half of the 
+ * waiting operations have started.
+ */
+public class SftpOperationScheduler {
+
+	public static final int DEFAULT_MAXIMUM_PENDING = 1024;
+	
+	static final int EXCLUSIVE = -1;
+
+	final Executor executor;
+	final int maximumConcurrency;
+	final int maximumPending;
+	final Runnable onSaturated;
+	final Runnable onResume;
+	
+	/**
+	 * The operations waiting on each key, and the keys whose next operation can start
+	 * in the order they became ready.
+	 */
+	final Map<String,KeyQueue> keys = new HashMap<>();
+	final ArrayDeque<KeyQueue> ready = new ArrayDeque<>();
+	int queued = 0;
+	int running = 0;
+	
+	/**
+	 * A barrier waits for the keyed operations received before it, and operations received 
+	 * after it are held back in order until it has completed.
+	 */
+	ScheduledOperation barrier;
+	boolean barrierRunning = false;
+	final ArrayDeque<ScheduledOperation> deferred = new ArrayDeque<>();
+	
+	boolean shutdown = false;
+	volatile boolean saturated = false;
+	volatile boolean paused = false;
+	final Object pressure = new Object();
+	
+	public SftpOperationScheduler(Executor executor, int maximumConcurrency) {
+		this(executor, maximumConcurrency, DEFAULT_MAXIMUM_PENDING, () -> { }, () -> { });
+	}
+	
+	/**
+	 * Create a scheduler.
+	 * 
+	 * @param executor executes the operations
+	 * @param maximumConcurrency maximum number of operations executing at once
+	 * @param maximumPending number of waiting operations above which the scheduler is saturated
+	 * @param onSaturated called when the scheduler becomes saturated, so no more requests should be accepted
+	 * @param onResume called when the scheduler is no longer saturated
+	 */
+	public SftpOperationScheduler(Executor executor, int maximumConcurrency, int maximumPending, 
+			Runnable onSaturated, Runnable onResume) {
+		if(maximumConcurrency < 1) {
+			throw new IllegalArgumentException("Maximum concurrency must be at least 1");
+		}
+		if(maximumPending < 1) {
+			throw new IllegalArgumentException("Maximum pending operations must be at least 1");
+		}
+		this.executor = executor;
+		this.maximumConcurrency = maximumConcurrency;
+		this.maximumPending = maximumPending;
+		this.onSaturated = onSaturated;
+		this.onResume = onResume;
+	}
+	
+	/**
+	 * Schedule an operation.
+	 * 
+	 * @param key the ordering key, or null if the operation must execute on its own
+	 * @param operation
+	 */
+	public void execute(String key, Runnable operation) {
+		execute(key, false, operation);
+	}
+	
+	/**
+	 * Schedule an operation.
+	 * 
+	 * @param key the ordering key, or null if the operation must execute on its own
+	 * @param shared true if the operation may execute in parallel with other shared operations on the same key
+	 * @param operation
+	 */
+	public void execute(String key, boolean shared, Runnable operation) {
+		List<ScheduledOperation> ready;
+		synchronized(this) {
+			if(shutdown) {
+				if(Log.isDebugEnabled()) {
+					Log.debug("Discarding SFTP operation because the scheduler has been shutdown");
+				}
+				return;
+			}
+			enqueue(new ScheduledOperation(key, shared, operation));
+			ready = nextOperations();
+		}
+		submit(ready);
+		applyBackpressure();
+	}
+	
+	/**
+	 * Discard any operations that have not yet started. Operations that are already
+	 * executing will run to completion.
+	 */
+	public synchronized void shutdown() {
+		shutdown = true;
+		keys.values().removeIf((queue) -> {
+			queue.operations.clear();
+			return queue.holders == 0;
+		});
+		ready.clear();
+		deferred.clear();
+		queued = 0;
+		if(!barrierRunning) {
+			barrier = null;
+		}
+	}
+	
+	public int getMaximumConcurrency() {
+		return maximumConcurrency;
+	}
+	
+	public int getMaximumPending() {
+		return maximumPending;
+	}
+	
+	public synchronized int getRunningCount() {
+		return running;
+	}
+	
+	public synchronized int getPendingCount() {
+		return queued + deferred.size() + (Objects.nonNull(barrier) && !barrierRunning ? 1 : 0);
+	}
+	
+	/**
+	 * Is the scheduler saturated, in which case no more requests should be accepted.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isSaturated() {
+		return saturated;
+	}
+	
+	private void enqueue(ScheduledOperation op) {
+		if(Objects.nonNull(barrier)) {
+			deferred.addLast(op);
+		} else if(Objects.isNull(op.key)) {
+			barrier = op;
+		} else {
+			KeyQueue queue = keys.computeIfAbsent(op.key, KeyQueue::new);
+			queue.operations.addLast(op);
+			queued++;
+			markReady(queue);
+		}
+		checkSaturated();
+	}
+	
+	private void markReady(KeyQueue queue) {
+		if(!queue.ready && queue.canStart()) {
+			queue.ready = true;
+			ready.addLast(queue);
+		}
+	}
+	
+	private List<ScheduledOperation> nextOperations() {
+		
+		List<ScheduledOperation> started = new ArrayList<>();
+		while(running < maximumConcurrency && !ready.isEmpty()) {
+			KeyQueue queue = ready.pollFirst();
+			ScheduledOperation op = queue.operations.pollFirst();
+			queue.holders = op.shared ? queue.holders + 1 : EXCLUSIVE;
+			queue.ready = false;
+			queued--;
+			running++;
+			started.add(op);
+			/**
+			 * A key with more shared operations goes to the back of the line so
+			 * that other keys get their turn.
+			 */
+			markReady(queue);
+		}
+		
+		if(Objects.nonNull(barrier) && !barrierRunning && running == 0 && queued == 0) {
+			barrierRunning = true;
+			running++;
+			started.add(barrier);
+		}
+		
+		checkSaturated();
+		return started;
+	}
+	
+	private synchronized List<ScheduledOperation> complete(ScheduledOperation op) {
+		running--;
+		if(op == barrier) {
+			barrier = null;
+			barrierRunning = false;
+			while(Objects.isNull(barrier) && !deferred.isEmpty()) {
+				enqueue(deferred.pollFirst());
+			}
+		} else {
+			KeyQueue queue = keys.get(op.key);
+			queue.holders = op.shared ? queue.holders - 1 : 0;
+			if(queue.holders == 0 && queue.operations.isEmpty()) {
+				keys.remove(op.key);
+			} else {
+				markReady(queue);
+			}
+		}
+		return nextOperations();
+	}
+	
+	private void checkSaturated() {
+		int pending = queued + deferred.size();
+		if(!saturated && pending > maximumPending) {
+			saturated = true;
+		} else if(saturated && pending <= maximumPending / 2) {
+			saturated = false;
+		}
+	}
+	
+	/**
+	 * Tell the session when the scheduler becomes saturated or recovers. This is called
+	 * without the scheduler's lock so that the session may take its own locks, and 
+	 * applies whatever the latest state is so that calls from different threads cannot
+	 * leave the session paused.
+	 */
+	private void applyBackpressure() {
+		if(saturated == paused) {
+			return;
+		}
+		synchronized(pressure) {
+			boolean saturated = this.saturated;
+			if(saturated == paused) {
+				return;
+			}
+			paused = saturated;
+			if(saturated) {
+				if(Log.isDebugEnabled()) {
+					Log.debug("SFTP session has more than {} operations waiting, pausing requests", maximumPending);
+				}
+				onSaturated.run();
+			} else {
+				if(Log.isDebugEnabled()) {
+					Log.debug("SFTP session is no longer saturated, resuming requests");
+				}
+				onResume.run();
+			}
+		}
+	}
+	
+	private void submit(List<ScheduledOperation> ready) {
+		for(ScheduledOperation op : ready) {
+			try {
+				executor.execute(op);
+			} catch(RejectedExecutionException e) {
+				op.run();
+			}
+		}
+	}
+	
+	static class KeyQueue {
+		
+		final String key;
+		final ArrayDeque<ScheduledOperation> operations = new ArrayDeque<>();
+		int holders = 0;
+		boolean ready = false;
+		
+		KeyQueue(String key) {
+			this.key = key;
+		}
+		
+		/**
+		 * The next operation can start when nothing holds the key, or when it and the
+		 * operations holding the key are all shared.
+		 */
+		boolean canStart() {
+			ScheduledOperation next = operations.peekFirst();
+			return Objects.nonNull(next) && (holders == 0 || (holders > 0 && next.shared));
+		}
+	}
+	
+	class ScheduledOperation implements Runnable {
+		
+		final String key;
+		final boolean shared;
+		final Runnable operation;
+		
+		ScheduledOperation(String key, boolean shared, Runnable operation) {
+			this.key = key;
+			this.shared = shared;
+			this.operation = operation;
+		}
+		
+		public void run() {
+			
+			ScheduledOperation next = this;
+			while(Objects.nonNull(next)) {
+				try {
+					next.operation.run();
+				} catch(Throwable t) {
+					Log.error("Caught error in processing SFTP operation", t);
+				}
+				
+				List<ScheduledOperation> ready = complete(next);
+				applyBackpressure();
+				/**
+				 * Continue with the first operation that is ready on this thread
+				 * rather than hand it off to another.
+				 */
+				next = ready.isEmpty() ? null : ready.remove(0);
+				submit(ready);
+			}
+		}
+	}
+}
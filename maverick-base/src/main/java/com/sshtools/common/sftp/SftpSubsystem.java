@@ -26,16 +26,18 @@ import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.attribute.FileTime;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -96,6 +98,10 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 	private Map<String, TransferEvent> openFileHandles = new ConcurrentHashMap<String, TransferEvent>(8, 0.9f, 1);
 	private Map<String, TransferEvent> openFolderHandles = new ConcurrentHashMap<String, TransferEvent>(8, 0.9f, 1);
 	private Map<Context, Set<String>> openFilesByContext = new ConcurrentHashMap<Context, Set<String>>(8, 0.9f, 1);
+	private SftpOperationScheduler scheduler;
+	
+	static final String HANDLE_KEY = "h:";
+	static final String PATH_KEY = "p:";
 
 	
 	public SftpSubsystem() {
@@ -110,6 +116,12 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 		this.filePolicy = context.getPolicy(FileSystemPolicy.class);
 		this.con = session.getConnection();
 		
+		if(filePolicy.getSFTPConcurrency() > 1) {
+			this.scheduler = new SftpOperationScheduler(context.getExecutorService(), 
+					filePolicy.getSFTPConcurrency(), filePolicy.getSFTPMaximumPendingOperations(),
+					this::pauseWindow, this::resumeWindow);
+		}
+		
 		// Check charset encoding
 		try {
 			"1234567890".getBytes(filePolicy.getSFTPCharsetEncoding());
@@ -143,6 +155,10 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 	
 	protected void cleanupSubsystem() {
 
+		if(Objects.nonNull(scheduler)) {
+			scheduler.shutdown();
+		}
+		
 		if (!nfsClosed) {
 
 			if(Log.isDebugEnabled()) {
@@ -232,6 +248,22 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 		}
 	}
 
+	@Override
+	protected void executeOperation(Integer messageQueue, ConnectionAwareTask r) {
+		
+		if(Objects.nonNull(scheduler) && SFTP_QUEUE.equals(messageQueue) && r instanceof FileSystemOperation) {
+			FileSystemOperation op = (FileSystemOperation) r;
+			scheduler.execute(op.getSchedulingKey(), op.isSharedSchedulingKey(), () -> {
+				r.run();
+				if(Objects.nonNull(r.getLastError())) {
+					cleanup();
+				}
+			});
+		} else {
+			super.executeOperation(messageQueue, r);
+		}
+	}
+	
 	protected void onMessageReceived(byte[] msg) throws IOException {
 
 		switch (msg[0] & 0xFF) {
@@ -562,6 +594,11 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 			super(msg);
 		}
 
+		@Override
+		String getSchedulingKey() {
+			return getSchedulingKey(HANDLE_KEY);
+		}
+
 		@Override
 		public SftpSubsystemOperation getOp() {
 			return SftpSubsystemOperation.SET_ATTRIBUTES;
@@ -619,6 +656,11 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 			super(msg);
 		}
 
+		@Override
+		String getSchedulingKey() {
+			return getSchedulingKey(PATH_KEY);
+		}
+
 		@Override
 		public SftpSubsystemOperation getOp() {
 			return SftpSubsystemOperation.FOLLOW_SYMLINK;
@@ -948,6 +990,11 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 			super(msg);
 		}
 
+		@Override
+		String getSchedulingKey() {
+			return getSchedulingKey(PATH_KEY);
+		}
+
 		@Override
 		public SftpSubsystemOperation getOp() {
 			return SftpSubsystemOperation.OPEN_FILE;
@@ -1185,12 +1232,12 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 	}
 
 	public void sendHandleMessage(int id, byte[] handle) throws IOException {
-		Packet reply = new Packet(handle.length + 9);
+		Packet reply = context.getPacketPool().getPacket(handle.length + 9);
 		reply.write(SSH_FXP_HANDLE);
 		reply.writeInt(id);
 		reply.writeBinaryString(handle);
 
-		sendMessage(reply);
+		sendPooledMessage(reply);
 	}
 
 	class ReadFileOperation extends FileSystemOperation {
@@ -1198,6 +1245,22 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 			super(msg);
 		}
 
+		@Override
+		String getSchedulingKey() {
+			return getSchedulingKey(HANDLE_KEY);
+		}
+		
+		/**
+		 * Reads are performed at the requested offset so can share the handle with
+		 * other reads, unless the file is in text mode where the offset is ignored.
+		 */
+		@Override
+		boolean isSharedSchedulingKey() {
+			String key = getSchedulingKey();
+			return Objects.nonNull(key) && !nfs.isTextMode(
+					key.substring(HANDLE_KEY.length()).getBytes(StandardCharsets.ISO_8859_1));
+		}
+
 		@Override
 		public SftpSubsystemOperation getOp() {
 			return SftpSubsystemOperation.READ_FILE;
@@ -1226,8 +1289,15 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 				UnsignedInteger64 offset = bar.readUINT64();
 				int count = (int) bar.readInt();
 
+				if(nfs.isDirectReadSupported(handle) 
+						&& count + 13 <= context.getByteBufferPool().getCapacity()) {
+					readDirect(id, evt, handle, offset, count, started);
+					return;
+				}
+				
 				// Construct the correct size packet and read the file
-				Packet reply = new Packet(count + 13);
+				Packet reply = context.getPacketPool().getPacket(count + 13);
+				boolean sent = false;
 				try {
 					reply.write(SSH_FXP_DATA);
 					reply.writeInt(id);
@@ -1254,7 +1324,10 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 						sendStatusMessage(id, STATUS_FX_EOF, "File is EOF");
 						return;
 					} else {
-						evt.bytesRead += count;
+						long bytesRead;
+						synchronized(evt) {
+							bytesRead = evt.bytesRead += count;
+						}
 	
 						if(Log.isDebugEnabled())
 							Log.debug("Read " + count + " bytes from filesystem");
@@ -1265,31 +1338,9 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 						reply.setPosition(position + count);
 	
 						try {
-							if(context.getPolicy(FileSystemPolicy.class).isSFTPReadWriteEvents()) {
-								fireEvent(new Event(
-										SftpSubsystem.this,
-										EventCodes.EVENT_SFTP_FILE_READ,
-										!evt.error)
-										.addAttribute(
-												EventCodes.ATTRIBUTE_CONNECTION,
-												con)
-										.addAttribute(
-												EventCodes.ATTRIBUTE_BYTES_TRANSFERED,
-												Long.valueOf(evt.bytesRead))
-										.addAttribute(
-												EventCodes.ATTRIBUTE_BYTES_READ,
-												Long.valueOf(count))
-										.addAttribute(
-												EventCodes.ATTRIBUTE_FILE_NAME,
-												evt.path)
-										.addAttribute(
-												EventCodes.ATTRIBUTE_OPERATION_STARTED,
-												started)
-										.addAttribute(
-												EventCodes.ATTRIBUTE_OPERATION_FINISHED,
-												new Date()));
-							}
-							sendMessage(reply);
+							fireReadEvent(evt, bytesRead, count, started);
+							sent = true;
+							sendPooledMessage(reply);
 							
 						} catch(SftpStatusEventException ex) {
 							sendStatusMessage(id, ex.getStatus(), ex.getMessage());
@@ -1297,9 +1348,8 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 						
 					}
 				} finally {
-					try {
-						reply.close();
-					} catch (IOException e) {
+					if(!sent) {
+						context.getPacketPool().putPacket(reply);
 					}
 				}
 				
@@ -1361,6 +1411,86 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 			}
 
 		}
+
+		/**
+		 * Read from the file's channel straight into a pooled buffer that is then sent as
+		 * the SSH_FXP_DATA message, avoiding the copies made through a heap array.
+		 */
+		private void readDirect(int id, TransferEvent evt, byte[] handle, UnsignedInteger64 offset, 
+				int count, Date started) throws EOFException, InvalidHandleException, 
+					PermissionDeniedException, IOException {
+			
+			ByteBuffer reply = context.getByteBufferPool().get(count + 13);
+			boolean sent = false;
+			try {
+				reply.limit(count + 13);
+				reply.position(13);
+				
+				count = nfs.readFile(handle, offset, reply);
+				
+				if (count == -1) {
+					if (Log.isDebugEnabled()) {
+						Log.debug("Got EOF from filesystem");
+					}
+					evt.hasReachedEOF = true;
+					sendStatusMessage(id, STATUS_FX_EOF, "File is EOF");
+					return;
+				}
+				
+				long bytesRead;
+				synchronized(evt) {
+					bytesRead = evt.bytesRead += count;
+				}
+
+				if(Log.isDebugEnabled())
+					Log.debug("Read " + count + " bytes from filesystem");
+				
+				reply.putInt(0, count + 9);
+				reply.put(4, (byte) SSH_FXP_DATA);
+				reply.putInt(5, id);
+				reply.putInt(9, count);
+				reply.flip();
+				
+				try {
+					fireReadEvent(evt, bytesRead, count, started);
+					sent = true;
+					sendPooledMessage(reply);
+				} catch(SftpStatusEventException ex) {
+					sendStatusMessage(id, ex.getStatus(), ex.getMessage());
+				}
+			} finally {
+				if(!sent) {
+					context.getByteBufferPool().add(reply);
+				}
+			}
+		}
+		
+		private void fireReadEvent(TransferEvent evt, long bytesRead, int count, Date started) {
+			if(context.getPolicy(FileSystemPolicy.class).isSFTPReadWriteEvents()) {
+				fireEvent(new Event(
+						SftpSubsystem.this,
+						EventCodes.EVENT_SFTP_FILE_READ,
+						!evt.error)
+						.addAttribute(
+								EventCodes.ATTRIBUTE_CONNECTION,
+								con)
+						.addAttribute(
+								EventCodes.ATTRIBUTE_BYTES_TRANSFERED,
+								Long.valueOf(bytesRead))
+						.addAttribute(
+								EventCodes.ATTRIBUTE_BYTES_READ,
+								Long.valueOf(count))
+						.addAttribute(
+								EventCodes.ATTRIBUTE_FILE_NAME,
+								evt.path)
+						.addAttribute(
+								EventCodes.ATTRIBUTE_OPERATION_STARTED,
+								started)
+						.addAttribute(
+								EventCodes.ATTRIBUTE_OPERATION_FINISHED,
+								new Date()));
+			}
+		}
 	}
 
 	class WriteFileOperation extends FileSystemOperation {
@@ -1368,6 +1498,11 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 			super(msg);
 		}
 
+		@Override
+		String getSchedulingKey() {
+			return getSchedulingKey(HANDLE_KEY);
+		}
+
 		@Override
 		public SftpSubsystemOperation getOp() {
 			return SftpSubsystemOperation.WRITE_FILE;
@@ -1545,6 +1680,11 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 			super(msg);
 		}
 
+		@Override
+		String getSchedulingKey() {
+			return getSchedulingKey(HANDLE_KEY);
+		}
+
 		@Override
 		public SftpSubsystemOperation getOp() {
 			return SftpSubsystemOperation.CLOSE_HANDLE;
@@ -1847,6 +1987,11 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 			super(msg);
 		}
 
+		@Override
+		String getSchedulingKey() {
+			return getSchedulingKey(HANDLE_KEY);
+		}
+
 		@Override
 		public SftpSubsystemOperation getOp() {
 			return SftpSubsystemOperation.GET_ATTRIBUTES;
@@ -1884,6 +2029,11 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 			super(msg);
 		}
 
+		@Override
+		String getSchedulingKey() {
+			return getSchedulingKey(PATH_KEY);
+		}
+
 		@Override
 		public SftpSubsystemOperation getOp() {
 			return SftpSubsystemOperation.GET_ATTRIBUTES;
@@ -1932,6 +2082,11 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 			super(msg);
 		}
 
+		@Override
+		String getSchedulingKey() {
+			return getSchedulingKey(PATH_KEY);
+		}
+
 		@Override
 		public SftpSubsystemOperation getOp() {
 			return SftpSubsystemOperation.GET_ATTRIBUTES;
@@ -1981,12 +2136,12 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 	public void sendAttributesMessage(int id, SftpFileAttributes attrs)
 			throws IOException {
 		byte[] encoded = attrs.toByteArray(version);
-		Packet msg = new Packet(5 + encoded.length);
+		Packet msg = context.getPacketPool().getPacket(5 + encoded.length);
 		msg.write(SSH_FXP_ATTRS);
 		msg.writeInt(id);
 		msg.write(encoded);
 
-		sendMessage(msg);
+		sendPooledMessage(msg);
 	}
 
 	class ReadDirectoryOperation extends FileSystemOperation {
@@ -1995,6 +2150,11 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 			super(msg);
 		}
 
+		@Override
+		String getSchedulingKey() {
+			return getSchedulingKey(HANDLE_KEY);
+		}
+
 		@Override
 		public SftpSubsystemOperation getOp() {
 			return SftpSubsystemOperation.READ_DIRECTORY;
@@ -2013,7 +2173,7 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 				handle = bar.readBinaryString();
 				
 				TransferEvent evt = (TransferEvent) openFolderHandles.get(nfs.handleToString(handle));
-				evt.bytesWritten += sendFilenameMessage(id, nfs.readDirectory(handle), false, false);
+				evt.bytesWritten += sendDirectoryMessage(id, handle);
 				
 			} catch (FileNotFoundException ioe) {
 				sendStatusMessage(id, STATUS_FX_NO_SUCH_FILE, ioe.getMessage());
@@ -2038,6 +2198,11 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 			super(msg);
 		}
 
+		@Override
+		String getSchedulingKey() {
+			return getSchedulingKey(PATH_KEY);
+		}
+
 		@Override
 		public SftpSubsystemOperation getOp() {
 			return SftpSubsystemOperation.OPEN_DIRECTORY;
@@ -2119,7 +2284,7 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 			Log.debug("Sending SSH_FXP_STATUS: : " + description + " reason="
 					+ reason);
 		try {
-			Packet baw = new Packet(1024);
+			Packet baw = context.getPacketPool().getPacket(1024);
 			baw.write(SSH_FXP_STATUS);
 			baw.writeInt(id);
 			baw.writeInt(reason);
@@ -2129,7 +2294,7 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 				baw.writeString("");
 			}
 
-			sendMessage(baw);
+			sendPooledMessage(baw);
 		} catch (IOException ex) {
 			session.close();
 		}
@@ -2140,6 +2305,11 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 		RealPathOperation(byte[] msg) {
 			super(msg);
 		}
+
+		@Override
+		String getSchedulingKey() {
+			return getSchedulingKey(PATH_KEY);
+		}
 		
 		@Override
 		public SftpSubsystemOperation getOp() {
@@ -2249,26 +2419,74 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 	public int sendFilenameMessage(int id, SftpFile[] files, boolean isRealPath,
 			boolean isAbsolute) throws IOException {
 
-		Packet baw = new Packet(16384);
+		Packet baw = context.getPacketPool().getPacket(16384);
 		baw.write(SSH_FXP_NAME);
 		baw.writeInt(id);
 		baw.writeInt(files.length);
 
 		for (int i = 0; i < files.length; i++) {
-			baw.writeString(
-					isAbsolute ? files[i].getAbsolutePath() : files[i]
-							.getFilename(), CHARSET_ENCODING);
-			if(version <= 3) {
-				baw.writeString(isRealPath ? files[i].getAbsolutePath()
-						: formatLongnameInContext(files[i], con.getLocale()),
-						CHARSET_ENCODING);
-			}
-			baw.write(files[i].getAttributes().toByteArray(version));
+			writeFilename(baw, files[i], isRealPath, isAbsolute);
 		}
 
-		sendMessage(baw);
+		int size = baw.size();
+		sendPooledMessage(baw);
 
-		return baw.size();
+		return size;
+	}
+	
+	/**
+	 * Send the next entries of an open directory in a single SSH_FXP_NAME reply, 
+	 * filling it up to the configured reply size.
+	 */
+	int sendDirectoryMessage(int id, byte[] handle) throws IOException, InvalidHandleException, PermissionDeniedException {
+		
+		int maximumSize = filePolicy.getSFTPDirectoryReplySize();
+		Packet baw = context.getPacketPool().getPacket(maximumSize + 1024);
+		
+		try {
+			baw.write(SSH_FXP_NAME);
+			baw.writeInt(id);
+			int countPosition = baw.position();
+			baw.writeInt(0);
+			
+			int start = baw.position();
+			int[] count = { 0 };
+			nfs.readDirectory(handle, (file) -> {
+				int entryPosition = baw.position();
+				writeFilename(baw, file, false, false);
+				if(count[0] > 0 && baw.position() - start > maximumSize) {
+					baw.setPosition(entryPosition);
+					return false;
+				}
+				count[0]++;
+				return true;
+			});
+			
+			int end = baw.setPosition(countPosition);
+			baw.writeInt(count[0]);
+			baw.setPosition(end);
+		} catch(IOException | InvalidHandleException | PermissionDeniedException e) {
+			context.getPacketPool().putPacket(baw);
+			throw e;
+		}
+		
+		int size = baw.size();
+		sendPooledMessage(baw);
+
+		return size;
+	}
+	
+	private void writeFilename(ByteArrayWriter baw, SftpFile file, boolean isRealPath,
+			boolean isAbsolute) throws IOException {
+		baw.writeString(
+				isAbsolute ? file.getAbsolutePath() : file
+						.getFilename(), CHARSET_ENCODING);
+		if(version <= 3) {
+			baw.writeString(isRealPath ? file.getAbsolutePath()
+					: formatLongnameInContext(file, con.getLocale()),
+					CHARSET_ENCODING);
+		}
+		baw.write(file.getAttributes().toByteArray(version));
 	}
 
 	class MakeDirectoryOperation extends FileSystemOperation {
@@ -2437,6 +2655,40 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 		
 		public abstract SftpSubsystemOperation getOp();
 		
+		/**
+		 * The key that orders this operation against others when operations are executed
+		 * in parallel. Operations with the same key execute in the order received; the default
+		 * of null requires the operation to execute on its own.
+		 * 
+		 * @return key
+		 */
+		String getSchedulingKey() {
+			return null;
+		}
+		
+		/**
+		 * Whether this operation may execute in parallel with other operations that share its key.
+		 * 
+		 * @return boolean
+		 */
+		boolean isSharedSchedulingKey() {
+			return false;
+		}
+		
+		/**
+		 * Build a scheduling key from the handle or path string that follows the request id.
+		 */
+		String getSchedulingKey(String prefix) {
+			if(msg.length < 9) {
+				return null;
+			}
+			long len = ByteArrayReader.readInt(msg, 5);
+			if(len > msg.length - 9) {
+				return null;
+			}
+			return prefix + new String(msg, 9, (int) len, StandardCharsets.ISO_8859_1);
+		}
+		
 		@Override
 		protected void doTask() {
 			if(!wrappers.isEmpty()) {
@@ -2524,10 +2776,7 @@ public class SftpSubsystem extends Subsystem implements SftpSpecification {
 		} else {
 			openFileHandles.put(evt.key, evt);
 		}		
-		if(!openFilesByContext.containsKey(getContext())) {
-			openFilesByContext.put(getContext(), new HashSet<String>());
-		}
-		openFilesByContext.get(getContext()).add(evt.key);
+		openFilesByContext.computeIfAbsent(getContext(), (c) -> ConcurrentHashMap.newKeySet()).add(evt.key);
 		if(Log.isDebugEnabled()) {
 			Log.debug("There are now {} file(s) open in the current context", 
 					openFilesByContext.get(getContext()).size());
@@ -0,0 +1,65 @@
+package com.sshtools.common.sftp.extensions;
+
+/*-
+ * #%L
+ * Base API
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.sshtools.common.sftp.InvalidHandleException;
+import com.sshtools.common.sftp.SftpSubsystem;
+import com.sshtools.common.util.ByteArrayReader;
+
+public class FsyncExtension extends AbstractSftpExtension {
+
+	public static final String EXTENSION_NAME = "fsync@openssh.com";
+
+	public FsyncExtension() {
+		super(EXTENSION_NAME, true);
+	}
+
+	@Override
+	protected byte[] generateDefaultData() {
+		return "1".getBytes(StandardCharsets.US_ASCII);
+	}
+
+	@Override
+	public void processMessage(ByteArrayReader msg, int requestId, SftpSubsystem sftp) {
+		try {
+			sftp.getFileSystem().syncFile(msg.readBinaryString());
+			sftp.sendStatusMessage(requestId, SftpSubsystem.STATUS_FX_OK, "The file has been synced.");
+		} catch (InvalidHandleException e) {
+			sftp.sendStatusMessage(requestId, SftpSubsystem.STATUS_FX_FAILURE, e.getMessage());
+		} catch (IOException e) {
+			sftp.sendStatusMessage(requestId, SftpSubsystem.STATUS_FX_FAILURE, e.getMessage());
+		}
+	}
+
+	@Override
+	public boolean supportsExtendedMessage(int messageId) {
+		return false;
+	}
+
+	@Override
+	public void processExtendedMessage(ByteArrayReader msg, SftpSubsystem sftp) {
+	}
+}
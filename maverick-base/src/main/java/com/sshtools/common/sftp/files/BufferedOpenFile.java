@@ -0,0 +1,413 @@
+package com.sshtools.common.sftp.files;
+
+/*-
+ * #%L
+ * Base API
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.sshtools.common.events.Event;
+import com.sshtools.common.files.AbstractFile;
+import com.sshtools.common.logger.Log;
+import com.sshtools.common.permissions.PermissionDeniedException;
+import com.sshtools.common.sftp.OpenFile;
+import com.sshtools.common.util.UnsignedInteger32;
+
+/**
+ * An {@link OpenFile} that adds read-ahead and write-behind buffering to another. Once reads
+ * at an offset are seen to follow on from the previous read, the next block of the file is read
+ * on a background task whilst the current response is sent. Small writes that follow on from
+ * each other are collected into a single larger write that is made when the buffer is full,
+ * when a write is not sequential, or when the file is read, flushed or closed. 
+ * 
+ * Only the positional read and write methods are buffered; all other access flushes any 
+ * pending writes and discards read-ahead data before being passed to the underlying file.
+ */
+public class BufferedOpenFile implements OpenFile {
+
+	static final int SEQUENTIAL_READS = 2;
+	
+	final OpenFile file;
+	final Executor executor;
+	final int readAheadSize;
+	final int writeBehindSize;
+	final Runnable onClose;
+	final AtomicBoolean closed = new AtomicBoolean();
+	
+	byte[] readBuffer;
+	byte[] spareBuffer;
+	long readOffset;
+	int readLength;
+	long nextReadOffset = -1;
+	int sequentialReads;
+	int generation;
+	
+	CompletableFuture<Integer> prefetch;
+	long prefetchOffset;
+	int prefetchKept;
+	int prefetchGeneration;
+	
+	byte[] writeBuffer;
+	long writeOffset;
+	int writeLength;
+	
+	/**
+	 * Create a buffered file.
+	 * 
+	 * @param file the file to buffer
+	 * @param executor executes read-ahead tasks
+	 * @param readAheadSize the size of the read-ahead buffer, or 0 to disable read-ahead
+	 * @param writeBehindSize the size of the write-behind buffer, or 0 to disable write-behind
+	 * @param onClose called once when the file is closed
+	 */
+	public BufferedOpenFile(OpenFile file, Executor executor, int readAheadSize, int writeBehindSize, Runnable onClose) {
+		this.file = file;
+		this.executor = executor;
+		this.readAheadSize = readAheadSize;
+		this.writeBehindSize = writeBehindSize;
+		this.onClose = onClose;
+	}
+	
+	@Override
+	public synchronized int read(long offset, byte[] buf, int start, int numBytesToRead) throws IOException, PermissionDeniedException {
+		
+		flushWrites();
+		
+		if(readAheadSize == 0) {
+			return file.read(offset, buf, start, numBytesToRead);
+		}
+		
+		completePrefetch(offset, numBytesToRead);
+		
+		if(offset == nextReadOffset) {
+			sequentialReads++;
+		} else {
+			sequentialReads = 0;
+		}
+		
+		int count = 0;
+		if(offset >= readOffset && offset < readOffset + readLength) {
+			count = (int) Math.min(numBytesToRead, readOffset + readLength - offset);
+			System.arraycopy(readBuffer, (int) (offset - readOffset), buf, start, count);
+		}
+		
+		if(count < numBytesToRead) {
+			int read = file.read(offset + count, buf, start + count, numBytesToRead - count);
+			if(read > 0) {
+				count += read;
+			} else if(count == 0) {
+				count = read;
+			}
+		}
+		
+		if(count > 0) {
+			nextReadOffset = offset + count;
+			if(sequentialReads >= SEQUENTIAL_READS && prefetch == null) {
+				startPrefetch();
+			}
+		} else {
+			nextReadOffset = -1;
+		}
+		
+		return count;
+	}
+	
+	@Override
+	public synchronized void write(long offset, byte[] data, int off, int len) throws IOException, PermissionDeniedException {
+		
+		discardReads();
+		
+		if(writeBehindSize == 0) {
+			file.write(offset, data, off, len);
+			return;
+		}
+		
+		if(writeLength > 0 && offset == writeOffset + writeLength && writeLength + len <= writeBehindSize) {
+			System.arraycopy(data, off, writeBuffer, writeLength, len);
+			writeLength += len;
+		} else {
+			flushWrites();
+			if(len >= writeBehindSize) {
+				file.write(offset, data, off, len);
+				return;
+			}
+			if(writeBuffer == null) {
+				writeBuffer = new byte[writeBehindSize];
+			}
+			System.arraycopy(data, off, writeBuffer, 0, len);
+			writeOffset = offset;
+			writeLength = len;
+		}
+		
+		if(writeLength == writeBehindSize) {
+			flushWrites();
+		}
+	}
+	
+	@Override
+	public boolean isDirectReadSupported() {
+		return readAheadSize == 0 && file.isDirectReadSupported();
+	}
+	
+	@Override
+	public int read(long offset, ByteBuffer dst) throws IOException, PermissionDeniedException {
+		if(readAheadSize > 0) {
+			return OpenFile.super.read(offset, dst);
+		}
+		synchronized(this) {
+			flushWrites();
+			return file.read(offset, dst);
+		}
+	}
+	
+	@Override
+	public synchronized int read(byte[] buf, int start, int numBytesToRead) throws IOException, PermissionDeniedException {
+		flushWrites();
+		discardReads();
+		return file.read(buf, start, numBytesToRead);
+	}
+
+	@Override
+	public synchronized void write(byte[] data, int off, int len) throws IOException, PermissionDeniedException {
+		flushWrites();
+		discardReads();
+		file.write(data, off, len);
+	}
+	
+	@Override
+	public synchronized long getFilePointer() throws IOException {
+		flushPendingWrites();
+		return file.getFilePointer();
+	}
+
+	@Override
+	public synchronized void seek(long longValue) throws IOException {
+		flushPendingWrites();
+		discardReads();
+		file.seek(longValue);
+	}
+	
+	@Override
+	public synchronized void flush() throws IOException {
+		flushPendingWrites();
+		file.flush();
+	}
+	
+	@Override
+	public synchronized void sync() throws IOException {
+		flushPendingWrites();
+		file.sync();
+	}
+
+	@Override
+	public void close() throws IOException {
+		
+		if(!closed.compareAndSet(false, true)) {
+			return;
+		}
+		
+		CompletableFuture<Integer> pending;
+		try {
+			synchronized(this) {
+				flushPendingWrites();
+			}
+		} finally {
+			synchronized(this) {
+				pending = prefetch;
+				prefetch = null;
+				readBuffer = spareBuffer = writeBuffer = null;
+				readLength = writeLength = 0;
+			}
+			/**
+			 * Let any read-ahead finish before the file is closed under it
+			 */
+			if(pending != null) {
+				try {
+					pending.join();
+				} catch(CompletionException | CancellationException e) {
+				}
+			}
+			try {
+				file.close();
+			} finally {
+				onClose.run();
+			}
+		}
+	}
+	
+	private void startPrefetch() {
+		
+		int remaining = 0;
+		if(nextReadOffset >= readOffset && nextReadOffset < readOffset + readLength) {
+			remaining = (int) (readOffset + readLength - nextReadOffset);
+		}
+		
+		if(remaining > readAheadSize / 2) {
+			return;
+		}
+		
+		if(spareBuffer == null) {
+			spareBuffer = new byte[readAheadSize];
+		}
+		
+		/**
+		 * Carry over what is left of the current buffer so that the prefetched
+		 * buffer starts where the next read is expected.
+		 */
+		byte[] target = spareBuffer;
+		if(remaining > 0) {
+			System.arraycopy(readBuffer, (int) (nextReadOffset - readOffset), target, 0, remaining);
+		}
+		
+		int kept = remaining;
+		long position = nextReadOffset + kept;
+		prefetchOffset = nextReadOffset;
+		prefetchKept = kept;
+		prefetchGeneration = generation;
+		prefetch = CompletableFuture.supplyAsync(() -> {
+			try {
+				return file.read(position, target, kept, target.length - kept);
+			} catch (IOException | PermissionDeniedException e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+	}
+	
+	private void completePrefetch(long offset, int length) {
+		
+		if(prefetch == null) {
+			return;
+		}
+		
+		boolean buffered = offset >= readOffset && offset + length <= readOffset + readLength;
+		boolean prefetched = offset >= prefetchOffset && offset < prefetchOffset + readAheadSize;
+		if(!prefetch.isDone() && (buffered || !prefetched)) {
+			return;
+		}
+		
+		int read;
+		try {
+			read = prefetch.join();
+		} catch(CompletionException | CancellationException e) {
+			if(Log.isDebugEnabled()) {
+				Log.debug("Read-ahead of {} failed", e.getCause(), file.getFile().getName());
+			}
+			read = -1;
+		}
+		prefetch = null;
+		
+		if(prefetchGeneration != generation) {
+			return;
+		}
+		
+		byte[] tmp = readBuffer;
+		readBuffer = spareBuffer;
+		spareBuffer = tmp;
+		readOffset = prefetchOffset;
+		readLength = prefetchKept + Math.max(read, 0);
+	}
+	
+	private void discardReads() {
+		if(readAheadSize > 0) {
+			generation++;
+			readLength = 0;
+			sequentialReads = 0;
+			nextReadOffset = -1;
+		}
+	}
+	
+	private void flushWrites() throws IOException, PermissionDeniedException {
+		if(writeLength > 0) {
+			try {
+				file.write(writeOffset, writeBuffer, 0, writeLength);
+			} finally {
+				writeLength = 0;
+			}
+		}
+	}
+	
+	private void flushPendingWrites() throws IOException {
+		try {
+			flushWrites();
+		} catch (PermissionDeniedException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public AbstractFile getFile() {
+		return file.getFile();
+	}
+
+	@Override
+	public Optional<UnsignedInteger32> getAccessFlags() {
+		return file.getAccessFlags();
+	}
+
+	@Override
+	public UnsignedInteger32 getFlags() {
+		return file.getFlags();
+	}
+
+	@Override
+	public boolean isTextMode() {
+		return file.isTextMode();
+	}
+
+	@Override
+	public void processEvent(Event evt) {
+		file.processEvent(evt);
+	}
+
+	@Override
+	public byte[] getHandle() {
+		return file.getHandle();
+	}
+
+	@Override
+	public void lock(long offset, long length, int lockFlags) throws IOException {
+		flush();
+		file.lock(offset, length, lockFlags);
+	}
+
+	@Override
+	public void unlock(long offset, long length) throws IOException {
+		flush();
+		file.unlock(offset, length);
+	}
+
+	@Override
+	public int lockFlags() {
+		return file.lockFlags();
+	}
+
+	@Override
+	public boolean isLocked() {
+		return file.isLocked();
+	}
+}
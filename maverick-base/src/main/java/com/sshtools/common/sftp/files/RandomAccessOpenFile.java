@@ -23,6 +23,7 @@ package com.sshtools.common.sftp.files;
  */
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import com.sshtools.common.events.Event;
 import com.sshtools.common.events.EventCodes;
@@ -39,8 +40,8 @@ public class RandomAccessOpenFile implements OpenFile {
 		AbstractFile f;
 		UnsignedInteger32 flags;
 		boolean textMode = false;
-		AbstractFileRandomAccess raf;
-		boolean closed;
+		volatile AbstractFileRandomAccess raf;
+		volatile boolean closed;
 		byte[] handle;
 		
 		public RandomAccessOpenFile(AbstractFile f, UnsignedInteger32 flags, byte[] handle) throws IOException, PermissionDeniedException {
@@ -81,6 +82,39 @@ public class RandomAccessOpenFile implements OpenFile {
 			raf.write(buf, off, len);
 		}
 
+		@Override
+		public int read(long offset, byte[] buf, int off, int len) throws IOException, PermissionDeniedException {
+			AbstractFileRandomAccess raf = this.raf;
+			if(closed || raf == null) {
+				return -1;
+			}
+			return raf.read(offset, buf, off, len);
+		}
+
+		@Override
+		public void write(long offset, byte[] buf, int off, int len) throws IOException, PermissionDeniedException {
+			AbstractFileRandomAccess raf = this.raf;
+			if(closed || raf == null) {
+				throw new IOException("File has been closed.");
+			}
+			raf.write(offset, buf, off, len);
+		}
+
+		@Override
+		public boolean isDirectReadSupported() {
+			AbstractFileRandomAccess raf = this.raf;
+			return !closed && raf != null && raf.isDirectReadSupported();
+		}
+
+		@Override
+		public int read(long offset, ByteBuffer dst) throws IOException, PermissionDeniedException {
+			AbstractFileRandomAccess raf = this.raf;
+			if(closed || raf == null) {
+				return -1;
+			}
+			return raf.read(offset, dst);
+		}
+
 		public void seek(long longValue) throws IOException {
 			if(closed) {
 				throw new IOException("File has been closed [getOutputStream].");
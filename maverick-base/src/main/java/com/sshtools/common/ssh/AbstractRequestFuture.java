@@ -24,6 +24,9 @@ package com.sshtools.common.ssh;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public abstract class AbstractRequestFuture implements RequestFuture {
 
@@ -31,6 +34,13 @@ public abstract class AbstractRequestFuture implements RequestFuture {
 	volatile boolean success = false;
 	List<RequestFutureListener> listeners = new ArrayList<RequestFutureListener>();
 	
+	/**
+	 * Waiting threads block on a lock rather than the object monitor so that
+	 * virtual threads do not pin their carrier thread.
+	 */
+	final ReentrantLock lock = new ReentrantLock();
+	final Condition completed = lock.newCondition();
+	
 	@Override
 	public boolean isDone() {
 		return done;
@@ -41,56 +51,74 @@ public abstract class AbstractRequestFuture implements RequestFuture {
 		return success;
 	}
 	
-	public synchronized void done(boolean success) {
+	public void done(boolean success) {
 
-		this.done = true;
-		this.success = success;
-		
-		for(RequestFutureListener future : listeners) {
-			future.complete(this);
+		lock.lock();
+		try {
+			this.done = true;
+			this.success = success;
+			
+			for(RequestFutureListener future : listeners) {
+				future.complete(this);
+			}
+			
+			completed.signalAll();
+		} finally {
+			lock.unlock();
 		}
-		
-		notifyAll();
 	}
 	
 	@Override
-	public synchronized RequestFuture waitForever() {
+	public RequestFuture waitForever() {
 		
+		lock.lock();
 		try {
 			while(!done) {
-				wait(100);
+				completed.await(100, TimeUnit.MILLISECONDS);
 			}
 		} catch (InterruptedException e) {
+		} finally {
+			lock.unlock();
 		}
 		return this;
 	}
 
-	public synchronized RequestFuture waitFor(long timeout) {
+	public RequestFuture waitFor(long timeout) {
 		
 		if(done) {
 			return this;
 		}
+		lock.lock();
 		try {
 			long current = System.currentTimeMillis();
 			long expected = current + timeout - 10l;
-			do {
-				wait(timeout <= 0l ? 10l : timeout);
+			while(!done) {
+				completed.await(timeout <= 0l ? 10l : timeout, TimeUnit.MILLISECONDS);
 				long c = System.currentTimeMillis();
 				timeout -= (c - current);
 				current = c;
-			} while (!done && current < expected);
+				if(current >= expected) {
+					break;
+				}
+			}
 		} catch (InterruptedException e) {
+		} finally {
+			lock.unlock();
 		}
 		return this;
 	}
 	
 	@Override
-	public synchronized void addFutureListener(RequestFutureListener listener) {
-		if(isDone()) {
-			listener.complete(this);
-		} else {
-			listeners.add(listener);
+	public void addFutureListener(RequestFutureListener listener) {
+		lock.lock();
+		try {
+			if(isDone()) {
+				listener.complete(this);
+			} else {
+				listeners.add(listener);
+			}
+		} finally {
+			lock.unlock();
 		}
-		
 	}
 }
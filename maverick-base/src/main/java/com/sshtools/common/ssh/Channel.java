@@ -23,6 +23,7 @@ package com.sshtools.common.ssh;
  */
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import com.sshtools.common.util.UnsignedInteger32;
 
@@ -37,6 +38,19 @@ public interface Channel {
 	void close();
 
 	void sendData(byte[] array, int i, int size) throws IOException;
+	
+	/**
+	 * Send the remaining data in a buffer, blocking until it has been sent so that
+	 * the buffer may be reused once this method returns.
+	 * 
+	 * @param data
+	 * @throws IOException
+	 */
+	default void sendData(ByteBuffer data) throws IOException {
+		byte[] tmp = new byte[data.remaining()];
+		data.get(tmp);
+		sendData(tmp, 0, tmp.length);
+	}
 
 	void sendWindowAdjust(UnsignedInteger32 count);
 
@@ -39,6 +39,8 @@ public interface Context {
 
 	ByteBufferPool getByteBufferPool();
 	
+	PacketPool getPacketPool();
+	
 	ComponentManager getComponentManager();
 
 	void setPolicy(Class<?> clz, Object policy);
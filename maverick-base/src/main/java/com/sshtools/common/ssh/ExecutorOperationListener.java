@@ -29,4 +29,23 @@ public interface ExecutorOperationListener {
 	void completedTask(Runnable r);
 
 	void startedTask(Runnable r);
+	
+	/**
+	 * A task has been added to one of a connection's operation queues.
+	 * 
+	 * @param r task
+	 * @param queueDepth number of tasks waiting in the queue, including this one
+	 */
+	default void queuedTask(Runnable r, int queueDepth) {
+	}
+	
+	/**
+	 * A task has completed.
+	 * 
+	 * @param r task
+	 * @param waitNanos time the task waited in the queue before it started
+	 * @param runNanos time the task took to run
+	 */
+	default void completedTask(Runnable r, long waitNanos, long runNanos) {
+	}
 }
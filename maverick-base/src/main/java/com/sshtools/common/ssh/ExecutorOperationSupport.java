@@ -23,6 +23,7 @@ package com.sshtools.common.ssh;
  */
 
 import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -77,6 +78,7 @@ public abstract class ExecutorOperationSupport<T extends ExecutorServiceProvider
 		boolean running = false;
 		Future<?> operationFuture = null;
 		LinkedList<Runnable> subsystemOperations = new LinkedList<Runnable>();
+		LinkedList<Long> queuedTimes = new LinkedList<Long>();
 
 		public void run() {
 
@@ -107,6 +109,13 @@ public abstract class ExecutorOperationSupport<T extends ExecutorServiceProvider
 
 			subsystemOperations.addLast(r);
 			
+			List<ExecutorOperationListener> listeners = getContext().getExecutorListeners();
+			queuedTimes.addLast(listeners.isEmpty() ? 0L : System.nanoTime());
+			for(ExecutorOperationListener listener : listeners) {
+				listener.addedTask(r);
+				listener.queuedTask(r, subsystemOperations.size());
+			}
+			
 			if (!running) {
 				running = true;
 				
@@ -123,18 +132,33 @@ public abstract class ExecutorOperationSupport<T extends ExecutorServiceProvider
 			while (true) {
 				try {
 					Runnable r = null;
+					long queued;
 
 					synchronized (this) {
 						if(subsystemOperations.isEmpty())
 							return;
 						r = subsystemOperations.removeFirst();
+						queued = queuedTimes.removeFirst();
 					}
 					if (r != null) {
+						List<ExecutorOperationListener> listeners = getContext().getExecutorListeners();
+						long started = listeners.isEmpty() ? 0L : System.nanoTime();
+						for(ExecutorOperationListener listener : listeners) {
+							listener.startedTask(r);
+						}
 						try {
 							r.run();
 						} catch (Throwable t) {
 							Log.error("{}: Caught exception in operation remainingTasks={}", queueName, subsystemOperations.size(), t);
-						} 
+						} finally {
+							if(!listeners.isEmpty()) {
+								long completed = System.nanoTime();
+								for(ExecutorOperationListener listener : listeners) {
+									listener.completedTask(r);
+									listener.completedTask(r, queued == 0L ? 0L : started - queued, completed - started);
+								}
+							}
+						}
 					} else {
 						if(Log.isWarnEnabled()) {
 							Log.warn("{}: Unexpected null task in operation queue", queueName);
@@ -34,9 +34,11 @@ import com.sshtools.common.util.ByteArrayWriter;
  */
 public class Packet extends ByteArrayWriter {
 
+    public static final int DEFAULT_SIZE = 35000;
+    
     int markedPosition = -1;
     public Packet() throws IOException {
-      this(35000);
+      this(DEFAULT_SIZE);
     }
 
     public Packet(int size) throws IOException {
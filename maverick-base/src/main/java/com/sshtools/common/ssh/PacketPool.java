@@ -0,0 +1,252 @@
+package com.sshtools.common.ssh;
+
+/*-
+ * #%L
+ * Base API
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of {@link Packet}s shared by the threads that build outgoing messages. Packets
+ * are bucketed into size classes (powers of two and the midpoints between them) and each
+ * size class is split into stripes, selected by thread, each with its own lock so that 
+ * threads rarely contend with each other. The total size of the packets retained by the 
+ * pool is capped; packets returned beyond the cap are left to the garbage collector.
+ */
+public class PacketPool {
+
+	public static final long DEFAULT_MAXIMUM_RETAINED_BYTES = 32 * 1024 * 1024;
+	
+	static final int MINIMUM_SIZE = 1024;
+	static final int MAXIMUM_SIZE = 512 * 1024;
+	
+	static final int[] CLASS_SIZES;
+	
+	static {
+		int classes = 0;
+		for(int size = MINIMUM_SIZE; size < MAXIMUM_SIZE; size <<= 1) {
+			classes += 2;
+		}
+		CLASS_SIZES = new int[classes + 1];
+		int idx = 0;
+		for(int size = MINIMUM_SIZE; size < MAXIMUM_SIZE; size <<= 1) {
+			CLASS_SIZES[idx++] = size;
+			CLASS_SIZES[idx++] = size + (size >> 1);
+		}
+		CLASS_SIZES[idx] = MAXIMUM_SIZE;
+	}
+	
+	final ArrayDeque<Packet>[][] stripes;
+	final int stripeMask;
+	final long maximumRetainedBytes;
+	final AtomicLong retainedBytes = new AtomicLong();
+	final LongAdder hits = new LongAdder();
+	final LongAdder misses = new LongAdder();
+	final LongAdder discards = new LongAdder();
+	
+	/**
+	 * Create a pool that retains up to {@link #DEFAULT_MAXIMUM_RETAINED_BYTES}.
+	 */
+	public PacketPool() {
+		this(DEFAULT_MAXIMUM_RETAINED_BYTES);
+	}
+	
+	/**
+	 * Create a pool.
+	 * 
+	 * @param maximumRetainedBytes the maximum total size of the packets retained by the pool
+	 */
+	@SuppressWarnings("unchecked")
+	public PacketPool(long maximumRetainedBytes) {
+		this.maximumRetainedBytes = maximumRetainedBytes;
+		int count = Integer.highestOneBit(Math.max(1, Math.min(16, Runtime.getRuntime().availableProcessors())) * 2 - 1);
+		stripeMask = count - 1;
+		stripes = new ArrayDeque[CLASS_SIZES.length][count];
+		for(int i=0;i<CLASS_SIZES.length;i++) {
+			for(int j=0;j<count;j++) {
+				stripes[i][j] = new ArrayDeque<>();
+			}
+		}
+	}
+	
+	/**
+	 * Get a packet large enough for a default SSH packet.
+	 * 
+	 * @return Packet
+	 */
+	public Packet getPacket() {
+		return getPacket(Packet.DEFAULT_SIZE);
+	}
+	
+	/**
+	 * Get a packet that can hold at least the given number of bytes without growing.
+	 * 
+	 * @param size
+	 * @return Packet
+	 */
+	public Packet getPacket(int size) {
+		
+		int idx = ceilingClass(size + 4);
+		if(idx < 0) {
+			misses.increment();
+			return newPacket(size);
+		}
+		
+		int stripe = stripe();
+		for(int i=0;i<=stripeMask;i++) {
+			ArrayDeque<Packet> packets = stripes[idx][(stripe + i) & stripeMask];
+			Packet packet;
+			synchronized(packets) {
+				packet = packets.pollFirst();
+			}
+			if(packet != null) {
+				retainedBytes.addAndGet(-packet.array().length);
+				hits.increment();
+				return packet;
+			}
+		}
+		
+		misses.increment();
+		return newPacket(CLASS_SIZES[idx] - 4);
+	}
+	
+	/**
+	 * Return a packet to the pool. The caller must not use the packet after
+	 * it has been returned.
+	 * 
+	 * @param packet
+	 */
+	public void putPacket(Packet packet) {
+		
+		if(packet == null) {
+			return;
+		}
+		
+		int length = packet.array().length;
+		int idx = floorClass(length);
+		if(idx < 0 || !reserve(length)) {
+			discards.increment();
+			return;
+		}
+		
+		packet.reset();
+		
+		ArrayDeque<Packet> packets = stripes[idx][stripe()];
+		synchronized(packets) {
+			packets.addFirst(packet);
+		}
+	}
+	
+	/**
+	 * Get the number of packet requests satisfied from the pool.
+	 * 
+	 * @return long
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+	
+	/**
+	 * Get the number of packet requests that required a new packet to be allocated.
+	 * 
+	 * @return long
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+	
+	/**
+	 * Get the number of packets that were returned to the pool but not retained
+	 * because they were too large or the pool was full.
+	 * 
+	 * @return long
+	 */
+	public long getDiscardCount() {
+		return discards.sum();
+	}
+	
+	/**
+	 * Get the total size of the packets currently retained by the pool.
+	 * 
+	 * @return long
+	 */
+	public long getRetainedBytes() {
+		return retainedBytes.get();
+	}
+	
+	/**
+	 * Get the maximum total size of the packets retained by the pool.
+	 * 
+	 * @return long
+	 */
+	public long getMaximumRetainedBytes() {
+		return maximumRetainedBytes;
+	}
+	
+	private Packet newPacket(int size) {
+		try {
+			return new Packet(size);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	private boolean reserve(int size) {
+		long current;
+		do {
+			current = retainedBytes.get();
+			if(current + size > maximumRetainedBytes) {
+				return false;
+			}
+		} while(!retainedBytes.compareAndSet(current, current + size));
+		return true;
+	}
+	
+	private int stripe() {
+		long id = Thread.currentThread().getId();
+		return (int) (id ^ (id >>> 16)) & stripeMask;
+	}
+	
+	static int ceilingClass(int size) {
+		for(int i=0;i<CLASS_SIZES.length;i++) {
+			if(size <= CLASS_SIZES[i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	static int floorClass(int size) {
+		if(size > MAXIMUM_SIZE) {
+			return -1;
+		}
+		for(int i=CLASS_SIZES.length-1;i>=0;i--) {
+			if(size >= CLASS_SIZES[i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -24,6 +24,7 @@ package com.sshtools.common.ssh;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.sshtools.common.logger.Log;
 import com.sshtools.common.permissions.PermissionDeniedException;
@@ -50,6 +51,8 @@ public abstract class Subsystem {
 	
 	boolean shutdown = false;
 	long bytesSinceLastWindowIssue = 0;
+	boolean windowPaused = false;
+	final ReentrantLock sendLock = new ReentrantLock();
 	
 	public Subsystem(String name) {
 		this.name = name;
@@ -320,21 +323,80 @@ public abstract class Subsystem {
 	 * @throws IOException
 	 */
 	public void sendMessage(Packet packet) throws IOException {
+		sendMessage(packet, false);
+	}
+	
+	/**
+	 * Send a subsystem message built in a packet taken from the context's {@link PacketPool}. 
+	 * The packet is returned to the pool once it has been sent so it must not be used after 
+	 * calling this method.
+	 * 
+	 * @param packet
+	 * @throws IOException
+	 */
+	public void sendPooledMessage(Packet packet) throws IOException {
+		sendMessage(packet, true);
+	}
+	
+	/**
+	 * Send a subsystem message held in a buffer taken from the context's {@link ByteBufferPool}. 
+	 * The buffer must contain the complete message, including its length prefix, between its 
+	 * position and limit. It is returned to the pool once it has been sent so it must not be
+	 * used after calling this method.
+	 * 
+	 * @param buffer
+	 * @throws IOException
+	 */
+	public void sendPooledMessage(ByteBuffer buffer) throws IOException {
 		
 		if(Boolean.getBoolean("maverick.outgoingSubsystemQueue")) {
 			session.getConnection().addTask(SUBSYSTEM_OUTGOING, new ConnectionAwareTask(getConnection()) {
 	
 				@Override
 				protected void doTask() throws Throwable {
-					doSendMessage(packet);
+					doSendMessage(buffer);
 				}
 			});
 		} else {
-			doSendMessage(packet);
+			doSendMessage(buffer);
+		}
+	}
+	
+	private void doSendMessage(ByteBuffer buffer) throws IOException {
+		try {
+			if (session.isClosed()) {
+				throw new IOException("Failed to send subsystem packet, session closed");
+			}
+			if(Log.isTraceEnabled())
+				Log.trace("Sending subsystem packet of " + buffer.remaining()
+						+ " bytes");
+			sendLock.lock();
+			try {
+				session.sendData(buffer);
+			} finally {
+				sendLock.unlock();
+			}
+		} finally {
+			bufferPool.add(buffer);
+		}
+	}
+	
+	private void sendMessage(Packet packet, boolean pooled) throws IOException {
+		
+		if(Boolean.getBoolean("maverick.outgoingSubsystemQueue")) {
+			session.getConnection().addTask(SUBSYSTEM_OUTGOING, new ConnectionAwareTask(getConnection()) {
+	
+				@Override
+				protected void doTask() throws Throwable {
+					doSendMessage(packet, pooled);
+				}
+			});
+		} else {
+			doSendMessage(packet, pooled);
 		}
 	}
 
-	private void doSendMessage(Packet packet) throws IOException {
+	private void doSendMessage(Packet packet, boolean pooled) throws IOException {
 		if (session.isClosed()) {
 			throw new IOException("Failed to send subsystem packet, session closed");
 		} else {
@@ -342,11 +404,28 @@ public abstract class Subsystem {
 				Log.trace("Sending subsystem packet of " + packet.size()
 						+ " bytes");
 			packet.finish();
-			session.sendData(packet.array(), 0, packet.size());
+			/**
+			 * The channel may release its lock whilst waiting for window space
+			 * part way through a message, so messages from concurrent operations
+			 * must be serialized here to keep them whole.
+			 */
+			sendLock.lock();
+			try {
+				session.sendData(packet.array(), 0, packet.size());
+			} finally {
+				sendLock.unlock();
+			}
+			/**
+			 * sendData blocks until the data has been written so the
+			 * packet can be reused.
+			 */
+			if(pooled) {
+				context.getPacketPool().putPacket(packet);
+			}
 		}
 	}
 	
-	public void onFreeMessage(byte[] msg) {
+	public synchronized void onFreeMessage(byte[] msg) {
 	
 		if(maximumPacketSize < msg.length + 4) {
 			maximumPacketSize = msg.length + 4;
@@ -355,11 +434,30 @@ public abstract class Subsystem {
 		bytesSinceLastWindowIssue += msg.length + 4;
 		long threshold = Math.min(session.getMaximumWindowSpace().longValue() - session.getMinimumWindowSpace().longValue(), 
 				session.getMaximumWindowSpace().longValue() - (Math.max(session.getLocalPacket(), maximumPacketSize) * 2));
-		if(bytesSinceLastWindowIssue >= threshold) {
+		if(!windowPaused && bytesSinceLastWindowIssue >= threshold) {
 			session.sendWindowAdjust(new UnsignedInteger32(bytesSinceLastWindowIssue));
 			bytesSinceLastWindowIssue = 0;
 		}
 		
 	}
+	
+	/**
+	 * Stop returning window space to the client as messages are freed, so that it
+	 * stops sending once it has used the window it already has.
+	 */
+	protected synchronized void pauseWindow() {
+		windowPaused = true;
+	}
+	
+	/**
+	 * Return the window space held back since {@link #pauseWindow()} was called.
+	 */
+	protected synchronized void resumeWindow() {
+		windowPaused = false;
+		if(bytesSinceLastWindowIssue > 0 && !shutdown) {
+			session.sendWindowAdjust(new UnsignedInteger32(bytesSinceLastWindowIssue));
+			bytesSinceLastWindowIssue = 0;
+		}
+	}
 
 }
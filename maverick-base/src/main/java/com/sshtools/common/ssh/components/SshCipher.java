@@ -23,6 +23,7 @@ package com.sshtools.common.ssh.components;
  */
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import com.sshtools.common.ssh.SecureComponent;
 import com.sshtools.common.ssh.SecurityLevel;
@@ -90,6 +91,34 @@ public interface SshCipher extends  SshComponent, SecureComponent {
 	   */
 	void transform(byte[] src, int start, byte[] dest, int offset, int len) throws IOException;
 
+	/**
+	   * Transform the contents of a buffer in place. The offset is an absolute index
+	   * into the buffer and the length has the same meaning as the length passed to
+	   * {@link #transform(byte[], int, byte[], int, int)}. The position and limit of
+	   * the buffer are not changed.
+	   *
+	   * @param buffer
+	   * @param offset
+	   * @param len
+	   * @throws IOException
+	   */
+	default void transform(ByteBuffer buffer, int offset, int len) throws IOException {
+		if(buffer.hasArray()) {
+			int off = buffer.arrayOffset() + offset;
+			transform(buffer.array(), off, buffer.array(), off, len);
+		} else {
+			int count = Math.min(buffer.capacity() - offset, len + getMacLength());
+			byte[] tmp = new byte[count];
+			ByteBuffer dup = buffer.duplicate();
+			dup.limit(offset + count);
+			dup.position(offset);
+			dup.get(tmp);
+			transform(tmp, 0, tmp, 0, len);
+			dup.position(offset);
+			dup.put(tmp);
+		}
+	}
+
 	boolean isMAC();
 
 	int getMacLength();
@@ -22,6 +22,8 @@ package com.sshtools.common.ssh.components;
  * #L%
  */
 
+import java.nio.ByteBuffer;
+
 import com.sshtools.common.ssh.SecureComponent;
 import com.sshtools.common.ssh.SshException;
 
@@ -48,6 +50,30 @@ public interface SshHmac extends SshComponent, SecureComponent {
    public void generate(long sequenceNo, byte[] data, int offset,
            int len, byte[] output, int start);
 
+   /**
+    * Generate the MAC over a region of a buffer and write it into the output buffer. 
+    * Both offsets are absolute and the position and limit of either buffer are not changed.
+    */
+   public default void generate(long sequenceNo, ByteBuffer data, int offset,
+           int len, ByteBuffer output, int start) {
+	   if(data.hasArray() && output.hasArray()) {
+		   generate(sequenceNo, data.array(), data.arrayOffset() + offset, len, 
+				   output.array(), output.arrayOffset() + start);
+	   } else {
+		   byte[] tmp = new byte[len];
+		   ByteBuffer dup = data.duplicate();
+		   dup.limit(offset + len);
+		   dup.position(offset);
+		   dup.get(tmp);
+		   byte[] mac = new byte[getMacLength()];
+		   generate(sequenceNo, tmp, 0, len, mac, 0);
+		   dup = output.duplicate();
+		   dup.limit(start + mac.length);
+		   dup.position(start);
+		   dup.put(mac);
+	   }
+   }
+
    public void init(byte[] keydata) throws SshException;
 
    public boolean verify(long sequenceNo, byte[] data, int start, int len,
@@ -0,0 +1,164 @@
+package com.sshtools.common.ssh.components.jce;
+
+/*-
+ * #%L
+ * Base API
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.sshtools.common.ssh.SecurityLevel;
+
+/**
+ * Base class for the AES-GCM ciphers defined by OpenSSH, which authenticate each
+ * packet with its length as additional data and a nonce incremented per packet.
+ */
+public abstract class AbstractAESGcm extends AbstractJCECipher {
+
+	byte[] key;
+	byte[] nonce;
+	int mode;
+	SecretKeySpec kspec;
+	
+	AbstractAESGcm(int keylength, String algorithm, int priority) throws IOException {
+		super(JCEAlgorithms.JCE_AESGCMNOPADDING, "AES", keylength, algorithm, SecurityLevel.PARANOID, priority);
+	}
+
+	public void init(int mode, byte[] iv, byte[] keydata) throws java.io.IOException {
+
+		  this.mode = mode;
+		  
+		  // Create a byte key
+		  key = new byte[keylength];
+		  System.arraycopy(keydata, 0, key, 0, key.length);
+
+		  kspec = new SecretKeySpec(key, keyspec);
+
+		  nonce = new byte[12];
+		  System.arraycopy(iv, 0, nonce, 0, nonce.length);
+		  
+		  /**
+		   * The cipher is initialised with the current nonce before each packet; 
+		   * initialising it here too would reuse the first nonce.
+		   */
+	  }
+	
+	public void transform(byte[] buf, int start, byte[] output, int off, int len) throws java.io.IOException {
+		if(len > 0) {
+	    
+			if(buf.length-start < len) {
+				throw new IllegalStateException("Input buffer of " + buf.length + " bytes is too small for requested transform length " + len);
+			}
+			if(output.length-off < len) {
+				throw new IllegalStateException("Output buffer of " + output.length + " bytes is too small for requested transform length " + len);
+			}
+			
+			try {
+				initPacket();
+		          
+				cipher.updateAAD(buf, start, 4);
+				if(buf!=output || start!=off) {
+					System.arraycopy(buf, start, output, off, 4);
+				}
+
+				cipher.doFinal(buf, start+4, len-4, output, off+4);
+				
+				incrementIv();
+			} catch (IllegalBlockSizeException
+					| BadPaddingException
+					| ShortBufferException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+	    }
+	  }
+	
+	@Override
+	public void transform(ByteBuffer buffer, int offset, int len) throws IOException {
+		if(len > 0) {
+			if(buffer.hasArray()) {
+				int off = buffer.arrayOffset() + offset;
+				transform(buffer.array(), off, buffer.array(), off, len);
+				return;
+			}
+			
+			try {
+				initPacket();
+				
+				ByteBuffer aad = buffer.duplicate();
+				aad.limit(offset + 4);
+				aad.position(offset);
+				cipher.updateAAD(aad);
+				
+				ByteBuffer in = buffer.duplicate();
+				in.limit(offset + len);
+				in.position(offset + 4);
+				ByteBuffer out = buffer.duplicate();
+				out.position(offset + 4);
+				cipher.doFinal(in, out);
+				
+				incrementIv();
+			} catch (IllegalBlockSizeException
+					| BadPaddingException
+					| ShortBufferException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+		}
+	}
+	
+	private void initPacket() throws IOException {
+		try {
+			cipher.init(((mode == ENCRYPT_MODE) ? Cipher.ENCRYPT_MODE
+	                : Cipher.DECRYPT_MODE), kspec, new GCMParameterSpec(128, nonce));
+		} catch (InvalidKeyException ike) {
+			throw new IOException("Invalid encryption key");
+		} catch (InvalidAlgorithmParameterException ape) {
+			throw new IOException("Invalid algorithm parameter");
+		}
+	}
+	
+	private void incrementIv() {
+		for(int i = 4 + 7; i >= 4; i--) {
+			nonce[i]++;
+			if(nonce[i] != 0) {
+				break;
+			}
+		}
+	}
+	
+	@Override
+	public boolean isMAC() {
+		return true;
+	}
+	
+	@Override
+	public int getMacLength() {
+		return 16;
+	}
+}
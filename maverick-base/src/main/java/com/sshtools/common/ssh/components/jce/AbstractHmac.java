@@ -22,7 +22,10 @@ package com.sshtools.common.ssh.components.jce;
  * #L%
  */
 
+import java.nio.ByteBuffer;
+
 import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.SecretKeySpec;
 
 import com.sshtools.common.ssh.SecurityLevel;
@@ -45,6 +48,9 @@ public abstract class AbstractHmac implements SshHmac {
 	final private SecurityLevel securityLevel;
 	final int priority;
 	
+	private final byte[] sequenceBytes = new byte[4];
+	private byte[] macOutput;
+	
 	public AbstractHmac(String jceAlgorithm, int macLength, SecurityLevel securityLevel, int priority) {
 		this(jceAlgorithm, macLength, macLength, securityLevel, priority);
 	}
@@ -68,18 +74,48 @@ public abstract class AbstractHmac implements SshHmac {
 	public void generate(long sequenceNo, byte[] data, int offset, int len,
 			byte[] output, int start) {
 		
-        byte[] sequenceBytes = new byte[4];
+        mac.update(encodeSequence(sequenceNo));
+        mac.update(data, offset, len);
+
+        System.arraycopy(doFinalInternal(), 0, output, start, macLength);
+
+	}
+	
+	@Override
+	public void generate(long sequenceNo, ByteBuffer data, int offset, int len, 
+			ByteBuffer output, int start) {
+		
+		mac.update(encodeSequence(sequenceNo));
+		
+		ByteBuffer in = data.duplicate();
+		in.limit(offset + len);
+		in.position(offset);
+		mac.update(in);
+		
+		ByteBuffer out = output.duplicate();
+		out.limit(start + macLength);
+		out.position(start);
+		out.put(doFinalInternal(), 0, macLength);
+	}
+	
+	private byte[] encodeSequence(long sequenceNo) {
         sequenceBytes[0] = (byte) (sequenceNo >> 24);
         sequenceBytes[1] = (byte) (sequenceNo >> 16);
         sequenceBytes[2] = (byte) (sequenceNo >> 8);
         sequenceBytes[3] = (byte) (sequenceNo >> 0);
-        mac.update(sequenceBytes);
-        mac.update(data, offset, len);
-
-        byte[] tmp = mac.doFinal();
-        
-        System.arraycopy(tmp, 0, output, start, macLength);
-
+        return sequenceBytes;
+	}
+	
+	private byte[] doFinalInternal() {
+		if(macOutput==null) {
+			macOutput = new byte[mac.getMacLength()];
+		}
+		try {
+			mac.doFinal(macOutput, 0);
+		} catch (ShortBufferException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+		return macOutput;
 	}
 	
 	public void update(byte[] b) {
@@ -129,16 +165,16 @@ public abstract class AbstractHmac implements SshHmac {
 	public boolean verify(long sequenceNo, byte[] data, int start, int len,
 			byte[] mac, int offset) {
         
-		int length = getMacLength();
-        byte[] generated = new byte[length];
+        this.mac.update(encodeSequence(sequenceNo));
+        this.mac.update(data, start, len);
         
-        generate(sequenceNo, data, start, len, generated, 0);
+        byte[] generated = doFinalInternal();
         
-        for(int i=0;i<generated.length;i++) {
-        	if(mac[i+offset]!=generated[i])
-        		return false;
+        int diff = 0;
+        for(int i=0;i<macLength;i++) {
+        	diff |= mac[i+offset] ^ generated[i];
         }
-        return true;
+        return diff == 0;
 	}
 
 }
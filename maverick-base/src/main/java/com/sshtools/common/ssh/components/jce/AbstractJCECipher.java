@@ -23,6 +23,7 @@ package com.sshtools.common.ssh.components.jce;
  */
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -103,6 +104,28 @@ public class AbstractJCECipher extends AbstractSshCipher {
     }
   }
   
+  @Override
+  public void transform(ByteBuffer buffer, int offset, int len) throws IOException {
+	  if(len > 0) {
+		  if(buffer.hasArray()) {
+			  int off = buffer.arrayOffset() + offset;
+			  transform(buffer.array(), off, buffer.array(), off, len);
+			  return;
+		  }
+		  ByteBuffer in = buffer.duplicate();
+		  in.limit(offset + len);
+		  in.position(offset);
+		  ByteBuffer out = buffer.duplicate();
+		  out.limit(offset + len);
+		  out.position(offset);
+		  try {
+			  cipher.update(in, out);
+		  } catch (ShortBufferException e) {
+			  throw new IOException(e.getMessage(), e);
+		  }
+	  }
+  }
+  
   public String getProvider() {
 	  if(cipher==null) {
 		  return null;
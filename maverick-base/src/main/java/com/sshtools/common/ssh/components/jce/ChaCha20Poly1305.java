@@ -23,8 +23,14 @@ package com.sshtools.common.ssh.components.jce;
  */
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 
+import javax.crypto.Cipher;
+import javax.crypto.spec.ChaCha20ParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
 import org.bouncycastle.crypto.generators.Poly1305KeyGenerator;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
@@ -34,14 +40,23 @@ import com.sshtools.common.ssh.components.AbstractSshCipher;
 import com.sshtools.common.ssh.components.SshCipherFactory;
 import com.sshtools.common.ssh.components.jce.ChaCha20Poly1305.ChaCha20.WrongKeySizeException;
 import com.sshtools.common.ssh.components.jce.ChaCha20Poly1305.ChaCha20.WrongNonceSizeException;
-import com.sshtools.common.util.Arrays;
 import com.sshtools.common.util.ByteArrayReader;
 import com.sshtools.common.util.ByteArrayWriter;
 import com.sshtools.common.util.UnsignedInteger64;
 
+/**
+ * The chacha20-poly1305@openssh.com cipher. The ChaCha20 key stream comes from
+ * the JDK's ChaCha20 cipher where it is available, which the JVM may
+ * intrinsify, otherwise from the pure Java implementation below. The Poly1305
+ * MAC and all per-packet buffers are reused so that a packet is processed
+ * without allocation, and the MAC is calculated in a single pass.
+ */
 public class ChaCha20Poly1305 extends AbstractSshCipher {
 	
 	private static final String CIPHER = "chacha20-poly1305@openssh.com";
+	private static final String JCE_CIPHER = "ChaCha20";
+	private static final String JCE_PROVIDER = "SunJCE";
+	private static final byte[] ZERO_BLOCK = new byte[64];
 
 	public static class ChaCha20Poly1305Factory implements SshCipherFactory<ChaCha20Poly1305> {
 
@@ -59,11 +74,51 @@ public class ChaCha20Poly1305 extends AbstractSshCipher {
 	byte[] k1 = new byte[32];
 	byte[] k2 = new byte[32];
 	int mode;
-	UnsignedInteger64 currentSequenceNo;
+	
+	/**
+	 * The JDK cipher, or null when the pure Java implementation is used.
+	 */
+	final Cipher cipher;
+	SecretKeySpec lengthKey;
+	SecretKeySpec payloadKey;
+	
+	final Poly1305 mac = new Poly1305();
+	final byte[] polyKeyBlock = new byte[64];
+	final byte[] polyKey = new byte[32];
+	final byte[] tag = new byte[16];
+	final byte[] length = new byte[4];
+	final byte[] encodedLength = new byte[4];
+	
+	/**
+	 * Holds a packet from a buffer without an accessible array while it is
+	 * transformed, grown to the largest packet seen.
+	 */
+	byte[] scratch = new byte[0];
+	
+	/**
+	 * The OpenSSH 64 bit nonce is the sequence number. The JDK cipher takes a 96
+	 * bit IETF nonce, whose first word is the high word of the block counter in
+	 * the original ChaCha20, and so is always zero for SSH packets.
+	 */
+	final byte[] nonce = new byte[12];
 	
 	public ChaCha20Poly1305()
 			throws IOException {
+		this(true);
+	}
+	
+	ChaCha20Poly1305(boolean useJCE)
+			throws IOException {
 		super(CIPHER, SecurityLevel.PARANOID, 4000);
+		this.cipher = useJCE ? createCipher() : null;
+	}
+	
+	private static Cipher createCipher() {
+		try {
+			return Cipher.getInstance(JCE_CIPHER, JCE_PROVIDER);
+		} catch (GeneralSecurityException e) {
+			return null;
+		}
 	}
 
 	public void init(int mode, byte[] iv, byte[] keydata) throws java.io.IOException {
@@ -72,7 +127,11 @@ public class ChaCha20Poly1305 extends AbstractSshCipher {
         // Create the packet length key
         System.arraycopy(keydata, 0, k2, 0, k2.length);
         System.arraycopy(keydata, 32, k1, 0, k1.length);
-
+        
+        if(cipher != null) {
+        	lengthKey = new SecretKeySpec(k1, JCE_CIPHER);
+        	payloadKey = new SecretKeySpec(k2, JCE_CIPHER);
+        }
 	}
 	
 	@Override
@@ -95,6 +154,10 @@ public class ChaCha20Poly1305 extends AbstractSshCipher {
 		return true;
 	}
 
+	/**
+	 * Transform the packet; the start and offset point to the first byte after the
+	 * packet length field, which must precede them in the arrays.
+	 */
 	@Override
 	public void transform(byte[] src, int start, byte[] dest, int offset, int len) throws IOException {
 		
@@ -104,94 +167,158 @@ public class ChaCha20Poly1305 extends AbstractSshCipher {
 			} else {
 				doEncrypt(src, start, dest, offset, len);
 			}
-		} catch (WrongKeySizeException | WrongNonceSizeException e) {
+		} catch (WrongKeySizeException | WrongNonceSizeException | GeneralSecurityException e) {
 			throw new IOException(e.getMessage(), e);
 		}
 	}
 
-	private void doEncrypt(byte[] src, int start, byte[] dest, int offset, int len) throws WrongKeySizeException, WrongNonceSizeException, IllegalStateException, IOException {
-		
+	@Override
+	public void transform(ByteBuffer buffer, int offset, int len) throws IOException {
+		if(buffer.hasArray()) {
+			int off = buffer.arrayOffset() + offset;
+			transform(buffer.array(), off, buffer.array(), off, len);
+		} else {
+			/**
+			 * The MAC covers the encrypted packet length that precedes the offset. The
+			 * JDK would copy a direct buffer through temporary arrays of its own, so it
+			 * is copied once each way through the reusable scratch array instead.
+			 */
+			int required = len + 4;
+			if(scratch.length < required) {
+				scratch = new byte[required];
+			}
+			int position = buffer.position();
+			int limit = buffer.limit();
+			try {
+				buffer.limit(offset + len);
+				buffer.position(offset - 4);
+				buffer.get(scratch, 0, required);
+				transform(scratch, 4, scratch, 4, len);
+				buffer.position(offset - 4);
+				buffer.put(scratch, 0, required);
+			} finally {
+				buffer.limit(limit);
+				buffer.position(position);
+			}
+		}
+	}
+
+	private void doEncrypt(byte[] src, int start, byte[] dest, int offset, int len) throws WrongKeySizeException, WrongNonceSizeException, GeneralSecurityException, IOException {
 		
-		int payloadLength = 4 + len - 16;
+		int payloadLength = len - 16;
 		
+		startPayload();
 		transformPayload(src, start, dest, offset, payloadLength);
 		
-		byte[] polykey = generatePoly1305Key();
-		Poly1305 mac = new Poly1305();
-		mac.init(polykey);
-		mac.update(src, 0, payloadLength);
-	
-		byte[] expectedTag = generatePoly1305Tag(polykey, src, 0, payloadLength);
-		
-		System.arraycopy(expectedTag, 0, dest, payloadLength, expectedTag.length);
-
-		
+		/**
+		 * The MAC covers the encrypted length and the encrypted payload
+		 */
+		mac.init(polyKey);
+		mac.update(src, start - 4, 4);
+		mac.update(dest, offset, payloadLength);
+		mac.doFinal(dest, offset + payloadLength);
 	}
 
-	private void doDecrypt(byte[] src, int start, byte[] dest, int offset, int len) throws WrongKeySizeException, WrongNonceSizeException, IllegalStateException, IOException {
+	private void doDecrypt(byte[] src, int start, byte[] dest, int offset, int len) throws WrongKeySizeException, WrongNonceSizeException, GeneralSecurityException, IOException {
 		
-		byte[] tag = new byte[16];
-		int payloadLength = 4 + len - 16;
-		System.arraycopy(src, payloadLength, tag, 0 ,16);
-			
-		byte[] polykey = generatePoly1305Key();
+		int payloadLength = len - 16;
 		
-		byte[] expectedTag = generatePoly1305Tag(polykey, src, 0, payloadLength);
-
-		if(!Arrays.areEqual(tag, expectedTag)) {
+		startPayload();
+		
+		mac.init(polyKey);
+		mac.update(src, start - 4, 4 + payloadLength);
+		mac.doFinal(tag, 0);
+
+		/**
+		 * Compare every byte so that the time taken does not reveal where the
+		 * tags differ
+		 */
+		int diff = 0;
+		for(int i = 0; i < tag.length; i++) {
+			diff |= tag[i] ^ src[start + payloadLength + i];
+		}
+		if(diff != 0) {
 			throw new IOException("Corrupt authentication tag");
 		}
 		
-		transformPayload(src, start, dest, offset, len);
-		
+		transformPayload(src, start, dest, offset, payloadLength);
 	}
-
-	private void transformPayload(byte[] src, int start, byte[] dst, int off, int len) throws WrongKeySizeException, WrongNonceSizeException {
-		
-		ChaCha20 cha = new ChaCha20(k2, currentSequenceNo.toByteArray(), 1);
-		cha.encrypt(dst, off, src, start, len);
+	
+	/**
+	 * Generate the Poly1305 key from the first block of the payload key stream,
+	 * leaving the JDK cipher positioned at the second block for the payload.
+	 */
+	private void startPayload() throws WrongKeySizeException, WrongNonceSizeException, GeneralSecurityException {
 		
+		if(cipher != null) {
+			/**
+			 * ChaCha20 is symmetric. Decrypt mode is used because the JDK refuses
+			 * to encrypt twice with the same key and nonce, which SSH needs to do
+			 * for the length and the payload.
+			 */
+			cipher.init(Cipher.DECRYPT_MODE, payloadKey, new ChaCha20ParameterSpec(nonce, 0));
+			cipher.update(ZERO_BLOCK, 0, ZERO_BLOCK.length, polyKeyBlock, 0);
+			System.arraycopy(polyKeyBlock, 0, polyKey, 0, polyKey.length);
+		} else {
+			java.util.Arrays.fill(polyKey, (byte)0);
+			ChaCha20 cha = new ChaCha20(k2, getSequenceNonce(), 0);
+			cha.encrypt(polyKey, 0, polyKey, 0, polyKey.length);
+		}
 	}
 
-	private byte[] generatePoly1305Key() throws WrongKeySizeException, WrongNonceSizeException {
-		
-		byte[] polykey = new byte[k2.length];
+	private void transformPayload(byte[] src, int start, byte[] dst, int off, int len) throws WrongKeySizeException, WrongNonceSizeException, GeneralSecurityException {
 		
-		ChaCha20 cha = new ChaCha20(k2, currentSequenceNo.toByteArray(), 0);
-		cha.encrypt(polykey, 0, polykey, 0, polykey.length);
-		
-		return polykey;
+		if(cipher != null) {
+			cipher.update(src, start, len, dst, off);
+		} else {
+			ChaCha20 cha = new ChaCha20(k2, getSequenceNonce(), 1);
+			cha.encrypt(dst, off, src, start, len);
+		}
 	}
 	
-	private byte[] generatePoly1305Tag(byte[] polykey, byte[] src, int off, int len) throws IllegalStateException, IOException {
-		Poly1305 mac = new Poly1305();
-		mac.init(polykey);
-		mac.update(src, off, len);
+	private void transformLength(byte[] src, byte[] dst) throws WrongKeySizeException, WrongNonceSizeException, GeneralSecurityException {
 		
-		byte[] expectedTag = new byte[16];
-		mac.doFinal(expectedTag, 0);
-		
-		return expectedTag;
+		if(cipher != null) {
+			cipher.init(Cipher.DECRYPT_MODE, lengthKey, new ChaCha20ParameterSpec(nonce, 0));
+			cipher.update(src, 0, 4, dst, 0);
+		} else {
+			ChaCha20 cha = new ChaCha20(k1, getSequenceNonce(), 0);
+			cha.encrypt(dst, 0, src, 0, 4);
+		}
+	}
+	
+	private void setSequenceNo(long seq) {
+		for(int i = 11; i >= 4; i--) {
+			nonce[i] = (byte) seq;
+			seq >>>= 8;
+		}
+	}
+	
+	/**
+	 * The 64 bit OpenSSH nonce used by the pure Java implementation.
+	 */
+	private byte[] getSequenceNonce() {
+		return java.util.Arrays.copyOfRange(nonce, 4, 12);
 	}
 
 	@Override
 	public String getProviderName() {
-		return "JADAPTIVE";
+		return cipher != null ? cipher.getProvider().getName() : "JADAPTIVE";
 	}
 
 	public long readPacketLength(byte[] encoded, UnsignedInteger64 sequenceNo) throws IOException {
+		return readPacketLength(encoded, sequenceNo.longValue());
+	}
+	
+	public long readPacketLength(byte[] encoded, long sequenceNo) throws IOException {
 		
 		try {
 			
-			this.currentSequenceNo = sequenceNo;
-			
-			ChaCha20 cha = new ChaCha20(k1, sequenceNo.toByteArray(), 0);
-			byte[] tmp = new byte[4];
+			setSequenceNo(sequenceNo);
+			transformLength(encoded, length);
+			return ByteArrayReader.readInt(length, 0);
 			
-			cha.encrypt(tmp, 0, encoded, 0, 4);
-			return ByteArrayReader.readInt(tmp, 0);
-			
-		} catch (WrongKeySizeException | WrongNonceSizeException e) {
+		} catch (WrongKeySizeException | WrongNonceSizeException | GeneralSecurityException e) {
 			throw new IllegalStateException(e.getMessage(), e);
 		}
 		
@@ -199,18 +326,24 @@ public class ChaCha20Poly1305 extends AbstractSshCipher {
 	
 	public byte[] writePacketLength(int length, UnsignedInteger64 sequenceNo) throws IOException {
 		
+		ByteBuffer buf = ByteBuffer.allocate(4);
+		writePacketLength(length, sequenceNo.longValue(), buf);
+		return buf.array();
+	}
+	
+	/**
+	 * Encrypt the packet length into the buffer at its position.
+	 */
+	public void writePacketLength(int length, long sequenceNo, ByteBuffer buf) throws IOException {
+		
 		try {
 			
-			this.currentSequenceNo = sequenceNo;
+			setSequenceNo(sequenceNo);
+			ByteArrayWriter.encodeInt(this.length, 0, length);
+			transformLength(this.length, encodedLength);
+			buf.put(encodedLength);
 			
-			ChaCha20 cha = new ChaCha20(k1, sequenceNo.toByteArray(), 0);
-			byte[] tmp = new byte[4];
-			
-			cha.encrypt(tmp, 0, ByteArrayWriter.encodeInt(length), 0, 4);
-
-			return tmp;
-			
-		} catch(WrongKeySizeException | WrongNonceSizeException e) {
+		} catch(WrongKeySizeException | WrongNonceSizeException | GeneralSecurityException e) {
 			throw new IllegalStateException(e.getMessage(), e);
 		}
 		
@@ -493,6 +626,14 @@ public class ChaCha20Poly1305 extends AbstractSshCipher {
 	                currentBlockOffset = 0;
 	            }
 
+	            if (currentBlockOffset == 0 && len - copied > BLOCK_SIZE)
+	            {
+	                // Whole blocks are processed from the input without copying
+	                processBlock(in, inOff + copied, true);
+	                copied += BLOCK_SIZE;
+	                continue;
+	            }
+
 	            int toCopy = Math.min((len - copied), BLOCK_SIZE - currentBlockOffset);
 	            System.arraycopy(in, copied + inOff, currentBlock, currentBlockOffset, toCopy);
 	            copied += toCopy;
@@ -511,11 +652,16 @@ public class ChaCha20Poly1305 extends AbstractSshCipher {
 	                currentBlock[i] = 0;
 	            }
 	        }
+	        
+	        processBlock(currentBlock, 0, currentBlockOffset == BLOCK_SIZE);
+	    }
 
-	        final long t0 = 0xffffffffL & littleEndianToInt(currentBlock, 0);
-	        final long t1 = 0xffffffffL & littleEndianToInt(currentBlock, 4);
-	        final long t2 = 0xffffffffL & littleEndianToInt(currentBlock, 8);
-	        final long t3 = 0xffffffffL & littleEndianToInt(currentBlock, 12);
+	    private void processBlock(final byte[] block, final int off, final boolean full)
+	    {
+	        final long t0 = 0xffffffffL & littleEndianToInt(block, off);
+	        final long t1 = 0xffffffffL & littleEndianToInt(block, off + 4);
+	        final long t2 = 0xffffffffL & littleEndianToInt(block, off + 8);
+	        final long t3 = 0xffffffffL & littleEndianToInt(block, off + 12);
 
 	        h0 += t0 & 0x3ffffff;
 	        h1 += (((t1 << 32) | t0) >>> 26) & 0x3ffffff;
@@ -523,7 +669,7 @@ public class ChaCha20Poly1305 extends AbstractSshCipher {
 	        h3 += (((t3 << 32) | t2) >>> 14) & 0x3ffffff;
 	        h4 += (t3 >>> 8);
 
-	        if (currentBlockOffset == BLOCK_SIZE)
+	        if (full)
 	        {
 	            h4 += (1 << 24);
 	        }
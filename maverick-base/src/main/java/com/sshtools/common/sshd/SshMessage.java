@@ -81,4 +81,16 @@ public interface SshMessage {
     public boolean writeMessageIntoBuffer(ByteBuffer buf);
 
     public void messageSent(Long sequenceNo) throws SshException;
+    
+    /**
+     * An upper bound on the number of bytes the next call to 
+     * {@link #writeMessageIntoBuffer(ByteBuffer)} will write. The transport uses
+     * this to pack several messages into a single socket write. Messages that
+     * return -1 are always written at the start of a new write.
+     * 
+     * @return maximum length or -1 if unknown
+     */
+    default int getMaximumLength() {
+    	return -1;
+    }
 }
@@ -28,6 +28,7 @@ import com.sshtools.common.sftp.extensions.CopyDataSftpExtension;
 import com.sshtools.common.sftp.extensions.CopyFileSftpExtension;
 import com.sshtools.common.sftp.extensions.FileHandleHashingExtension;
 import com.sshtools.common.sftp.extensions.FilenameHashingExtension;
+import com.sshtools.common.sftp.extensions.FsyncExtension;
 import com.sshtools.common.sftp.extensions.HardLinkExtension;
 import com.sshtools.common.sftp.extensions.MD5FileExtension;
 import com.sshtools.common.sftp.extensions.MD5HandleExtension;
@@ -207,6 +208,7 @@ open module com.sshtools.maverick.base {
 		CopyFileSftpExtension,
 		FileHandleHashingExtension,
 		FilenameHashingExtension,
+		FsyncExtension,
 		HardLinkExtension,
 		MD5FileExtension,
 		MD5HandleExtension,
@@ -26,7 +26,7 @@ import com.sshtools.common.logger.Log.Level;
 
 public abstract class AbstractLoggingContext implements LoggerContext {
 
-	Level level = Level.INFO;
+	volatile Level level = Level.INFO;
 	
 	public AbstractLoggingContext() {
 		
@@ -0,0 +1,314 @@
+package com.sshtools.common.logger;
+
+/*-
+ * #%L
+ * Logging API
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sshtools.common.logger.Log.Level;
+import com.sshtools.common.util.IOUtils;
+
+/**
+ * Logs to a file from a single background thread. Logging threads only place a
+ * record on a bounded queue, the writer thread formats records, writes them in
+ * batches, flushes when the queue is empty and rolls the log over when it
+ * exceeds its maximum size.
+ * <p>
+ * Arguments are formatted by the writer thread, so an argument that changes
+ * after it has been logged may be written with its later value.
+ */
+public class AsyncFileLoggingContext extends AbstractLoggingContext {
+
+	public enum OverflowPolicy {
+		/**
+		 * Discard the record and count it when the queue is full.
+		 */
+		DROP,
+		/**
+		 * Wait for space in the queue when it is full.
+		 */
+		BLOCK
+	}
+	
+	static final int MAX_BATCH = 512;
+	static final int LOG = 0;
+	static final int RAW = 1;
+	static final int NEWLINE = 2;
+	
+	final BlockingQueue<Record> queue;
+	final OverflowPolicy overflowPolicy;
+	final File logFile;
+	final int maxFiles;
+	final long maxSize;
+	final Thread writer;
+	
+	final AtomicLong dropped = new AtomicLong();
+	final AtomicLong written = new AtomicLong();
+	
+	volatile boolean closed;
+	volatile boolean logging = true;
+	
+	/**
+	 * Only used by the writer thread.
+	 */
+	Writer currentWriter;
+	long currentSize;
+	
+	public AsyncFileLoggingContext(Level level, File logFile) throws IOException {
+		this(level, logFile, 10, 1024 * 1024 * 20L, 8192, OverflowPolicy.BLOCK);
+	}
+	
+	public AsyncFileLoggingContext(Level level, File logFile, int maxFiles, long maxSize, 
+			int queueSize, OverflowPolicy overflowPolicy) throws IOException {
+		super(level);
+		this.logFile = logFile;
+		if(!logFile.exists()) {
+			logFile.getAbsoluteFile().getParentFile().mkdirs();
+		}
+		this.maxFiles = maxFiles;
+		this.maxSize = maxSize;
+		this.queue = new ArrayBlockingQueue<>(queueSize);
+		this.overflowPolicy = overflowPolicy;
+		createLogFile();
+		log(Level.INFO, String.format("Logging file %s", logFile.getAbsolutePath()), null);
+		
+		writer = new Thread(this::writeRecords, "AsyncFileLogger-" + logFile.getName());
+		writer.setDaemon(true);
+		writer.start();
+		
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				AsyncFileLoggingContext.this.close();
+			}
+		});
+	}
+	
+	@Override
+	public boolean isLogging(Level level) {
+		return logging && !closed && super.isLogging(level);
+	}
+
+	@Override
+	public void log(Level level, String msg, Throwable e, Object... args) {
+		enqueue(new Record(LOG, level, msg, e, args));
+	}
+
+	@Override
+	public void raw(Level level, String msg) {
+		enqueue(new Record(RAW, level, msg, null));
+	}
+
+	@Override
+	public void newline() {
+		enqueue(new Record(NEWLINE, Level.INFO, null, null));
+	}
+	
+	/**
+	 * Stop accepting records and wait for those already queued to be written.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if(Thread.currentThread() != writer) {
+			try {
+				writer.join(TimeUnit.SECONDS.toMillis(10));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	public File getFile() {
+		return logFile;
+	}
+	
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+	
+	/**
+	 * Get the number of records discarded because the queue was full or the
+	 * context was closed.
+	 * 
+	 * @return long
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+	
+	/**
+	 * Get the number of records written to the file.
+	 * 
+	 * @return long
+	 */
+	public long getWrittenCount() {
+		return written.get();
+	}
+	
+	/**
+	 * Get the number of records waiting to be written.
+	 * 
+	 * @return int
+	 */
+	public int getQueuedCount() {
+		return queue.size();
+	}
+
+	private void enqueue(Record record) {
+		
+		if(closed) {
+			dropped.incrementAndGet();
+			return;
+		}
+		
+		if(overflowPolicy == OverflowPolicy.DROP) {
+			if(!queue.offer(record)) {
+				dropped.incrementAndGet();
+			}
+			return;
+		}
+		
+		try {
+			/**
+			 * Wait in steps so that a caller is not left blocked forever if the
+			 * context is closed while the queue is full.
+			 */
+			while(!queue.offer(record, 100, TimeUnit.MILLISECONDS)) {
+				if(closed) {
+					dropped.incrementAndGet();
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			dropped.incrementAndGet();
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private void writeRecords() {
+		
+		List<Record> batch = new ArrayList<>(MAX_BATCH);
+		long reportedDrops = 0;
+		
+		try {
+			while(true) {
+				Record first;
+				try {
+					first = queue.poll(250, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					continue;
+				}
+				
+				if(first == null) {
+					if(closed) {
+						break;
+					}
+					continue;
+				}
+				
+				batch.add(first);
+				queue.drainTo(batch, MAX_BATCH - 1);
+				
+				for(Record record : batch) {
+					write(record.format());
+				}
+				written.addAndGet(batch.size());
+				batch.clear();
+				
+				long drops = dropped.get();
+				if(drops != reportedDrops) {
+					write(DefaultLoggerContext.prepareLog(Level.WARN, "Dropped {} log records because the logging queue was full", 
+							null, drops - reportedDrops));
+					reportedDrops = drops;
+				}
+				
+				if(queue.isEmpty()) {
+					currentWriter.flush();
+				}
+			}
+		} catch (IOException e) {
+			System.err.println(String.format("Failed to log to %s", logFile.getName()));
+			e.printStackTrace();
+			logging = false;
+			closed = true;
+			queue.clear();
+		} finally {
+			IOUtils.closeStream(currentWriter);
+		}
+	}
+	
+	private void write(String msg) throws IOException {
+		if(currentSize > maxSize) {
+			IOUtils.closeStream(currentWriter);
+			IOUtils.rollover(logFile, maxFiles);
+			createLogFile();
+		}
+		currentWriter.write(msg);
+		currentSize += msg.length();
+	}
+
+	private void createLogFile() throws IOException {
+		currentWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logFile, true)), 65536);
+		currentSize = logFile.length();
+	}
+	
+	static class Record {
+		
+		final int type;
+		final long time = System.currentTimeMillis();
+		final String threadName = Thread.currentThread().getName();
+		final Level level;
+		final String msg;
+		final Throwable e;
+		final Object[] args;
+		
+		Record(int type, Level level, String msg, Throwable e, Object... args) {
+			this.type = type;
+			this.level = level;
+			this.msg = msg;
+			this.e = e;
+			this.args = args;
+		}
+		
+		String format() {
+			switch(type) {
+			case RAW:
+				return DefaultLoggerContext.prepareLog(time, threadName, level, "", null) + msg;
+			case NEWLINE:
+				return System.lineSeparator();
+			default:
+				return DefaultLoggerContext.prepareLog(time, threadName, level, msg, e, args);
+			}
+		}
+	}
+}
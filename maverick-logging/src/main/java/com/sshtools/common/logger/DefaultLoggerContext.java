@@ -29,14 +29,13 @@ import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.file.Path;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Collection;
-import java.util.Date;
-import java.util.Iterator;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -45,8 +44,19 @@ import com.sshtools.common.util.IOUtils;
 
 public class DefaultLoggerContext implements RootLoggerContext {
 
-	Collection<LoggerContext> contexts = new ArrayList<>();
-	static DateFormat df = new SimpleDateFormat("dd MMM yyyy HH:mm:ss,SSS");
+	Collection<LoggerContext> contexts = new CopyOnWriteArrayList<>();
+	
+	/**
+	 * The most verbose level any context is logging at. Level checks are made
+	 * for every packet so they read this rather than taking a lock and asking
+	 * each context. It is recalculated whenever the contexts change.
+	 */
+	volatile int effectiveLevel = Level.NONE.ordinal();
+	/**
+	 * Log calls are not synchronized, so entries are formatted concurrently and
+	 * the formatter must be immutable.
+	 */
+	static final DateTimeFormatter df = DateTimeFormatter.ofPattern("dd MMM yyyy HH:mm:ss,SSS").withZone(ZoneId.systemDefault());
 	Properties props; 
 	File propertiesFile;
 	
@@ -123,12 +133,23 @@ public class DefaultLoggerContext implements RootLoggerContext {
 		}
 		
 		if("true".equalsIgnoreCase(getProperty("maverick.log.file", "false"))) {
-			enableFile(Level.valueOf(getProperty("maverick.log.file.level", "INFO")),
-					new File(getProperty("maverick.log.file.path", "synergy.log")),
-					Integer.parseInt(getProperty("maverick.log.file.maxFiles", "10")),
-					IOUtils.fromByteSize(getProperty("maverick.log.file.maxSize", "20MB")));
+			if("true".equalsIgnoreCase(getProperty("maverick.log.file.async", "false"))) {
+				enableAsyncFile(Level.valueOf(getProperty("maverick.log.file.level", "INFO")),
+						new File(getProperty("maverick.log.file.path", "synergy.log")),
+						Integer.parseInt(getProperty("maverick.log.file.maxFiles", "10")),
+						IOUtils.fromByteSize(getProperty("maverick.log.file.maxSize", "20MB")),
+						Integer.parseInt(getProperty("maverick.log.file.async.queueSize", "8192")),
+						AsyncFileLoggingContext.OverflowPolicy.valueOf(getProperty("maverick.log.file.async.overflow", "BLOCK")));
+			} else {
+				enableFile(Level.valueOf(getProperty("maverick.log.file.level", "INFO")),
+						new File(getProperty("maverick.log.file.path", "synergy.log")),
+						Integer.parseInt(getProperty("maverick.log.file.maxFiles", "10")),
+						IOUtils.fromByteSize(getProperty("maverick.log.file.maxSize", "20MB")));
+			}
 		}
 		
+		updateEffectiveLevel();
+		
 		log(Level.INFO, "Reloaded logging configuration {} [{}]", null, propertiesFile.getName(), propertiesFile.getAbsolutePath());
 	}
 	
@@ -141,6 +162,7 @@ public class DefaultLoggerContext implements RootLoggerContext {
 		}
 		if(enable) {
 			contexts.add(new ConsoleLoggingContext(level));
+			updateEffectiveLevel();
 			log(Level.INFO, "Console logging enabled", null);
 		}
 	}
@@ -153,18 +175,17 @@ public class DefaultLoggerContext implements RootLoggerContext {
 	@Override
 	public synchronized void enableFile(Level level, File logFile) {
 		try {
-			Iterator<LoggerContext> it = contexts.iterator();
-			while(it.hasNext()) {
-				LoggerContext ctx = it.next();
+			for(LoggerContext ctx : contexts) {
 				if(ctx instanceof FileLoggingContext) {
 					FileLoggingContext context = (FileLoggingContext) ctx;
 					if(context.getFile().equals(logFile)) {
 						context.close();
-						it.remove();
+						contexts.remove(ctx);
 					}
 				}
 			}
 			contexts.add(new FileLoggingContext(level, logFile));
+			updateEffectiveLevel();
 		} catch (IOException e) {
 			System.err.println("Error logging to file");
 			e.printStackTrace();
@@ -175,6 +196,29 @@ public class DefaultLoggerContext implements RootLoggerContext {
 	public synchronized void enableFile(Level level, File logFile, int maxFiles, long maxSize) {
 		try {
 			contexts.add(new FileLoggingContext(level, logFile, maxFiles, maxSize));
+			updateEffectiveLevel();
+		} catch (IOException e) {
+			System.err.println("Error logging to file");
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Log to a file from a background thread. Callers only place a record on a
+	 * bounded queue, the record is formatted and written by the background thread.
+	 * 
+	 * @param level
+	 * @param logFile
+	 * @param maxFiles
+	 * @param maxSize
+	 * @param queueSize maximum number of records waiting to be written
+	 * @param overflowPolicy whether to drop records or block callers when the queue is full
+	 */
+	public synchronized void enableAsyncFile(Level level, File logFile, int maxFiles, long maxSize, 
+			int queueSize, AsyncFileLoggingContext.OverflowPolicy overflowPolicy) {
+		try {
+			contexts.add(new AsyncFileLoggingContext(level, logFile, maxFiles, maxSize, queueSize, overflowPolicy));
+			updateEffectiveLevel();
 		} catch (IOException e) {
 			System.err.println("Error logging to file");
 			e.printStackTrace();
@@ -187,19 +231,34 @@ public class DefaultLoggerContext implements RootLoggerContext {
 		}
 		
 		contexts.clear();
+		updateEffectiveLevel();
 	}
 	
-	@Override
-	public synchronized boolean isLogging(Level level) {
+	private void updateEffectiveLevel() {
+		int effective = Level.NONE.ordinal();
 		for(LoggerContext context : contexts) {
-			if(context.isLogging(level)) {
-				return true;
+			for(Level level : Level.values()) {
+				if(level.ordinal() > effective && context.isLogging(level)) {
+					effective = level.ordinal();
+				}
 			}
 		}
-		return false;
+		effectiveLevel = effective;
+	}
+	
+	@Override
+	public boolean isLogging(Level level) {
+		return effectiveLevel >= level.ordinal();
 	}
 
 	public static String prepareLog(Level level, String msg, Throwable e, Object... args) {
+		return prepareLog(System.currentTimeMillis(), Thread.currentThread().getName(), level, msg, e, args);
+	}
+	
+	/**
+	 * Format a log entry that may have been made earlier, on another thread.
+	 */
+	public static String prepareLog(long time, String threadName, Level level, String msg, Throwable e, Object... args) {
 
 		int i=0;
 		int idx=0;
@@ -207,8 +266,8 @@ public class DefaultLoggerContext implements RootLoggerContext {
 		StringBuffer buffer = new StringBuffer();
 		
 		buffer.append(String.format("%s [%20s] %6s - ", 
-				df.format(new Date()), 
-				Thread.currentThread().getName(),
+				df.format(Instant.ofEpochMilli(time)), 
+				threadName,
 				level.name()));
 		
 		if(args.length > 0 && msg.indexOf("{}") > -1) {
@@ -242,14 +301,14 @@ public class DefaultLoggerContext implements RootLoggerContext {
 	}
 
 	@Override
-	public synchronized void log(Level level, String msg, Throwable e, Object... args) {
+	public void log(Level level, String msg, Throwable e, Object... args) {
 		for(LoggerContext context : contexts) {
 			context.log(level, msg, e, args);
 		}
 	}
 
 	@Override
-	public synchronized void raw(Level level, String msg) {
+	public void raw(Level level, String msg) {
 		for(LoggerContext context : contexts) {
 			context.raw(level, msg);
 		}
@@ -263,7 +322,7 @@ public class DefaultLoggerContext implements RootLoggerContext {
 	}
 
 	@Override
-	public synchronized void newline() {
+	public void newline() {
 		for(LoggerContext context : contexts) {
 			context.newline();
 		}
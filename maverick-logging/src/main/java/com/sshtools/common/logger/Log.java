@@ -28,10 +28,20 @@ import java.util.Objects;
 public class Log {
 
 	
-	static RootLoggerContext defaultContext = null;
+	static volatile RootLoggerContext defaultContext = null;
 	static ThreadLocal<LoggerContext> currentContext = new ThreadLocal<LoggerContext>();
 	
+	/**
+	 * Set once any thread has installed a current context, until then the
+	 * level checks do not need to look at the thread local.
+	 */
+	static volatile boolean currentContextUsed = false;
+	
 	public static RootLoggerContext getDefaultContext() {
+		RootLoggerContext ctx = defaultContext;
+		if(ctx!=null) {
+			return ctx;
+		}
 		synchronized(Log.class) {
 			if(defaultContext==null) {
 				try {
@@ -68,6 +78,7 @@ public class Log {
 	}
 	
 	public static void setupCurrentContext(LoggerContext context) {
+		currentContextUsed = true;
 		currentContext.set(context);
 	}
 	
@@ -96,12 +107,13 @@ public class Log {
 	}
 
 	public static boolean isLevelEnabled(Level level) {
-		LoggerContext ctx = currentContext.get();
-		if((!Objects.isNull(ctx) && ctx.isLogging(level))) {
-			return ctx.isLogging(level);
-		} else {
-			return Log.getDefaultContext().isLogging(level);
+		if(currentContextUsed) {
+			LoggerContext ctx = currentContext.get();
+			if(!Objects.isNull(ctx) && ctx.isLogging(level)) {
+				return true;
+			}
 		}
+		return Log.getDefaultContext().isLogging(level);
 	}
 	
 	public static void info(String msg, Object... args) {
@@ -0,0 +1,118 @@
+package com.sshtools.client.sftp;
+
+/*-
+ * #%L
+ * Client API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import com.sshtools.client.SshClient;
+import com.sshtools.client.SshClient.SshClientBuilder;
+import com.sshtools.client.sftp.SftpClient.SftpClientBuilder;
+import com.sshtools.common.files.direct.NioFileFactory.NioFileFactoryBuilder;
+import com.sshtools.common.publickey.SshKeyPairGenerator;
+import com.sshtools.common.ssh.Packet;
+import com.sshtools.common.util.UnsignedInteger32;
+import com.sshtools.server.InMemoryPasswordAuthenticator;
+import com.sshtools.server.SshServer;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the channel does not keep responses that nobody will claim.
+ */
+public class SftpResponseTests extends TestCase {
+
+	SshServer server;
+	Path root;
+	SshClient ssh;
+	SftpClient sftp;
+	SftpChannel channel;
+	
+	protected void setUp() throws Exception {
+		root = Files.createTempDirectory("responses");
+		server = new SshServer("127.0.0.1", 0);
+		server.addHostKey(SshKeyPairGenerator.generateKeyPair(SshKeyPairGenerator.ED25519));
+		server.addAuthenticator(new InMemoryPasswordAuthenticator().addUser("responses", "responses".toCharArray()));
+		server.setFileFactory(con -> NioFileFactoryBuilder.create().withHome(root).withoutSandbox().build());
+		server.start();
+		ssh = SshClientBuilder.create()
+				.withTarget("127.0.0.1", server.getPort())
+				.withUsername("responses")
+				.withPassword("responses")
+				.build();
+		sftp = SftpClientBuilder.create().withClient(ssh).build();
+		channel = sftp.getSubsystemChannel();
+	}
+
+	protected void tearDown() throws Exception {
+		sftp.close();
+		ssh.close();
+		server.close();
+		try(Stream<Path> paths = Files.walk(root)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+	
+	public void testReadAheadAbandonedAtEOF() throws Exception {
+		
+		byte[] data = new byte[100000];
+		new Random(1).nextBytes(data);
+		Files.write(root.resolve("file"), data);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try(SftpHandle handle = channel.openFile(root.resolve("file").toString(), SftpChannel.OPEN_READ)) {
+			/**
+			 * An unknown length reads until EOF, with reads past the end still outstanding
+			 */
+			handle.performOptimizedRead(0, 4096, out, 16, null, 0);
+		}
+		
+		assertEquals(data.length, out.size());
+		assertTrue("Abandoned responses are still held", channel.responses.isEmpty());
+		assertEquals(data.length, sftp.stat(root.resolve("file").toString()).size().longValue());
+		assertTrue(channel.responses.isEmpty());
+	}
+	
+	public void testResponseToUnknownRequestIsDropped() throws Exception {
+		
+		UnsignedInteger32 unknown = new UnsignedInteger32(1000000);
+		Packet msg = channel.createPacket();
+		msg.write(SftpChannel.SSH_FXP_REALPATH);
+		msg.writeInt(unknown.longValue());
+		msg.writeString(".");
+		channel.sendMessage(msg);
+		
+		/**
+		 * A request sent afterwards is answered after the unknown one
+		 */
+		sftp.pwd();
+		sftp.stat(root.toString());
+		
+		assertFalse("Response to an unknown request was kept", channel.responses.containsKey(unknown.intValue()));
+		assertTrue(channel.responses.isEmpty());
+	}
+}
@@ -0,0 +1,178 @@
+package com.sshtools.client.sftp;
+
+/*-
+ * #%L
+ * Client API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sshtools.client.SshClient;
+import com.sshtools.client.SshClient.SshClientBuilder;
+import com.sshtools.client.sftp.SftpClient.SftpClientBuilder;
+import com.sshtools.client.tasks.FileTransferProgress;
+import com.sshtools.common.files.direct.NioFileFactory.NioFileFactoryBuilder;
+import com.sshtools.common.publickey.SshKeyPairGenerator;
+import com.sshtools.server.InMemoryPasswordAuthenticator;
+import com.sshtools.server.SshServer;
+
+import junit.framework.TestCase;
+
+public class TransferPoolTests extends TestCase {
+
+	static final int CHANNELS = 4;
+	
+	SshServer server;
+	Path root;
+	SshClient ssh;
+	SftpClient sftp;
+	
+	protected void setUp() throws Exception {
+		root = Files.createTempDirectory("transferpool");
+		server = new SshServer("127.0.0.1", 0);
+		server.addHostKey(SshKeyPairGenerator.generateKeyPair(SshKeyPairGenerator.ED25519));
+		server.addAuthenticator(new InMemoryPasswordAuthenticator().addUser("pool", "pool".toCharArray()));
+		server.setFileFactory(con -> NioFileFactoryBuilder.create().withHome(root).withoutSandbox().build());
+		server.start();
+		ssh = SshClientBuilder.create()
+				.withTarget("127.0.0.1", server.getPort())
+				.withUsername("pool")
+				.withPassword("pool")
+				.build();
+		sftp = SftpClientBuilder.create().withClient(ssh).build();
+	}
+
+	protected void tearDown() throws Exception {
+		sftp.close();
+		ssh.close();
+		server.close();
+		Files.delete(root);
+	}
+	
+	public void testChannelsOpenedOnDemand() throws Exception {
+		
+		try(TransferPool pool = new TransferPool(sftp, CHANNELS)) {
+			assertTrue("Channels were opened before any transfer", pool.workers.isEmpty());
+			
+			for(int i = 0; i < 10; i++) {
+				pool.submit((client) -> client.pwd());
+				pool.await();
+			}
+			assertEquals("One transfer at a time needs only one channel", 1, pool.workers.size());
+		}
+	}
+	
+	public void testConcurrentTransfersUseEveryChannel() throws Exception {
+		
+		Set<SftpClient> used = Collections.synchronizedSet(new HashSet<>());
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maximum = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		
+		try(TransferPool pool = new TransferPool(sftp, CHANNELS)) {
+			for(int i = 0; i < 50; i++) {
+				pool.submit((client) -> {
+					assertNotSame(sftp, client);
+					used.add(client);
+					maximum.accumulateAndGet(running.incrementAndGet(), Math::max);
+					try {
+						release.await(1, TimeUnit.SECONDS);
+						client.pwd();
+					} catch (InterruptedException e) {
+						throw new IOException(e);
+					} finally {
+						running.decrementAndGet();
+					}
+				});
+			}
+			release.countDown();
+			pool.await();
+			
+			assertEquals(CHANNELS, maximum.get());
+			assertEquals(CHANNELS, used.size());
+			assertEquals(CHANNELS, pool.workers.size());
+		}
+		
+		for(SftpClient client : used) {
+			assertTrue("Channel was not closed with the pool", client.isClosed());
+		}
+	}
+	
+	public void testFailureIsThrownFromAwait() throws Exception {
+		
+		AtomicInteger transferred = new AtomicInteger();
+		try(TransferPool pool = new TransferPool(sftp, CHANNELS)) {
+			pool.submit((client) -> {
+				throw new IOException("Transfer failed");
+			});
+			try {
+				pool.await();
+				fail("Failure must be thrown");
+			} catch(IOException e) {
+				assertEquals("Transfer failed", e.getMessage());
+			}
+			try {
+				pool.submit((client) -> transferred.incrementAndGet());
+				fail("Transfers must not be accepted after a failure");
+			} catch(IOException e) {
+			}
+		}
+		assertEquals(0, transferred.get());
+	}
+	
+	public void testSharedProgressIsSerialised() throws Exception {
+		
+		AtomicInteger calling = new AtomicInteger();
+		AtomicInteger maximum = new AtomicInteger();
+		AtomicInteger progressed = new AtomicInteger();
+		FileTransferProgress shared = new FileTransferProgress() {
+			@Override
+			public void progressed(long bytesSoFar) {
+				maximum.accumulateAndGet(calling.incrementAndGet(), Math::max);
+				Thread.yield();
+				progressed.incrementAndGet();
+				calling.decrementAndGet();
+			}
+		};
+		
+		try(TransferPool pool = new TransferPool(sftp, CHANNELS)) {
+			FileTransferProgress progress = pool.serialise(shared);
+			for(int i = 0; i < 50; i++) {
+				pool.submit((client) -> {
+					for(int j = 0; j < 1000; j++) {
+						progress.progressed(j);
+					}
+				});
+			}
+			pool.await();
+		}
+		
+		assertEquals(50000, progressed.get());
+		assertEquals("Progress was called concurrently", 1, maximum.get());
+	}
+}
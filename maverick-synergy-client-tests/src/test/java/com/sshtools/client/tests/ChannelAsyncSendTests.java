@@ -0,0 +1,361 @@
+package com.sshtools.client.tests;
+
+/*-
+ * #%L
+ * Client API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.sshtools.client.SshClient;
+import com.sshtools.client.SshClient.SshClientBuilder;
+import com.sshtools.client.SshClientContext;
+import com.sshtools.common.permissions.PermissionDeniedException;
+import com.sshtools.common.publickey.SshKeyPairGenerator;
+import com.sshtools.common.ssh.SshConnection;
+import com.sshtools.common.ssh.UnsupportedChannelException;
+import com.sshtools.common.util.UnsignedInteger32;
+import com.sshtools.server.DefaultServerChannelFactory;
+import com.sshtools.server.InMemoryPasswordAuthenticator;
+import com.sshtools.server.SshServer;
+import com.sshtools.server.SshServerContext;
+import com.sshtools.synergy.ssh.ChannelNG;
+
+import junit.framework.TestCase;
+
+/**
+ * Sends data with {@link ChannelNG#sendChannelData(ByteBuffer)} to a channel on
+ * the server whose window is much smaller than the data, and which only consumes
+ * data, and so adjusts the window, when the test reads from it.
+ */
+public class ChannelAsyncSendTests extends TestCase {
+
+	static final String CHANNEL_TYPE = "async-send@sshtools.com";
+	static final int WINDOW_SIZE = 32768;
+	static final int PACKET_SIZE = 8192;
+	static final int SIZE = 256 * 1024;
+
+	SshServer server;
+	SshClient ssh;
+	BlockingQueue<ReceivingChannel> received = new LinkedBlockingQueue<>();
+	SendingChannel sender;
+	ReceivingChannel receiver;
+
+	protected void setUp() throws Exception {
+		server = new SshServer("127.0.0.1", 0);
+		server.addHostKey(SshKeyPairGenerator.generateKeyPair(SshKeyPairGenerator.ED25519));
+		server.addAuthenticator(new InMemoryPasswordAuthenticator().addUser("async", "async".toCharArray()));
+		server.setChannelFactory(new DefaultServerChannelFactory() {
+			@Override
+			protected ChannelNG<SshServerContext> onCreateChannel(String channeltype, SshConnection con)
+					throws UnsupportedChannelException, PermissionDeniedException {
+				if(channeltype.equals(CHANNEL_TYPE)) {
+					return new ReceivingChannel();
+				}
+				return super.onCreateChannel(channeltype, con);
+			}
+		});
+		server.start();
+		ssh = SshClientBuilder.create()
+				.withTarget("127.0.0.1", server.getPort())
+				.withUsername("async")
+				.withPassword("async")
+				.build();
+
+		sender = new SendingChannel();
+		ssh.getConnection().openChannel(sender);
+		sender.getOpenFuture().waitFor(30000);
+		assertTrue(sender.getOpenFuture().isSuccess());
+		receiver = received.poll(30, TimeUnit.SECONDS);
+		assertNotNull(receiver);
+		receiver.setTimeout(30000);
+	}
+
+	protected void tearDown() throws Exception {
+		ssh.close();
+		server.close();
+	}
+
+	public void testSendResumesAfterWindowAdjust() throws Exception {
+
+		byte[] data = random(SIZE);
+		CompletableFuture<Void> future = sender.sendChannelData(ByteBuffer.wrap(data));
+
+		/**
+		 * Only the first window's worth can be written until the server reads.
+		 */
+		Thread.sleep(500);
+		assertFalse(future.isDone());
+		assertTrue(sender.getRemoteWindow().longValue() < PACKET_SIZE);
+
+		byte[] read = new byte[SIZE];
+		new DataInputStream(receiver.getInputStream()).readFully(read);
+
+		future.get(30, TimeUnit.SECONDS);
+		assertTrue(Arrays.equals(data, read));
+	}
+
+	public void testEOFFollowsPendingData() throws Exception {
+
+		byte[] data = random(SIZE);
+		CompletableFuture<Void> future = sender.sendChannelData(ByteBuffer.wrap(data));
+		sender.sendEOF();
+
+		assertTrue(sender.isLocalEOF());
+		assertFalse(future.isDone());
+
+		try {
+			sender.sendChannelData(ByteBuffer.wrap(new byte[1])).get(30, TimeUnit.SECONDS);
+			fail("Data was accepted after EOF");
+		} catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+
+		assertTrue(Arrays.equals(data, readToEnd(receiver.getInputStream())));
+		future.get(30, TimeUnit.SECONDS);
+		assertTrue(receiver.isRemoteEOF());
+	}
+
+	public void testEOFWakesBlockedReader() throws Exception {
+
+		receiver.setTimeout(0);
+		CompletableFuture<Integer> read = CompletableFuture.supplyAsync(() -> {
+			try {
+				return receiver.getInputStream().read();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+
+		Thread.sleep(250);
+		assertFalse(read.isDone());
+
+		long started = System.currentTimeMillis();
+		sender.sendEOF();
+		assertEquals(-1, read.get(30, TimeUnit.SECONDS).intValue());
+		assertTrue("The reader was not woken by the EOF", System.currentTimeMillis() - started < 500);
+	}
+
+	public void testPendingSendsFailOnClose() throws Exception {
+
+		CompletableFuture<Void> future = sender.sendChannelData(ByteBuffer.wrap(random(SIZE)));
+
+		Thread.sleep(500);
+		assertFalse(future.isDone());
+
+		sender.close();
+
+		try {
+			future.get(30, TimeUnit.SECONDS);
+			fail("Pending send completed after the channel was closed");
+		} catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		assertTrue(sender.sendChannelData(ByteBuffer.wrap(new byte[1])).isCompletedExceptionally());
+	}
+
+	public void testConcurrentSendsStayInOrder() throws Exception {
+
+		final int records = 500;
+		final int recordSize = 1024;
+		final List<CompletableFuture<Void>> futures = new ArrayList<>();
+		final CountDownLatch start = new CountDownLatch(1);
+
+		List<Thread> threads = new ArrayList<>();
+		for(int t = 0; t < 2; t++) {
+			final byte id = (byte) t;
+			threads.add(new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for(int i = 0; i < records; i++) {
+					ByteBuffer record = ByteBuffer.allocate(recordSize);
+					record.put(id);
+					record.putInt(i);
+					while(record.hasRemaining()) {
+						record.put(id);
+					}
+					record.flip();
+					CompletableFuture<Void> future = sender.sendChannelData(record);
+					synchronized(futures) {
+						futures.add(future);
+					}
+				}
+			}));
+		}
+		for(Thread t : threads) {
+			t.start();
+		}
+		start.countDown();
+
+		DataInputStream in = new DataInputStream(receiver.getInputStream());
+		int[] next = new int[2];
+		byte[] record = new byte[recordSize];
+		for(int i = 0; i < records * 2; i++) {
+			in.readFully(record);
+			ByteBuffer buf = ByteBuffer.wrap(record);
+			byte id = buf.get();
+			assertEquals(next[id]++, buf.getInt());
+			while(buf.hasRemaining()) {
+				assertEquals(id, buf.get());
+			}
+		}
+
+		for(Thread t : threads) {
+			t.join();
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+		assertEquals(records, next[0]);
+		assertEquals(records, next[1]);
+	}
+
+	static byte[] random(int size) {
+		byte[] data = new byte[size];
+		new Random(1).nextBytes(data);
+		return data;
+	}
+
+	static byte[] readToEnd(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int r;
+		while((r = in.read(buf)) > -1) {
+			out.write(buf, 0, r);
+		}
+		return out.toByteArray();
+	}
+
+	static class SendingChannel extends ChannelNG<SshClientContext> {
+
+		SendingChannel() {
+			super(CHANNEL_TYPE, PACKET_SIZE, new UnsignedInteger32(WINDOW_SIZE),
+					new UnsignedInteger32(WINDOW_SIZE), new UnsignedInteger32(WINDOW_SIZE / 2));
+		}
+
+		@Override
+		protected void onChannelFree() {
+		}
+
+		@Override
+		protected byte[] createChannel() throws IOException {
+			return null;
+		}
+
+		@Override
+		protected byte[] openChannel(byte[] requestdata) {
+			return null;
+		}
+
+		@Override
+		protected void onChannelOpenConfirmation() {
+		}
+
+		@Override
+		protected void onChannelClosed() {
+		}
+
+		@Override
+		protected void onChannelOpen() {
+		}
+
+		@Override
+		protected void onChannelClosing() {
+		}
+
+		@Override
+		protected void onChannelRequest(String type, boolean wantreply, byte[] requestdata) {
+		}
+
+		@Override
+		protected void onRemoteEOF() {
+		}
+
+		@Override
+		protected void onLocalEOF() {
+		}
+	}
+
+	class ReceivingChannel extends ChannelNG<SshServerContext> {
+
+		ReceivingChannel() {
+			super(CHANNEL_TYPE, PACKET_SIZE, new UnsignedInteger32(WINDOW_SIZE),
+					new UnsignedInteger32(WINDOW_SIZE), new UnsignedInteger32(WINDOW_SIZE / 2));
+		}
+
+		@Override
+		protected void onChannelFree() {
+		}
+
+		@Override
+		protected byte[] createChannel() throws IOException {
+			return null;
+		}
+
+		@Override
+		protected byte[] openChannel(byte[] requestdata) {
+			return null;
+		}
+
+		@Override
+		protected void onChannelOpenConfirmation() {
+		}
+
+		@Override
+		protected void onChannelClosed() {
+		}
+
+		@Override
+		protected void onChannelOpen() {
+			received.add(this);
+		}
+
+		@Override
+		protected void onChannelClosing() {
+		}
+
+		@Override
+		protected void onChannelRequest(String type, boolean wantreply, byte[] requestdata) {
+		}
+
+		@Override
+		protected void onRemoteEOF() {
+		}
+
+		@Override
+		protected void onLocalEOF() {
+		}
+	}
+}
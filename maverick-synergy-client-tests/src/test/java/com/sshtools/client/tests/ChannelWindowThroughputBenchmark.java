@@ -0,0 +1,140 @@
+package com.sshtools.client.tests;
+
+/*-
+ * #%L
+ * Client API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.stream.Stream;
+
+import com.sshtools.client.SshClient;
+import com.sshtools.client.SshClient.SshClientBuilder;
+import com.sshtools.client.sftp.SftpClient;
+import com.sshtools.client.sftp.SftpClient.SftpClientBuilder;
+import com.sshtools.common.files.direct.NioFileFactory.NioFileFactoryBuilder;
+import com.sshtools.common.policy.FileSystemPolicy;
+import com.sshtools.common.publickey.SshKeyPairGenerator;
+import com.sshtools.common.ssh.SshException;
+import com.sshtools.common.util.UnsignedInteger32;
+import com.sshtools.server.InMemoryPasswordAuthenticator;
+import com.sshtools.server.SshServer;
+import com.sshtools.server.SshServerContext;
+
+import junit.framework.TestCase;
+
+/**
+ * Measures the bulk transfer rate of a channel whose window is small compared to
+ * the bandwidth-delay product of the link, so that the sender spends most of its
+ * time waiting for window adjustments. The link is a loopback connection relayed
+ * through a proxy that delays every chunk of data by a fixed amount.
+ */
+public class ChannelWindowThroughputBenchmark extends TestCase {
+
+	static final int ONE_WAY_DELAY_MS = Integer.getInteger("throughput.delay", 10);
+	static final int WINDOW_SIZE = Integer.getInteger("throughput.window", 65536);
+	static final int TRANSFER_SIZE = Integer.getInteger("throughput.size", 4 * 1024 * 1024);
+	static final long TRANSFER_TIMEOUT_MS = 60000;
+	
+	SshServer server;
+	DelayingProxy proxy;
+	Path root;
+	
+	protected void setUp() throws Exception {
+		root = Files.createTempDirectory("throughput");
+		server = new SshServer("127.0.0.1", 0) {
+			@Override
+			public void configure(SshServerContext sshContext, SocketChannel sc) throws IOException, SshException {
+				super.configure(sshContext, sc);
+				FileSystemPolicy policy = sshContext.getPolicy(FileSystemPolicy.class);
+				policy.setSftpMaxWindowSize(new UnsignedInteger32(WINDOW_SIZE));
+				policy.setSftpMinWindowSize(new UnsignedInteger32(WINDOW_SIZE / 2));
+				policy.setSftpMaxPacketSize(Math.min(32768, WINDOW_SIZE / 2));
+			}
+		};
+		server.addHostKey(SshKeyPairGenerator.generateKeyPair(SshKeyPairGenerator.ED25519));
+		server.addAuthenticator(new InMemoryPasswordAuthenticator().addUser("throughput", "throughput".toCharArray()));
+		server.setFileFactory(con -> NioFileFactoryBuilder.create().withHome(root).withoutSandbox().build());
+		server.start();
+		proxy = new DelayingProxy(server.getPort(), ONE_WAY_DELAY_MS);
+	}
+
+	protected void tearDown() throws Exception {
+		proxy.close();
+		server.close();
+		try(Stream<Path> paths = Files.walk(root)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+	
+	public void testSmallWindowBulkTransfer() throws Exception {
+		
+		byte[] data = new byte[TRANSFER_SIZE];
+		new Random(1).nextBytes(data);
+		Path local = Files.createTempFile("throughput", ".bin");
+		try {
+			Files.write(local, data);
+			
+			try(SshClient ssh = SshClientBuilder.create()
+					.withTarget("127.0.0.1", proxy.getPort())
+					.withUsername("throughput")
+					.withPassword("throughput")
+					.build()) {
+				try(SftpClient sftp = SftpClientBuilder.create().withClient(ssh).build()) {
+					
+					/**
+					 * Fail rather than hang if the requests do not fit the window
+					 */
+					Timer watchdog = new Timer(true);
+					watchdog.schedule(new TimerTask() {
+						public void run() {
+							ssh.disconnect();
+						}
+					}, TRANSFER_TIMEOUT_MS);
+					
+					long started = System.nanoTime();
+					try {
+						sftp.put(local.toString(), "throughput.bin");
+					} finally {
+						watchdog.cancel();
+					}
+					long elapsed = System.nanoTime() - started;
+					
+					assertTrue(Arrays.equals(data, Files.readAllBytes(root.resolve("throughput.bin"))));
+					
+					System.out.println(String.format("window=%dKB rtt=%dms transferred %dKB in %dms (%.2f MB/s, window limit %.2f MB/s)", 
+							WINDOW_SIZE / 1024, ONE_WAY_DELAY_MS * 2, TRANSFER_SIZE / 1024, elapsed / 1000000,
+							TRANSFER_SIZE / (elapsed / 1000000000D) / (1024 * 1024),
+							WINDOW_SIZE / (ONE_WAY_DELAY_MS * 2 / 1000D) / (1024 * 1024)));
+				}
+			}
+		} finally {
+			Files.deleteIfExists(local);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package com.sshtools.client.tests;
+
+/*-
+ * #%L
+ * Client API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Relays a single connection to the server, holding back each chunk read
+ * from either side until the delay has elapsed.
+ */
+class DelayingProxy implements AutoCloseable {
+	
+	final ServerSocket serverSocket;
+	final int targetPort;
+	final long delayNanos;
+	Socket client;
+	Socket target;
+	
+	DelayingProxy(int targetPort, long delayMs) throws IOException {
+		this.targetPort = targetPort;
+		this.delayNanos = delayMs * 1000000L;
+		this.serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		Thread accept = new Thread(() -> {
+			try {
+				client = serverSocket.accept();
+				target = new Socket(InetAddress.getLoopbackAddress(), targetPort);
+				client.setTcpNoDelay(true);
+				target.setTcpNoDelay(true);
+				relay(client.getInputStream(), target.getOutputStream());
+				relay(target.getInputStream(), client.getOutputStream());
+			} catch (IOException e) {
+			}
+		}, "DelayingProxy-Accept");
+		accept.setDaemon(true);
+		accept.start();
+	}
+	
+	int getPort() {
+		return serverSocket.getLocalPort();
+	}
+	
+	void relay(InputStream in, OutputStream out) {
+		
+		BlockingQueue<Object[]> chunks = new LinkedBlockingQueue<>();
+		
+		Thread reader = new Thread(() -> {
+			byte[] buf = new byte[65536];
+			try {
+				int r;
+				while((r = in.read(buf)) > -1) {
+					chunks.put(new Object[] { System.nanoTime() + delayNanos, Arrays.copyOf(buf, r) });
+				}
+			} catch (IOException | InterruptedException e) {
+			} finally {
+				chunks.add(new Object[0]);
+			}
+		}, "DelayingProxy-Read");
+		
+		Thread writer = new Thread(() -> {
+			try {
+				Object[] chunk;
+				while((chunk = chunks.take()).length > 0) {
+					long wait = (Long) chunk[0] - System.nanoTime();
+					if(wait > 0) {
+						Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+					}
+					out.write((byte[]) chunk[1]);
+					out.flush();
+				}
+			} catch (IOException | InterruptedException e) {
+			} finally {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+			}
+		}, "DelayingProxy-Write");
+		
+		reader.setDaemon(true);
+		writer.setDaemon(true);
+		reader.start();
+		writer.start();
+	}
+
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+		if(client != null) {
+			client.close();
+		}
+		if(target != null) {
+			target.close();
+		}
+	}
+}
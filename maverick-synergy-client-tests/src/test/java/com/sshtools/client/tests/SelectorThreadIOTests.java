@@ -0,0 +1,141 @@
+package com.sshtools.client.tests;
+
+/*-
+ * #%L
+ * Client API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sshtools.client.SshClient;
+import com.sshtools.client.SshClient.SshClientBuilder;
+import com.sshtools.client.SshClientContext;
+import com.sshtools.common.publickey.SshKeyPairGenerator;
+import com.sshtools.common.ssh.GlobalRequest;
+import com.sshtools.server.InMemoryPasswordAuthenticator;
+import com.sshtools.server.SshServer;
+import com.sshtools.synergy.nio.SshEngine;
+
+import junit.framework.TestCase;
+
+/**
+ * Exchanges small requests and replies with socket I/O performed on worker threads
+ * and directly on the selector thread. The client runs on its own engine so the
+ * setting does not leak into other tests.
+ */
+public class SelectorThreadIOTests extends TestCase {
+
+	static final int ROUND_TRIPS = 200;
+	
+	SshServer server;
+	SshEngine engine;
+	CountingExecutor executor;
+	SshClient ssh;
+	
+	protected void setUp() throws Exception {
+		server = new SshServer("127.0.0.1", 0);
+		server.addHostKey(SshKeyPairGenerator.generateKeyPair(SshKeyPairGenerator.ED25519));
+		server.addAuthenticator(new InMemoryPasswordAuthenticator().addUser("selector", "selector".toCharArray()));
+		server.start();
+		
+		engine = new SshEngine();
+		assertTrue(engine.startup());
+		executor = new CountingExecutor();
+		
+		SshClientContext context = new SshClientContext(engine);
+		context.setExecutorService(executor);
+		ssh = SshClientBuilder.create()
+				.withSshContext(context)
+				.withTarget("127.0.0.1", server.getPort())
+				.withUsername("selector")
+				.withPassword("selector")
+				.build();
+	}
+
+	protected void tearDown() throws Exception {
+		ssh.close();
+		engine.shutdownNow(false, 0L);
+		executor.shutdownNow();
+		server.close();
+	}
+	
+	public void testSelectorThreadIOAvoidsSocketTasks() throws Exception {
+		
+		engine.getContext().setSelectorThreadIO(false);
+		long workerTasks = countTasks();
+		
+		engine.getContext().setSelectorThreadIO(true);
+		long selectorTasks = countTasks();
+		
+		/**
+		 * Each round trip needs at least a read and a write on the socket, which 
+		 * are tasks on the executor unless performed on the selector thread
+		 */
+		assertTrue(String.format("Expected fewer tasks with selector thread I/O, %d vs %d", selectorTasks, workerTasks), 
+				workerTasks - selectorTasks >= ROUND_TRIPS);
+	}
+	
+	public void testSwitchedWhileConnected() throws Exception {
+		
+		for(int i = 0; i < 10; i++) {
+			engine.getContext().setSelectorThreadIO(i % 2 == 0);
+			server.getEngine().getContext().setSelectorThreadIO(i % 2 == 1);
+			countTasks();
+		}
+	}
+	
+	long countTasks() {
+		long started = executor.executed.get();
+		for(int i = 0; i < ROUND_TRIPS; i++) {
+			roundTrip();
+		}
+		return executor.executed.get() - started;
+	}
+	
+	void roundTrip() {
+		/**
+		 * The server does not recognise this request so replies with
+		 * SSH_MSG_REQUEST_FAILURE, exercising a full round trip.
+		 */
+		GlobalRequest request = new GlobalRequest("selector@sshtools.com", ssh.getConnection(), null);
+		ssh.getConnection().sendGlobalRequest(request, true);
+		request.waitFor(30000L);
+		assertTrue("Global request was not answered", request.isDone());
+		assertFalse(request.isSuccess());
+	}
+	
+	static class CountingExecutor extends ThreadPoolExecutor {
+		
+		final AtomicLong executed = new AtomicLong();
+		
+		CountingExecutor() {
+			super(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>());
+		}
+		
+		@Override
+		public void execute(Runnable command) {
+			executed.incrementAndGet();
+			super.execute(command);
+		}
+	}
+}
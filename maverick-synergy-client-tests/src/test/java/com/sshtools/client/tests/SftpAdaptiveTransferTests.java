@@ -0,0 +1,138 @@
+package com.sshtools.client.tests;
+
+/*-
+ * #%L
+ * Client API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import com.sshtools.client.SshClient;
+import com.sshtools.client.SshClient.SshClientBuilder;
+import com.sshtools.client.sftp.SftpClient;
+import com.sshtools.client.sftp.SftpClient.SftpClientBuilder;
+import com.sshtools.client.tasks.FileTransferProgress;
+import com.sshtools.common.files.direct.NioFileFactory.NioFileFactoryBuilder;
+import com.sshtools.common.publickey.SshKeyPairGenerator;
+import com.sshtools.server.InMemoryPasswordAuthenticator;
+import com.sshtools.server.SshServer;
+
+import junit.framework.TestCase;
+
+/**
+ * Transfers a file over a link with added latency and checks that the optimized
+ * read and write report the adjustments made to their transfer window while the
+ * data still arrives intact.
+ */
+public class SftpAdaptiveTransferTests extends TestCase {
+
+	static final int ONE_WAY_DELAY_MS = Integer.getInteger("adaptive.delay", 10);
+	static final int SIZE = Integer.getInteger("adaptive.size", 4 * 1024 * 1024);
+
+	SshServer server;
+	DelayingProxy proxy;
+	Path root;
+	SshClient ssh;
+	SftpClient sftp;
+	byte[] data;
+
+	protected void setUp() throws Exception {
+		root = Files.createTempDirectory("adaptive");
+		data = new byte[SIZE];
+		new Random(1).nextBytes(data);
+		server = new SshServer("127.0.0.1", 0);
+		server.addHostKey(SshKeyPairGenerator.generateKeyPair(SshKeyPairGenerator.ED25519));
+		server.addAuthenticator(new InMemoryPasswordAuthenticator().addUser("adaptive", "adaptive".toCharArray()));
+		server.setFileFactory(con -> NioFileFactoryBuilder.create().withHome(root).withoutSandbox().build());
+		server.start();
+		proxy = new DelayingProxy(server.getPort(), ONE_WAY_DELAY_MS);
+		ssh = SshClientBuilder.create()
+				.withTarget("127.0.0.1", proxy.getPort())
+				.withUsername("adaptive")
+				.withPassword("adaptive")
+				.build();
+		sftp = SftpClientBuilder.create().withClient(ssh).build();
+		sftp.cd(root.toString());
+	}
+
+	protected void tearDown() throws Exception {
+		sftp.close();
+		ssh.close();
+		proxy.close();
+		server.close();
+		try(Stream<Path> paths = Files.walk(root)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	public void testAdaptiveWrite() throws Exception {
+
+		WindowRecorder recorder = new WindowRecorder();
+		sftp.put(new ByteArrayInputStream(data), "upload.bin", recorder);
+
+		assertTrue(Arrays.equals(data, Files.readAllBytes(root.resolve("upload.bin"))));
+		recorder.check();
+	}
+
+	public void testAdaptiveRead() throws Exception {
+
+		Files.write(root.resolve("download.bin"), data);
+
+		WindowRecorder recorder = new WindowRecorder();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		sftp.get("download.bin", out, recorder);
+
+		assertTrue(Arrays.equals(data, out.toByteArray()));
+		recorder.check();
+	}
+
+	static class WindowRecorder implements FileTransferProgress {
+
+		int adjustments;
+		int blockSize;
+		int outstandingRequests;
+		long roundTrip;
+		long bytesPerSecond;
+
+		@Override
+		public void adjusted(int blockSize, int outstandingRequests, long roundTrip, long bytesPerSecond) {
+			this.blockSize = blockSize;
+			this.outstandingRequests = outstandingRequests;
+			this.roundTrip = roundTrip;
+			this.bytesPerSecond = bytesPerSecond;
+			adjustments++;
+		}
+
+		void check() {
+			assertTrue(adjustments > 0);
+			assertTrue(roundTrip >= ONE_WAY_DELAY_MS * 1000);
+			assertTrue(outstandingRequests > 0);
+			assertTrue(blockSize > 0);
+			assertTrue(bytesPerSecond > 0);
+		}
+	}
+}
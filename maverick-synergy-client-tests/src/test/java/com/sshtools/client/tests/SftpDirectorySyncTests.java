@@ -0,0 +1,182 @@
+package com.sshtools.client.tests;
+
+/*-
+ * #%L
+ * Client API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import com.sshtools.client.SshClient;
+import com.sshtools.client.SshClient.SshClientBuilder;
+import com.sshtools.client.sftp.DirectoryOperation;
+import com.sshtools.client.sftp.SftpClient;
+import com.sshtools.client.sftp.SftpClient.SftpClientBuilder;
+import com.sshtools.common.files.direct.NioFileFactory.NioFileFactoryBuilder;
+import com.sshtools.common.publickey.SshKeyPairGenerator;
+import com.sshtools.server.InMemoryPasswordAuthenticator;
+import com.sshtools.server.SshServer;
+
+import junit.framework.TestCase;
+
+/**
+ * Copies a directory tree up to the server and back down again over a link with
+ * added latency, using several transfer channels, and checks the report of new,
+ * updated, unchanged and deleted files on each pass.
+ */
+public class SftpDirectorySyncTests extends TestCase {
+
+	static final int ONE_WAY_DELAY_MS = Integer.getInteger("sync.delay", 5);
+	static final int DIRECTORIES = Integer.getInteger("sync.directories", 4);
+	static final int FILES = Integer.getInteger("sync.files", 50);
+	static final int CHANNELS = Integer.getInteger("sync.channels", 4);
+
+	SshServer server;
+	DelayingProxy proxy;
+	Path local;
+	Path remote;
+	SshClient ssh;
+	SftpClient sftp;
+
+	protected void setUp() throws Exception {
+		local = Files.createTempDirectory("sync-local");
+		remote = Files.createTempDirectory("sync-remote");
+		for(int d = 0; d < DIRECTORIES; d++) {
+			Path dir = Files.createDirectories(local.resolve("dir" + d));
+			for(int i = 0; i < FILES; i++) {
+				Files.write(dir.resolve("file" + i), content(d, i));
+			}
+		}
+		server = new SshServer("127.0.0.1", 0);
+		server.addHostKey(SshKeyPairGenerator.generateKeyPair(SshKeyPairGenerator.ED25519));
+		server.addAuthenticator(new InMemoryPasswordAuthenticator().addUser("sync", "sync".toCharArray()));
+		server.setFileFactory(con -> NioFileFactoryBuilder.create().withHome(remote).withoutSandbox().build());
+		server.start();
+		proxy = new DelayingProxy(server.getPort(), ONE_WAY_DELAY_MS);
+		ssh = SshClientBuilder.create()
+				.withTarget("127.0.0.1", proxy.getPort())
+				.withUsername("sync")
+				.withPassword("sync")
+				.build();
+		sftp = SftpClientBuilder.create()
+				.withClient(ssh)
+				.withTransferChannels(CHANNELS)
+				.withLocalHome(local.getRoot())
+				.build();
+	}
+
+	protected void tearDown() throws Exception {
+		sftp.close();
+		ssh.close();
+		proxy.close();
+		server.close();
+		delete(local);
+		delete(remote);
+	}
+
+	public void testPutLocalDirectory() throws Exception {
+
+		DirectoryOperation op = sftp.putLocalDirectory(local.toString(), remote.resolve("copy").toString(), true, true, true, null);
+
+		assertEquals(DIRECTORIES * FILES, op.getNewFiles().size());
+		assertEquals(0, op.getFailedTransfers().size());
+		assertTrees(local, remote.resolve("copy"));
+
+		op = sftp.putLocalDirectory(local.toString(), remote.resolve("copy").toString(), true, true, true, null);
+		assertEquals(DIRECTORIES * FILES, op.getUnchangedFiles().size());
+		assertEquals(0, op.getFileCount());
+
+		Files.write(local.resolve("dir0").resolve("file0"), new byte[] { 1, 2, 3 });
+		Files.delete(local.resolve("dir1").resolve("file1"));
+
+		op = sftp.putLocalDirectory(local.toString(), remote.resolve("copy").toString(), true, true, true, null);
+		assertEquals(1, op.getUpdatedFiles().size());
+		assertEquals(1, op.getDeletedFiles().size());
+		assertEquals(DIRECTORIES * FILES - 2, op.getUnchangedFiles().size());
+		assertTrees(local, remote.resolve("copy"));
+	}
+
+	public void testGetRemoteDirectory() throws Exception {
+
+		Path source = remote.resolve("source");
+		Files.move(local.resolve("dir0"), source);
+		Path target = local.resolve("target");
+
+		DirectoryOperation op = sftp.getRemoteDirectory(source.toString(), target.toString(), true, true, true, null);
+
+		assertEquals(FILES, op.getNewFiles().size());
+		assertEquals(0, op.getFailedTransfers().size());
+		assertTrees(source, target);
+
+		Files.write(target.resolve("extra"), new byte[] { 1 });
+		op = sftp.getRemoteDirectory(source.toString(), target.toString(), true, true, true, null);
+		assertEquals(1, op.getDeletedFiles().size());
+		assertFalse(Files.exists(target.resolve("extra")));
+		assertTrees(source, target);
+	}
+
+	public void testDryRun() throws Exception {
+
+		DirectoryOperation op = sftp.putLocalDirectory(local.toString(), remote.resolve("copy").toString(), true, false, false, null);
+
+		assertEquals(DIRECTORIES * FILES, op.getNewFiles().size());
+		assertFalse(Files.exists(remote.resolve("copy")));
+	}
+
+	static byte[] content(int directory, int file) {
+		byte[] data = new byte[file * 100 + directory];
+		Arrays.fill(data, (byte) file);
+		return data;
+	}
+
+	static void assertTrees(Path expected, Path actual) throws IOException {
+		try(Stream<Path> paths = Files.walk(expected)) {
+			paths.filter(Files::isRegularFile).forEach(p -> {
+				Path other = actual.resolve(expected.relativize(p).toString());
+				try {
+					assertTrue(other.toString(), Files.exists(other));
+					assertTrue(other.toString(), Arrays.equals(Files.readAllBytes(p), Files.readAllBytes(other)));
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			});
+		}
+		try(Stream<Path> paths = Files.walk(actual)) {
+			assertEquals(count(expected), paths.filter(Files::isRegularFile).count());
+		}
+	}
+
+	static long count(Path dir) throws IOException {
+		try(Stream<Path> paths = Files.walk(dir)) {
+			return paths.filter(Files::isRegularFile).count();
+		}
+	}
+
+	static void delete(Path dir) throws IOException {
+		try(Stream<Path> paths = Files.walk(dir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.sshtools.client.tests;
+
+/*-
+ * #%L
+ * Client API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import com.sshtools.client.SshClient;
+import com.sshtools.client.SshClient.SshClientBuilder;
+import com.sshtools.client.sftp.SftpClient;
+import com.sshtools.client.sftp.SftpClient.SftpClientBuilder;
+import com.sshtools.common.files.direct.NioFileFactory.NioFileFactoryBuilder;
+import com.sshtools.common.publickey.SshKeyPairGenerator;
+import com.sshtools.common.sftp.SftpFileAttributes;
+import com.sshtools.server.InMemoryPasswordAuthenticator;
+import com.sshtools.server.SshServer;
+
+import junit.framework.TestCase;
+
+/**
+ * Reports how long it takes to stat a set of files over a link with added latency
+ * when each request waits for its response, compared with posting every request
+ * before collecting the responses.
+ */
+public class SftpPipeliningBenchmark extends TestCase {
+
+	static final int ONE_WAY_DELAY_MS = Integer.getInteger("pipelining.delay", 5);
+	static final int FILES = Integer.getInteger("pipelining.files", 200);
+	
+	SshServer server;
+	DelayingProxy proxy;
+	Path root;
+	SshClient ssh;
+	SftpClient sftp;
+	
+	protected void setUp() throws Exception {
+		root = Files.createTempDirectory("pipelining");
+		for(int i = 0; i < FILES; i++) {
+			Files.write(root.resolve("file" + i), new byte[i]);
+		}
+		server = new SshServer("127.0.0.1", 0);
+		server.addHostKey(SshKeyPairGenerator.generateKeyPair(SshKeyPairGenerator.ED25519));
+		server.addAuthenticator(new InMemoryPasswordAuthenticator().addUser("pipelining", "pipelining".toCharArray()));
+		server.setFileFactory(con -> NioFileFactoryBuilder.create().withHome(root).withoutSandbox().build());
+		server.start();
+		proxy = new DelayingProxy(server.getPort(), ONE_WAY_DELAY_MS);
+		ssh = SshClientBuilder.create()
+				.withTarget("127.0.0.1", proxy.getPort())
+				.withUsername("pipelining")
+				.withPassword("pipelining")
+				.build();
+		sftp = SftpClientBuilder.create().withClient(ssh).build();
+		sftp.cd(root.toString());
+	}
+
+	protected void tearDown() throws Exception {
+		sftp.close();
+		ssh.close();
+		proxy.close();
+		server.close();
+		try(Stream<Path> paths = Files.walk(root)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+	
+	public void testSequentialAgainstPipelinedStat() throws Exception {
+		
+		long started = System.nanoTime();
+		for(int i = 0; i < FILES; i++) {
+			assertEquals(i, sftp.stat("file" + i).size().longValue());
+		}
+		long sequential = System.nanoTime() - started;
+		
+		started = System.nanoTime();
+		List<CompletableFuture<SftpFileAttributes>> futures = new ArrayList<>();
+		for(int i = 0; i < FILES; i++) {
+			futures.add(sftp.statAsync("file" + i));
+		}
+		for(int i = 0; i < FILES; i++) {
+			assertEquals(i, futures.get(i).get().size().longValue());
+		}
+		long pipelined = System.nanoTime() - started;
+		
+		System.out.println(String.format("rtt=%dms stat of %d files took %dms sequentially, %dms pipelined", 
+				ONE_WAY_DELAY_MS * 2, FILES, sequential / 1000000, pipelined / 1000000));
+	}
+}
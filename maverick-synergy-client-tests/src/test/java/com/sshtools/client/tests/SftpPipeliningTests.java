@@ -0,0 +1,209 @@
+package com.sshtools.client.tests;
+
+/*-
+ * #%L
+ * Client API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import com.sshtools.client.SshClient;
+import com.sshtools.client.SshClient.SshClientBuilder;
+import com.sshtools.client.sftp.SftpChannel;
+import com.sshtools.client.sftp.SftpClient;
+import com.sshtools.client.sftp.SftpClient.SftpClientBuilder;
+import com.sshtools.client.sftp.SftpHandle;
+import com.sshtools.common.files.direct.NioFileFactory.NioFileFactoryBuilder;
+import com.sshtools.common.publickey.SshKeyPairGenerator;
+import com.sshtools.common.sftp.SftpFileAttributes;
+import com.sshtools.common.sftp.SftpStatusException;
+import com.sshtools.common.ssh.SshException;
+import com.sshtools.server.InMemoryPasswordAuthenticator;
+import com.sshtools.server.SshServer;
+
+import junit.framework.TestCase;
+
+/**
+ * Exercises the asynchronous SFTP requests, where every request returns a future
+ * that is completed by the channel's dispatcher as its response arrives. The link 
+ * is relayed through a proxy that delays every chunk of data, so that many requests
+ * are outstanding at once.
+ */
+public class SftpPipeliningTests extends TestCase {
+
+	static final int ONE_WAY_DELAY_MS = Integer.getInteger("pipelining.delay", 5);
+	static final int FILES = Integer.getInteger("pipelining.files", 200);
+	
+	SshServer server;
+	DelayingProxy proxy;
+	Path root;
+	SshClient ssh;
+	SftpClient sftp;
+	
+	protected void setUp() throws Exception {
+		root = Files.createTempDirectory("pipelining");
+		for(int i = 0; i < FILES; i++) {
+			Files.write(root.resolve("file" + i), new byte[i]);
+		}
+		server = new SshServer("127.0.0.1", 0);
+		server.addHostKey(SshKeyPairGenerator.generateKeyPair(SshKeyPairGenerator.ED25519));
+		server.addAuthenticator(new InMemoryPasswordAuthenticator().addUser("pipelining", "pipelining".toCharArray()));
+		server.setFileFactory(con -> NioFileFactoryBuilder.create().withHome(root).withoutSandbox().build());
+		server.start();
+		proxy = new DelayingProxy(server.getPort(), ONE_WAY_DELAY_MS);
+		ssh = SshClientBuilder.create()
+				.withTarget("127.0.0.1", proxy.getPort())
+				.withUsername("pipelining")
+				.withPassword("pipelining")
+				.build();
+		sftp = SftpClientBuilder.create().withClient(ssh).build();
+		sftp.cd(root.toString());
+	}
+
+	protected void tearDown() throws Exception {
+		sftp.close();
+		ssh.close();
+		proxy.close();
+		server.close();
+		try(Stream<Path> paths = Files.walk(root)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+	
+	public void testPipelinedStat() throws Exception {
+		
+		List<CompletableFuture<SftpFileAttributes>> futures = new ArrayList<>();
+		for(int i = 0; i < FILES; i++) {
+			futures.add(sftp.statAsync("file" + i));
+		}
+		for(int i = 0; i < FILES; i++) {
+			assertEquals(i, futures.get(i).get().size().longValue());
+		}
+	}
+	
+	public void testPipelinedRead() throws Exception {
+		
+		byte[] data = new byte[256 * 1024];
+		new Random(1).nextBytes(data);
+		Files.write(root.resolve("data.bin"), data);
+		
+		int blocksize = 8192;
+		try(SftpHandle handle = sftp.openFileAsync("data.bin", SftpChannel.OPEN_READ).get()) {
+			List<CompletableFuture<byte[]>> blocks = new ArrayList<>();
+			for(int offset = 0; offset < data.length; offset += blocksize) {
+				blocks.add(handle.readAsync(offset, blocksize));
+			}
+			CompletableFuture<byte[]> eof = handle.readAsync(data.length, blocksize);
+			
+			byte[] read = new byte[data.length];
+			for(int i = 0; i < blocks.size(); i++) {
+				byte[] block = blocks.get(i).get();
+				System.arraycopy(block, 0, read, i * blocksize, block.length);
+			}
+			assertTrue(Arrays.equals(data, read));
+			assertNull(eof.get());
+		}
+	}
+	
+	public void testFailedRequestCompletesExceptionally() throws Exception {
+		
+		try {
+			sftp.statAsync("missing").get();
+			fail("Expected the request to fail");
+		} catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof SftpStatusException);
+			assertEquals(SftpStatusException.SSH_FX_NO_SUCH_FILE, ((SftpStatusException)e.getCause()).getStatus());
+		}
+		
+		try {
+			sftp.stat("missing");
+			fail("Expected the request to fail");
+		} catch(SftpStatusException e) {
+			assertEquals(SftpStatusException.SSH_FX_NO_SUCH_FILE, e.getStatus());
+		}
+	}
+	
+	public void testBlockingCallFromCallback() throws Exception {
+		
+		SftpFileAttributes attrs = sftp.statAsync("file1").thenApply((a) -> {
+			try {
+				return sftp.stat("file" + (a.size().longValue() + 1));
+			} catch (SftpStatusException | SshException e) {
+				throw new IllegalStateException(e);
+			}
+		}).get();
+		
+		assertEquals(2, attrs.size().longValue());
+	}
+	
+	public void testConcurrentCallers() throws Exception {
+		
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<Thread> threads = new ArrayList<>();
+		for(int t = 0; t < 8; t++) {
+			int offset = t;
+			Thread thread = new Thread(() -> {
+				try {
+					for(int i = offset; i < FILES; i += 8) {
+						assertEquals(i, sftp.stat("file" + i).size().longValue());
+					}
+				} catch (Throwable e) {
+					failure.set(e);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		
+		if(failure.get() != null) {
+			throw new IOException(failure.get());
+		}
+	}
+	
+	public void testCloseFailsOutstandingRequests() throws Exception {
+		
+		List<CompletableFuture<SftpFileAttributes>> futures = new ArrayList<>();
+		for(int i = 0; i < FILES; i++) {
+			futures.add(sftp.statAsync("file" + i));
+		}
+		sftp.getSubsystemChannel().close();
+		
+		for(CompletableFuture<SftpFileAttributes> future : futures) {
+			try {
+				future.get();
+			} catch(ExecutionException e) {
+			}
+		}
+	}
+}
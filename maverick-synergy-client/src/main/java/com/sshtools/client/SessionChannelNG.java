@@ -92,13 +92,19 @@ public class SessionChannelNG extends AbstractSessionChannel implements SessionC
 		return stderrInputStream;
 	}
 
+	@Override
+	protected void wakeReaders() {
+		super.wakeReaders();
+		extendedData.wakeup();
+	}
+
 	protected boolean checkWindowSpace() {
 		if(Log.isTraceEnabled()) {
 			Log.trace("Checking window space on channel=" + getLocalId() + " window=" + localWindow.getWindowSpace()
 						+ (Objects.nonNull(cache) ? " cached=" + cache.remaining() : "")
 						+ (Objects.nonNull(extendedData) ? " extended=" + extendedData.remaining() : ""));
 		}
-		return localWindow.getWindowSpace().longValue()
+		return localWindow.getWindowSpaceValue()
 				+ (Objects.nonNull(cache) ? cache.remaining() : 0) 
 				+ (Objects.nonNull(extendedData) ? extendedData.remaining() : 0) 
 				<= localWindow.getMinimumWindowSpace().longValue();
@@ -31,6 +31,7 @@ import java.util.Random;
 
 import com.sshtools.client.sftp.SftpClient.SftpClientBuilder;
 import com.sshtools.client.sftp.TransferCancelledException;
+import com.sshtools.client.tasks.FileTransferProgress;
 import com.sshtools.common.permissions.PermissionDeniedException;
 import com.sshtools.common.sftp.SftpStatusException;
 import com.sshtools.common.ssh.ChannelOpenException;
@@ -180,31 +181,58 @@ public class SshReporter {
 			System.out.println("Block size: " + blocksize);
 			System.out.println("Max Requests: " + maxRequests);
 			
+			TransferWindowReport report = new TransferWindowReport();
+			
 	        System.out.println("Uploading " + size + " File");
 	        long started = System.currentTimeMillis();
-	        sftp.put(filename);
+	        sftp.put(filename, report);
 	        long ended = System.currentTimeMillis();
 	        System.out.println("Upload took " + ((double)(ended-started)/ 1000) + " seconds");
 	        
-	        System.out.println("Optimized Block: " + System.getProperty("maverick.write.optimizedBlock"));
-	        System.out.println("Round Trip: " + System.getProperty("maverick.write.blockRoundtrip"));
+	        report.print();
 	        
 	        System.out.println("Downloading " + size + " File");
 	        started = System.currentTimeMillis();
-	        sftp.get(filename);
+	        sftp.get(filename, report);
 	        ended = System.currentTimeMillis();
 	        System.out.println("Download took " + ((double)(ended-started)/ 1000) + " seconds");
+	        
+	        report.print();
 		}
 		
         ssh.disconnect();
         
-        System.out.println("Optimized Block: " + System.getProperty("maverick.read.optimizedBlock"));
-        System.out.println("Final Block: " + System.getProperty("maverick.read.finalBlock"));
-        System.out.println("Round Trip: " + System.getProperty("maverick.read.blockRoundtrip"));
-        
         System.out.println("#####");
 	}
 
+	static class TransferWindowReport implements FileTransferProgress {
+		
+		boolean adjusted;
+		int blockSize;
+		int outstandingRequests;
+		long roundTrip;
+		long bytesPerSecond;
+		
+		@Override
+		public void adjusted(int blockSize, int outstandingRequests, long roundTrip, long bytesPerSecond) {
+			this.adjusted = true;
+			this.blockSize = blockSize;
+			this.outstandingRequests = outstandingRequests;
+			this.roundTrip = roundTrip;
+			this.bytesPerSecond = bytesPerSecond;
+		}
+		
+		void print() {
+			if(adjusted) {
+				System.out.println("Optimized Block: " + blockSize);
+				System.out.println("Outstanding Requests: " + outstandingRequests);
+				System.out.println("Round Trip: " + roundTrip + "us");
+				System.out.println("Bandwidth: " + IOUtils.toByteSize(bytesPerSecond) + "/s");
+			}
+			adjusted = false;
+		}
+	}
+
 	private static void generateLargeFile(String name, String size) throws IOException {
 		
 		System.out.println("Generating " + size + " file");
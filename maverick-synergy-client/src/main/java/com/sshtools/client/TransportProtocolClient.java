@@ -37,6 +37,7 @@ import com.sshtools.synergy.nio.ConnectRequestFuture;
 import com.sshtools.synergy.nio.LicenseException;
 import com.sshtools.synergy.nio.SocketConnection;
 import com.sshtools.synergy.ssh.ConnectionTaskWrapper;
+import com.sshtools.synergy.ssh.PooledPayload;
 import com.sshtools.synergy.ssh.Service;
 import com.sshtools.synergy.ssh.TransportProtocol;
 import com.sshtools.synergy.ssh.components.SshKeyExchange;
@@ -206,6 +207,12 @@ public class TransportProtocolClient extends TransportProtocol<SshClientContext>
 		return false;
 	}
 
+	@Override
+	protected boolean processTransportMessage(int msgid, PooledPayload msg) {
+		// Only channel data is pooled and it is never a transport message
+		return false;
+	}
+
 	public void setActiveService(Service service) {
 		this.activeService = service;
 	}
@@ -0,0 +1,255 @@
+package com.sshtools.client.sftp;
+
+/*-
+ * #%L
+ * Client API
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import com.sshtools.client.tasks.FileTransferProgress;
+import com.sshtools.common.logger.Log;
+
+/**
+ * <p>Controls the block size and number of outstanding requests of an optimized
+ * SFTP transfer, adjusting both as responses arrive in a similar way to TCP
+ * congestion control.</p>
+ *
+ * <p>The window starts small and doubles every round trip until it reaches
+ * the limit imposed by the channel window or the caller. After that it grows by
+ * one request per round trip. When the round trip of a request rises well above
+ * the lowest one seen, requests are queuing at the server rather than filling
+ * the link, so the window is cut back by a quarter, at most once per round trip.
+ * Once the window can shrink no further the block size is halved, and it is
+ * doubled again when the window is pinned at its limit.</p>
+ *
+ * <p>Responses are recorded by the SFTP dispatcher as soon as they arrive, so the
+ * round trip of a request is not inflated by the transfer collecting responses in
+ * order. The first measurement and every adjustment after it are reported to
+ * {@link FileTransferProgress#adjusted(int, int, long, long)} on the transfer
+ * thread when it calls {@link #report()}.</p>
+ */
+public final class AdaptiveTransferWindow {
+
+	static final int INITIAL_WINDOW = 16;
+	static final int MINIMUM_WINDOW = 2;
+	static final long QUEUING_SLACK = 1000000L;
+
+	final FileTransferProgress progress;
+	final long maximumBytesInFlight;
+	final int maximumRequests;
+	final int minimumBlockSize;
+	int maximumBlockSize;
+
+	int blockSize;
+	int window;
+	int threshold;
+	int acknowledged;
+
+	long roundTrip;
+	long minimumRoundTrip = Long.MAX_VALUE;
+	long lastDecrease;
+
+	long bytesPerSecond;
+	long intervalStarted;
+	long intervalBytes;
+
+	boolean changed;
+
+	/**
+	 * Create a window for a transfer.
+	 *
+	 * @param blockSize            the largest block size the transfer may use
+	 * @param minimumBlockSize     the smallest block size the transfer may use
+	 * @param maximumBytesInFlight the most data that may be outstanding at once, usually a
+	 *                             proportion of the channel window
+	 * @param maximumRequests      the most requests that may be outstanding at once, or
+	 *                             zero or less for no limit other than the bytes in flight
+	 * @param progress             notified each time the window is adjusted, may be null
+	 */
+	AdaptiveTransferWindow(int blockSize, int minimumBlockSize, long maximumBytesInFlight, int maximumRequests,
+			FileTransferProgress progress) {
+		this.blockSize = this.maximumBlockSize = blockSize;
+		this.minimumBlockSize = Math.min(minimumBlockSize, blockSize);
+		this.maximumBytesInFlight = Math.max(maximumBytesInFlight, (long) blockSize * MINIMUM_WINDOW);
+		this.maximumRequests = maximumRequests <= 0 ? Integer.MAX_VALUE : Math.max(maximumRequests, 1);
+		this.progress = progress;
+		this.window = Math.min(INITIAL_WINDOW, getMaximumWindow());
+		this.threshold = Integer.MAX_VALUE;
+	}
+
+	/**
+	 * The block size to use for the next request.
+	 *
+	 * @return int
+	 */
+	public synchronized int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * The number of requests that may be outstanding at once.
+	 *
+	 * @return int
+	 */
+	public synchronized int getWindow() {
+		return window;
+	}
+
+	/**
+	 * The most requests that may be outstanding at the current block size.
+	 *
+	 * @return int
+	 */
+	public synchronized int getMaximumWindow() {
+		return (int) Math.max(1, Math.min(maximumRequests, maximumBytesInFlight / blockSize));
+	}
+
+	/**
+	 * The smoothed round trip time of a request in microseconds.
+	 *
+	 * @return long
+	 */
+	public synchronized long getRoundTrip() {
+		return roundTrip / 1000;
+	}
+
+	/**
+	 * The lowest round trip time of a request seen so far in microseconds.
+	 *
+	 * @return long
+	 */
+	public synchronized long getMinimumRoundTrip() {
+		return minimumRoundTrip == Long.MAX_VALUE ? 0 : minimumRoundTrip / 1000;
+	}
+
+	/**
+	 * The rate data was last delivered at in bytes per second.
+	 *
+	 * @return long
+	 */
+	public synchronized long getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * The server returned less data than asked for on a full read, so the block size
+	 * cannot go above what it did return.
+	 */
+	synchronized void limitBlockSize(int blockSize) {
+		maximumBlockSize = Math.max(1, blockSize);
+		if (this.blockSize > maximumBlockSize) {
+			this.blockSize = maximumBlockSize;
+			adjusted();
+		}
+	}
+
+	/**
+	 * Record the response to a request. This is called by the dispatcher thread.
+	 *
+	 * @param bytes the number of bytes the request carried
+	 * @param sent  the value of {@link System#nanoTime()} when the request was sent
+	 */
+	synchronized void completed(int bytes, long sent) {
+
+		long now = System.nanoTime();
+		long rtt = Math.max(1, now - sent);
+		boolean first = roundTrip == 0;
+
+		minimumRoundTrip = Math.min(minimumRoundTrip, rtt);
+		roundTrip = roundTrip == 0 ? rtt : (7 * roundTrip + rtt) / 8;
+
+		if (intervalStarted == 0) {
+			intervalStarted = sent;
+		}
+		intervalBytes += bytes;
+		if (now - intervalStarted >= roundTrip) {
+			bytesPerSecond = intervalBytes * 1000000000L / (now - intervalStarted);
+			intervalStarted = now;
+			intervalBytes = 0;
+		}
+
+		int previousWindow = window;
+		int previousBlockSize = blockSize;
+
+		if (rtt > minimumRoundTrip * 2 + QUEUING_SLACK) {
+			if (now - lastDecrease >= roundTrip) {
+				lastDecrease = now;
+				if (window > MINIMUM_WINDOW) {
+					window = Math.max(MINIMUM_WINDOW, window - window / 4);
+				} else if (blockSize > minimumBlockSize) {
+					blockSize = Math.max(minimumBlockSize, blockSize / 2);
+				}
+				threshold = window;
+				acknowledged = 0;
+			}
+		} else if (window < threshold) {
+			window++;
+		} else if (++acknowledged >= window) {
+			window++;
+			acknowledged = 0;
+		}
+
+		if (window >= getMaximumWindow()) {
+			if (blockSize < maximumBlockSize && (long) window * blockSize * 2 <= maximumBytesInFlight) {
+				blockSize = Math.min(maximumBlockSize, blockSize * 2);
+			}
+			window = getMaximumWindow();
+		}
+
+		if (first || window != previousWindow || blockSize != previousBlockSize) {
+			adjusted();
+		}
+	}
+
+	private void adjusted() {
+		if (Log.isTraceEnabled()) {
+			Log.trace("Transfer window adjusted to {} requests of {} bytes rtt={}us minRtt={}us rate={}/s",
+					window, blockSize, getRoundTrip(), getMinimumRoundTrip(), bytesPerSecond);
+		}
+		changed = true;
+	}
+
+	/**
+	 * Pass the latest adjustment, if any, to the progress. This is called by the
+	 * transfer thread so the progress is never called from the dispatcher.
+	 */
+	void report() {
+		int blockSize, window;
+		long roundTrip, bytesPerSecond;
+		synchronized (this) {
+			if (!changed) {
+				return;
+			}
+			changed = false;
+			blockSize = this.blockSize;
+			window = this.window;
+			roundTrip = getRoundTrip();
+			bytesPerSecond = this.bytesPerSecond;
+		}
+		if (progress != null) {
+			progress.adjusted(blockSize, window, roundTrip, bytesPerSecond);
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "AdaptiveTransferWindow [blockSize=" + blockSize + ", window=" + window + ", roundTrip=" + getRoundTrip()
+				+ "us, minimumRoundTrip=" + getMinimumRoundTrip() + "us, bytesPerSecond=" + bytesPerSecond + "]";
+	}
+}
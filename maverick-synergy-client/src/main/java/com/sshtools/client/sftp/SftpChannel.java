@@ -25,21 +25,27 @@ package com.sshtools.client.sftp;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 import com.sshtools.client.SessionChannelNG;
 import com.sshtools.client.SshClientContext;
 import com.sshtools.client.tasks.AbstractSubsystem;
 import com.sshtools.client.tasks.FileTransferProgress;
-import com.sshtools.client.tasks.Message;
-import com.sshtools.client.tasks.MessageHolder;
 import com.sshtools.common.events.Event;
 import com.sshtools.common.events.EventCodes;
 import com.sshtools.common.events.EventServiceImplementation;
@@ -60,7 +66,6 @@ import com.sshtools.common.util.ByteArrayReader;
 import com.sshtools.common.util.UnsignedInteger32;
 import com.sshtools.common.util.UnsignedInteger64;
 import com.sshtools.synergy.ssh.ByteArrays;
-import com.sshtools.synergy.ssh.PacketPool;
 
 /**
  * Abstract task implementing SFTP operations.
@@ -164,8 +169,13 @@ public class SftpChannel extends AbstractSubsystem {
 	int version = MAX_VERSION;
 	int serverVersion = -1;
 	UnsignedInteger32 requestId = new UnsignedInteger32(0);
-	Map<UnsignedInteger32, SftpMessage> responses = new ConcurrentHashMap<UnsignedInteger32, SftpMessage>();
-	SftpThreadSynchronizer sync = new SftpThreadSynchronizer();
+	final Object requestIdLock = new Object();
+	Map<Integer, CompletableFuture<SftpMessage>> responses = new ConcurrentHashMap<>();
+	volatile SshException failure;
+	volatile Thread dispatcher;
+	
+	private static final MethodHandle OF_VIRTUAL = findOfVirtual();
+	private static final MethodHandle UNSTARTED = findUnstarted();
 	Map<String, byte[]> extensions = new HashMap<String, byte[]>();
 	Map<byte[], SftpHandle> handles = Collections.synchronizedMap(new HashMap<byte[], SftpHandle>());
 
@@ -201,6 +211,7 @@ public class SftpChannel extends AbstractSubsystem {
 	public SftpChannel(SshConnection con) throws SshException {
 		super(con);
 		con.setProperty("sftpVersion", initializeSftp(session));
+		startDispatcher();
 	}
 
 	public int getVersion() {
@@ -238,7 +249,7 @@ public class SftpChannel extends AbstractSubsystem {
 				throw new SshException("Could not start sftp subsystem", SshException.CONNECT_FAILED);
 			}
 			
-			Packet packet = PacketPool.getInstance().getPacket();
+			Packet packet = createPacket();
 			packet.write(SSH_FXP_INIT);
 			packet.writeInt(MAX_VERSION);
 
@@ -517,46 +528,277 @@ public class SftpChannel extends AbstractSubsystem {
 		return extensions.get(name);
 	}
 	
+	/**
+	 * Allocate the id of a new request. Its response is collected until it is claimed
+	 * with {@link #getResponseAsync(UnsignedInteger32)} or discarded with 
+	 * {@link #abandonResponse(UnsignedInteger32)}, and responses to any other id are 
+	 * dropped.
+	 */
 	UnsignedInteger32 nextRequestId() {
-		requestId = UnsignedInteger32.add(requestId, 1);
-		return requestId;
+		UnsignedInteger32 id;
+		synchronized(requestIdLock) {
+			requestId = UnsignedInteger32.add(requestId, 1);
+			id = requestId;
+		}
+		getResponseFuture(id);
+		return id;
+	}
+	
+	/**
+	 * Discard the response to a request that will not be read, releasing it now if 
+	 * it has already arrived or as soon as it does.
+	 * 
+	 * @param requestId
+	 */
+	void abandonResponse(UnsignedInteger32 requestId) {
+		CompletableFuture<SftpMessage> future = responses.remove(requestId.intValue());
+		if(Objects.nonNull(future) && !future.cancel(false)) {
+			future.thenAccept(SftpMessage::release);
+		}
 	}
 	
 	public void close() {
-		responses.clear();
+		failResponses(new SshException("The SFTP channel has been closed", 
+				SshException.CHANNEL_FAILURE));
 		getSession().close();
 	}
 	
-	public SftpMessage getResponse(UnsignedInteger32 requestId) throws SshException {
-
-		SftpMessage msg;
-		MessageHolder holder = new MessageHolder();
-		holder.msg = responses.get(requestId);
-		while (holder.msg == null) {
+	/**
+	 * The dispatcher blocks reading the channel for as long as it is open, so it runs 
+	 * on a thread of its own rather than holding one of the connection's executor 
+	 * threads. This is a virtual thread where the JDK supports them.
+	 */
+	private void startDispatcher() {
+		Thread thread = newDispatcherThread(this::dispatchResponses);
+		thread.setName(String.format("SFTP-%s-%d", con.getUUID(), session.getLocalId()));
+		thread.setDaemon(true);
+		dispatcher = thread;
+		thread.start();
+	}
+	
+	private static Thread newDispatcherThread(Runnable r) {
+		if(Objects.nonNull(OF_VIRTUAL) && Objects.nonNull(UNSTARTED)) {
 			try {
-				// Read the next response message
-				if (sync.requestBlock(requestId, holder)) {
-					try {
-						msg = new SftpMessage(nextMessage());
-						responses.put(new UnsignedInteger32(msg.getMessageId()),msg);
-						if(Log.isTraceEnabled()) {
-							Log.trace("There are " + responses.size() + " SFTP responses waiting to be processed");
-						}
-					} finally {
-						sync.releaseBlock();
-					}
+				return (Thread) UNSTARTED.invoke(OF_VIRTUAL.invoke(), r);
+			} catch (Throwable e) {
+				/**
+				 * Virtual threads are a preview feature on Java 19 and 20
+				 */
+			}
+		}
+		return new Thread(r);
+	}
+	
+	/**
+	 * Thread.ofVirtual() is only available from Java 19, so look it up
+	 * when running on a JDK that has it.
+	 */
+	private static MethodHandle findOfVirtual() {
+		try {
+			return MethodHandles.publicLookup().findStatic(Thread.class, "ofVirtual", 
+					MethodType.methodType(Class.forName("java.lang.Thread$Builder$OfVirtual")));
+		} catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		}
+	}
+	
+	private static MethodHandle findUnstarted() {
+		try {
+			return MethodHandles.publicLookup().findVirtual(Class.forName("java.lang.Thread$Builder"), 
+					"unstarted", MethodType.methodType(Thread.class, Runnable.class));
+		} catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Read every response from the server and complete the future of the 
+	 * request it belongs to. This is the only thread that reads from the channel 
+	 * once the subsystem has been initialized.
+	 */
+	private void dispatchResponses() {
+		try {
+			while(Objects.isNull(failure)) {
+				dispatchResponse();
+			}
+		} catch (SshException ex) {
+			if(Log.isDebugEnabled() && !isClosed()) {
+				Log.debug("SFTP response dispatcher stopped", ex);
+			}
+			failResponses(ex);
+		} catch (Throwable t) {
+			Log.error("SFTP response dispatcher failed", t);
+			failResponses(new SshException(SshException.INTERNAL_ERROR, t));
+		} finally {
+			dispatcher = null;
+		}
+	}
+	
+	private void dispatchResponse() throws SshException {
+		SftpMessage msg;
+		try {
+			msg = new SftpMessage(nextMessage());
+		} catch (IOException ex) {
+			throw new SshException(SshException.INTERNAL_ERROR, ex);
+		}
+		CompletableFuture<SftpMessage> future = responses.get(msg.getMessageId());
+		if(Objects.isNull(future)) {
+			if(Log.isDebugEnabled()) {
+				Log.debug("Dropping SFTP response to request {} that is not outstanding", msg.getMessageId());
+			}
+			msg.release();
+		} else if(!future.complete(msg)) {
+			msg.release();
+		}
+	}
+	
+	private void failResponses(SshException ex) {
+		if(Objects.isNull(failure)) {
+			failure = ex;
+		}
+		for(CompletableFuture<SftpMessage> future : responses.values()) {
+			future.completeExceptionally(failure);
+		}
+	}
+	
+	private CompletableFuture<SftpMessage> getResponseFuture(UnsignedInteger32 requestId) {
+		CompletableFuture<SftpMessage> future = responses.computeIfAbsent(requestId.intValue(), 
+				(id) -> new CompletableFuture<>());
+		if(Objects.nonNull(failure)) {
+			future.completeExceptionally(failure);
+		}
+		return future;
+	}
+	
+	/**
+	 * Run an action on the dispatcher thread as soon as the response to a request 
+	 * arrives, without consuming the response. It must still be collected with 
+	 * {@link #getResponse(UnsignedInteger32)} or discarded with 
+	 * {@link #abandonResponse(UnsignedInteger32)}. The action is not run if the 
+	 * request fails or is abandoned.
+	 * 
+	 * @param requestId
+	 * @param action
+	 */
+	void whenResponded(UnsignedInteger32 requestId, Consumer<SftpMessage> action) {
+		getResponseFuture(requestId).thenAccept(action);
+	}
+	
+	/**
+	 * Get the response to a request as a future. The future is completed by the
+	 * dispatcher as soon as the response arrives, so any number of requests can be 
+	 * outstanding at once. Call this method once only for each request id; dependent
+	 * stages run on the dispatcher thread unless one of the <code>*Async</code> 
+	 * methods of {@link CompletableFuture} is used.
+	 * 
+	 * @param requestId
+	 * @return CompletableFuture<SftpMessage>
+	 */
+	public CompletableFuture<SftpMessage> getResponseAsync(UnsignedInteger32 requestId) {
+		CompletableFuture<SftpMessage> future = getResponseFuture(requestId);
+		return future.whenComplete((msg, ex) -> responses.remove(requestId.intValue(), future));
+	}
+	
+	public SftpMessage getResponse(UnsignedInteger32 requestId) throws SshException {
+		try {
+			return waitFor(getResponseAsync(requestId));
+		} catch (SftpStatusException ex) {
+			throw new SshException(SshException.INTERNAL_ERROR, ex);
+		}
+	}
+	
+	/**
+	 * Wait for a future returned by one of the asynchronous methods and return its
+	 * result, throwing any failure as it would have been thrown by the equivalent 
+	 * synchronous method.
+	 *  
+	 * @param future
+	 * @return T
+	 * @throws SftpStatusException
+	 * @throws SshException
+	 */
+	<T> T waitFor(CompletableFuture<T> future) throws SftpStatusException, SshException {
+		if(Thread.currentThread() == dispatcher) {
+			/**
+			 * A blocking call has been made from a dependent stage of a future, 
+			 * so read responses here until this one arrives.
+			 */
+			while(!future.isDone()) {
+				try {
+					dispatchResponse();
+				} catch(SshException ex) {
+					failResponses(ex);
 				}
-			} catch (InterruptedException e) {
-				close();
-				throw new SshException("The thread was interrupted",
-						SshException.CHANNEL_FAILURE);
-			} catch (IOException ex) {
-				throw new SshException(SshException.INTERNAL_ERROR, ex);
-			} 
+			}
 		}
-
-		return (SftpMessage) responses.remove(requestId);
-
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			close();
+			throw new SshException("The thread was interrupted",
+					SshException.CHANNEL_FAILURE);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if(cause instanceof SftpStatusException) {
+				throw (SftpStatusException) cause;
+			} else if(cause instanceof SshException) {
+				throw (SshException) cause;
+			} else if(cause instanceof SshIOException) {
+				throw ((SshIOException) cause).getRealException();
+			} else if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new SshException(SshException.INTERNAL_ERROR, cause);
+		}
+	}
+	
+	/**
+	 * Send a request and return a future for its response.
+	 * 
+	 * @param requestId
+	 * @param msg
+	 * @return CompletableFuture<SftpMessage>
+	 */
+	CompletableFuture<SftpMessage> sendRequest(UnsignedInteger32 requestId, Packet msg) {
+		CompletableFuture<SftpMessage> response = getResponseAsync(requestId);
+		try {
+			sendMessage(msg);
+		} catch (SshException ex) {
+			getResponseFuture(requestId).completeExceptionally(ex);
+		}
+		return response;
+	}
+	
+	/**
+	 * Parse the response of a request into its result once it arrives, releasing
+	 * the message afterwards.
+	 * 
+	 * @param response
+	 * @param handler
+	 * @return CompletableFuture<T>
+	 */
+	<T> CompletableFuture<T> handleResponse(CompletableFuture<SftpMessage> response, ResponseHandler<T> handler) {
+		return response.thenApply((bar) -> {
+			try {
+				return handler.handle(bar);
+			} catch (SftpStatusException | SshException ex) {
+				throw new CompletionException(ex);
+			} finally {
+				bar.release();
+			}
+		});
+	}
+	
+	static <T> CompletableFuture<T> failedRequest(IOException ex) {
+		if(ex instanceof SshIOException) {
+			return CompletableFuture.failedFuture(((SshIOException)ex).getRealException());
+		}
+		return CompletableFuture.failedFuture(new SshException(ex));
+	}
+	
+	@FunctionalInterface
+	interface ResponseHandler<T> {
+		T handle(SftpMessage bar) throws SftpStatusException, SshException;
 	}
 	
 	/**
@@ -668,6 +910,27 @@ public class SftpChannel extends AbstractSubsystem {
 			throws SftpStatusException, SshException {
 
 		SftpMessage bar = getResponse(requestId);
+		try {
+			checkOKStatus(bar);
+		} finally {
+			bar.release();
+		}
+	}
+
+	/**
+	 * Wait for the status response of a request without blocking.
+	 * 
+	 * @param response
+	 * @return CompletableFuture<Void>
+	 */
+	CompletableFuture<Void> handleStatusResponse(CompletableFuture<SftpMessage> response) {
+		return handleResponse(response, (bar) -> {
+			checkOKStatus(bar);
+			return null;
+		});
+	}
+
+	void checkOKStatus(SftpMessage bar) throws SftpStatusException, SshException {
 		try {
 			if (bar.getType() == SSH_FXP_STATUS) {
 				int status = (int) bar.readInt();
@@ -690,10 +953,7 @@ public class SftpChannel extends AbstractSubsystem {
 			throw ex.getRealException();
 		} catch (IOException ex) {
 			throw new SshException(ex);
-		} finally {
-			bar.release();
 		}
-
 	}
 
 	/**
@@ -727,6 +987,19 @@ public class SftpChannel extends AbstractSubsystem {
 //	@Deprecated(since = "3.1.0", forRemoval = true)
 	public void setAttributes(String path, SftpFileAttributes attrs)
 			throws SftpStatusException, SshException {
+		waitFor(setAttributesAsync(path, attrs));
+	}
+
+	/**
+	 * Sets the attributes of a file without waiting for the response.
+	 * 
+	 * @param path
+	 *            the path to the file.
+	 * @param attrs
+	 *            the file attributes.
+	 * @return CompletableFuture<Void>
+	 */
+	public CompletableFuture<Void> setAttributesAsync(String path, SftpFileAttributes attrs) {
 		try {
 			UnsignedInteger32 requestId = nextRequestId();
 
@@ -736,13 +1009,9 @@ public class SftpChannel extends AbstractSubsystem {
 			msg.writeString(path, CHARSET_ENCODING);
 			msg.write(attrs.toByteArray(getVersion()));
 
-			sendMessage(msg);
-
-			getOKRequestStatus(requestId);
-		} catch (SshIOException ex) {
-			throw ex.getRealException();
+			return handleStatusResponse(sendRequest(requestId, msg));
 		} catch (IOException ex) {
-			throw new SshException(ex, SshException.INTERNAL_ERROR);
+			return failedRequest(ex);
 		}
 	}
 
@@ -1292,22 +1561,28 @@ public class SftpChannel extends AbstractSubsystem {
 	 */
 	public String getAbsolutePath(String path) throws SftpStatusException,
 			SshException {
+		return waitFor(getAbsolutePathAsync(path));
+	}
+
+	/**
+	 * Get the absolute path of a file without waiting for the response.
+	 * 
+	 * @param path
+	 * @return CompletableFuture<String>
+	 */
+	public CompletableFuture<String> getAbsolutePathAsync(String path) {
 		try {
 			UnsignedInteger32 requestId = nextRequestId();
 			Packet msg = createPacket();
 			msg.write(SSH_FXP_REALPATH);
 			msg.writeInt(requestId.longValue());
 			msg.writeString(path, CHARSET_ENCODING);
-			sendMessage(msg);
 
-			return getSingleFileResponse(getResponse(requestId), "SSH_FXP_REALPATH").getAbsolutePath();
-			
-		} catch (SshIOException ex) {
-			throw ex.getRealException();
+			return handleResponse(sendRequest(requestId, msg), 
+					(bar) -> getSingleFileResponse(bar, "SSH_FXP_REALPATH").getAbsolutePath());
 		} catch (IOException ex) {
-			throw new SshException(ex);
+			return failedRequest(ex);
 		}
-
 	}
 	
 	/**
@@ -1517,6 +1792,30 @@ public class SftpChannel extends AbstractSubsystem {
 	 */
 	public SftpHandle openFile(String absolutePath, int flags,
 			SftpFileAttributes attrs) throws SftpStatusException, SshException {
+		return waitFor(openFileAsync(absolutePath, flags, attrs));
+	}
+
+	/**
+	 * Open a file without waiting for the response.
+	 * 
+	 * @param absolutePath
+	 * @param flags
+	 * @return CompletableFuture<SftpHandle>
+	 */
+	public CompletableFuture<SftpHandle> openFileAsync(String absolutePath, int flags) {
+		return openFileAsync(absolutePath, flags, null);
+	}
+
+	/**
+	 * Open a file without waiting for the response.
+	 * 
+	 * @param absolutePath
+	 * @param flags
+	 * @param attrs
+	 * @return CompletableFuture<SftpHandle>
+	 */
+	public CompletableFuture<SftpHandle> openFileAsync(String absolutePath, int flags,
+			SftpFileAttributes attrs) {
 
 		if (version >= 5) {
 
@@ -1585,7 +1884,7 @@ public class SftpChannel extends AbstractSubsystem {
 				}
 			}
 			
-			return openFileVersion5(absolutePath, newFlags, accessFlags, attrs);
+			return openFileVersion5Async(absolutePath, newFlags, accessFlags, attrs);
 		} else {
 			if (attrs == null) {
 				attrs = SftpFileAttributesBuilder.ofType(
@@ -1602,23 +1901,9 @@ public class SftpChannel extends AbstractSubsystem {
 				msg.writeInt(flags);
 				msg.write(attrs.toByteArray(getVersion()));
 
-				sendMessage(msg);
-
-
-				SftpFile file = new SftpFile(absolutePath, getAttributes(absolutePath), this, null);
-				SftpHandle handle = file.handle(getHandleResponse(requestId));
-
-				EventServiceImplementation.getInstance().fireEvent(
-						(new Event(this,
-								EventCodes.EVENT_SFTP_FILE_OPENED, true))
-								.addAttribute(
-										EventCodes.ATTRIBUTE_FILE_NAME,
-										file.getAbsolutePath()));
-				return handle;
-			} catch (SshIOException ex) {
-				throw ex.getRealException();
+				return openFile(absolutePath, sendRequest(requestId, msg));
 			} catch (IOException ex) {
-				throw new SshException(ex);
+				return failedRequest(ex);
 			}
 		}
 	}
@@ -1626,6 +1911,11 @@ public class SftpChannel extends AbstractSubsystem {
 	public SftpHandle openFileVersion5(String absolutePath, int flags,
 			int accessFlags, SftpFileAttributes attrs)
 			throws SftpStatusException, SshException {
+		return waitFor(openFileVersion5Async(absolutePath, flags, accessFlags, attrs));
+	}
+
+	public CompletableFuture<SftpHandle> openFileVersion5Async(String absolutePath, int flags,
+			int accessFlags, SftpFileAttributes attrs) {
 
 		if (attrs == null) {
 			attrs = SftpFileAttributesBuilder.ofType(
@@ -1643,22 +1933,27 @@ public class SftpChannel extends AbstractSubsystem {
 			msg.writeInt(flags);
 			msg.write(attrs.toByteArray(getVersion()));
 
-			sendMessage(msg);
-
-			SftpFile file = new SftpFile(absolutePath, getAttributes(absolutePath), this, null);
-			SftpHandle handle = file.handle(getHandleResponse(requestId));
+			return openFile(absolutePath, sendRequest(requestId, msg));
+		} catch (IOException ex) {
+			return failedRequest(ex);
+		}
+	}
 
+	/**
+	 * Pipeline a stat of the file behind its open request and create the handle 
+	 * once both responses have arrived.
+	 */
+	private CompletableFuture<SftpHandle> openFile(String absolutePath, CompletableFuture<SftpMessage> response) {
+		CompletableFuture<SftpFileAttributes> attrs = getAttributesAsync(absolutePath);
+		return handleResponse(response, this::getHandleResponse).thenCombine(attrs, (handle, fileAttrs) -> {
+			SftpFile file = new SftpFile(absolutePath, fileAttrs, this, null);
 			EventServiceImplementation.getInstance().fireEvent(
 					(new Event(this, EventCodes.EVENT_SFTP_FILE_OPENED,
 							true)).addAttribute(
 							EventCodes.ATTRIBUTE_FILE_NAME,
 							file.getAbsolutePath()));
-			return handle;
-		} catch (SshIOException ex) {
-			throw ex.getRealException();
-		} catch (IOException ex) {
-			throw new SshException(ex);
-		}
+			return file.handle(handle);
+		});
 	}
 
 	/**
@@ -1752,6 +2047,16 @@ public class SftpChannel extends AbstractSubsystem {
 	 */
 	public void removeDirectory(String path) throws SftpStatusException,
 			SshException {
+		waitFor(removeDirectoryAsync(path));
+	}
+
+	/**
+	 * Remove an empty directory without waiting for the response.
+	 * 
+	 * @param path
+	 * @return CompletableFuture<Void>
+	 */
+	public CompletableFuture<Void> removeDirectoryAsync(String path) {
 		try {
 			UnsignedInteger32 requestId = nextRequestId();
 			Packet msg = createPacket();
@@ -1759,18 +2064,14 @@ public class SftpChannel extends AbstractSubsystem {
 			msg.writeInt(requestId.longValue());
 			msg.writeString(path, CHARSET_ENCODING);
 
-			sendMessage(msg);
-
-			getOKRequestStatus(requestId);
-		} catch (SshIOException ex) {
-			throw ex.getRealException();
+			return handleStatusResponse(sendRequest(requestId, msg)).thenRun(() -> 
+				EventServiceImplementation.getInstance().fireEvent(
+						(new Event(this, EventCodes.EVENT_SFTP_DIRECTORY_DELETED,
+								true)).addAttribute(
+								EventCodes.ATTRIBUTE_DIRECTORY_PATH, path)));
 		} catch (IOException ex) {
-			throw new SshException(ex);
+			return failedRequest(ex);
 		}
-		EventServiceImplementation.getInstance().fireEvent(
-				(new Event(this, EventCodes.EVENT_SFTP_DIRECTORY_DELETED,
-						true)).addAttribute(
-						EventCodes.ATTRIBUTE_DIRECTORY_PATH, path));
 	}
 
 	/**
@@ -1782,6 +2083,16 @@ public class SftpChannel extends AbstractSubsystem {
 	 */
 	public void removeFile(String filename) throws SftpStatusException,
 			SshException {
+		waitFor(removeFileAsync(filename));
+	}
+
+	/**
+	 * Remove a file without waiting for the response.
+	 * 
+	 * @param filename
+	 * @return CompletableFuture<Void>
+	 */
+	public CompletableFuture<Void> removeFileAsync(String filename) {
 		try {
 			UnsignedInteger32 requestId = nextRequestId();
 			Packet msg = createPacket();
@@ -1789,21 +2100,17 @@ public class SftpChannel extends AbstractSubsystem {
 			msg.writeInt(requestId.longValue());
 			msg.writeString(filename, CHARSET_ENCODING);
 
-			sendMessage(msg);
-
-			getOKRequestStatus(requestId);
-		} catch (SshIOException ex) {
-			throw ex.getRealException();
+			return handleStatusResponse(sendRequest(requestId, msg)).thenRun(() -> 
+				EventServiceImplementation.getInstance()
+						.fireEvent(
+								(new Event(this,
+										EventCodes.EVENT_SFTP_FILE_DELETED, true))
+										.addAttribute(
+												EventCodes.ATTRIBUTE_FILE_NAME,
+												filename)));
 		} catch (IOException ex) {
-			throw new SshException(ex);
+			return failedRequest(ex);
 		}
-		EventServiceImplementation.getInstance()
-				.fireEvent(
-						(new Event(this,
-								EventCodes.EVENT_SFTP_FILE_DELETED, true))
-								.addAttribute(
-										EventCodes.ATTRIBUTE_FILE_NAME,
-										filename));
 	}
 
 	/**
@@ -1820,12 +2127,24 @@ public class SftpChannel extends AbstractSubsystem {
 	}
 	public void renameFile(String oldpath, String newpath, int flags)
 			throws SftpStatusException, SshException {
+		waitFor(renameFileAsync(oldpath, newpath, flags));
+	}
+
+	/**
+	 * Rename an existing file without waiting for the response.
+	 * 
+	 * @param oldpath
+	 * @param newpath
+	 * @param flags
+	 * @return CompletableFuture<Void>
+	 */
+	public CompletableFuture<Void> renameFileAsync(String oldpath, String newpath, int flags) {
 
 		if (version < 2) {
-			throw new SftpStatusException(
+			return CompletableFuture.failedFuture(new SftpStatusException(
 					SftpStatusException.SSH_FX_OP_UNSUPPORTED,
 					"Renaming files is not supported by the server SFTP version "
-							+ String.valueOf(version));
+							+ String.valueOf(version)));
 		}
 		try {
 			UnsignedInteger32 requestId = nextRequestId();
@@ -1838,25 +2157,22 @@ public class SftpChannel extends AbstractSubsystem {
 			if(version >= 5) {
 				msg.writeInt(flags);
 			}
-			sendMessage(msg);
 
-			getOKRequestStatus(requestId);
-		} catch (SshIOException ex) {
-			throw ex.getRealException();
+			return handleStatusResponse(sendRequest(requestId, msg)).thenRun(() ->
+				EventServiceImplementation
+						.getInstance()
+						.fireEvent(
+								(new Event(this,
+										EventCodes.EVENT_SFTP_FILE_RENAMED, true))
+										.addAttribute(
+												EventCodes.ATTRIBUTE_FILE_NAME,
+												oldpath)
+										.addAttribute(
+												EventCodes.ATTRIBUTE_FILE_NEW_NAME,
+												newpath)));
 		} catch (IOException ex) {
-			throw new SshException(ex);
+			return failedRequest(ex);
 		}
-		EventServiceImplementation
-				.getInstance()
-				.fireEvent(
-						(new Event(this,
-								EventCodes.EVENT_SFTP_FILE_RENAMED, true))
-								.addAttribute(
-										EventCodes.ATTRIBUTE_FILE_NAME,
-										oldpath)
-								.addAttribute(
-										EventCodes.ATTRIBUTE_FILE_NEW_NAME,
-										newpath));
 	}
 
 	/**
@@ -1887,6 +2203,32 @@ public class SftpChannel extends AbstractSubsystem {
 
 	protected SftpFileAttributes getAttributes(String path, int messageId)
 			throws SftpStatusException, SshException {
+		return waitFor(getAttributesAsync(path, messageId));
+	}
+
+	/**
+	 * Get the attributes of a file without waiting for the response. This method 
+	 * follows symbolic links.
+	 * 
+	 * @param path
+	 * @return CompletableFuture<SftpFileAttributes>
+	 */
+	public CompletableFuture<SftpFileAttributes> getAttributesAsync(String path) {
+		return getAttributesAsync(path, SSH_FXP_STAT);
+	}
+
+	/**
+	 * Get the attributes of a file without waiting for the response. This method 
+	 * does not follow symbolic links.
+	 * 
+	 * @param path
+	 * @return CompletableFuture<SftpFileAttributes>
+	 */
+	public CompletableFuture<SftpFileAttributes> getLinkAttributesAsync(String path) {
+		return getAttributesAsync(path, SSH_FXP_LSTAT);
+	}
+
+	protected CompletableFuture<SftpFileAttributes> getAttributesAsync(String path, int messageId) {
 		try {
 			UnsignedInteger32 requestId = nextRequestId();
 			Packet msg = createPacket();
@@ -1912,18 +2254,9 @@ public class SftpChannel extends AbstractSubsystem {
 				msg.writeInt(flags);
 			}
 
-			sendMessage(msg);
-
-			SftpMessage bar = getResponse(requestId);
-			try {
-				return extractAttributes(bar);
-			} finally {
-				bar.release();
-			}
-		} catch (SshIOException ex) {
-			throw ex.getRealException();
+			return handleResponse(sendRequest(requestId, msg), this::extractAttributes);
 		} catch (IOException ex) {
-			throw new SshException(ex);
+			return failedRequest(ex);
 		}
 	}
 
@@ -1996,6 +2329,17 @@ public class SftpChannel extends AbstractSubsystem {
 	 */
 	public void makeDirectory(String path, SftpFileAttributes attrs)
 			throws SftpStatusException, SshException {
+		waitFor(makeDirectoryAsync(path, attrs));
+	}
+
+	/**
+	 * Make a directory without waiting for the response.
+	 * 
+	 * @param path
+	 * @param attrs
+	 * @return CompletableFuture<Void>
+	 */
+	public CompletableFuture<Void> makeDirectoryAsync(String path, SftpFileAttributes attrs) {
 		try {
 			UnsignedInteger32 requestId = nextRequestId();
 
@@ -2005,13 +2349,9 @@ public class SftpChannel extends AbstractSubsystem {
 			msg.writeString(path, CHARSET_ENCODING);
 			msg.write(attrs.toByteArray(getVersion()));
 
-			sendMessage(msg);
-
-			getOKRequestStatus(requestId);
-		} catch (SshIOException ex) {
-			throw ex.getRealException();
+			return handleStatusResponse(sendRequest(requestId, msg));
 		} catch (IOException ex) {
-			throw new SshException(ex);
+			return failedRequest(ex);
 		}
 	}
 	
@@ -2156,39 +2496,9 @@ public class SftpChannel extends AbstractSubsystem {
 	   * @throws IOException
 	   */
 	  protected Packet createPacket() throws IOException {
-	    return PacketPool.getInstance().getPacket();
+	    return con.getContext().getPacketPool().getPacket();
 	  }
 	  
-	  class SftpThreadSynchronizer {
-
-			boolean isBlocking = false;
-
-			public boolean requestBlock(UnsignedInteger32 requestId,
-					MessageHolder holder) throws InterruptedException {
-
-				if (responses.containsKey(requestId)) {
-					holder.msg = (Message) responses.get(requestId);
-					return false;
-				}
-
-				synchronized (this) {
-					boolean canBlock = !isBlocking;
-					if (canBlock) {
-						isBlocking = true;
-					} else {
-						wait();
-					}
-					return canBlock;
-				}
-			}
-
-			public synchronized void releaseBlock() {
-				isBlocking = false;
-				notifyAll();
-			}
-
-		}
-
 	public boolean isClosed() {
 		return getSession().isClosed();
 	}
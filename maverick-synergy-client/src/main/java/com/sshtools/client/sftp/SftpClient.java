@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Path;
@@ -43,14 +44,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
 
 import com.sshtools.client.SshClient;
 import com.sshtools.client.tasks.FileTransferProgress;
@@ -65,6 +71,7 @@ import com.sshtools.common.sftp.PosixPermissions;
 import com.sshtools.common.sftp.PosixPermissions.PosixPermissionsBuilder;
 import com.sshtools.common.sftp.RegexSftpFileFilter;
 import com.sshtools.common.sftp.SftpFileAttributes;
+import com.sshtools.common.sftp.SftpFileAttributes.SftpFileAttributesBuilder;
 import com.sshtools.common.sftp.SftpFileFilter;
 import com.sshtools.common.sftp.SftpStatusException;
 import com.sshtools.common.ssh.SshConnection;
@@ -96,6 +103,7 @@ public class SftpClient implements Closeable {
 		private Optional<Integer> blockSize = Optional.empty();
 		private Optional<Integer> asyncRequests = Optional.empty();
 		private int bufferSize = DEFAULT_BUFFER_SIZE;
+		private int transferChannels = 1;
 		private Optional<Path> localHome = Optional.empty();
 		private boolean localHomeSandbox;
 		private Set<String> customRoots = new LinkedHashSet<>();
@@ -284,6 +292,22 @@ public class SftpClient implements Closeable {
 			return this;
 		}
 		
+		/**
+		 * Set the number of SFTP channels used to transfer files concurrently when copying
+		 * directories with {@link SftpClient#putLocalDirectory(String, String, boolean, boolean, boolean, FileTransferProgress)}
+		 * and {@link SftpClient#getRemoteDirectory(String, String, boolean, boolean, boolean, FileTransferProgress)}.
+		 * The default of 1 transfers each file in turn on the client's own channel.
+		 * 
+		 * @param transferChannels transfer channels
+		 */
+		public SftpClientBuilder withTransferChannels(int transferChannels) {
+			if (transferChannels < 1) {
+				throw new IllegalArgumentException("Transfer channels must be greater or equal to 1");
+			}
+			this.transferChannels = transferChannels;
+			return this;
+		}
+		
 		/**
 		 * Build a new {@link SftpClient}.
 		 * 
@@ -305,6 +329,7 @@ public class SftpClient implements Closeable {
 	private int blocksize;
 	private int asyncRequests;
 	private int buffersize;
+	private int transferChannels = 1;
 
 	// Default permissions is determined by default_permissions ^ umask
 	int umask = 0022;
@@ -360,12 +385,40 @@ public class SftpClient implements Closeable {
 		this.asyncRequests = builder.asyncRequests.orElse(-1);
 		this.buffersize = builder.bufferSize;
 		this.blocksize = builder.blockSize.orElse(-1);
+		this.transferChannels = builder.transferChannels;
 		this.sftp = new SftpChannel(builder.connection.orElseThrow(() -> new IllegalStateException("Either an existing connection or an existing client must be provided.")));
 		this.lcwd = fileFactory.getFile(builder.localPath.orElse(""));
 		this.cwd = builder.remotePath.orElse("");
 		this.customRoots.addAll(builder.customRoots);
 	}
 
+	/**
+	 * Open another channel on the same connection with the same settings as an
+	 * existing client, used to transfer files concurrently.
+	 */
+	SftpClient(SftpClient client) throws SshException, PermissionDeniedException, IOException {
+		this.sftp = new SftpChannel(client.sftp.getConnection());
+		this.lcwd = client.lcwd;
+		this.cwd = client.cwd;
+		this.blocksize = client.blocksize;
+		this.asyncRequests = client.asyncRequests;
+		this.buffersize = client.buffersize;
+		this.umask = client.umask;
+		this.applyUmask = client.applyUmask;
+		this.outputEOL = client.outputEOL;
+		this.inputEOL = client.inputEOL;
+		this.stripEOL = client.stripEOL;
+		this.forceRemoteEOL = client.forceRemoteEOL;
+		this.transferMode = client.transferMode;
+		this.customRoots.addAll(client.customRoots);
+		this.RegExpSyntax = client.RegExpSyntax;
+		try {
+			this.sftp.setCharsetEncoding(client.sftp.getCharsetEncoding());
+		} catch (UnsupportedEncodingException e) {
+			throw new SshException(e);
+		}
+	}
+
 	@Deprecated(since = "3.1.0", forRemoval =  true)
 	public SftpClient(SshConnection con) throws SshException, PermissionDeniedException, IOException {
 		this(con, new DirectFileFactory(new java.io.File(System.getProperty("user.home"))));
@@ -535,6 +588,31 @@ public class SftpClient implements Closeable {
 
 	}
 
+	/**
+	 * Set the number of SFTP channels used to transfer files concurrently when
+	 * copying directories. The default of 1 transfers each file in turn on this
+	 * client's own channel. When greater than 1, any {@link FileTransferProgress}
+	 * passed to the directory methods is called from several threads at once.
+	 * 
+	 * @param transferChannels transfer channels
+	 */
+	public void setTransferChannels(int transferChannels) {
+		if (transferChannels < 1) {
+			throw new IllegalArgumentException("Transfer channels must be greater or equal to 1");
+		}
+		this.transferChannels = transferChannels;
+	}
+
+	/**
+	 * Get the number of SFTP channels used to transfer files concurrently when
+	 * copying directories.
+	 * 
+	 * @return int
+	 */
+	public int getTransferChannels() {
+		return transferChannels;
+	}
+
 	/**
 	 * Set the maximum number of asynchronous requests that are outstanding at any
 	 * one time. This setting is used to optimize the reading and writing of files
@@ -610,6 +688,25 @@ public class SftpClient implements Closeable {
 		return sftp.openFile(resolveRemotePath(fileName), flags);
 	}
 
+	/**
+	 * Open a file without waiting for the response. Any number of files may be 
+	 * opened at once; the future completes when the server has responded.
+	 * 
+	 * @param fileName
+	 * @param flags
+	 * @return CompletableFuture<SftpHandle>
+	 */
+	public CompletableFuture<SftpHandle> openFileAsync(String fileName, int flags) {
+		try {
+			if (transferMode == MODE_TEXT && sftp.getVersion() > 3) {
+				return sftp.openFileAsync(resolveRemotePath(fileName), flags | SftpChannel.OPEN_TEXT);
+			}
+			return sftp.openFileAsync(resolveRemotePath(fileName), flags);
+		} catch (SftpStatusException | SshException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
 	public SftpHandle openDirectory(String path) throws SftpStatusException, SshException {
 		return sftp.openDirectory(path);
 	}
@@ -2736,6 +2833,42 @@ public class SftpClient implements Closeable {
 		return sftp.getLinkAttributes(actual);
 	}
 
+	/**
+	 * <p>
+	 * Returns the attributes of the file from the remote computer without waiting
+	 * for the response, so that many files may be examined at once.
+	 * </p>
+	 * 
+	 * @param path the path of the file on the remote computer
+	 * 
+	 * @return a future that completes with the attributes
+	 */
+	public CompletableFuture<SftpFileAttributes> statAsync(String path) {
+		try {
+			return sftp.getAttributesAsync(resolveRemotePath(path));
+		} catch (SftpStatusException | SshException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns the attributes of the link from the remote computer without waiting
+	 * for the response.
+	 * </p>
+	 * 
+	 * @param path the path of the file on the remote computer
+	 * 
+	 * @return a future that completes with the attributes
+	 */
+	public CompletableFuture<SftpFileAttributes> statLinkAsync(String path) {
+		try {
+			return sftp.getLinkAttributesAsync(resolveRemotePath(path));
+		} catch (SftpStatusException | SshException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
 	/**
 	 * Get the absolute path for a file.
 	 * 
@@ -3055,104 +3188,127 @@ public class SftpClient implements Closeable {
 			boolean commit, FileTransferProgress progress) throws IOException, SftpStatusException, SshException,
 			TransferCancelledException, PermissionDeniedException {
 		DirectoryOperation op = new DirectoryOperation();
+		try (TransferPool pool = new TransferPool(this, commit ? transferChannels : 1)) {
+			putLocalDirectory(localdir, remotedir, recurse, sync, commit, pool.serialise(progress), op, pool);
+			pool.await();
+		}
+		return op;
+	}
+
+	private void putLocalDirectory(String localdir, String remotedir, boolean recurse, boolean sync,
+			boolean commit, FileTransferProgress progress, DirectoryOperation op, TransferPool pool)
+			throws IOException, SftpStatusException, SshException, TransferCancelledException,
+			PermissionDeniedException {
 
 		AbstractFile local = resolveLocalPath(localdir);
 
 		remotedir = resolveRemotePath(remotedir);
 		remotedir += (remotedir.endsWith("/") ? "" : "/");
 
-		// Setup the remote directory if were committing
-		if (commit) {
-			try {
-				sftp.getAttributes(remotedir);
-			} catch (SftpStatusException ex) {
-				mkdirs(remotedir);
+		/**
+		 * List the remote directory once and compare every local file against the 
+		 * listing, rather than requesting the attributes of each file in turn.
+		 */
+		Map<String, SftpFile> remoteFiles = new LinkedHashMap<>();
+		try {
+			for (SftpFile file : ls(remotedir)) {
+				remoteFiles.put(file.getFilename(), file);
+			}
+		} catch (SftpStatusException ex) {
+			// Setup the remote directory if were committing
+			if (commit) {
+				try {
+					sftp.getAttributes(remotedir);
+				} catch (SftpStatusException ex2) {
+					mkdirs(remotedir);
+				}
 			}
 		}
 
 		// List the local files and verify against the remote server
 		AbstractFile[] sources = listFiles(local);
 
+		/**
+		 * The listing has the attributes of any links themselves, so request the 
+		 * attributes of the files they point to all at once.
+		 */
+		Map<String, CompletableFuture<SftpFileAttributes>> linkedFiles = new HashMap<>();
+		for (AbstractFile source : sources) {
+			SftpFile file = remoteFiles.get(source.getName());
+			if (file != null && file.isLink() && source.isFile()) {
+				linkedFiles.put(source.getName(), sftp.getAttributesAsync(file.getAbsolutePath()));
+			}
+		}
+
+		Set<String> names = new HashSet<>();
+
 		for (AbstractFile source : sources) {
 
 			if (source.isDirectory() && !source.getName().equals(".") && !source.getName().equals("..")) {
 				if (recurse) {
-					// File f = new File(local, source.getName());
-					op.addDirectoryOperation(putLocalDirectory(source.getAbsolutePath(), remotedir + source.getName(),
-							recurse, sync, commit, progress), source);
+					names.add(source.getName());
+					putLocalDirectory(source.getAbsolutePath(), remotedir + source.getName(), recurse, sync, commit,
+							progress, op, pool);
+					op.recursedDirectories.addElement(source);
 				}
 			} else if (source.isFile()) {
 
-				boolean newFile = false;
-				boolean unchangedFile = false;
+				names.add(source.getName());
 
-				try {
-					SftpFileAttributes attrs = sftp.getAttributes(remotedir + source.getName());
-					unchangedFile = ((source.length() == attrs.getSize().longValue())
-							&& ((source.lastModified() / 1000) == attrs.getModifiedTime().longValue()));
-
-					System.out.println(source.getName() + " is " + (unchangedFile ? "unchanged" : "changed"));
-
-				} catch (SftpStatusException ex) {
-					System.out.println(source.getName() + " is new");
-					newFile = true;
+				SftpFileAttributes attrs = null;
+				if (linkedFiles.containsKey(source.getName())) {
+					try {
+						attrs = sftp.waitFor(linkedFiles.get(source.getName()));
+					} catch (SftpStatusException ex) {
+					}
+				} else if (remoteFiles.containsKey(source.getName())) {
+					attrs = remoteFiles.get(source.getName()).attributes();
 				}
 
-				try {
-
-					if (commit && !unchangedFile) { // BPS - Added
-						// !unChangedFile test.
-						// Why would want to
-						// copy that has been
-						// determined to be
-						// unchanged?
-						put(source.getAbsolutePath(), remotedir + source.getName(), progress);
-						SftpFileAttributes attrs = sftp.getAttributes(remotedir + source.getName());
-						attrs.setTimes(new UnsignedInteger64(source.lastModified() / 1000),
-								new UnsignedInteger64(source.lastModified() / 1000));
-						sftp.setAttributes(remotedir + source.getName(), attrs);
-					}
+				boolean newFile = attrs == null;
+				boolean unchangedFile = !newFile && ((source.length() == attrs.getSize().longValue())
+						&& ((source.lastModified() / 1000) == attrs.getModifiedTime().longValue()));
 
-					if (unchangedFile) {
-						op.addUnchangedFile(source);
-					} else if (!newFile) {
-						op.addUpdatedFile(source);
-					} else {
-						op.addNewFile(source);
-					}
+				if (Log.isDebugEnabled()) {
+					Log.debug("{} is {}", source.getName(), newFile ? "new" : (unchangedFile ? "unchanged" : "changed"));
+				}
 
-				} catch (SftpStatusException ex) {
-					op.addFailedTransfer(source, ex);
+				if (commit && !unchangedFile) {
+					String path = remotedir + source.getName();
+					pool.submit((client) -> {
+						try {
+							client.put(source.getAbsolutePath(), path, progress);
+							client.sftp.setAttributes(path,
+									SftpFileAttributesBuilder.ofType(SftpFileAttributes.SSH_FILEXFER_TYPE_REGULAR,
+											client.sftp.getCharsetEncoding())
+									.withLastAccessTime(source.lastModified())
+									.withLastModifiedTime(source.lastModified()).build());
+							addPutFile(op, source, newFile, unchangedFile);
+						} catch (SftpStatusException ex) {
+							op.addFailedTransfer(source, ex);
+						}
+					});
+				} else {
+					addPutFile(op, source, newFile, unchangedFile);
 				}
 			}
 		}
 
 		if (sync) {
-			// List the contents of the new remote directory and remove any
-			// files/directories that were not updated
+			// Remove any files/directories in the remote listing that do not
+			// exist locally
 			try {
-				SftpFile[] files = ls(remotedir);
-				SftpFile file;
-
-				AbstractFile f;
+				for (SftpFile file : remoteFiles.values()) {
 
-				for (int i = 0; i < files.length; i++) {
-					file = files[i];
-
-					// Create a local file object to test for its existence
-					f = local.resolveFile(file.getFilename());
-
-					if (!op.containsFile(f) && !file.getFilename().equals(".") && !file.getFilename().equals("..")) {
+					if (!names.contains(file.getFilename()) && !file.getFilename().equals(".")
+							&& !file.getFilename().equals("..")) {
 						op.addDeletedFile(file);
 
 						if (commit) {
 							if (file.isDirectory()) {
 								// Recurse through the directory, deleting stuff
 								recurseMarkForDeletion(file, op);
-
-								if (commit) {
-									rm(file.getAbsolutePath(), true, true);
-								}
+								rm(file.getAbsolutePath(), true, true);
 							} else if (file.isFile()) {
 								rm(file.getAbsolutePath());
 							}
@@ -3163,9 +3319,16 @@ public class SftpClient implements Closeable {
 				// Ignore since if it does not exist we cant delete it
 			}
 		}
+	}
 
-		// Return the operation details
-		return op;
+	private void addPutFile(DirectoryOperation op, AbstractFile source, boolean newFile, boolean unchangedFile) {
+		if (unchangedFile) {
+			op.addUnchangedFile(source);
+		} else if (!newFile) {
+			op.addUpdatedFile(source);
+		} else {
+			op.addNewFile(source);
+		}
 	}
 
 	private String[] getChildNames(AbstractFile local) throws IOException, PermissionDeniedException {
@@ -3296,24 +3459,23 @@ public class SftpClient implements Closeable {
 			TransferCancelledException, PermissionDeniedException {
 		// Create an operation object to hold the information
 		DirectoryOperation op = new DirectoryOperation();
+		try (TransferPool pool = new TransferPool(this, commit ? transferChannels : 1)) {
+			getRemoteDirectory(remotedir, localdir, recurse, sync, commit, pool.serialise(progress), op, pool);
+			pool.await();
+		}
+		return op;
+	}
+
+	private void getRemoteDirectory(String remotedir, String localdir, boolean recurse, boolean sync,
+			boolean commit, FileTransferProgress progress, DirectoryOperation op, TransferPool pool)
+			throws IOException, SftpStatusException, SshException, TransferCancelledException,
+			PermissionDeniedException {
 
 		// Record the previous working directoies
 		String pwd = pwd();
 		// String lpwd = lpwd();
 		cd(remotedir);
 
-		// Setup the local cwd
-		String base = remotedir;
-
-		if (base.endsWith("/"))
-			base = base.substring(0, base.length() - 1);
-
-		int idx = base.lastIndexOf('/');
-
-		if (idx != -1) {
-			base = base.substring(idx + 1);
-		}
-
 		AbstractFile local = resolveLocalPath(localdir);
 
 		if (!local.exists() && commit) {
@@ -3323,17 +3485,21 @@ public class SftpClient implements Closeable {
 		SftpFile[] files = ls();
 		SftpFile file;
 		AbstractFile f;
+		Set<String> names = new HashSet<>();
 
 		for (int i = 0; i < files.length; i++) {
 			file = files[i];
 
 			if (file.isDirectory() && !file.getFilename().equals(".") && !file.getFilename().equals("..")) {
 				if (recurse) {
+					names.add(file.getFilename());
 					f = local.resolveFile(file.getFilename());
-					op.addDirectoryOperation(getRemoteDirectory(file.getFilename(),
-							local.getAbsolutePath() + "/" + file.getFilename(), recurse, sync, commit, progress), f);
+					getRemoteDirectory(file.getFilename(), local.getAbsolutePath() + "/" + file.getFilename(),
+							recurse, sync, commit, progress, op, pool);
+					op.recursedDirectories.addElement(f);
 				}
 			} else if (file.isFile()) {
+				names.add(file.getFilename());
 				f = local.resolveFile(file.getFilename());
 
 				if (f.exists() && (f.length() == file.getAttributes().getSize().longValue())
@@ -3348,42 +3514,44 @@ public class SftpClient implements Closeable {
 					continue;
 				}
 
-				try {
-
-					if (f.exists()) {
-						if (commit) {
-							op.addUpdatedFile(f);
-						} else {
-							op.addUpdatedFile(file);
-						}
+				if (f.exists()) {
+					if (commit) {
+						op.addUpdatedFile(f);
 					} else {
-						if (commit) {
-							op.addNewFile(f);
-						} else {
-							op.addNewFile(file);
-						}
+						op.addUpdatedFile(file);
 					}
-
+				} else {
 					if (commit) {
-						// Get the file
-						get(file.getFilename(), f.getAbsolutePath(), progress);
+						op.addNewFile(f);
+					} else {
+						op.addNewFile(file);
 					}
+				}
 
-				} catch (SftpStatusException ex) {
-					op.addFailedTransfer(f, ex);
+				if (commit) {
+					// Get the file
+					String path = file.getAbsolutePath();
+					AbstractFile target = f;
+					pool.submit((client) -> {
+						try {
+							client.get(path, target.getAbsolutePath(), progress);
+						} catch (SftpStatusException ex) {
+							op.addFailedTransfer(target, ex);
+						}
+					});
 				}
 			}
 		}
 
 		if (sync) {
 			// List the contents of the new local directory and remove any
-			// files/directories that were not updated
+			// files/directories that do not exist on the remote server
 			String[] contents = getChildNames(local);
 			AbstractFile f2;
 			if (contents != null) {
 				for (int i = 0; i < contents.length; i++) {
-					f2 = local.resolveFile(contents[i]);
-					if (!op.containsFile(f2)) {
+					if (!names.contains(contents[i])) {
+						f2 = local.resolveFile(contents[i]);
 						op.addDeletedFile(f2);
 
 						if (f2.isDirectory() && !f2.getName().equals(".") && !f2.getName().equals("..")) {
@@ -3401,8 +3569,6 @@ public class SftpClient implements Closeable {
 		}
 
 		cd(pwd);
-
-		return op;
 	}
 
 	/**
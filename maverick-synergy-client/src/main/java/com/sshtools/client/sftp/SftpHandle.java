@@ -29,9 +29,10 @@ import java.io.OutputStream;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
 
 import com.sshtools.client.tasks.FileTransferProgress;
 import com.sshtools.common.events.Event;
@@ -50,6 +51,8 @@ import com.sshtools.common.util.UnsignedInteger64;
 
 public final class SftpHandle implements Closeable {
 
+	static final int MINIMUM_BLOCK_SIZE = 4096;
+
 	private final byte[] handle;
 	private final SftpChannel sftp;
 	private final SftpFile file;
@@ -208,6 +211,54 @@ public final class SftpHandle implements Closeable {
 		sftp.writeFile(handle, new UnsignedInteger64(offset), input, inputOffset, len);
 	}
 
+	/**
+	 * Read bytes from this file without waiting for the response. The future
+	 * completes with the data returned by the server, or <code>null</code> when
+	 * the end of the file has been reached.
+	 * 
+	 * @param offset offset in remote file to read from
+	 * @param len    number of bytes to read
+	 * @return CompletableFuture<byte[]>
+	 */
+	public CompletableFuture<byte[]> readAsync(long offset, int len) {
+		
+		if (closed) {
+			return CompletableFuture.failedFuture(new SftpStatusException(SftpStatusException.INVALID_HANDLE,
+					"The handle is not an open file handle!"));
+		}
+		
+		try {
+			UnsignedInteger32 requestId = sftp.nextRequestId();
+			Packet msg = sftp.createPacket();
+			msg.write(SftpChannel.SSH_FXP_READ);
+			msg.writeInt(requestId.longValue());
+			msg.writeBinaryString(handle);
+			msg.writeUINT64(offset);
+			msg.writeInt(len);
+
+			return sftp.handleResponse(sftp.sendRequest(requestId, msg), (bar) -> readData(bar, requestId, offset));
+		} catch (IOException ex) {
+			return SftpChannel.failedRequest(ex);
+		}
+	}
+
+	/**
+	 * Write bytes to this file without waiting for the response.
+	 * 
+	 * @param offset      offset in remote file to write to
+	 * @param input       input buffer to retrieve bytes from to write
+	 * @param inputOffset offset in output buffer to write bytes to
+	 * @param len         number of bytes to write
+	 * @return CompletableFuture<Void>
+	 */
+	public CompletableFuture<Void> writeAsync(long offset, byte[] input, int inputOffset, int len) {
+		try {
+			return sftp.handleStatusResponse(sftp.getResponseAsync(postWriteRequest(offset, input, inputOffset, len)));
+		} catch (SftpStatusException | SshException ex) {
+			return CompletableFuture.failedFuture(ex);
+		}
+	}
+
 	/**
 	 * Determine whether the file is open.
 	 *
@@ -234,27 +285,38 @@ public final class SftpHandle implements Closeable {
 	 */
 	@Override
 	public void close() throws IOException {
-		if (!closed) {
-			closed = true;
-			try {
-				UnsignedInteger32 requestId = sftp.nextRequestId();
-				Packet msg = sftp.createPacket();
-				msg.write(SftpChannel.SSH_FXP_CLOSE);
-				msg.writeInt(requestId.longValue());
-				msg.writeBinaryString(handle);
+		try {
+			sftp.waitFor(closeAsync());
+		} catch (SshException | SftpStatusException ex) {
+			throw new IOException("Failed to close handle.", ex);
+		}
+	}
 
-				sftp.sendMessage(msg);
+	/**
+	 * Close the handle without waiting for the response.
+	 * 
+	 * @return CompletableFuture<Void>
+	 */
+	public CompletableFuture<Void> closeAsync() {
+		if (closed) {
+			return CompletableFuture.completedFuture(null);
+		}
+		closed = true;
+		try {
+			UnsignedInteger32 requestId = sftp.nextRequestId();
+			Packet msg = sftp.createPacket();
+			msg.write(SftpChannel.SSH_FXP_CLOSE);
+			msg.writeInt(requestId.longValue());
+			msg.writeBinaryString(handle);
 
-				sftp.getOKRequestStatus(requestId);
-			} catch (SshException | SshIOException | SftpStatusException ex) {
-				throw new IOException("Failed to close handle.", ex);
-			}
-			finally {
-				sftp.handles.remove(handle);
-			}
-			EventServiceImplementation.getInstance()
-					.fireEvent((new Event(this, EventCodes.EVENT_SFTP_FILE_CLOSED, true))
-							.addAttribute(EventCodes.ATTRIBUTE_FILE_NAME, file == null ? "<unknown>" : file.getAbsolutePath()));
+			return sftp.handleStatusResponse(sftp.sendRequest(requestId, msg))
+					.whenComplete((result, ex) -> sftp.handles.remove(handle))
+					.thenRun(() -> EventServiceImplementation.getInstance()
+							.fireEvent((new Event(this, EventCodes.EVENT_SFTP_FILE_CLOSED, true))
+									.addAttribute(EventCodes.ATTRIBUTE_FILE_NAME, file == null ? "<unknown>" : file.getAbsolutePath())));
+		} catch (IOException ex) {
+			sftp.handles.remove(handle);
+			return SftpChannel.failedRequest(ex);
 		}
 	}
 
@@ -456,6 +518,7 @@ public final class SftpHandle implements Closeable {
 		
 		long started = System.currentTimeMillis();
 		long transfered = position;
+		ArrayDeque<PendingRequest> requests = new ArrayDeque<PendingRequest>();
 
 		try {
 			if (blocksize > 0 && blocksize < 4096) {
@@ -468,18 +531,22 @@ public final class SftpHandle implements Closeable {
 				blocksize = sftp.getSession().getMaximumRemotePacketLength() - 13;
 			}
 
-			int calculatedRequestsMax = (int) ((sftp.getSession().getRemoteWindow().longValue() * 0.9D) / blocksize);
-
-			if (maxAsyncRequests <= 0) {
-				maxAsyncRequests = calculatedRequestsMax;
+			/**
+			 * The server only adjusts its window once it has read a whole request, so a
+			 * request larger than the window could never be sent in full. Keep at least
+			 * two requests within the window so one can be sent while the other is written.
+			 */
+			long windowSpace = sftp.getSession().getMaxiumRemoteWindowSize().longValue() / 2 - 25 - handle.length;
+			if (blocksize > windowSpace) {
+				blocksize = (int) Math.max(MINIMUM_BLOCK_SIZE, windowSpace);
 			}
 
-			System.setProperty("maverick.write.optimizedBlock", String.valueOf(blocksize));
-			System.setProperty("maverick.write.asyncRequestsMax", String.valueOf(maxAsyncRequests));
+			AdaptiveTransferWindow window = new AdaptiveTransferWindow(blocksize, MINIMUM_BLOCK_SIZE,
+					(long) (sftp.getSession().getMaxiumRemoteWindowSize().longValue() * 0.9D), maxAsyncRequests, progress);
 
 			if (Log.isTraceEnabled()) {
 				Log.trace("Performing optimized write length=" + in.available() + " postion=" + position + " blocksize="
-						+ blocksize + " maxAsyncRequests=" + maxAsyncRequests);
+						+ blocksize + " maxAsyncRequests=" + window.getMaximumWindow());
 			}
 
 			if (position < 0)
@@ -501,11 +568,10 @@ public final class SftpHandle implements Closeable {
 			buffered = in.read(buf);
 			if (buffered != -1) {
 
-				long time = System.currentTimeMillis();
+				long sent = System.nanoTime();
 				sftp.writeFile(handle, new UnsignedInteger64(position), buf, 0, buffered);
-				time = System.currentTimeMillis() - time;
-
-				System.setProperty("maverick.write.blockRoundtrip", String.valueOf(time));
+				window.completed(buffered, sent);
+				window.report();
 
 				transfered += buffered;
 
@@ -515,7 +581,6 @@ public final class SftpHandle implements Closeable {
 					progress.progressed(transfered);
 				}
 
-				Vector<UnsignedInteger32> requests = new Vector<UnsignedInteger32>();
 				// BufferedInputStream is not in J2ME, whatever type of input stream
 				// has been passed in can be used in conjunction with the abstract
 				// InputStream class.
@@ -523,11 +588,12 @@ public final class SftpHandle implements Closeable {
 
 				while (true) {
 
-					buffered = in.read(buf);
+					buffered = in.read(buf, 0, window.getBlockSize());
 					if (buffered == -1)
 						break;
 
-					requests.addElement(postWriteRequest(transfered, buf, 0, buffered));
+					long posted = System.nanoTime();
+					requests.addLast(track(postWriteRequest(transfered, buf, 0, buffered), buffered, posted, window));
 
 					transfered += buffered;
 
@@ -539,17 +605,16 @@ public final class SftpHandle implements Closeable {
 						progress.progressed(transfered);
 					}
 
-					if (requests.size() > maxAsyncRequests) {
-						sftp.requestId = (UnsignedInteger32) requests.elementAt(0);
-						requests.removeElementAt(0);
-						sftp.getOKRequestStatus(sftp.requestId);
-
+					while (requests.size() >= window.getWindow()) {
+						sftp.getOKRequestStatus(requests.removeFirst().requestId);
+						window.report();
 					}
 
 				}
 
 				while (requests.size() > 0) {
-					sftp.getOKRequestStatus(requests.remove(0));
+					sftp.getOKRequestStatus(requests.removeFirst().requestId);
+					window.report();
 				}
 			}
 
@@ -559,6 +624,7 @@ public final class SftpHandle implements Closeable {
 			throw new SshException("Resource Shortage: try reducing the local file buffer size",
 					SshException.BAD_API_USAGE);
 		} finally {
+			abandonRequests(requests);
 			long finished = System.currentTimeMillis();
 			long transferTime = finished - started;
 			double seconds = transferTime > 1000 ? transferTime / 1000 : 1D;
@@ -591,56 +657,48 @@ public final class SftpHandle implements Closeable {
 
 		checkValidHandle();
 		
-		try {
-			if ((output.length - off) < len) {
-				throw new IndexOutOfBoundsException("Output array size is smaller than read length!");
-			}
-
-			UnsignedInteger32 requestId = sftp.nextRequestId();
-			Packet msg = sftp.createPacket();
-			msg.write(SftpChannel.SSH_FXP_READ);
-			msg.writeInt(requestId.longValue());
-			msg.writeBinaryString(handle);
-			msg.write(offset.toByteArray());
-			msg.writeInt(len);
-
-			sftp.sendMessage(msg);
+		if ((output.length - off) < len) {
+			throw new IndexOutOfBoundsException("Output array size is smaller than read length!");
+		}
 
-			SftpMessage bar = sftp.getResponse(requestId);
+		byte[] msgdata = sftp.waitFor(readAsync(offset.longValue(), len));
+		if (msgdata == null) {
+			return -1;
+		}
+		System.arraycopy(msgdata, 0, output, off, msgdata.length);
+		return msgdata.length;
+	}
 
-			try {
-				if (bar.getType() == SftpChannel.SSH_FXP_DATA) {
-					byte[] msgdata = bar.readBinaryString();
-					System.arraycopy(msgdata, 0, output, off, msgdata.length);
+	private byte[] readData(SftpMessage bar, UnsignedInteger32 requestId, long offset) 
+			throws SftpStatusException, SshException {
+		try {
+			if (bar.getType() == SftpChannel.SSH_FXP_DATA) {
+				byte[] msgdata = bar.readBinaryString();
 
-					if (Log.isDebugEnabled()) {
-						Log.debug("Received SSH_FXP_DATA channel={} requestId={} offset={} blocksize={}",
-								sftp.getSession().getLocalId(), requestId.toString(), offset.toString(), msgdata.length);
-					}
-					return msgdata.length;
-				} else if (bar.getType() == SftpChannel.SSH_FXP_STATUS) {
-					int status = (int) bar.readInt();
-					if (status == SftpStatusException.SSH_FX_EOF)
-						return -1;
-					if (sftp.getVersion() >= 3) {
-						String desc = bar.readString();
-						throw new SftpStatusException(status, desc);
-					}
-					throw new SftpStatusException(status);
-				} else {
-					close();
-					throw new SshException("The server responded with an unexpected message",
-							SshException.CHANNEL_FAILURE);
+				if (Log.isDebugEnabled()) {
+					Log.debug("Received SSH_FXP_DATA channel={} requestId={} offset={} blocksize={}",
+							sftp.getSession().getLocalId(), requestId.toString(), offset, msgdata.length);
 				}
-			} finally {
-				bar.release();
+				return msgdata;
+			} else if (bar.getType() == SftpChannel.SSH_FXP_STATUS) {
+				int status = (int) bar.readInt();
+				if (status == SftpStatusException.SSH_FX_EOF)
+					return null;
+				if (sftp.getVersion() >= 3) {
+					String desc = bar.readString();
+					throw new SftpStatusException(status, desc);
+				}
+				throw new SftpStatusException(status);
+			} else {
+				close();
+				throw new SshException("The server responded with an unexpected message",
+						SshException.CHANNEL_FAILURE);
 			}
 		} catch (SshIOException ex) {
 			throw ex.getRealException();
 		} catch (IOException ex) {
 			throw new SshException(ex);
 		}
-
 	}
 
 	/**
@@ -720,17 +778,12 @@ public final class SftpHandle implements Closeable {
 			blocksize = sftp.getSession().getMaximumLocalPacketLength() - 13;
 		}
 
-		int calculatedRequests = (int) ((sftp.getSession().getMaximumWindowSpace().longValue() * 0.9D) / blocksize);
-		if (outstandingRequests <= 0 || calculatedRequests < outstandingRequests) {
-			outstandingRequests = calculatedRequests / 2;
-		}
-
-		System.setProperty("maverick.read.optimizedBlock", String.valueOf(blocksize));
-		System.setProperty("maverick.read.asyncRequests", String.valueOf(outstandingRequests));
+		AdaptiveTransferWindow window = new AdaptiveTransferWindow(blocksize, MINIMUM_BLOCK_SIZE,
+				(long) (sftp.getSession().getMaximumWindowSpace().longValue() * 0.9D), outstandingRequests, progress);
 
 		if (Log.isTraceEnabled()) {
 			Log.trace("Performing optimized read length=" + length + " postion=" + position + " blocksize=" + blocksize
-					+ " outstandingRequests=" + outstandingRequests);
+					+ " outstandingRequests=" + window.getMaximumWindow());
 		}
 
 		if (length <= 0) {
@@ -764,14 +817,14 @@ public final class SftpHandle implements Closeable {
 			throw new SshException("Position value must be greater than zero!", SshException.BAD_API_USAGE);
 		}
 
+		ArrayDeque<PendingRequest> requests = new ArrayDeque<PendingRequest>();
 		try {
 			byte[] tmp = new byte[blocksize];
 
-			long time = System.currentTimeMillis();
+			long sent = System.nanoTime();
 			int i = readFile(new UnsignedInteger64(0), tmp, 0, tmp.length);
-			time = System.currentTimeMillis() - time;
-
-			System.setProperty("maverick.read.blockRoundtrip", String.valueOf(time));
+			window.completed(Math.max(i, 0), sent);
+			window.report();
 
 			// if i=-1 then eof so return, maybe should throw exception on null
 			// files?
@@ -805,21 +858,17 @@ public final class SftpHandle implements Closeable {
 
 			// reconfigure the blocksize if necessary
 			if (i < blocksize && length > i) {
-				blocksize = i;
-				System.setProperty("maverick.read.optimizedBlock", String.valueOf(blocksize));
+				window.limitBlockSize(i);
+				window.report();
 			}
 
-			Vector<UnsignedInteger32> requests = new Vector<UnsignedInteger32>(outstandingRequests);
-
-			int osr = calculatedRequests;
-
 			long offset = position;
-			UnsignedInteger32 requestId;
+			PendingRequest request;
 			int dataLen;
 
 			while (true) {
 
-				while (requests.size() < osr) {
+				while (requests.size() < window.getWindow()) {
 
 					if (i > 0 && sftp.getSession().getRemoteWindow().longValue() < 29) {
 						if (Log.isDebugEnabled())
@@ -829,17 +878,18 @@ public final class SftpHandle implements Closeable {
 					if (Log.isTraceEnabled())
 						Log.trace("Posting request for file offset " + offset);
 
-					requests.addElement(postReadRequest(offset, blocksize));
-					offset += blocksize;
+					int len = window.getBlockSize();
+					long posted = System.nanoTime();
+					requests.addLast(track(postReadRequest(offset, len), len, posted, window));
+					offset += len;
 
 					if (progress != null && progress.isCancelled()) {
 						throw new TransferCancelledException();
 					}
 				}
 
-				requestId = (UnsignedInteger32) requests.elementAt(0);
-				requests.removeElementAt(0);
-				SftpMessage bar = sftp.getResponse(requestId);
+				request = requests.removeFirst();
+				SftpMessage bar = sftp.getResponse(request.requestId);
 				try {
 					if (bar.getType() == SftpChannel.SSH_FXP_DATA) {
 						dataLen = (int) bar.readInt();
@@ -853,6 +903,7 @@ public final class SftpHandle implements Closeable {
 							throw new TransferCancelledException();
 						}
 						transfered += dataLen;
+						window.report();
 						if (progress != null) {
 							progress.progressed(transfered);
 						}
@@ -889,13 +940,12 @@ public final class SftpHandle implements Closeable {
 					bar.release();
 				}
 
-				if (osr < calculatedRequests) {
-					osr++;
-				}
 			}
 
 		} finally {
 
+			abandonRequests(requests);
+			
 			long finished = System.currentTimeMillis();
 			long transferTime = finished - started;
 			double seconds = transferTime > 1000 ? transferTime / 1000 : 1D;
@@ -1097,5 +1147,35 @@ public final class SftpHandle implements Closeable {
 		}	
 	}
 
+	/**
+	 * Discard the responses to requests that were posted but will no longer be read,
+	 * because the transfer ended early.
+	 */
+	private void abandonRequests(ArrayDeque<PendingRequest> requests) {
+		for(PendingRequest request : requests) {
+			sftp.abandonResponse(request.requestId);
+		}
+		requests.clear();
+	}
+	
+	/**
+	 * Record a posted request, sampling its round trip in the window as soon as the
+	 * dispatcher receives the response rather than when the transfer collects it.
+	 */
+	private PendingRequest track(UnsignedInteger32 requestId, int length, long sent, AdaptiveTransferWindow window) {
+		sftp.whenResponded(requestId, (msg) -> window.completed(length, sent));
+		return new PendingRequest(requestId, length);
+	}
+	
+	static class PendingRequest {
+		final UnsignedInteger32 requestId;
+		final int length;
+
+		PendingRequest(UnsignedInteger32 requestId, int length) {
+			this.requestId = requestId;
+			this.length = length;
+		}
+	}
+
 	
 }
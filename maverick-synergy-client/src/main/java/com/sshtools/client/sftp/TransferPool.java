@@ -0,0 +1,312 @@
+package com.sshtools.client.sftp;
+
+/*-
+ * #%L
+ * Client API
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.sshtools.client.tasks.FileTransferProgress;
+import com.sshtools.common.logger.Log;
+import com.sshtools.common.permissions.PermissionDeniedException;
+import com.sshtools.common.sftp.SftpStatusException;
+import com.sshtools.common.ssh.SshConnection;
+import com.sshtools.common.ssh.SshException;
+
+/**
+ * Runs the file transfers of a directory operation over a number of SFTP
+ * channels on the same connection. With a single channel every transfer runs
+ * on the calling thread using the client that started the operation, exactly as
+ * a plain {@link SftpClient#put(String, String)} or {@link SftpClient#get(String, String)}
+ * would. With more, each transfer is queued and picked up by one of up to that many
+ * tasks on the connection's executor, each with its own channel. Channels are only 
+ * opened when the transfers queue up faster than the open ones complete them. The 
+ * first failure other than an {@link SftpStatusException} cancels the transfers 
+ * that have not started and is thrown from {@link #await()}. A progress listener
+ * shared by the transfers should be passed through {@link #serialise(FileTransferProgress)}
+ * so that it is never called by more than one of them at once.
+ */
+final class TransferPool implements Closeable {
+
+	/**
+	 * The number of transfers each channel may have queued before the caller waits.
+	 */
+	static final int QUEUED_PER_CHANNEL = 64;
+
+	interface Transfer {
+		void transfer(SftpClient client) throws IOException, SftpStatusException, SshException,
+				TransferCancelledException, PermissionDeniedException;
+	}
+
+	final SftpClient client;
+	final SshConnection con;
+	final int channels;
+	final ConcurrentLinkedQueue<Transfer> pending = new ConcurrentLinkedQueue<>();
+	final ConcurrentLinkedQueue<SftpClient> idle = new ConcurrentLinkedQueue<>();
+	final List<SftpClient> workers = new CopyOnWriteArrayList<>();
+	final AtomicInteger runners = new AtomicInteger();
+	final Semaphore queued;
+	final AtomicReference<Throwable> failure = new AtomicReference<>();
+	volatile boolean closed;
+
+	TransferPool(SftpClient client, int channels) {
+		this.client = client;
+		this.con = client.getSubsystemChannel().getConnection();
+		this.channels = Math.max(1, channels);
+		this.queued = this.channels > 1 ? new Semaphore(this.channels * QUEUED_PER_CHANNEL) : null;
+	}
+
+	void submit(Transfer transfer) throws IOException, SftpStatusException, SshException,
+			TransferCancelledException, PermissionDeniedException {
+		if (queued == null) {
+			transfer.transfer(client);
+			return;
+		}
+
+		checkFailure();
+
+		try {
+			queued.acquire();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+
+		pending.add(transfer);
+		startRunner();
+	}
+
+	/**
+	 * Start another task to take transfers from the queue, unless there is one for 
+	 * every channel already.
+	 */
+	private void startRunner() {
+		int current;
+		do {
+			current = runners.get();
+			if (current >= channels) {
+				return;
+			}
+		} while (!runners.compareAndSet(current, current + 1));
+
+		try {
+			con.executeTask(this::runTransfers);
+		} catch (RuntimeException e) {
+			runners.decrementAndGet();
+			fail(e);
+			cancelPending();
+		}
+	}
+
+	private void runTransfers() {
+		SftpClient worker = null;
+		boolean running = true;
+		try {
+			Transfer transfer = pending.poll();
+			while (transfer != null) {
+				try {
+					if (failure.get() == null) {
+						if (worker == null) {
+							worker = getWorker();
+						}
+						transfer.transfer(worker);
+					}
+				} catch (Throwable e) {
+					fail(e);
+				}
+				Transfer next = pending.poll();
+				if (next == null) {
+					/**
+					 * Retire before releasing the last permit, so a caller it wakes
+					 * finds this task's channel idle and a runner free
+					 */
+					retire(worker);
+					running = false;
+				}
+				queued.release();
+				transfer = next;
+			}
+		} finally {
+			if (running) {
+				retire(worker);
+			}
+			/**
+			 * A transfer queued while this task was finishing may have found every 
+			 * runner busy
+			 */
+			if (!pending.isEmpty()) {
+				startRunner();
+			}
+		}
+	}
+	
+	private void retire(SftpClient worker) {
+		if (worker != null) {
+			idle.add(worker);
+		}
+		runners.decrementAndGet();
+	}
+
+	/**
+	 * Get a channel that no other task is using, opening one if every open channel is 
+	 * in use. There are never more runners than channels, so at most that many are 
+	 * opened.
+	 */
+	private SftpClient getWorker() throws SshException, PermissionDeniedException, IOException,
+			TransferCancelledException {
+		SftpClient worker = idle.poll();
+		if (worker == null) {
+			worker = new SftpClient(client);
+			workers.add(worker);
+			if (closed) {
+				worker.close();
+				throw new TransferCancelledException();
+			}
+		}
+		return worker;
+	}
+
+	private void fail(Throwable e) {
+		if (failure.compareAndSet(null, e) && Log.isDebugEnabled()) {
+			Log.debug("Directory transfer failed, cancelling remaining transfers", e);
+		}
+	}
+
+	private void cancelPending() {
+		while (pending.poll() != null) {
+			queued.release();
+		}
+	}
+
+	/**
+	 * Get a progress listener that can be shared by the transfers of this pool. When
+	 * transfers run concurrently the calls of each are serialised, so the listener
+	 * need not be thread safe, but the calls for different files may interleave.
+	 */
+	FileTransferProgress serialise(FileTransferProgress progress) {
+		if (queued == null || progress == null) {
+			return progress;
+		}
+		return new SerialisedProgress(progress);
+	}
+
+	/**
+	 * Wait for every transfer that has been submitted to complete.
+	 */
+	void await() throws IOException, SftpStatusException, SshException, TransferCancelledException,
+			PermissionDeniedException {
+		if (queued == null) {
+			return;
+		}
+		int permits = channels * QUEUED_PER_CHANNEL;
+		try {
+			queued.acquire(permits);
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+		queued.release(permits);
+		checkFailure();
+	}
+
+	private void checkFailure() throws IOException, SftpStatusException, SshException, TransferCancelledException,
+			PermissionDeniedException {
+		Throwable e = failure.get();
+		if (e == null) {
+			return;
+		} else if (e instanceof IOException) {
+			throw (IOException) e;
+		} else if (e instanceof SftpStatusException) {
+			throw (SftpStatusException) e;
+		} else if (e instanceof SshException) {
+			throw (SshException) e;
+		} else if (e instanceof TransferCancelledException) {
+			throw (TransferCancelledException) e;
+		} else if (e instanceof PermissionDeniedException) {
+			throw (PermissionDeniedException) e;
+		} else if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		} else if (e instanceof Error) {
+			throw (Error) e;
+		}
+		throw new SshException(e);
+	}
+
+	@Override
+	public void close() {
+		if (queued == null) {
+			return;
+		}
+		closed = true;
+		/**
+		 * Skip the transfers that have not started when closed before they complete
+		 */
+		failure.compareAndSet(null, new TransferCancelledException());
+		cancelPending();
+		for (SftpClient worker : workers) {
+			try {
+				worker.close();
+			} catch (IOException e) {
+				Log.debug("Failed to close transfer channel", e);
+			}
+		}
+	}
+
+	static final class SerialisedProgress implements FileTransferProgress {
+
+		final FileTransferProgress progress;
+
+		SerialisedProgress(FileTransferProgress progress) {
+			this.progress = progress;
+		}
+
+		@Override
+		public synchronized void started(long bytesTotal, String file) {
+			progress.started(bytesTotal, file);
+		}
+
+		@Override
+		public synchronized boolean isCancelled() {
+			return progress.isCancelled();
+		}
+
+		@Override
+		public synchronized void progressed(long bytesSoFar) {
+			progress.progressed(bytesSoFar);
+		}
+
+		@Override
+		public synchronized void adjusted(int blockSize, int outstandingRequests, long roundTrip, long bytesPerSecond) {
+			progress.adjusted(blockSize, outstandingRequests, roundTrip, bytesPerSecond);
+		}
+
+		@Override
+		public synchronized void completed() {
+			progress.completed();
+		}
+	}
+}
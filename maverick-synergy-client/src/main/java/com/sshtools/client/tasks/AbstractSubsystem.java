@@ -38,7 +38,6 @@ import com.sshtools.common.ssh.SshIOException;
 import com.sshtools.common.util.IOUtils;
 import com.sshtools.common.util.UnsignedInteger32;
 import com.sshtools.synergy.ssh.ByteArrays;
-import com.sshtools.synergy.ssh.PacketPool;
 
 /**
  * An abstract task for connecting to an SSH subsystem.
@@ -157,7 +156,7 @@ public abstract class AbstractSubsystem {
 		}
 		
 		public void run() {
-			PacketPool.getInstance().putPacket(msg);
+			con.getContext().getPacketPool().putPacket(msg);
 			msg = null;
 		}
 	}
@@ -31,6 +31,11 @@ package com.sshtools.client.tasks;
  * or remove newline characters from the stream and therefore the total bytes
  * transfered may not equal the number expected.
  *
+ * <p>A directory transfer that uses more than one channel passes the same
+ * instance to every file it transfers. Its calls are serialised, so the
+ * implementation need not be thread safe, but the calls for different files
+ * may interleave.</p>
+ *
  * 
  */
 public interface FileTransferProgress {
@@ -58,6 +63,17 @@ public interface FileTransferProgress {
    */
   default void progressed(long bytesSoFar) { };
 
+  /**
+   * The block size or number of outstanding requests of an optimized
+   * transfer has been adjusted to the measured round trip time and bandwidth.
+   *
+   * @param blockSize the block size now used for each request
+   * @param outstandingRequests the number of requests that may now be outstanding
+   * @param roundTrip the smoothed round trip time of a request in microseconds
+   * @param bytesPerSecond the rate data was last delivered at
+   */
+  default void adjusted(int blockSize, int outstandingRequests, long roundTrip, long bytesPerSecond) { };
+
   /**
    * The transfer has completed.
    */
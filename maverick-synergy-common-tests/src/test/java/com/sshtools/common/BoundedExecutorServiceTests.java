@@ -0,0 +1,117 @@
+package com.sshtools.common;
+
+/*-
+ * #%L
+ * Common API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sshtools.synergy.nio.BoundedExecutorService;
+
+import junit.framework.TestCase;
+
+public class BoundedExecutorServiceTests extends TestCase {
+
+	public void testSaturatesAndResumes() throws InterruptedException {
+		
+		AtomicInteger resumed = new AtomicInteger();
+		BoundedExecutorService executor = new BoundedExecutorService("test", 1, 1, 60, 1, 60000, () -> resumed.incrementAndGet());
+		try {
+			CountDownLatch release = new CountDownLatch(1);
+			CountDownLatch done = new CountDownLatch(3);
+			for(int i=0;i<3;i++) {
+				executor.execute(() -> {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+					}
+					done.countDown();
+				});
+			}
+			
+			assertTrue(executor.isSaturated());
+			assertEquals(2, executor.getQueueDepth());
+			
+			release.countDown();
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+			
+			for(int i=0;i<100 && executor.isSaturated();i++) {
+				Thread.sleep(10);
+			}
+			assertFalse(executor.isSaturated());
+			assertEquals(1, resumed.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	public void testStalledTasksAreGivenAnotherThread() throws InterruptedException {
+		
+		BoundedExecutorService executor = new BoundedExecutorService("test", 1, 1, 60, 1, 100, () -> { });
+		try {
+			CountDownLatch waiting = new CountDownLatch(1);
+			executor.execute(() -> {
+				try {
+					waiting.await();
+				} catch (InterruptedException e) {
+				}
+			});
+			executor.execute(() -> waiting.countDown());
+			
+			assertTrue(waiting.await(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	public void testStallThreadsAreBounded() throws InterruptedException {
+		
+		BoundedExecutorService executor = new BoundedExecutorService("test", 1, 1, 60, 1, 50, 1, () -> { });
+		try {
+			CountDownLatch release = new CountDownLatch(1);
+			CountDownLatch started = new CountDownLatch(2);
+			CountDownLatch done = new CountDownLatch(3);
+			AtomicInteger running = new AtomicInteger();
+			for(int i=0;i<3;i++) {
+				executor.execute(() -> {
+					running.incrementAndGet();
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+					}
+					done.countDown();
+				});
+			}
+			
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+			Thread.sleep(500);
+			assertEquals("Only one stall thread may be used", 2, running.get());
+			
+			release.countDown();
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+			assertEquals(0, executor.getQueueDepth());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
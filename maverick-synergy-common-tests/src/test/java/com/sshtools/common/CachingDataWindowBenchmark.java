@@ -0,0 +1,73 @@
+package com.sshtools.common;
+
+/*-
+ * #%L
+ * Common API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import com.sshtools.common.CachingDataWindowTests.StreamChannel;
+
+import junit.framework.TestCase;
+
+/**
+ * Reports the rate at which a 2MB window can be filled in packet sized writes and
+ * drained through the channel's own ChannelInputStream.
+ */
+public class CachingDataWindowBenchmark extends TestCase {
+
+	public void testStreamReadThroughput() throws Exception {
+		
+		final int windowSize = 2 * 1024 * 1024;
+		final long total = 1024L * 1024L * 1024L;
+		final StreamChannel channel = new StreamChannel(windowSize);
+		final InputStream in = channel.getInputStream();
+		
+		Thread producer = new Thread(() -> {
+			ByteBuffer packet = ByteBuffer.allocate(32768);
+			try {
+				for(long sent = 0; sent < total; sent += packet.capacity()) {
+					packet.clear();
+					channel.receive(packet);
+				}
+			} catch (EOFException e) {
+			} finally {
+				channel.finish();
+			}
+		});
+		
+		byte[] b = new byte[8192];
+		long received = 0;
+		long started = System.currentTimeMillis();
+		producer.start();
+		
+		int r;
+		while((r = in.read(b)) > -1) {
+			received += r;
+		}
+		
+		long elapsed = Math.max(1, System.currentTimeMillis() - started);
+		assertEquals(total, received);
+		System.out.println(String.format("Read %dMB through a %dKB window in %dms (%d MB/s)", 
+				total / (1024 * 1024), windowSize / 1024, elapsed, total / (1024 * 1024) * 1000 / elapsed));
+	}
+}
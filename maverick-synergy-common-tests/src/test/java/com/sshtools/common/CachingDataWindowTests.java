@@ -23,17 +23,23 @@ package com.sshtools.common;
  */
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.sshtools.common.util.Arrays;
 import com.sshtools.common.util.IOUtils;
+import com.sshtools.common.util.UnsignedInteger32;
 import com.sshtools.common.util.Utils;
 import com.sshtools.synergy.ssh.CachingDataWindow;
+import com.sshtools.synergy.ssh.ChannelNG;
+import com.sshtools.synergy.ssh.SshContext;
 
 import junit.framework.TestCase;
 
@@ -158,4 +164,176 @@ public class CachingDataWindowTests extends TestCase {
 		assertTrue("Source and Target digest must be equal",
 				Arrays.areEqual(input.getMessageDigest().digest(), output.getMessageDigest().digest()));
 	}
+	
+	/**
+	 * Write and read uneven amounts through a small window so that the data
+	 * regularly wraps around the end of the buffer.
+	 */
+	public void testWrapAround() throws EOFException {
+		
+		final CachingDataWindow window = new CachingDataWindow(1000, false);
+		
+		byte[] data = new byte[100000];
+		new Random(1).nextBytes(data);
+		byte[] result = new byte[data.length];
+		
+		int written = 0;
+		int read = 0;
+		int step = 0;
+		while(read < data.length) {
+			int put = Math.min(data.length - written, Math.min(1000 - window.remaining(), 17 + (step * 31) % 400));
+			window.put(ByteBuffer.wrap(data, written, put));
+			written += put;
+			if(step++ % 2 == 0) {
+				read += window.get(result, read, 13 + (step * 7) % 300);
+			} else {
+				ByteBuffer buf = ByteBuffer.wrap(result, read, Math.min(result.length - read, 11 + (step * 13) % 500));
+				read += window.get(buf);
+			}
+		}
+		
+		assertTrue("Source and Target arrays must be equal", Arrays.areEqual(data, result));
+		assertEquals(0, window.remaining());
+	}
+	
+	/**
+	 * A blocking put on a full window must wait for the consumer rather than
+	 * overflow.
+	 */
+	public void testPutWaitsForSpace() throws Exception {
+		
+		final CachingDataWindow window = new CachingDataWindow(1024, true);
+		window.put(ByteBuffer.allocate(1000));
+		
+		AtomicReference<Throwable> error = new AtomicReference<>();
+		Thread producer = new Thread(() -> {
+			try {
+				window.put(ByteBuffer.allocate(100));
+			} catch (Throwable e) {
+				error.set(e);
+			}
+		});
+		producer.start();
+		
+		producer.join(250);
+		assertTrue(producer.isAlive());
+		assertEquals(1000, window.remaining());
+		
+		assertEquals(500, window.get(ByteBuffer.allocate(500)));
+		producer.join(TimeUnit.SECONDS.toMillis(5));
+		assertFalse(producer.isAlive());
+		assertNull(error.get());
+		assertEquals(600, window.remaining());
+	}
+	
+	/**
+	 * Fills a window in packet sized writes from one thread whilst another drains
+	 * it through the channel's own ChannelInputStream, which must see every byte
+	 * in order and then the end of the stream.
+	 */
+	public void testStreamReadsEverything() throws Exception {
+		
+		final int windowSize = 64 * 1024;
+		final int total = 8 * 1024 * 1024;
+		final StreamChannel channel = new StreamChannel(windowSize);
+		final InputStream in = channel.getInputStream();
+		
+		Thread producer = new Thread(() -> {
+			ByteBuffer packet = ByteBuffer.allocate(32768);
+			try {
+				for(int sent = 0; sent < total; sent += packet.capacity()) {
+					packet.clear();
+					for(int i = 0; i < packet.capacity(); i++) {
+						packet.put((byte) (sent + i));
+					}
+					packet.flip();
+					channel.receive(packet);
+				}
+			} catch (EOFException e) {
+			} finally {
+				channel.finish();
+			}
+		});
+		producer.start();
+		
+		byte[] b = new byte[8192];
+		int received = 0;
+		int r;
+		while((r = in.read(b)) > -1) {
+			for(int i = 0; i < r; i++) {
+				assertEquals((byte) (received + i), b[i]);
+			}
+			received += r;
+		}
+		
+		assertEquals(total, received);
+		producer.join();
+	}
+	
+	/**
+	 * A channel that is never opened, so data can be placed directly into the
+	 * window behind its input stream.
+	 */
+	static class StreamChannel extends ChannelNG<SshContext> {
+
+		StreamChannel(int windowSize) {
+			super("stream", 32768, new UnsignedInteger32(windowSize), 
+					new UnsignedInteger32(windowSize), new UnsignedInteger32(windowSize / 2), null, false);
+		}
+		
+		void receive(ByteBuffer data) throws EOFException {
+			cache.put(data);
+		}
+		
+		void finish() {
+			cache.close();
+		}
+		
+		@Override
+		protected boolean checkWindowSpace() {
+			return false;
+		}
+
+		@Override
+		protected void onChannelFree() {
+		}
+
+		@Override
+		protected byte[] createChannel() throws IOException {
+			return null;
+		}
+
+		@Override
+		protected byte[] openChannel(byte[] requestdata) {
+			return null;
+		}
+
+		@Override
+		protected void onChannelOpenConfirmation() {
+		}
+
+		@Override
+		protected void onChannelClosed() {
+		}
+
+		@Override
+		protected void onChannelOpen() {
+		}
+
+		@Override
+		protected void onChannelClosing() {
+		}
+
+		@Override
+		protected void onChannelRequest(String type, boolean wantreply, byte[] requestdata) {
+		}
+
+		@Override
+		protected void onRemoteEOF() {
+		}
+
+		@Override
+		protected void onLocalEOF() {
+		}
+	}
 }
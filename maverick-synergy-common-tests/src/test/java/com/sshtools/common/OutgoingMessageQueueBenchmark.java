@@ -0,0 +1,42 @@
+package com.sshtools.common;
+
+/*-
+ * #%L
+ * Common API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+import junit.framework.TestCase;
+
+/**
+ * Reports the rate at which messages are posted to the outgoing queue as the
+ * number of producers increases, with a single consumer draining it.
+ */
+public class OutgoingMessageQueueBenchmark extends TestCase {
+
+	static final int MESSAGES = Integer.getInteger("queue.messages", 1000000);
+	
+	public void testPostingThroughput() throws InterruptedException {
+		
+		for(int producers : new int[] { 1, 8, 64 }) {
+			long elapsed = OutgoingMessageQueueTests.post(producers, MESSAGES / producers);
+			System.out.println(String.format("%d producers posted %d messages in %dms (%d messages/ms)", 
+					producers, MESSAGES, elapsed, MESSAGES / Math.max(1, elapsed)));
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package com.sshtools.common;
+
+/*-
+ * #%L
+ * Common API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.sshtools.common.ssh.SshException;
+import com.sshtools.common.sshd.SshMessage;
+import com.sshtools.synergy.ssh.OutgoingMessageQueue;
+
+import junit.framework.TestCase;
+
+public class OutgoingMessageQueueTests extends TestCase {
+
+	static class TestMessage implements SshMessage {
+		
+		final int producer;
+		final int sequence;
+		
+		TestMessage(int producer, int sequence) {
+			this.producer = producer;
+			this.sequence = sequence;
+		}
+		
+		@Override
+		public boolean writeMessageIntoBuffer(ByteBuffer buf) {
+			return true;
+		}
+
+		@Override
+		public void messageSent(Long sequenceNo) throws SshException {
+		}
+	}
+	
+	public void testKeyExchangeMessagesAreSentAlone() {
+		
+		OutgoingMessageQueue queue = new OutgoingMessageQueue();
+		TestMessage data = new TestMessage(0, 0);
+		TestMessage kex = new TestMessage(0, 1);
+		
+		queue.post(data, false);
+		assertFalse(queue.hasMessages(true));
+		assertNull(queue.peek(true));
+		
+		queue.post(kex, true);
+		assertTrue(queue.hasMessages(true));
+		assertSame(kex, queue.peek(true));
+		queue.remove(kex);
+		
+		assertFalse(queue.hasMessages(true));
+		assertSame(data, queue.peek(false));
+		queue.remove(data);
+		assertFalse(queue.hasMessages(false));
+	}
+	
+	public void testKeyExchangeMessagesAreSentAfterKeyExchange() {
+		
+		OutgoingMessageQueue queue = new OutgoingMessageQueue();
+		TestMessage kex = new TestMessage(0, 0);
+		
+		queue.post(kex, true);
+		assertSame(kex, queue.peek(false));
+		queue.remove(kex);
+		assertEquals(0, queue.size());
+	}
+	
+	public void testClearKeyExchange() {
+		
+		OutgoingMessageQueue queue = new OutgoingMessageQueue();
+		queue.post(new TestMessage(0, 0), true);
+		queue.post(new TestMessage(0, 1), false);
+		queue.clearKeyExchange();
+		
+		assertFalse(queue.hasMessages(true));
+		assertEquals(1, queue.size());
+	}
+	
+	public void testEachProducerIsReceivedInOrder() throws InterruptedException {
+		post(8, 10000);
+	}
+	
+	/**
+	 * Posts messages from several producers whilst a single consumer checks that
+	 * it sees every message in the order each producer posted them.
+	 */
+	static long post(int producers, final int perProducer) throws InterruptedException {
+		
+		final OutgoingMessageQueue queue = new OutgoingMessageQueue();
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch finished = new CountDownLatch(producers);
+		
+		for(int i=0;i<producers;i++) {
+			final int producer = i;
+			Thread t = new Thread(() -> {
+				try {
+					start.await();
+					for(int j=0;j<perProducer;j++) {
+						queue.post(new TestMessage(producer, j), false);
+					}
+				} catch (InterruptedException e) {
+				} finally {
+					finished.countDown();
+				}
+			});
+			t.setDaemon(true);
+			t.start();
+		}
+		
+		int[] expected = new int[producers];
+		int received = 0;
+		long started = System.currentTimeMillis();
+		start.countDown();
+		
+		while(received < perProducer * producers) {
+			TestMessage msg = (TestMessage) queue.peek(false);
+			if(msg == null) {
+				Thread.yield();
+				continue;
+			}
+			assertEquals(expected[msg.producer]++, msg.sequence);
+			queue.remove(msg);
+			received++;
+		}
+		
+		assertTrue(finished.await(30, TimeUnit.SECONDS));
+		assertFalse(queue.hasMessages(false));
+		return System.currentTimeMillis() - started;
+	}
+}
@@ -0,0 +1,89 @@
+package com.sshtools.common;
+
+/*-
+ * #%L
+ * Common API Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+import com.sshtools.synergy.ssh.PayloadPool;
+import com.sshtools.synergy.ssh.PooledPayload;
+
+import junit.framework.TestCase;
+
+public class PayloadPoolTests extends TestCase {
+
+	public void testArraysAreSizeClassed() {
+		
+		PayloadPool pool = new PayloadPool(65536, 4);
+		
+		assertEquals(1024, pool.get(1).length);
+		assertEquals(1024, pool.get(1024).length);
+		assertEquals(2048, pool.get(1025).length);
+		assertEquals(65536, pool.get(40000).length);
+		assertEquals(70000, pool.get(70000).length);
+	}
+	
+	public void testReleasedArraysAreReused() {
+		
+		PayloadPool pool = new PayloadPool(65536, 4);
+		
+		byte[] array = pool.get(32768);
+		pool.release(array);
+		assertEquals(1, pool.getFreeArrays());
+		assertSame(array, pool.get(20000));
+		assertEquals(0, pool.getFreeArrays());
+	}
+	
+	public void testPoolIsBounded() {
+		
+		PayloadPool pool = new PayloadPool(65536, 2);
+		
+		for(int i=0;i<10;i++) {
+			pool.release(new byte[4096]);
+		}
+		
+		pool.release(new byte[5000]);
+		
+		assertEquals(2, pool.getFreeArrays());
+	}
+	
+	public void testPayloadIsReturnedOnLastRelease() {
+		
+		PayloadPool pool = new PayloadPool(65536, 4);
+		
+		byte[] array = pool.get(100);
+		array[5] = 94;
+		PooledPayload payload = new PooledPayload(array, 5, 20, pool);
+		assertEquals(94, payload.getMessageId());
+		assertEquals(20, payload.toByteArray().length);
+		
+		payload.retain();
+		payload.release();
+		assertEquals(0, pool.getFreeArrays());
+		
+		payload.release();
+		assertEquals(1, pool.getFreeArrays());
+		
+		try {
+			payload.retain();
+			fail("Released payload must not be retained");
+		} catch(IllegalStateException e) {
+		}
+	}
+}
@@ -0,0 +1,318 @@
+package com.sshtools.synergy.nio;
+
+/*-
+ * #%L
+ * Common API
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sshtools.common.logger.Log;
+
+/**
+ * The executor used by an {@link SshEngine} to run connection tasks. The number
+ * of threads and the size of the task queue are bounded. When both are exhausted
+ * tasks are not rejected, as protocol tasks cannot be dropped, but are held back
+ * until a thread becomes free and the executor is flagged as saturated. Whilst
+ * saturated, socket connections stop reading from the network so that no more
+ * work is accepted. Reads are resumed once the held back tasks have been run and
+ * the queue has drained to half of its capacity.
+ * <p>
+ * Connection tasks may block waiting for a message from the remote side, such as
+ * a window adjustment, that can only be processed by another task. If no task
+ * completes within the stall timeout whilst tasks are waiting, the oldest waiting
+ * task is given to a separate pool of stall threads and socket reads are resumed
+ * so the executor cannot deadlock. The stall pool is bounded, reuses its threads
+ * and lets them expire after the keep alive time. Stalls are detected by a single
+ * scheduled watcher that only runs whilst tasks are waiting.
+ */
+public class BoundedExecutorService extends ThreadPoolExecutor {
+
+	public static final int DEFAULT_MAXIMUM_STALL_THREADS = 32;
+	
+	final int queueCapacity;
+	final long stallTimeoutMs;
+	final ThreadPoolExecutor stallThreads;
+	final ScheduledThreadPoolExecutor watcher;
+	volatile ScheduledFuture<?> watch;
+	final ConcurrentLinkedDeque<Runnable> overflow = new ConcurrentLinkedDeque<Runnable>();
+	final AtomicBoolean saturated = new AtomicBoolean();
+	final AtomicBoolean watching = new AtomicBoolean();
+	final Runnable onResume;
+	volatile long lastCompleted = System.currentTimeMillis();
+	
+	/**
+	 * Create an executor.
+	 * 
+	 * @param name prefix for the names of the threads
+	 * @param corePoolSize threads to keep alive when idle
+	 * @param maximumPoolSize maximum number of threads
+	 * @param keepAliveSeconds time an idle thread above the core size is kept alive
+	 * @param queueCapacity number of tasks that may wait for a thread, zero hands tasks directly to threads
+	 * @param stallTimeoutMs time without a task completing after which an additional thread is started
+	 * @param onResume called when the executor is no longer saturated
+	 */
+	public BoundedExecutorService(String name, int corePoolSize, int maximumPoolSize, 
+			long keepAliveSeconds, int queueCapacity, long stallTimeoutMs, Runnable onResume) {
+		this(name, corePoolSize, maximumPoolSize, keepAliveSeconds, queueCapacity, 
+				stallTimeoutMs, DEFAULT_MAXIMUM_STALL_THREADS, onResume);
+	}
+	
+	/**
+	 * Create an executor.
+	 * 
+	 * @param name prefix for the names of the threads
+	 * @param corePoolSize threads to keep alive when idle
+	 * @param maximumPoolSize maximum number of threads
+	 * @param keepAliveSeconds time an idle thread above the core size is kept alive
+	 * @param queueCapacity number of tasks that may wait for a thread, zero hands tasks directly to threads
+	 * @param stallTimeoutMs time without a task completing after which a stall thread is used
+	 * @param maximumStallThreads maximum number of threads used for stalled tasks in addition to maximumPoolSize
+	 * @param onResume called when the executor is no longer saturated
+	 */
+	public BoundedExecutorService(String name, int corePoolSize, int maximumPoolSize, 
+			long keepAliveSeconds, int queueCapacity, long stallTimeoutMs, 
+			int maximumStallThreads, Runnable onResume) {
+		super(corePoolSize, maximumPoolSize, keepAliveSeconds, TimeUnit.SECONDS, 
+				createQueue(queueCapacity), createThreadFactory(name));
+		this.queueCapacity = queueCapacity;
+		this.stallTimeoutMs = stallTimeoutMs;
+		this.onResume = onResume;
+		this.stallThreads = new ThreadPoolExecutor(0, Math.max(1, maximumStallThreads), 
+				keepAliveSeconds, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), 
+				createThreadFactory(name + "-STALL"));
+		this.watcher = new ScheduledThreadPoolExecutor(1, createThreadFactory(name + "-WATCHER"));
+		this.watcher.setRemoveOnCancelPolicy(true);
+		this.watcher.setKeepAliveTime(Math.max(1L, keepAliveSeconds), TimeUnit.SECONDS);
+		this.watcher.allowCoreThreadTimeOut(true);
+		setRejectedExecutionHandler(new Backpressure());
+	}
+	
+	static BlockingQueue<Runnable> createQueue(int queueCapacity) {
+		if(queueCapacity <= 0) {
+			return new SynchronousQueue<Runnable>();
+		}
+		return new LinkedBlockingQueue<Runnable>(queueCapacity);
+	}
+	
+	static ThreadFactory createThreadFactory(String name) {
+		AtomicInteger threadNumber = new AtomicInteger();
+		return new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = Executors.defaultThreadFactory().newThread(r);
+				t.setName(name + "-" + threadNumber.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+	
+	/**
+	 * Is the executor saturated, in which case socket reads should be paused.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isSaturated() {
+		return saturated.get();
+	}
+	
+	/**
+	 * Get the number of tasks waiting for a thread, including those held back
+	 * whilst saturated.
+	 * 
+	 * @return int
+	 */
+	public int getQueueDepth() {
+		return getQueue().size() + overflow.size();
+	}
+
+	@Override
+	protected void afterExecute(Runnable r, Throwable t) {
+		
+		lastCompleted = System.currentTimeMillis();
+		
+		/**
+		 * This thread is free, so it runs any held back tasks itself rather
+		 * than waiting for space in the queue.
+		 */
+		Runnable next;
+		while((next = overflow.pollFirst()) != null) {
+			runHeldTask(next);
+		}
+		
+		checkResume();
+	}
+	
+	private void runHeldTask(Runnable r) {
+		try {
+			r.run();
+		} catch(Throwable e) {
+			Log.error("Caught exception in held back task", e);
+		} finally {
+			lastCompleted = System.currentTimeMillis();
+		}
+	}
+	
+	private void checkResume() {
+		if(saturated.get() 
+				&& overflow.isEmpty() 
+				&& getQueue().size() <= queueCapacity / 2
+				&& saturated.compareAndSet(true, false)) {
+			if(Log.isInfoEnabled()) {
+				Log.info("Executor is no longer saturated, resuming socket reads");
+			}
+			onResume.run();
+		}
+	}
+	
+	private boolean isIdle() {
+		return overflow.isEmpty() && getQueue().isEmpty();
+	}
+	
+	@Override
+	public void execute(Runnable command) {
+		super.execute(command);
+		if(queueCapacity > 0 && !getQueue().isEmpty()) {
+			startWatching();
+		}
+	}
+	
+	private void startWatching() {
+		if(!watching.compareAndSet(false, true)) {
+			return;
+		}
+		long period = Math.max(10L, stallTimeoutMs / 2);
+		try {
+			watch = watcher.scheduleWithFixedDelay(this::checkStalled, period, period, TimeUnit.MILLISECONDS);
+		} catch(RejectedExecutionException e) {
+			watching.set(false);
+		}
+	}
+	
+	private void stopWatching() {
+		ScheduledFuture<?> watch = this.watch;
+		if(watch != null) {
+			watch.cancel(false);
+		}
+		watching.set(false);
+	}
+	
+	private void checkStalled() {
+		if(isShutdown()) {
+			stopWatching();
+			return;
+		}
+		if(isIdle()) {
+			stopWatching();
+			/**
+			 * A task may have been queued since the check, in which
+			 * case carry on watching.
+			 */
+			if(!isIdle()) {
+				startWatching();
+			}
+			return;
+		}
+		if(System.currentTimeMillis() - lastCompleted >= stallTimeoutMs) {
+			Runnable next = overflow.pollFirst();
+			if(next == null) {
+				next = getQueue().poll();
+			}
+			if(next != null) {
+				lastCompleted = System.currentTimeMillis();
+				final Runnable task = next;
+				try {
+					stallThreads.execute(() -> runHeldTask(task));
+					if(Log.isWarnEnabled()) {
+						Log.warn("Executor has not completed a task in {}ms, using a stall thread", stallTimeoutMs);
+					}
+				} catch(RejectedExecutionException e) {
+					/**
+					 * Every stall thread is busy, so the task goes back to the
+					 * front of the line to be run by the next free thread.
+					 */
+					overflow.offerFirst(task);
+					if(Log.isWarnEnabled()) {
+						Log.warn("Executor has not completed a task in {}ms and all {} stall threads are busy", 
+								stallTimeoutMs, stallThreads.getMaximumPoolSize());
+					}
+				}
+			}
+			
+			/**
+			 * Pausing reads only helps whilst tasks are completing. When
+			 * they are not, the running tasks are likely to be waiting for
+			 * a message from the remote side, so reads must continue.
+			 */
+			if(saturated.compareAndSet(true, false)) {
+				if(Log.isInfoEnabled()) {
+					Log.info("Executor has stalled, resuming socket reads");
+				}
+				onResume.run();
+			}
+		}
+		
+		checkResume();
+	}
+	
+	@Override
+	protected void terminated() {
+		watcher.shutdownNow();
+		stallThreads.shutdown();
+		super.terminated();
+	}
+	
+	@Override
+	public List<Runnable> shutdownNow() {
+		stallThreads.shutdownNow();
+		return super.shutdownNow();
+	}
+
+	class Backpressure implements RejectedExecutionHandler {
+
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if(isShutdown()) {
+				throw new RejectedExecutionException("Executor has been shutdown");
+			}
+			overflow.offerLast(r);
+			if(saturated.compareAndSet(false, true)) {
+				if(Log.isWarnEnabled()) {
+					Log.warn("Executor is saturated with {} threads, pausing socket reads", getPoolSize());
+				}
+			}
+			startWatching();
+		}
+	}
+}
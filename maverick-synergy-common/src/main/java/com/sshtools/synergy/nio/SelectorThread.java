@@ -261,6 +261,25 @@ public class SelectorThread extends Thread {
 		}
 	}
 
+	/**
+	 * Add read interest to every key whose handler wants to read. Used
+	 * to resume reads once they have been paused.
+	 */
+	public void resumeReads() {
+		addSelectorOperation(new Runnable() {
+			public void run() {
+				for(SelectionKey key : selector.keys()) {
+					Object obj = key.attachment();
+					if (key.isValid() 
+							&& obj instanceof SocketHandler 
+							&& ((SocketHandler) obj).wantsRead()) {
+						key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+					}
+				}
+			}
+		});
+	}
+
 	/**
 	 * Add an operation to the selector.
 	 * 
@@ -98,6 +98,15 @@ public class SelectorThreadPool {
 			t.closeAllChannels();
 		}
 	}
+	/**
+	 * Resume reading on all connections that want to read.
+	 */
+	public synchronized void resumeReads() {
+		for (SelectorThread t : threads) {
+			t.resumeReads();
+		}
+	}
+	
 	/**
 	 * Shutdown all threads in the pool.
 	 */
@@ -30,6 +30,7 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.sshtools.common.logger.Log;
 import com.sshtools.common.nio.IdleStateManager;
@@ -64,6 +65,7 @@ public class SocketConnection implements SocketHandler {
     int pendingIncludeOps = 0;
 
     Object opsLock = new Object();
+    final AtomicBoolean writeFlagged = new AtomicBoolean();
     LinkedList<SocketWriteCallback> socketWriteCallbacks = new LinkedList<SocketWriteCallback>();
 
 	private SocketAddress remoteAddress;
@@ -443,8 +445,16 @@ public class SocketConnection implements SocketHandler {
 	}
 
 	public void flagWrite() {
+		/**
+		 * Many threads may post messages before the selector gets around to
+		 * processing the operation, so only one is queued at any time.
+		 */
+		if(!writeFlagged.compareAndSet(false, true)) {
+			return;
+		}
 		selectorThread.addSelectorOperation(new Runnable() {
 			public void run() {
+				writeFlagged.set(false);
 				if(key.isValid()) {
 					if(Log.isTraceEnabled()) {
 						Log.trace("Flag selector as READ/WRITE");
@@ -471,6 +481,10 @@ public class SocketConnection implements SocketHandler {
 
 	@Override
 	public boolean wantsRead() {
-		return true;
+		/**
+		 * Stop reading whilst the executor cannot accept more work. The
+		 * engine resumes reads when capacity is available again.
+		 */
+		return !daemonContext.isExecutorSaturated();
 	}
 }
@@ -493,6 +493,8 @@ public class SshEngine {
 				
 				if (transferThreads != null)
 					transferThreads.shutdown();
+				
+				context.shutdownExecutorService();
 	
 				
 			} finally {
@@ -502,6 +504,15 @@ public class SshEngine {
 		}
 	}
 	
+	/**
+	 * Re-evaluate the interest of every connection in reading from its socket,
+	 * for example once the executor is no longer saturated.
+	 */
+	public void resumeReads() {
+		if (transferThreads != null)
+			transferThreads.resumeReads();
+	}
+	
 	public void shutdownAndExit() {
 		shutdownNow(false, 0L);
 		Log.getDefaultContext().shutdown();
@@ -950,14 +961,26 @@ public class SshEngine {
 			SocketHandler listener = (SocketHandler) key.attachment();
 
 			if (key != null && key.isValid()) {
-				key.interestOps(0);
 			
 				if(Log.isTraceEnabled()) {
 					Log.trace("Processing {}{}{}", listener.getName(),
 							key.isReadable() ? " READ" : "", key.isWritable() ? " WRITE" : "");
 				}
 				
-				listener.addTask(new SocketReadWriteTask(listener.getConnection(), key, listener));
+				if(context.isSelectorThreadIO()) {
+					/**
+					 * Read, write and frame on this thread. Decoded messages are
+					 * dispatched to the connection's executor by the protocol engine.
+					 */
+					if(processSocketEvents(key, listener)) {
+						key.cancel();
+					} else {
+						updateInterestOps(key, listener);
+					}
+				} else {
+					key.interestOps(0);
+					listener.addTask(new SocketReadWriteTask(listener.getConnection(), key, listener));
+				}
 			}
 		}
 		
@@ -967,6 +990,55 @@ public class SshEngine {
 
 	}
 
+	static boolean processSocketEvents(SelectionKey key, SocketHandler listener) {
+		
+		boolean cancel = false;
+		if (key.isValid() && key.isWritable()) {
+			if(Log.isTraceEnabled()) {
+				Log.trace("Starting {} WRITE", listener.getName());
+			}
+			cancel = listener.processWriteEvent();
+		}
+
+		if (key.isValid() && key.isReadable()) {
+			if(Log.isTraceEnabled()) {
+				Log.trace("Starting {} READ", listener.getName());
+			}
+			cancel |= listener.processReadEvent();
+		}
+		return cancel;
+	}
+	
+	static void updateInterestOps(SelectionKey key, SocketHandler listener) {
+		
+		if(key.isValid()) {
+			int ops = 0;
+			boolean wantsWrite = listener.wantsWrite();
+			boolean wantsRead =  listener.wantsRead();
+			if(wantsWrite) {
+				ops |= SelectionKey.OP_WRITE;
+			}
+			if(wantsRead) {
+				ops |= SelectionKey.OP_READ;
+			}
+			if(Log.isTraceEnabled()) {
+				Log.trace("{} has state ops={} {}",
+						listener.getName(),
+						ops,
+						wantsWrite && wantsRead ? "READ/WRITE" : wantsWrite ? "WRITE" : wantsRead ? "READ" : "NONE");
+			}
+			key.interestOps(ops); 
+			
+			/**
+			 * Reads may have been resumed between checking and setting the
+			 * interest ops, in which case the resume would be lost.
+			 */
+			if(!wantsRead && listener.wantsRead()) {
+				key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+			}
+		}
+	}
+	
 	class SocketReadWriteTask extends ConnectionAwareTask {
 		
 		SocketHandler listener;
@@ -979,44 +1051,12 @@ public class SshEngine {
 		
 		public void doTask() {
 			
-			boolean cancel = false;
-			if (key.isValid() && key.isWritable()) {
-				if(Log.isTraceEnabled()) {
-					Log.trace("Starting {} WRITE", listener.getName());
-				}
-				cancel = listener.processWriteEvent();
-			}
-
-			if (key.isValid() && key.isReadable()) {
-				if(Log.isTraceEnabled()) {
-					Log.trace("Starting {} READ", listener.getName());
-				}
-				cancel |= listener.processReadEvent();
-			}
-
-			if(cancel) {
+			if(processSocketEvents(key, listener)) {
 				key.cancel();
 			} else {
 				listener.getSelectorThread().addSelectorOperation(new Runnable() {
 					public void run() {
-						if(key.isValid()) {
-							int ops = 0;
-							boolean wantsWrite = listener.wantsWrite();
-							boolean wantsRead =  listener.wantsRead();
-							if(wantsWrite) {
-								ops |= SelectionKey.OP_WRITE;
-							}
-							if(wantsRead) {
-								ops |= SelectionKey.OP_READ;
-							}
-							if(Log.isTraceEnabled()) {
-								Log.trace("{} has state ops={} {}",
-										listener.getName(),
-										ops,
-										wantsWrite && wantsRead ? "READ/WRITE" : wantsWrite ? "WRITE" : wantsRead ? "READ" : "NONE");
-							}
-							key.interestOps(ops); 
-						}
+						updateInterestOps(key, listener);
 					}
 				});
 			}
@@ -30,10 +30,14 @@ import java.nio.channels.spi.SelectorProvider;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
 
 import com.sshtools.common.events.EventListener;
 import com.sshtools.common.events.EventServiceImplementation;
+import com.sshtools.common.ssh.PacketPool;
 import com.sshtools.common.util.ByteBufferPool;
+import com.sshtools.synergy.ssh.SshContext;
 
 /**
  * Each instance of a {@link SshEngine} has a single configuration context.
@@ -53,14 +57,28 @@ public class SshEngineContext {
 	int idleServicePeriod = 1;
 	int inactivePeriodsPerIdleEvent = 1;
 	boolean useDirectByteBuffers = true;
+	volatile boolean selectorThreadIO = false;
+	int executorCorePoolSize = 0;
+	int executorMaximumPoolSize = Integer.MAX_VALUE;
+	int executorQueueSize = 0;
+	long executorKeepAliveSeconds = 60;
+	long executorStallTimeoutMs = 1000;
+	int executorMaximumStallThreads = BoundedExecutorService.DEFAULT_MAXIMUM_STALL_THREADS;
+	Supplier<ExecutorService> executorServiceFactory = null;
+	volatile ExecutorService executorService = null;
 	int bufferPoolArraySize = 65536+4096;
+	long bufferPoolMaximumRetainedBytes = ByteBufferPool.DEFAULT_MAXIMUM_RETAINED_BYTES;
+	int bufferPoolMagazineSize = ByteBufferPool.DEFAULT_MAGAZINE_SIZE;
 	Map<String, ListeningInterface> interfacesToBind = new ConcurrentHashMap<String, ListeningInterface>(8, 0.9f, 1);
 
 	int ipv6WorkaroundPort = 60022;
 	String ipv6WorkaroundBindAddress = "127.0.0.1";
 
 	SelectorProvider selectorProvider = SelectorProvider.provider();
-	ByteBufferPool bufferPool = null;
+	volatile ByteBufferPool bufferPool = null;
+	Map<Integer, ByteBufferPool> bufferPools = new ConcurrentHashMap<>();
+	volatile PacketPool packetPool = null;
+	long packetPoolMaximumRetainedBytes = PacketPool.DEFAULT_MAXIMUM_RETAINED_BYTES;
 
 	private Map<String,Object> attributes = new HashMap<String,Object>();
 	
@@ -123,11 +141,34 @@ public class SshEngineContext {
 	 * 
 	 * @return ByteBufferPool
 	 */
-	public synchronized ByteBufferPool getBufferPool() {
-		if (bufferPool == null)
-			bufferPool = new ByteBufferPool(bufferPoolArraySize,
-					useDirectByteBuffers);
-		return bufferPool;
+	public ByteBufferPool getBufferPool() {
+		ByteBufferPool pool = bufferPool;
+		if (pool == null) {
+			synchronized (this) {
+				pool = bufferPool;
+				if (pool == null) {
+					bufferPool = pool = new ByteBufferPool(bufferPoolArraySize,
+							useDirectByteBuffers, bufferPoolMaximumRetainedBytes, 
+							bufferPoolMagazineSize);
+				}
+			}
+		}
+		return pool;
+	}
+	
+	/**
+	 * Returns a buffer pool for buffers of the given capacity. Pools are shared by
+	 * all connections of this engine.
+	 * 
+	 * @param capacity
+	 * @return ByteBufferPool
+	 */
+	public ByteBufferPool getBufferPool(int capacity) {
+		if (capacity == bufferPoolArraySize)
+			return getBufferPool();
+		return bufferPools.computeIfAbsent(capacity, 
+				(c) -> new ByteBufferPool(c, useDirectByteBuffers, 
+						bufferPoolMaximumRetainedBytes, bufferPoolMagazineSize));
 	}
 
 	/**
@@ -177,6 +218,298 @@ public class SshEngineContext {
 		this.useDirectByteBuffers = useDirectByteBuffers;
 	}
 
+	/**
+	 * Get the executor that runs the tasks of all connections of this engine,
+	 * creating it if required.
+	 * 
+	 * @return ExecutorService
+	 */
+	public ExecutorService getExecutorService() {
+		ExecutorService executor = executorService;
+		if (executor == null) {
+			synchronized (this) {
+				executor = executorService;
+				if (executor == null) {
+					Supplier<ExecutorService> factory = executorServiceFactory != null 
+							? executorServiceFactory : SshContext.getExecutorServiceFactory();
+					if(factory != null) {
+						executor = factory.get();
+					} else {
+						executor = new BoundedExecutorService(product + "-EXECUTOR", 
+								executorCorePoolSize, executorMaximumPoolSize, executorKeepAliveSeconds, 
+								executorQueueSize, executorStallTimeoutMs, executorMaximumStallThreads,
+								() -> daemon.resumeReads());
+					}
+					executorService = executor;
+				}
+			}
+		}
+		return executor;
+	}
+	
+	/**
+	 * Determine whether the executor has no capacity left, in which case socket
+	 * reads are paused until it has.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isExecutorSaturated() {
+		ExecutorService executorService = this.executorService;
+		return executorService instanceof BoundedExecutorService 
+				&& ((BoundedExecutorService)executorService).isSaturated();
+	}
+	
+	synchronized void shutdownExecutorService() {
+		if(executorService != null) {
+			executorService.shutdownNow();
+			executorService = null;
+		}
+	}
+	
+	/**
+	 * Set the factory used to create this engine's executor, overriding the bounded
+	 * executor configured by the other executor settings. The engine owns the executor
+	 * the factory returns and shuts it down when the engine is shut down.
+	 * 
+	 * @param executorServiceFactory factory
+	 */
+	public void setExecutorServiceFactory(Supplier<ExecutorService> executorServiceFactory) {
+		this.executorServiceFactory = executorServiceFactory;
+	}
+	
+	/**
+	 * Get the number of threads the executor keeps when idle.
+	 * 
+	 * @return int
+	 */
+	public int getExecutorCorePoolSize() {
+		return executorCorePoolSize;
+	}
+
+	/**
+	 * Set the number of threads the executor keeps when idle. This must be set before
+	 * the executor is first used.
+	 * 
+	 * @param executorCorePoolSize
+	 *            int
+	 */
+	public void setExecutorCorePoolSize(int executorCorePoolSize) {
+		this.executorCorePoolSize = executorCorePoolSize;
+	}
+
+	/**
+	 * Get the maximum number of threads the executor will create.
+	 * 
+	 * @return int
+	 */
+	public int getExecutorMaximumPoolSize() {
+		return executorMaximumPoolSize;
+	}
+
+	/**
+	 * Set the maximum number of threads the executor will create. When all threads are
+	 * busy and the queue is full, socket reads are paused until capacity is available.
+	 * Connection tasks may block waiting for the remote side, so this should comfortably
+	 * exceed the number of transfers expected to be in progress at once. This must be set
+	 * before the executor is first used.
+	 * 
+	 * @param executorMaximumPoolSize
+	 *            int
+	 */
+	public void setExecutorMaximumPoolSize(int executorMaximumPoolSize) {
+		this.executorMaximumPoolSize = executorMaximumPoolSize;
+	}
+
+	/**
+	 * Get the number of tasks that may wait for an executor thread.
+	 * 
+	 * @return int
+	 */
+	public int getExecutorQueueSize() {
+		return executorQueueSize;
+	}
+
+	/**
+	 * Set the number of tasks that may wait for an executor thread. Threads above the
+	 * core size are only created once the queue is full. The default of zero hands each
+	 * task directly to a thread. This must be set before the executor is first used.
+	 * 
+	 * @param executorQueueSize
+	 *            int
+	 */
+	public void setExecutorQueueSize(int executorQueueSize) {
+		this.executorQueueSize = executorQueueSize;
+	}
+
+	/**
+	 * Get the number of seconds an idle thread above the core size is kept alive.
+	 * 
+	 * @return long
+	 */
+	public long getExecutorKeepAliveSeconds() {
+		return executorKeepAliveSeconds;
+	}
+
+	/**
+	 * Set the number of seconds an idle thread above the core size is kept alive. This
+	 * must be set before the executor is first used.
+	 * 
+	 * @param executorKeepAliveSeconds
+	 *            long
+	 */
+	public void setExecutorKeepAliveSeconds(long executorKeepAliveSeconds) {
+		this.executorKeepAliveSeconds = executorKeepAliveSeconds;
+	}
+
+	/**
+	 * Get the time in milliseconds without a task completing, whilst tasks are waiting, 
+	 * after which the executor starts an additional thread.
+	 * 
+	 * @return long
+	 */
+	public long getExecutorStallTimeoutMs() {
+		return executorStallTimeoutMs;
+	}
+
+	/**
+	 * Set the time in milliseconds without a task completing, whilst tasks are waiting,
+	 * after which the executor starts an additional thread beyond its maximum. This stops
+	 * the executor deadlocking when all of its threads are blocked waiting for a message
+	 * that is queued behind them. This must be set before the executor is first used.
+	 * 
+	 * @param executorStallTimeoutMs
+	 *            long
+	 */
+	public void setExecutorStallTimeoutMs(long executorStallTimeoutMs) {
+		this.executorStallTimeoutMs = executorStallTimeoutMs;
+	}
+
+	/**
+	 * Get the maximum number of threads the executor uses for stalled tasks in
+	 * addition to its maximum pool size.
+	 * 
+	 * @return int
+	 */
+	public int getExecutorMaximumStallThreads() {
+		return executorMaximumStallThreads;
+	}
+
+	/**
+	 * Set the maximum number of threads the executor uses for stalled tasks in addition
+	 * to its maximum pool size. When all of them are busy, stalled tasks wait for the next
+	 * free thread. This must be set before the executor is first used.
+	 * 
+	 * @param executorMaximumStallThreads
+	 *            int
+	 */
+	public void setExecutorMaximumStallThreads(int executorMaximumStallThreads) {
+		this.executorMaximumStallThreads = executorMaximumStallThreads;
+	}
+
+	/**
+	 * Determine whether socket reads and writes are performed directly on the
+	 * selector thread.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isSelectorThreadIO() {
+		return selectorThreadIO;
+	}
+
+	/**
+	 * Perform socket reads, writes and packet framing directly on the selector
+	 * thread rather than handing each readiness event to the connection's executor.
+	 * Decoded messages are still processed by worker threads. This removes two
+	 * thread handoffs and a selector wakeup per event, which reduces latency for
+	 * interactive sessions, at the cost of key exchange computations also running
+	 * on the selector thread.
+	 * 
+	 * @param selectorThreadIO
+	 *            boolean
+	 */
+	public void setSelectorThreadIO(boolean selectorThreadIO) {
+		this.selectorThreadIO = selectorThreadIO;
+	}
+
+	/**
+	 * Returns the packet pool shared by all connections of this engine.
+	 * 
+	 * @return PacketPool
+	 */
+	public PacketPool getPacketPool() {
+		PacketPool pool = packetPool;
+		if (pool == null) {
+			synchronized (this) {
+				pool = packetPool;
+				if (pool == null) {
+					packetPool = pool = new PacketPool(packetPoolMaximumRetainedBytes);
+				}
+			}
+		}
+		return pool;
+	}
+
+	/**
+	 * Get the maximum total size of the packets retained by the packet pool.
+	 * 
+	 * @return long
+	 */
+	public long getPacketPoolMaximumRetainedBytes() {
+		return packetPoolMaximumRetainedBytes;
+	}
+
+	/**
+	 * Set the maximum total size of the packets retained by the packet pool. This must
+	 * be set before the pool is first used.
+	 * 
+	 * @param packetPoolMaximumRetainedBytes
+	 *            long
+	 */
+	public void setPacketPoolMaximumRetainedBytes(long packetPoolMaximumRetainedBytes) {
+		this.packetPoolMaximumRetainedBytes = packetPoolMaximumRetainedBytes;
+	}
+
+	/**
+	 * Get the maximum total capacity of free buffers each buffer pool retains.
+	 * 
+	 * @return long
+	 */
+	public long getBufferPoolMaximumRetainedBytes() {
+		return bufferPoolMaximumRetainedBytes;
+	}
+
+	/**
+	 * Set the maximum total capacity of free buffers each buffer pool retains. Buffers
+	 * returned to a pool beyond this limit are released to the garbage collector.
+	 * 
+	 * @param bufferPoolMaximumRetainedBytes
+	 *            long
+	 */
+	public void setBufferPoolMaximumRetainedBytes(long bufferPoolMaximumRetainedBytes) {
+		this.bufferPoolMaximumRetainedBytes = bufferPoolMaximumRetainedBytes;
+	}
+
+	/**
+	 * Get the number of free buffers of each size cached by each thread.
+	 * 
+	 * @return int
+	 */
+	public int getBufferPoolMagazineSize() {
+		return bufferPoolMagazineSize;
+	}
+
+	/**
+	 * Set the number of free buffers of each size cached by each thread. Threads
+	 * take and return buffers from their own cache without contending with other
+	 * threads. Set to zero to disable the per-thread caches.
+	 * 
+	 * @param bufferPoolMagazineSize
+	 *            int
+	 */
+	public void setBufferPoolMagazineSize(int bufferPoolMagazineSize) {
+		this.bufferPoolMagazineSize = bufferPoolMagazineSize;
+	}
+
 	/**
 	 * Set the size of the byte buffers in the pool. The minimum size is 35000
 	 * bytes
@@ -36,7 +36,7 @@ public class AuthenticatedFuture extends AbstractRequestFuture {
 	}
 
 	@Override
-	public synchronized void done(boolean success) {
+	public void done(boolean success) {
 		if(Log.isDebugEnabled()) {
 			Log.debug("Authenticated connection {}", transport.getUUID());
 		}
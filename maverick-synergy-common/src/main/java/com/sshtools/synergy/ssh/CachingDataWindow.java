@@ -25,45 +25,82 @@ package com.sshtools.synergy.ssh;
 import java.io.EOFException;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
-import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
 
 import com.sshtools.common.logger.Log;
 
+/**
+ * A fixed size ring buffer holding data received on a channel until it is
+ * consumed. There may be one producer thread and one consumer thread at any one
+ * time, and neither takes a lock unless it has to wait. Data may wrap around the
+ * end of the storage, so the readable and writable regions are each presented
+ * as up to two segments for scatter/gather I/O.
+ */
 public class CachingDataWindow {
 
-	ByteBuffer cache;
-	boolean blocking = false;
-	boolean open = true;
+	final ByteBuffer cache;
+	final int capacity;
+	volatile long writeCount;
+	volatile long readCount;
+	volatile boolean blocking = false;
+	volatile boolean open = true;
 	long timeout = 30000;
+	
+	/**
+	 * The producer and consumer each use their own views over the storage so
+	 * that neither disturbs the position and limit of the other.
+	 */
+	private final ByteBuffer[] writeViews;
+	private final ByteBuffer[] readViews;
+	
+	/**
+	 * Waiting threads park on these. A lock is used rather than the object
+	 * monitor so that virtual threads blocked on the window do not pin their
+	 * carrier thread. The other side only takes the lock to signal when it
+	 * knows a thread is waiting.
+	 */
+	protected final ReentrantLock lock = new ReentrantLock();
+	protected final Condition changed = lock.newCondition();
+	protected final Condition spaceAvailable = lock.newCondition();
+	private final AtomicInteger waitingReaders = new AtomicInteger();
+	private final AtomicInteger waitingWriters = new AtomicInteger();
+	
 	public CachingDataWindow(int size, boolean blocking) {
 		this.blocking = blocking;
-		cache = ByteBuffer.allocate(size);
-		cache.flip();
+		this.capacity = size;
+		this.cache = ByteBuffer.allocate(size);
+		this.writeViews = new ByteBuffer[] { cache.duplicate(), cache.duplicate() };
+		this.readViews = new ByteBuffer[] { cache.duplicate(), cache.duplicate() };
 	}
 
-	public synchronized void enableBlocking() {
+	public void enableBlocking() {
 		blocking = true;
 	}
 	
-	public synchronized void disableBlocking() {
+	public void disableBlocking() {
 		blocking = false;
 	}
 	
-	public synchronized boolean hasRemaining() {
-		return Objects.nonNull(cache) && cache.hasRemaining();
+	public boolean hasRemaining() {
+		return remaining() > 0;
 	}
 
-	public synchronized void close() {
-		
-		if(this.open) {
-			this.open = false;
-			if(!cache.hasRemaining()) {
-				this.cache = null;
-			}
+	public void close() {
+		lock.lock();
+		try {
+			open = false;
+			changed.signalAll();
+			spaceAvailable.signalAll();
+		} finally {
+			lock.unlock();
 		}
 	}
 	
-	public synchronized void put(ByteBuffer data) throws EOFException {
+	public void put(ByteBuffer data) throws EOFException {
 		
 		// Do not use isOpen as it checks for remaining too. If its closed, its closed
 		// and should not accept any more data at all.
@@ -71,118 +108,257 @@ public class CachingDataWindow {
 			throw new EOFException();
 		}
 		
-		cache.compact();
+		int count = data.remaining();
 		
-		if(blocking) {
-			long start = System.currentTimeMillis();
-			while(cache.remaining() < data.remaining()) {
-				cache.flip();
-				try {
-					wait(1000);
-				} catch (InterruptedException e) {
-					throw new IllegalStateException("Interrupted during cache put wait");
-				}
-				cache.compact();
-				if(System.currentTimeMillis() - start > timeout) {
-					throw new IllegalStateException(String.format("Timeout trying to put %d bytes into cache with %d remaining", 
-							data.remaining(),
-							cache.remaining()));
-					
-				}
+		if(capacity - remaining() < count) {
+			if(!blocking) {
+				throw new BufferOverflowException();
 			}
+			awaitSpace(count);
 		}
 		
-		int remaining = data.remaining();
+		ByteBuffer[] views = writableSegments(count);
+		int limit = data.limit();
+		data.limit(data.position() + views[0].remaining());
+		views[0].put(data);
+		data.limit(limit);
+		views[1].put(data);
+		
+		produced(count);
 		
-		if(remaining > cache.remaining()) {
-			throw new BufferOverflowException();
+		if(Log.isTraceEnabled()) {
+			Log.trace("Written {} bytes to cached data window remaining={}", count, remaining());
 		}
+	}
+
+	public int get(byte[] tmp, int offset, int length) throws EOFException {
 		
-		cache.put(data);
-		cache.flip();
+		int count = Math.min(length, awaitData());
+		if(count > 0) {
+			ByteBuffer[] views = readableSegments(count);
+			int first = views[0].remaining();
+			views[0].get(tmp, offset, first);
+			views[1].get(tmp, offset + first, count - first);
+			consumed(count);
+		}
 		
-		int count = remaining - data.remaining();
 		if(Log.isTraceEnabled()) {
-			Log.trace("Written {} bytes from cached data window position={} remaining={} limit={}", 
-					count, cache.position(), cache.remaining(), cache.limit());
+			Log.trace("Read {} bytes from cached data window remaining={}", count, remaining());
+		}
+		return count;
+	}
+
+	public int get(ByteBuffer buffer) throws EOFException {
+		
+		int count = Math.min(buffer.remaining(), awaitData());
+		if(count > 0) {
+			ByteBuffer[] views = readableSegments(count);
+			buffer.put(views[0]);
+			buffer.put(views[1]);
+			consumed(count);
 		}
 		
-		notifyAll();
+		if(Log.isTraceEnabled()) {
+			Log.trace("Read {} bytes from cached data window remaining={}", count, remaining());
+		}
+		return count;
+	}
+	
+	public int remaining() {
+		/**
+		 * Read the consumer's count first. The producer's count can only have
+		 * grown since, so the result is never negative.
+		 */
+		long read = readCount;
+		long written = writeCount;
+		return (int) Math.min(capacity, written - read);
+	}
 
+	public boolean isOpen() {
+		return open || hasRemaining();
 	}
 
-	public synchronized int get(byte[] tmp, int offset, int length) throws EOFException {
+	/**
+	 * Wait up to the given time for data to become available or the window to
+	 * be closed. Returns immediately if either is already the case.
+	 * 
+	 * @param i milliseconds
+	 * @throws InterruptedException
+	 */
+	public void waitFor(long i) throws InterruptedException {
+		lock.lock();
+		waitingReaders.incrementAndGet();
+		try {
+			if(open && !hasRemaining()) {
+				changed.await(i, TimeUnit.MILLISECONDS);
+			}
+		} finally {
+			waitingReaders.decrementAndGet();
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Wait for data to become available, for the window to be closed, for the
+	 * timeout to elapse or for the stop condition to become true. The condition
+	 * lets a reader wait on state held outside the window, such as a channel 
+	 * reaching EOF. Whoever changes that state must call {@link #wakeup()} 
+	 * afterwards. The lock is only taken if there is no data, and it is not held 
+	 * when this returns, so the consumer reads the data without it.
+	 * 
+	 * @param timeout milliseconds, or zero to wait indefinitely
+	 * @param stop condition that ends the wait early
+	 * @return true if data is available
+	 */
+	public boolean waitForData(long timeout, BooleanSupplier stop) {
 		
-		verifyOpen();
+		if(hasRemaining()) {
+			return true;
+		}
 		
-		if(blocking) {
-			while(!cache.hasRemaining() && open) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		lock.lock();
+		waitingReaders.incrementAndGet();
+		try {
+			while(!hasRemaining() && open && !stop.getAsBoolean()) {
 				try {
-					wait(1000);
+					if(timeout == 0) {
+						changed.await();
+					} else {
+						long wait = deadline - System.nanoTime();
+						if(wait <= 0) {
+							break;
+						}
+						changed.awaitNanos(wait);
+					}
 				} catch (InterruptedException e) {
 				}
 			}
+			return hasRemaining();
+		} finally {
+			waitingReaders.decrementAndGet();
+			lock.unlock();
 		}
-		
-		int count = Math.min(length, cache.remaining());
-		int limit = cache.limit();
-		cache.limit(cache.position() + count);
-		cache.get(tmp, offset, count);
-		cache.limit(limit);
-		if(Log.isTraceEnabled()) {
-			Log.trace("Read {} bytes from cached data window position={} remaining={} limit={}", 
-					count, cache.position(), cache.remaining(), cache.limit());
+	}
+	
+	/**
+	 * Wake any reader waiting in {@link #waitForData(long, BooleanSupplier)} so
+	 * that it checks its stop condition again.
+	 */
+	public void wakeup() {
+		signal(changed);
+	}
+	
+	/**
+	 * Get the views over the next readable bytes. Only the consumer may call
+	 * this, and must call {@link #consumed(int)} with the number of bytes it
+	 * took from the views.
+	 * 
+	 * @param length number of bytes, no more than {@link #remaining()}
+	 * @return two views, the second being empty unless the region wraps
+	 */
+	protected ByteBuffer[] readableSegments(int length) {
+		return segments(readViews, readCount, length);
+	}
+	
+	protected void consumed(int count) {
+		readCount = readCount + count;
+		if(waitingWriters.get() > 0) {
+			signal(spaceAvailable);
 		}
-		
-		notifyAll();
-		return count;
-		
 	}
 	
-	private void verifyOpen() throws EOFException {
-		if(!isOpen()) {
-			this.cache = null;
-			throw new EOFException();
+	/**
+	 * Get the views over the next writable bytes. Only the producer may call
+	 * this, and must call {@link #produced(int)} with the number of bytes it
+	 * put into the views.
+	 * 
+	 * @param length number of bytes, no more than the free space
+	 * @return two views, the second being empty unless the region wraps
+	 */
+	protected ByteBuffer[] writableSegments(int length) {
+		return segments(writeViews, writeCount, length);
+	}
+	
+	protected void produced(int count) {
+		writeCount = writeCount + count;
+		if(waitingReaders.get() > 0) {
+			signal(changed);
 		}
 	}
-
-	public synchronized int get(ByteBuffer buffer) throws EOFException {
+	
+	private ByteBuffer[] segments(ByteBuffer[] views, long index, int length) {
+		int start = (int) (index % capacity);
+		int first = Math.min(length, capacity - start);
+		views[0].limit(start + first);
+		views[0].position(start);
+		views[1].limit(length - first);
+		views[1].position(0);
+		return views;
+	}
+	
+	private void signal(Condition condition) {
+		lock.lock();
+		try {
+			condition.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	private int awaitData() throws EOFException {
+		
+		int available = remaining();
+		if(available > 0) {
+			return available;
+		}
+		if(!open) {
+			throw new EOFException();
+		}
+		if(!blocking) {
+			return 0;
+		}
 		
-		verifyOpen();
-			
-		if(blocking) {
-			while(!cache.hasRemaining() && open) {
+		lock.lock();
+		waitingReaders.incrementAndGet();
+		try {
+			while((available = remaining()) == 0 && open) {
 				try {
-					wait(0);
+					changed.await();
 				} catch (InterruptedException e) {
 				}
 			}
+			return available;
+		} finally {
+			waitingReaders.decrementAndGet();
+			lock.unlock();
 		}
-		
-		int count = Math.min(buffer.remaining(), cache.remaining());
-		int limit = cache.limit();
-		cache.limit(cache.position() + count);
-		buffer.put(cache);
-		cache.limit(limit);
-		if(Log.isTraceEnabled()) {
-			Log.trace("Read {} bytes from cached data window position={} remaining={} limit={}", 
-					count, cache.position(), cache.remaining(), cache.limit());
-		}
-		
-		notifyAll();
-		return count;
-		
 	}
 	
-	public synchronized int remaining() {
-		return Objects.nonNull(cache) ? cache.remaining() : 0;
-	}
-
-	public synchronized boolean isOpen() {
-		return open || (Objects.nonNull(cache) && cache.hasRemaining());
-	}
-
-	public synchronized void waitFor(long i) throws InterruptedException {
-		wait(i);
+	private void awaitSpace(int count) throws EOFException {
+		
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		lock.lock();
+		waitingWriters.incrementAndGet();
+		try {
+			while(capacity - remaining() < count) {
+				if(!open) {
+					throw new EOFException();
+				}
+				long wait = deadline - System.nanoTime();
+				if(wait <= 0) {
+					throw new IllegalStateException(String.format("Timeout trying to put %d bytes into cache with %d remaining", 
+							count, capacity - remaining()));
+				}
+				try {
+					spaceAvailable.awaitNanos(wait);
+				} catch (InterruptedException e) {
+					throw new IllegalStateException("Interrupted during cache put wait");
+				}
+			}
+		} finally {
+			waitingWriters.decrementAndGet();
+			lock.unlock();
+		}
 	}
 }
@@ -22,56 +22,107 @@ package com.sshtools.synergy.ssh;
  * #L%
  */
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.sshtools.common.util.UnsignedInteger32;
 
+/**
+ * Tracks the space available in one direction of a channel. The space is held
+ * in an {@link AtomicLong} so that the sending and receiving threads can update
+ * it without locking or allocating. Threads waiting for space are woken by the
+ * channel when a window adjustment is processed.
+ */
 public class ChannelDataWindow {
 
-	UnsignedInteger32 maximumWindowSpace;
-	UnsignedInteger32 minimumWindowSpace;
-	int maximumPacketSize;
-	UnsignedInteger32 windowSpace;
+	volatile UnsignedInteger32 maximumWindowSpace;
+	volatile UnsignedInteger32 minimumWindowSpace;
+	volatile int maximumPacketSize;
+	final AtomicLong windowSpace;
 	
 	public ChannelDataWindow(UnsignedInteger32 initialWindowSpace, UnsignedInteger32 maximumWindowSpace, UnsignedInteger32 minimumWindowSpace, int maximumPacketSize) {
 		this.maximumWindowSpace = maximumWindowSpace;
 		this.minimumWindowSpace = minimumWindowSpace;
 		this.maximumPacketSize =  maximumPacketSize;
-		this.windowSpace =  initialWindowSpace;
+		this.windowSpace =  new AtomicLong(initialWindowSpace.longValue());
+	}
+	
+	public void consume(long count) {
+		long current;
+		do {
+			current = windowSpace.get();
+			if(count > current) {
+				throw new NumberFormatException();
+			}
+		} while(!windowSpace.compareAndSet(current, current - count));
+	}
+	
+	/**
+	 * Consume as much of the window as is available up to a maximum.
+	 * 
+	 * @param count maximum number of bytes to consume
+	 * @return the number of bytes consumed, which may be zero
+	 */
+	public long consumeUpTo(long count) {
+		long current;
+		long consumed;
+		do {
+			current = windowSpace.get();
+			consumed = Math.min(current, count);
+			if(consumed <= 0) {
+				return 0;
+			}
+		} while(!windowSpace.compareAndSet(current, current - consumed));
+		return consumed;
+	}
+	
+	public void adjust(UnsignedInteger32 count) {
+		adjust(count.longValue());
 	}
 	
-	public synchronized void consume(long count) {
-		windowSpace = UnsignedInteger32.deduct(windowSpace, count);
+	public void adjust(long count) {
+		long current;
+		do {
+			current = windowSpace.get();
+			if(current + count > UnsignedInteger32.MAX_VALUE) {
+				throw new NumberFormatException();
+			}
+		} while(!windowSpace.compareAndSet(current, current + count));
 	}
 	
-	public synchronized void adjust(UnsignedInteger32 count) {
-		windowSpace = UnsignedInteger32.add(windowSpace, count);
-		notifyAll();
+	public UnsignedInteger32 getWindowSpace() {
+		return new UnsignedInteger32(windowSpace.get());
 	}
 	
-	public synchronized UnsignedInteger32 getWindowSpace() {
-		return windowSpace;
+	/**
+	 * Get the current window space without allocating.
+	 * 
+	 * @return long
+	 */
+	public long getWindowSpaceValue() {
+		return windowSpace.get();
 	}
 
-	public synchronized boolean isAdjustRequired() {
-		return windowSpace.longValue() < minimumWindowSpace.longValue();
+	public boolean isAdjustRequired() {
+		return windowSpace.get() < minimumWindowSpace.longValue();
 	}
 	
-	public synchronized UnsignedInteger32 getAdjustCount() {
-		return UnsignedInteger32.deduct(maximumWindowSpace, windowSpace);
+	public UnsignedInteger32 getAdjustCount() {
+		return new UnsignedInteger32(maximumWindowSpace.longValue() - windowSpace.get());
 	}
 
-	public synchronized UnsignedInteger32 getMaximumWindowSpace() {
+	public UnsignedInteger32 getMaximumWindowSpace() {
 		return maximumWindowSpace;
 	}
 
-	public synchronized void setMaximumWindowSpace(UnsignedInteger32 maximumWindowSpace) {
+	public void setMaximumWindowSpace(UnsignedInteger32 maximumWindowSpace) {
 		this.maximumWindowSpace = maximumWindowSpace;
 	}
 
-	public synchronized UnsignedInteger32 getMinimumWindowSpace() {
+	public UnsignedInteger32 getMinimumWindowSpace() {
 		return minimumWindowSpace;
 	}
 
-	public synchronized void setMinimumWindowSpace(UnsignedInteger32 minimumWindowSpace) {
+	public void setMinimumWindowSpace(UnsignedInteger32 minimumWindowSpace) {
 		this.minimumWindowSpace = minimumWindowSpace;
 	}
 
@@ -83,7 +134,10 @@ public class ChannelDataWindow {
 		this.maximumPacketSize = maximumPacketSize;
 	}
 
-	public synchronized void close() {
-		notifyAll();
+	/**
+	 * Retained for compatibility. Threads waiting for window space wait on the
+	 * channel, which wakes them when it is closed.
+	 */
+	public void close() {
 	}
 }
@@ -30,8 +30,15 @@ import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.sshtools.common.logger.Log;
 import com.sshtools.common.nio.IdleStateListener;
@@ -62,6 +69,7 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 
 	long lastActivity = System.currentTimeMillis();
 	int timeout = 0;
+	long sendTimeout = 0;
 	
 	/**
 	 * The Connection Protocol instance managing this session, use this instance
@@ -88,6 +96,22 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 	AtomicBoolean haltIncomingData = new AtomicBoolean();
 	
 	int state = CHANNEL_UNINITIALIZED;
+	
+	/**
+	 * Senders wait on these rather than the channel monitor so that a waiting
+	 * virtual thread does not pin its carrier.
+	 */
+	final ReentrantLock sendLock = new ReentrantLock();
+	final Condition windowAvailable = sendLock.newCondition();
+	final Condition dataSent = sendLock.newCondition();
+	
+	/**
+	 * Asynchronous sends waiting for remote window, and those whose final
+	 * message has been queued but not yet written.
+	 */
+	final ConcurrentLinkedQueue<PendingSend> pendingSends = new ConcurrentLinkedQueue<PendingSend>();
+	final Set<PendingSend> inFlightSends = ConcurrentHashMap.newKeySet();
+	final AtomicInteger drainingSends = new AtomicInteger();
 
 	ConcurrentLinkedQueue<ChannelEventListener> eventListeners = new ConcurrentLinkedQueue<ChannelEventListener>();
 	
@@ -375,18 +399,27 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 		return connection.getSessionIdentifier();
 	}
 
+	private void signalSenders() {
+		sendLock.lock();
+		try {
+			windowAvailable.signalAll();
+			dataSent.signalAll();
+		} finally {
+			sendLock.unlock();
+		}
+	}
+
 	void adjustWindow(UnsignedInteger32 count) {
 		
 		remoteWindow.adjust(count);
 		
-		synchronized(ChannelNG.this) {
-			ChannelNG.this.notifyAll();
-		}
+		signalSenders();
+		drainPendingSends();
 		
 		onWindowAdjust(count);
 
 		for (ChannelEventListener listener : eventListeners) {
-			listener.onWindowAdjust(this, remoteWindow.getWindowSpace().longValue());
+			listener.onWindowAdjust(this, remoteWindow.getWindowSpaceValue());
 		}
 
 	}
@@ -409,6 +442,25 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 		return timeout;
 	}
 	
+	/**
+	 * Set the time in milliseconds a blocking send waits for the remote side to
+	 * open its window before failing. The default of zero waits indefinitely.
+	 * 
+	 * @param sendTimeout
+	 */
+	public void setSendTimeout(long sendTimeout) {
+		this.sendTimeout = sendTimeout;
+	}
+	
+	/**
+	 * Get the time in milliseconds a blocking send waits for remote window space.
+	 * 
+	 * @return long
+	 */
+	public long getSendTimeout() {
+		return sendTimeout;
+	}
+	
 	public Connection<T> getConnection() {
 		return connection.getConnection();
 	}
@@ -424,22 +476,24 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 
 	void consumeWindowSpace(int length) throws IOException {
 
-		synchronized (localWindow) {
-
-			if (localWindow.getWindowSpace().longValue() < length) {
-				throw new IOException("Data length of "
-						+ String.valueOf(length)
-						+ " bytes exceeded available window space of "
-						+ String.valueOf(localWindow.getWindowSpace()) + " bytes.");
-			}
-			
-			localWindow.consume(length);
-			
-			if(Log.isTraceEnabled()) {
-				log("Consumed", length
-						+ " bytes local window space before=" + localWindow.getWindowSpace() + " after="
-						+ localWindow.getWindowSpace());
-			}
+		/**
+		 * Only the thread processing incoming data consumes the local window,
+		 * other threads only ever add to it, so no lock is needed here.
+		 */
+		long before = localWindow.getWindowSpaceValue();
+		if (before < length) {
+			throw new IOException("Data length of "
+					+ String.valueOf(length)
+					+ " bytes exceeded available window space of "
+					+ String.valueOf(before) + " bytes.");
+		}
+		
+		localWindow.consume(length);
+		
+		if(Log.isTraceEnabled()) {
+			log("Consumed", length
+					+ " bytes local window space before=" + before + " after="
+					+ localWindow.getWindowSpaceValue());
 		}
 	}
 
@@ -498,6 +552,11 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 	public void sendData(byte[] data, int off, int len) throws IOException {
 		sendChannelDataAndBlock(data, off, len, null);
 	}
+	
+	@Override
+	public void sendData(ByteBuffer data) throws IOException {
+		sendChannelDataAndBlock(data);
+	}
 
 	public void sendChannelDataAndBlock(byte[] data, int off, int len, Runnable r) throws IOException {
 		
@@ -537,40 +596,49 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 			Log.debug("Queue Buffer rem={} pos={} limit={} capacity={}", buf.remaining(), buf.position(), buf.limit(), buf.capacity());
 		}
 		
-		synchronized(ChannelNG.this) {
+		sendLock.lock();
+		try {
 
+			long waitStarted = 0;
 			do {
 			
 				if(isLocalEOF.get() || isClosed()) {
 					throw new IOException("Channel has been closed");
 				}
 				
-				long window = remoteWindow.getWindowSpace().longValue();
-				UnsignedInteger32 count;
-				if(remoteWindow.getMaximumPacketSize() > buf.remaining()) {
-					count = new UnsignedInteger32(Math.min(remoteWindow.getWindowSpace().longValue(), buf.remaining()));
-				} else {
-					count = new UnsignedInteger32(Math.min(remoteWindow.getWindowSpace().longValue(), remoteWindow.getMaximumPacketSize()));
-				}
+				long window = remoteWindow.getWindowSpaceValue();
+				int count = (int) remoteWindow.consumeUpTo(Math.min(buf.remaining(), remoteWindow.getMaximumPacketSize()));
 
-				if(count.equals(UnsignedInteger32.ZERO)) {
+				if(count == 0) {
 					if(Log.isDebugEnabled()) {
 						log("Waiting", String.format("for %d bytes of remote window", buf.remaining()));
 					}
+					if(waitStarted == 0) {
+						waitStarted = System.currentTimeMillis();
+					} else if(sendTimeout > 0 && System.currentTimeMillis() - waitStarted >= sendTimeout) {
+						throw new IOException("Timeout waiting for remote window space on channel " + getLocalId());
+					}
+					/**
+					 * Woken by adjustWindow when the remote side adjusts the window, or
+					 * when the channel is closed.
+					 */
 					try {
-						wait(5000);
+						windowAvailable.awaitNanos(TimeUnit.MILLISECONDS.toNanos(
+								sendTimeout > 0 ? Math.min(sendTimeout, 5000) : 5000));
 					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted waiting for remote window space on channel " + getLocalId());
 					}
 
 					continue;
 				}	
+				
+				waitStarted = 0;
 
-				remoteWindow.consume(count.intValue());
-
-				if(buf.remaining() > count.intValue()) {
+				if(buf.remaining() > count) {
 					ByteBuffer processedBuffer = buf.slice();
-					processedBuffer.limit(count.intValue());
-					buf.position(buf.position() + count.intValue());
+					processedBuffer.limit(count);
+					buf.position(buf.position() + count);
 			
 					if(Log.isTraceEnabled()) {
 						Log.trace("Sliced Buffer rem={} pos={} limit={} capacity={}", 
@@ -596,34 +664,161 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 				
 			} while(Objects.isNull(lastMessage));
 			
-		}
-		
-		if(!Objects.isNull(lastMessage)) {
-			synchronized(lastMessage) {
-				long t = System.currentTimeMillis();
-				while(!isClosed() && !lastMessage.isMessageSent() && System.currentTimeMillis() - t < 120000) {
-					if(Log.isTraceEnabled()) {
-						Log.trace("Waiting for sent data notification");
-					}
-					try {
-						lastMessage.wait(1000);
-					} catch (InterruptedException e) {
-					}
-				}
-				if(!lastMessage.isMessageSent()) {
-					throw new IOException("Timeout waiting for data to be sent on channel " + getLocalId());
-				}
+			long t = System.currentTimeMillis();
+			while(!isClosed() && !lastMessage.isMessageSent() && System.currentTimeMillis() - t < 120000) {
 				if(Log.isTraceEnabled()) {
-					Log.trace("Received sent data notification");
+					Log.trace("Waiting for sent data notification");
 				}
+				try {
+					dataSent.await(1000, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+				}
+			}
+			if(!lastMessage.isMessageSent()) {
+				throw new IOException("Timeout waiting for data to be sent on channel " + getLocalId());
 			}
+			if(Log.isTraceEnabled()) {
+				Log.trace("Received sent data notification");
+			}
+		} finally {
+			sendLock.unlock();
 		}
 
 		if(r!=null) {
 			getConnectionProtocol().addTask(ExecutorOperationSupport.CALLBACKS, new ConnectionTaskWrapper(getConnection(), r));
 		}
 	}
-	
+
+	/**
+	 * Send channel data without blocking the calling thread. As much of the buffer
+	 * as the remote window allows is queued immediately, the remainder is queued
+	 * as the remote side adjusts the window. This method may be called from any
+	 * thread, including a selector thread.
+	 * <p>
+	 * The channel takes ownership of the buffer until the returned future
+	 * completes. The caller must not modify the buffer's content, position or limit
+	 * until then, after which the buffer may be reused or returned to a pool. The
+	 * future completes exceptionally if the channel is closed before all the data
+	 * has been written. A call to {@link #sendEOF()} does not fail data that has
+	 * already been accepted, the EOF is sent after it.
+	 * <p>
+	 * The future is usually completed on the thread writing to the socket, so
+	 * dependent actions that may block should use the asynchronous variants of
+	 * the {@link CompletableFuture} methods.
+	 * <p>
+	 * Data from asynchronous sends is written in the order the sends were made. It
+	 * is not ordered with respect to concurrent calls to
+	 * {@link #sendChannelDataAndBlock(ByteBuffer)}, so a channel should use one
+	 * style of send or the other.
+	 *
+	 * @param buf
+	 * @return future completed when all the data has been written to the transport
+	 */
+	public CompletableFuture<Void> sendChannelData(ByteBuffer buf) {
+		return sendChannelData(buf, 0);
+	}
+
+	/**
+	 * Send channel data, or extended data when the type is non-zero, without
+	 * blocking the calling thread. See {@link #sendChannelData(ByteBuffer)}.
+	 *
+	 * @param buf
+	 * @param type
+	 * @return future completed when all the data has been written to the transport
+	 */
+	protected CompletableFuture<Void> sendChannelData(ByteBuffer buf, int type) {
+
+		PendingSend send = new PendingSend(buf, type);
+
+		if(isLocalEOF.get() || isClosed()) {
+			send.future.completeExceptionally(new IOException("Channel has been closed"));
+			return send.future;
+		}
+
+		lastActivity = System.currentTimeMillis();
+
+		if(!buf.hasRemaining()) {
+			send.future.complete(null);
+			return send.future;
+		}
+
+		pendingSends.add(send);
+		drainPendingSends();
+		return send.future;
+	}
+
+	/**
+	 * Queue as much pending asynchronous data as the remote window allows, followed
+	 * by the EOF once {@link #sendEOF()} has been called and no data is left. Only one
+	 * thread drains at a time, a thread arriving while another is draining leaves
+	 * it to make another pass.
+	 */
+	void drainPendingSends() {
+
+		if(drainingSends.getAndIncrement() != 0) {
+			return;
+		}
+
+		int missed = 1;
+		do {
+			PendingSend send;
+			while((send = pendingSends.peek()) != null) {
+
+				if(sentEOF.get() || isClosed()) {
+					pendingSends.poll();
+					send.future.completeExceptionally(new IOException("Channel has been closed"));
+					continue;
+				}
+
+				long window = remoteWindow.getWindowSpaceValue();
+				int count = (int) remoteWindow.consumeUpTo(Math.min(send.buf.remaining(), remoteWindow.getMaximumPacketSize()));
+
+				if(count == 0) {
+					if(Log.isDebugEnabled()) {
+						log("Waiting", String.format("for %d bytes of remote window", send.buf.remaining()));
+					}
+					break;
+				}
+
+				ByteBuffer processedBuffer;
+				ChannelData message;
+				if(send.buf.remaining() > count) {
+					processedBuffer = send.buf.slice();
+					processedBuffer.limit(count);
+					send.buf.position(send.buf.position() + count);
+					message = new ChannelData(processedBuffer, send.type, window);
+				} else {
+					processedBuffer = send.buf;
+					pendingSends.poll();
+					inFlightSends.add(send);
+					message = new ChannelData(processedBuffer, send.type, window, send);
+				}
+
+				for (ChannelEventListener listener : eventListeners) {
+					listener.onChannelDataOut(this, processedBuffer);
+				}
+				connection.sendMessage(message);
+			}
+
+			if(isLocalEOF.get() && pendingSends.isEmpty() && !isClosed() 
+					&& sentEOF.compareAndSet(false, true)) {
+				connection.sendMessage(new ChannelEOF());
+				onLocalEOF();
+			}
+
+			missed = drainingSends.addAndGet(-missed);
+		} while(missed != 0);
+	}
+
+	private void failInFlightSends() {
+
+		IOException e = new IOException("Channel has been closed");
+		for(PendingSend send : inFlightSends) {
+			inFlightSends.remove(send);
+			send.future.completeExceptionally(e);
+		}
+	}
+
 	/**
 	 * Get the current configuration from the underlying connection.
 	 * 
@@ -693,6 +888,7 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 		}
 		
 		isRemoteEOF.set(true);
+		wakeReaders();
 		onRemoteEOF();
 	}
 
@@ -828,6 +1024,10 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 
 			} 
 		}
+		
+		wakeReaders();
+		signalSenders();
+		drainPendingSends();
 
 		if (doSend && connection.isConnected()) {
 			connection.sendMessage(new ChannelClose(receivedClose.get()));
@@ -894,6 +1094,10 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 						ChannelNG.this.notifyAll();
 					}
 				}
+				
+				signalSenders();
+				drainPendingSends();
+				failInFlightSends();
 
 				if (hasPerformedClose) {
 					closeFuture.done(true);
@@ -1020,15 +1224,16 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 
 	/**
 	 * You can send EOF when you have no more data to send. The channel will
-	 * still remain open until a close message is received.
+	 * still remain open until a close message is received. Data already accepted
+	 * by {@link #sendChannelData(ByteBuffer)} is sent first, so the EOF may follow
+	 * some time later if the sends are waiting for the remote window.
 	 */
 	public void sendEOF() {
 
-		if (isOpen() && !sentClose.get() && !isLocalEOF.get()) {
-			isLocalEOF.set(true);
+		if (isOpen() && !sentClose.get() && isLocalEOF.compareAndSet(false, true)) {
 			remoteWindow.close();
-			connection.sendMessage(new ChannelEOF());
-			onLocalEOF();
+			signalSenders();
+			drainPendingSends();
 		}
 	}
 
@@ -1085,8 +1290,14 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 			if(Log.isTraceEnabled()) {
 				log("Increasing", "window space by " + String.valueOf(count) + " bytes");
 			}
-			connection.sendMessage(new WindowAdjust(this, count.longValue(), localWindow.getWindowSpace().longValue()));
-			localWindow.adjust(count);		
+			/**
+			 * Add the space before telling the remote side about it. Incoming data
+			 * consumes the window without taking this lock, so data sent in response 
+			 * to the adjustment must never find the space missing.
+			 */
+			long before = localWindow.getWindowSpaceValue();
+			localWindow.adjust(count);
+			connection.sendMessage(new WindowAdjust(this, count.longValue(), before));
 		}
 	}
 
@@ -1151,6 +1362,10 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 			return true;
 		}
 
+		public int getMaximumLength() {
+			return 9;
+		}
+
 		public void messageSent(Long sequenceNo) {
 			if(Log.isDebugEnabled()) {
 				logMessage(String.format("SSH_MSG_CHANNEL_WINDOW_ADJUST count=%d window=%d", count, window));
@@ -1165,6 +1380,10 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 			return true;
 		}
 
+		public int getMaximumLength() {
+			return 5;
+		}
+
 		public void messageSent(Long sequenceNo) {
 			if(Log.isDebugEnabled()) {
 				logMessage("SSH_MSG_CHANNEL_SUCCESS");
@@ -1179,6 +1398,10 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 			return true;
 		}
 
+		public int getMaximumLength() {
+			return 5;
+		}
+
 		public void messageSent(Long sequenceNo) {
 			if(Log.isDebugEnabled()) {
 				logMessage("SSH_MSG_CHANNEL_FAILURE");
@@ -1196,13 +1419,19 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 		int type;
 		int count;
 		long remoteWindow;
-		boolean sent;
-		
+		PendingSend send;
+		volatile boolean sent;
+
 		ChannelData(ByteBuffer msg, int type, long remoteWindow) {
+			this(msg, type, remoteWindow, null);
+		}
+
+		ChannelData(ByteBuffer msg, int type, long remoteWindow, PendingSend send) {
 			this.msg = msg;
 			this.type = type;
 			this.remoteWindow = remoteWindow;
 			this.count = msg.remaining();
+			this.send = send;
 		}
 
 		public boolean writeMessageIntoBuffer(ByteBuffer buf) {
@@ -1227,7 +1456,11 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 			return true;
 		}
 
-		public synchronized void messageSent(Long sequenceNo) {
+		public int getMaximumLength() {
+			return count + 13;
+		}
+
+		public void messageSent(Long sequenceNo) {
 			if(Log.isDebugEnabled()) {
 				logMessage(String.format("%s seq=%d len=%d", 
 						type > 0 ? "SSH_MSG_CHANNEL_EXTENDED_DATA" : "SSH_MSG_CHANNEL_DATA", 
@@ -1238,14 +1471,38 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 //				close();
 //			}
 			sent = true;
-			notifyAll();
+
+			if(Objects.nonNull(send)) {
+				inFlightSends.remove(send);
+				send.future.complete(null);
+				return;
+			}
+
+			sendLock.lock();
+			try {
+				dataSent.signalAll();
+			} finally {
+				sendLock.unlock();
+			}
 		}
 
-		public synchronized boolean isMessageSent() {
+		public boolean isMessageSent() {
 			return sent;
 		}
 	}
 
+	static class PendingSend {
+
+		final ByteBuffer buf;
+		final int type;
+		final CompletableFuture<Void> future = new CompletableFuture<Void>();
+
+		PendingSend(ByteBuffer buf, int type) {
+			this.buf = buf;
+			this.type = type;
+		}
+	}
+
 	protected void logMessage(String message, long remoteWindow) {
 		log("Sent", message, remoteWindow);
 	}
@@ -1255,7 +1512,7 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 	}
 	
 	protected void log(String action, String message) {
-		log(action, message, remoteWindow.getWindowSpace().longValue());
+		log(action, message, remoteWindow.getWindowSpaceValue());
 	}
 	
 	protected void log(String action, String message, long remoteWindow) {
@@ -1303,6 +1560,10 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 			return true;
 		}
 
+		public int getMaximumLength() {
+			return 5;
+		}
+
 		public void messageSent(Long sequenceNo) {
 
 			if (finish)
@@ -1325,6 +1586,10 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 			return true;
 		}
 
+		public int getMaximumLength() {
+			return 5;
+		}
+
 		public void messageSent(Long sequenceNo) {
 			if(Log.isDebugEnabled()) {
 				logMessage("SSH_MSG_CHANNEL_EOF");
@@ -1373,12 +1638,29 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 			Log.trace("Checking window space on channel=" + getLocalId() + " window=" + localWindow.getWindowSpace()
 						+ (Objects.nonNull(cache) ? " cached=" + cache.remaining() : ""));
 		}
-		return localWindow.getWindowSpace().longValue() + (Objects.nonNull(cache) ? cache.remaining() : 0) <= localWindow.getMinimumWindowSpace().longValue();
+		return localWindow.getWindowSpaceValue() + (Objects.nonNull(cache) ? cache.remaining() : 0) <= localWindow.getMinimumWindowSpace().longValue();
+	}
+	
+	/**
+	 * Wake any thread blocked reading from the channel's input streams so that
+	 * it sees a change of state, such as EOF or close, that is not recorded in 
+	 * the stream's data window.
+	 */
+	protected void wakeReaders() {
+		CachingDataWindow cache = this.cache;
+		if(Objects.nonNull(cache)) {
+			cache.wakeup();
+		}
 	}
 	
+	/**
+	 * Reads from a channel's data window. Like any other stream only one thread
+	 * may read at a time, and it only takes the window's lock when it has to
+	 * wait for data.
+	 */
 	protected class ChannelInputStream extends InputStream {
 
-		boolean streamClosed;
+		volatile boolean streamClosed;
 		CachingDataWindow streamCache;
 		
 		public ChannelInputStream(CachingDataWindow streamCache) {
@@ -1411,17 +1693,16 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 			if(!streamClosed) {
 				streamClosed = true;
 				streamCache.close();
-				synchronized(streamCache) {
-					streamCache.notify();
-				}
 			}
 		}
 
+		private boolean isFinished() {
+			return streamClosed || isClosed() || isRemoteEOF();
+		}
+		
 		@Override
 		public int read(byte[] b, int off, int len) throws IOException {
 			
-			long start = System.currentTimeMillis();
-			
 			synchronized(localWindow) {
 				if(checkWindowSpace()) {
 					sendWindowAdjust();
@@ -1430,35 +1711,17 @@ public abstract class ChannelNG<T extends SshContext> implements Channel {
 			
 			int r;
 			
-			synchronized (streamCache) {
-
-				while(!streamCache.hasRemaining() 
-						&& (timeout==0 
-							|| (System.currentTimeMillis() - start) < timeout)) {
-				
-					if(streamClosed || isClosed() || isRemoteEOF()) {
-						return -1;
-					}
-					
-					try {
-						streamCache.waitFor(1000);
-					} catch (InterruptedException e) {
-					}
-				}
-				
-				if(!streamCache.hasRemaining()) {
-					if(streamClosed || isClosed() || isRemoteEOF()) {
-						return -1;
-					}
-					throw new InterruptedIOException("No data received within the timeout threshold");
-				}
-
-				try {
-					r = streamCache.get(ByteBuffer.wrap(b, off, len));
-				} catch (EOFException e) {
+			if(!streamCache.waitForData(timeout, this::isFinished)) {
+				if(isFinished() || !streamCache.isOpen()) {
 					return -1;
 				}
+				throw new InterruptedIOException("No data received within the timeout threshold");
+			}
 
+			try {
+				r = streamCache.get(b, off, len);
+			} catch (EOFException e) {
+				return -1;
 			}
 			
 			synchronized(localWindow) {
@@ -317,6 +317,19 @@ public abstract class ConnectionProtocol<T extends SshContext>
 
 	}
 	
+	@Override
+	public boolean processMessage(PooledPayload msg) throws IOException {
+		
+		switch(msg.getMessageId()) {
+		case SSH_MSG_CHANNEL_DATA:
+		case SSH_MSG_CHANNEL_EXTENDED_DATA:
+			processChannelData(msg);
+			return true;
+		default:
+			return processMessage(msg.toByteArray());
+		}
+	}
+	
 	/**
 	 * Process a global request success response.
 	 */
@@ -494,6 +507,52 @@ public abstract class ConnectionProtocol<T extends SshContext>
 		}
 	}
 
+	void processChannelData(PooledPayload msg) throws IOException {
+		ByteArrayReader bar = msg.reader();
+
+		try {
+			int messageid = bar.read();
+			int channelid = (int) bar.readInt();
+			ChannelNG<T> channel = getChannel(channelid);
+
+			if (channel == null) {
+				if(Log.isErrorEnabled()) {
+					Log.error("Channel data received with invalid channel id {}", channelid);
+				}
+			} else {
+				int type = messageid == SSH_MSG_CHANNEL_DATA ? 0 : (int) bar.readInt();
+				int count = (int) bar.readInt();
+				if(count > bar.available()) {
+					throw new IOException(String.format("Channel data length of %d bytes exceeds available data of %d bytes", 
+							count, bar.available()));
+				}
+				int position = bar.getPosition();
+				
+				/**
+				 * The data is processed on another queue so keep the pooled buffer
+				 * until the channel has consumed it.
+				 */
+				msg.retain();
+				addTask(CHANNEL_DATA_IN, new ConnectionAwareTask(con) {
+					protected  void doTask() throws Throwable {
+						try {
+							if (messageid == SSH_MSG_CHANNEL_DATA) {
+								channel.processChannelData(ByteBuffer.wrap(msg.array(), position, count));
+							} else {
+								channel.processExtendedData(type,
+										ByteBuffer.wrap(msg.array(), position, count));
+							}
+						} finally {
+							msg.release();
+						}
+					}
+				});
+			}
+		} finally {
+			bar.close();
+		}
+	}
+
 	void processChannelWindowAdjust(byte[] msg) throws IOException {
 		ByteArrayReader bar = new ByteArrayReader(msg);
 		bar.skip(1);
@@ -23,6 +23,7 @@ package com.sshtools.synergy.ssh;
  */
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 
 public class ForwardingDataWindow extends CachingDataWindow {
@@ -31,30 +32,46 @@ public class ForwardingDataWindow extends CachingDataWindow {
 		super(maximumWindowSpace, true);
 	}
 
-	public synchronized int write(SocketChannel socketChannel) throws IOException {
-		if(Boolean.getBoolean("maverick.disableMaximumWrite")) {
-			return socketChannel.write(cache);
-		} else {
-			int c = 0;
-			while(true) {
-				int r = socketChannel.write(cache);
-				if(r<=0) {
-					break;
+	public int write(SocketChannel socketChannel) throws IOException {
+		
+		int available = remaining();
+		if(available == 0) {
+			return 0;
+		}
+		
+		ByteBuffer[] segments = readableSegments(available);
+		long c = 0;
+		try {
+			if(Boolean.getBoolean("maverick.disableMaximumWrite")) {
+				c = socketChannel.write(segments);
+			} else {
+				while(segments[0].hasRemaining() || segments[1].hasRemaining()) {
+					long r = socketChannel.write(segments);
+					if(r<=0) {
+						break;
+					}
+					c+=r;
 				}
-				c+=r;
 			}
-			return c;
+		} finally {
+			if(c > 0) {
+				consumed((int) c);
+			}
 		}
+		return (int) c;
 	}
 	
-	public synchronized int read(SocketChannel socketChannel) throws IOException {
+	public int read(SocketChannel socketChannel) throws IOException {
 		
-		cache.compact();
+		int free = capacity - remaining();
+		if(free == 0) {
+			return 0;
+		}
 		
-		try {
-			return socketChannel.read(cache);
-		} finally {
-			cache.flip();
+		long r = socketChannel.read(writableSegments(free));
+		if(r > 0) {
+			produced((int) r);
 		}
+		return (int) r;
 	}
 }
@@ -0,0 +1,131 @@
+package com.sshtools.synergy.ssh;
+
+/*-
+ * #%L
+ * Common API
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.sshtools.common.sshd.SshMessage;
+
+/**
+ * The outgoing message queue of a {@link TransportProtocol}. Any number of threads may post
+ * messages concurrently whilst a single consumer, the selector thread writing to the socket,
+ * drains the queue. Neither side takes a monitor; both queues are lock-free linked queues.
+ * <p>
+ * Once the first key exchange has completed, key exchange messages are kept on a separate
+ * queue so that only they are sent whilst a re-key is in progress, with all other messages
+ * held back until the new keys are in use.
+ */
+public class OutgoingMessageQueue {
+
+	final ConcurrentLinkedQueue<SshMessage> messages = new ConcurrentLinkedQueue<>();
+	final ConcurrentLinkedQueue<SshMessage> kexMessages = new ConcurrentLinkedQueue<>();
+	
+	/**
+	 * Post a message to the end of the queue. 
+	 * 
+	 * @param msg message
+	 * @param kex <tt>true</tt> to post to the key exchange queue
+	 */
+	public void post(SshMessage msg, boolean kex) {
+		(kex ? kexMessages : messages).offer(msg);
+	}
+	
+	/**
+	 * Get the next message to write without removing it from the queue. Only the consumer
+	 * thread should call this method.
+	 * 
+	 * @param keyExchangeOnly <tt>true</tt> if a re-key is in progress and only key exchange messages may be sent
+	 * @return message or <tt>null</tt> if there is nothing to send
+	 */
+	public SshMessage peek(boolean keyExchangeOnly) {
+		if(keyExchangeOnly) {
+			return kexMessages.peek();
+		}
+		SshMessage msg = messages.peek();
+		return msg == null ? kexMessages.peek() : msg;
+	}
+	
+	/**
+	 * Get the next message that is not part of a key exchange without removing it from the
+	 * queue. Only the consumer thread should call this method.
+	 * 
+	 * @return message or <tt>null</tt> if there are no messages outside of the key exchange queue
+	 */
+	public SshMessage peekMessage() {
+		return messages.peek();
+	}
+	
+	/**
+	 * Remove a message previously returned by {@link #peek(boolean)} once it has been
+	 * completely written. Only the consumer thread should call this method.
+	 * 
+	 * @param msg message
+	 */
+	public void remove(SshMessage msg) {
+		if(messages.peek() == msg) {
+			messages.poll();
+		} else if(kexMessages.peek() == msg) {
+			kexMessages.poll();
+		}
+	}
+	
+	/**
+	 * Determine if there are messages that can be sent.
+	 * 
+	 * @param keyExchangeOnly <tt>true</tt> if a re-key is in progress and only key exchange messages may be sent
+	 * @return <tt>true</tt> if there is a message to send
+	 */
+	public boolean hasMessages(boolean keyExchangeOnly) {
+		if(keyExchangeOnly) {
+			return !kexMessages.isEmpty();
+		}
+		return !messages.isEmpty() || !kexMessages.isEmpty();
+	}
+	
+	/**
+	 * Get the number of messages in both queues. This traverses the queues so should not
+	 * be called on a hot path.
+	 * 
+	 * @return number of queued messages
+	 */
+	public int size() {
+		return messages.size() + kexMessages.size();
+	}
+	
+	/**
+	 * Discard any key exchange messages left over from a previous key exchange.
+	 */
+	public void clearKeyExchange() {
+		kexMessages.clear();
+	}
+	
+	/**
+	 * Copy all messages from another queue, preserving their order.
+	 * 
+	 * @param queue queue
+	 */
+	public void addAll(OutgoingMessageQueue queue) {
+		messages.addAll(queue.messages);
+		kexMessages.addAll(queue.kexMessages);
+	}
+}
@@ -22,34 +22,20 @@ package com.sshtools.synergy.ssh;
  * #L%
  */
 
-import java.io.IOException;
-import java.util.Vector;
-
-import com.sshtools.common.ssh.Packet;
-
-public class PacketPool {
-
-	Vector<Packet> packets = new Vector<Packet>();
-
-	static PacketPool instance;
+/**
+ * The original process wide packet pool.
+ * 
+ * @deprecated Use the pool shared by the connections of an engine, 
+ * {@link SshContext#getPacketPool()}.
+ */
+@Deprecated
+public class PacketPool extends com.sshtools.common.ssh.PacketPool {
 
-	public static PacketPool getInstance() {
-		return (instance == null ? instance = new PacketPool() : instance);
+	private static class Holder {
+		static final PacketPool INSTANCE = new PacketPool();
 	}
 
-	public Packet getPacket() throws IOException {
-		synchronized (packets) {
-			if (packets.size() == 0)
-				return new Packet();
-			Packet p = (Packet) packets.remove(0);
-			return p;
-		}
-	}
-	
-	public void putPacket(Packet p) {
-		synchronized (packets) {
-			p.reset();
-			packets.add(p);
-		}
+	public static PacketPool getInstance() {
+		return Holder.INSTANCE;
 	}
 }
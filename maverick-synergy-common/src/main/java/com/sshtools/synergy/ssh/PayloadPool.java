@@ -0,0 +1,114 @@
+package com.sshtools.synergy.ssh;
+
+/*-
+ * #%L
+ * Common API
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of byte arrays used by the transport to decode incoming packets in place. Arrays
+ * are bucketed into power of two size classes and each class retains a bounded number of
+ * free arrays so that the pool cannot grow without limit.
+ */
+public class PayloadPool {
+
+	static final int MINIMUM_SIZE_CLASS = 10; // 1k
+	
+	final ConcurrentLinkedQueue<byte[]>[] buckets;
+	final AtomicInteger[] counts;
+	final int maximumSize;
+	final int maximumPerSizeClass;
+	
+	/**
+	 * Create a pool for arrays up to the maximum size.
+	 * 
+	 * @param maximumSize the largest array that will be requested from the pool
+	 * @param maximumPerSizeClass the number of free arrays retained for each size class
+	 */
+	@SuppressWarnings("unchecked")
+	public PayloadPool(int maximumSize, int maximumPerSizeClass) {
+		this.maximumSize = maximumSize;
+		this.maximumPerSizeClass = maximumPerSizeClass;
+		int classes = sizeClass(maximumSize) + 1;
+		buckets = new ConcurrentLinkedQueue[classes];
+		counts = new AtomicInteger[classes];
+		for(int i=0;i<classes;i++) {
+			buckets[i] = new ConcurrentLinkedQueue<>();
+			counts[i] = new AtomicInteger();
+		}
+	}
+	
+	/**
+	 * Get an array of at least the requested size.
+	 * 
+	 * @param size
+	 * @return byte[]
+	 */
+	public byte[] get(int size) {
+		if(size > maximumSize) {
+			return new byte[size];
+		}
+		int idx = sizeClass(size);
+		byte[] array = buckets[idx].poll();
+		if(array==null) {
+			return new byte[1 << (idx + MINIMUM_SIZE_CLASS)];
+		}
+		counts[idx].decrementAndGet();
+		return array;
+	}
+	
+	/**
+	 * Return an array obtained from {@link #get(int)} to the pool.
+	 * 
+	 * @param array
+	 */
+	public void release(byte[] array) {
+		int idx = Integer.numberOfTrailingZeros(array.length) - MINIMUM_SIZE_CLASS;
+		if(idx < 0 || idx >= buckets.length || Integer.bitCount(array.length) != 1) {
+			return;
+		}
+		if(counts[idx].incrementAndGet() > maximumPerSizeClass) {
+			counts[idx].decrementAndGet();
+			return;
+		}
+		buckets[idx].offer(array);
+	}
+	
+	/**
+	 * Get the number of free arrays currently held by the pool.
+	 * 
+	 * @return int
+	 */
+	public int getFreeArrays() {
+		int total = 0;
+		for(AtomicInteger count : counts) {
+			total += count.get();
+		}
+		return total;
+	}
+	
+	static int sizeClass(int size) {
+		int bits = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+		return Math.max(0, bits - MINIMUM_SIZE_CLASS);
+	}
+}
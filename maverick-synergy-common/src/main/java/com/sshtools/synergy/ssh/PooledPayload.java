@@ -0,0 +1,122 @@
+package com.sshtools.synergy.ssh;
+
+/*-
+ * #%L
+ * Common API
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sshtools.common.util.ByteArrayReader;
+
+/**
+ * A reference counted message payload that was decoded in place into an array owned by a 
+ * {@link PayloadPool}. The array is returned to the pool when the last reference is released,
+ * so consumers must not retain the array, or any buffer wrapping it, after releasing.
+ */
+public class PooledPayload {
+
+	final byte[] array;
+	final int offset;
+	final int length;
+	final PayloadPool pool;
+	final AtomicInteger references = new AtomicInteger(1);
+	
+	public PooledPayload(byte[] array, int offset, int length, PayloadPool pool) {
+		this.array = array;
+		this.offset = offset;
+		this.length = length;
+		this.pool = pool;
+	}
+	
+	/**
+	 * The array containing the payload. This is typically larger than the payload itself.
+	 * @return byte[]
+	 */
+	public byte[] array() {
+		return array;
+	}
+	
+	/**
+	 * The offset of the payload within the array.
+	 * @return int
+	 */
+	public int offset() {
+		return offset;
+	}
+	
+	/**
+	 * The length of the payload.
+	 * @return int
+	 */
+	public int length() {
+		return length;
+	}
+	
+	/**
+	 * The message id of the payload.
+	 * @return int
+	 */
+	public int getMessageId() {
+		return array[offset];
+	}
+	
+	/**
+	 * Create a reader over the payload.
+	 * @return ByteArrayReader
+	 */
+	public ByteArrayReader reader() {
+		return new ByteArrayReader(array, offset, length);
+	}
+	
+	/**
+	 * Copy the payload into a new array of the exact payload length.
+	 * @return byte[]
+	 */
+	public byte[] toByteArray() {
+		byte[] tmp = new byte[length];
+		System.arraycopy(array, offset, tmp, 0, length);
+		return tmp;
+	}
+	
+	/**
+	 * Add a reference to the payload. Each call must be matched by a call to {@link #release()}.
+	 * @return this payload
+	 */
+	public PooledPayload retain() {
+		if(references.getAndIncrement() <= 0) {
+			references.decrementAndGet();
+			throw new IllegalStateException("Payload has already been released");
+		}
+		return this;
+	}
+	
+	/**
+	 * Release a reference to the payload, returning the array to the pool when no references remain.
+	 */
+	public void release() {
+		int remaining = references.decrementAndGet();
+		if(remaining == 0) {
+			pool.release(array);
+		} else if(remaining < 0) {
+			throw new IllegalStateException("Payload has already been released");
+		}
+	}
+}
@@ -46,6 +46,22 @@ public interface Service {
      */
     public boolean processMessage(byte[] msg) throws IOException, SshException;
 
+    /**
+     * Process a transport message that was decoded in place into a pooled buffer. The
+     * caller releases its own reference to the payload after this method returns, so a
+     * service that processes the payload asynchronously must {@link PooledPayload#retain()} 
+     * it first. The default implementation copies the payload and calls {@link #processMessage(byte[])}.
+     * 
+     * @param msg
+     * @return <tt>true</tt> if the message was processed, otherwise
+     *         <tt>false</tt>
+     * @throws IOException
+     * @throws SshException
+     */
+    public default boolean processMessage(PooledPayload msg) throws IOException, SshException {
+    	return processMessage(msg.toByteArray());
+    }
+
     /**
      * Start the service.
      * @throws SshException 
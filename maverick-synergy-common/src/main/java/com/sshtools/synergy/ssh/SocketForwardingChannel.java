@@ -34,6 +34,7 @@ import com.sshtools.common.logger.Log;
 import com.sshtools.common.nio.WriteOperationRequest;
 import com.sshtools.common.ssh.ChannelOpenException;
 import com.sshtools.common.ssh.ConnectionAwareTask;
+import com.sshtools.common.ssh.Packet;
 import com.sshtools.common.ssh.SshConnection;
 import com.sshtools.synergy.nio.ProtocolEngine;
 import com.sshtools.synergy.nio.SelectorThread;
@@ -411,7 +412,8 @@ public abstract class SocketForwardingChannel<T extends SshContext> extends Forw
 
 		int written = 0;
 		try {
-			synchronized (cache) {
+			cache.lock.lock();
+			try {
 				if (cache.hasRemaining()) {
 					written = ((ForwardingDataWindow)cache).write(socketChannel);
 
@@ -430,6 +432,8 @@ public abstract class SocketForwardingChannel<T extends SshContext> extends Forw
 				if(localWindow.isAdjustRequired()) {
 					sendWindowAdjust();
 				}
+			} finally {
+				cache.lock.unlock();
 			}
 			
 			if (closePending && canClose()) {
@@ -486,13 +490,14 @@ public abstract class SocketForwardingChannel<T extends SshContext> extends Forw
 
 		protected void doTask() {
 			
+			Packet packet = getContext().getPacketPool().getPacket(getRemotePacket());
 			try {
 
-				byte[] tmp = new byte[getRemotePacket()];
+				byte[] tmp = packet.array();
 				int c;
 				while(count > 0) {
 						
-					c = Math.min(Math.min(count, tmp.length), toChannel.remaining());
+					c = Math.min(Math.min(count, getRemotePacket()), toChannel.remaining());
 					toChannel.get(tmp, 0, c);
 					count -= c;
 					
@@ -508,7 +513,9 @@ public abstract class SocketForwardingChannel<T extends SshContext> extends Forw
 			} catch (IOException e) {
 				log("Channel I/O error", e);
 				close(e);
-			} 
+			} finally {
+				getContext().getPacketPool().putPacket(packet);
+			}
 		}
 	}
 
@@ -25,6 +25,7 @@ package com.sshtools.synergy.ssh;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -32,15 +33,16 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.ServiceLoader;
 import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
 
 import com.sshtools.common.forwarding.ForwardingPolicy;
 import com.sshtools.common.logger.Log;
 import com.sshtools.common.ssh.Context;
 import com.sshtools.common.ssh.ExecutorOperationListener;
 import com.sshtools.common.ssh.ExecutorServiceProvider;
+import com.sshtools.common.ssh.PacketPool;
 import com.sshtools.common.ssh.SecurityLevel;
 import com.sshtools.common.ssh.SshException;
 import com.sshtools.common.ssh.components.ComponentFactory;
@@ -53,6 +55,7 @@ import com.sshtools.common.ssh.compression.NoneCompression.NoneCompressionFactor
 import com.sshtools.common.ssh.compression.SshCompression;
 import com.sshtools.common.ssh.compression.SshCompressionFactory;
 import com.sshtools.common.util.ByteBufferPool;
+import com.sshtools.synergy.nio.BoundedExecutorService;
 import com.sshtools.synergy.nio.ConnectRequestFuture;
 import com.sshtools.synergy.nio.DefaultSocketConnectionFactory;
 import com.sshtools.synergy.nio.ProtocolContext;
@@ -248,16 +251,22 @@ public abstract class SshContext extends ProtocolContext implements
 	protected int keepAliveInterval = 30;
 	protected int keepAliveDataMaxLength = 128;
 
-	protected static ExecutorService executor;
+	protected ExecutorService executor;
+	protected boolean ownsExecutor;
+	protected static Supplier<ExecutorService> executorServiceFactory;
 	
 	protected Locale locale = Locale.getDefault();
-	protected ByteBufferPool byteBufferPool = null;
+	protected volatile ByteBufferPool byteBufferPool = null;
+	protected volatile PayloadPool payloadPool = null;
+	protected boolean inPlaceDecoding = false;
+	protected int maximumPooledPayloads = 32;
+	protected boolean writeCoalescing = true;
 	
 	protected int minDHGroupExchangeKeySize = 2048;
 	protected int preferredDHGroupExchangeKeySize = 2048;
 	protected int maxDHGroupExchangeKeySize = 8192;
 	
-	List<ExecutorOperationListener> listeners = new ArrayList<ExecutorOperationListener>();
+	List<ExecutorOperationListener> listeners = new CopyOnWriteArrayList<ExecutorOperationListener>();
 	
 	protected ComponentManager componentManager;
 	
@@ -383,17 +392,17 @@ public abstract class SshContext extends ProtocolContext implements
 		return componentManager;
 	}
 	
-	public synchronized void addOperationListener(ExecutorOperationListener listener) {
+	public void addOperationListener(ExecutorOperationListener listener) {
 		listeners.add(listener);
 	}
 	
-	public synchronized void removeOperationListener(ExecutorOperationListener listener) {
+	public void removeOperationListener(ExecutorOperationListener listener) {
 		listeners.remove(listener);
 	}
 	
 	@Override
-	public synchronized List<ExecutorOperationListener> getExecutorListeners() {
-		return new ArrayList<ExecutorOperationListener>(listeners);
+	public List<ExecutorOperationListener> getExecutorListeners() {
+		return Collections.unmodifiableList(listeners);
 	}
 	
 	public void setSocketConnectionFactory(SocketConnectionFactory socketConnectionFactory) {
@@ -1296,46 +1305,173 @@ public abstract class SshContext extends ProtocolContext implements
 
 	}
 
+	/**
+	 * Set the factory used to create the executor of each engine. This must be set
+	 * before the first connection is made. When not set each engine creates a
+	 * {@link BoundedExecutorService} configured by its {@link SshEngineContext}.
+	 * 
+	 * @param executorServiceFactory factory
+	 */
+	public static void setExecutorServiceFactory(Supplier<ExecutorService> executorServiceFactory) {
+		SshContext.executorServiceFactory = executorServiceFactory;
+	}
+	
+	/**
+	 * Get the factory used to create the executor of each engine.
+	 * 
+	 * @return factory, or null to use the engine's configured executor
+	 */
+	public static Supplier<ExecutorService> getExecutorServiceFactory() {
+		return executorServiceFactory;
+	}
+	
+	/**
+	 * Run the tasks of this context's connections on the given executor rather than
+	 * the engine's executor. The caller remains responsible for shutting the executor
+	 * down; {@link #shutdown()} only shuts down an executor this context created itself.
+	 * 
+	 * @param executor executor
+	 */
+	public synchronized void setExecutorService(ExecutorService executor) {
+		this.executor = executor;
+		this.ownsExecutor = false;
+	}
+	
+	/**
+	 * Get the executor for this context's connections. Unless one has been set on
+	 * this context, this is the executor of the engine.
+	 * 
+	 * @return ExecutorService
+	 */
 	public ExecutorService getExecutorService() {
-		if (executor == null) {
-			ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
-	            public Thread newThread(Runnable r) {
-	                Thread t = Executors.defaultThreadFactory().newThread(r);
-	                t.setDaemon(true);
-	                return t;
-	            }
-	        });
-			if(!Objects.isNull(daemon)) {
-				daemon.addShutdownHook(new Runnable() {
-					public void run() {
-						shutdown();
-					}
-				});
-			} else {
+		if (executor != null) {
+			return executor;
+		}
+		if (!Objects.isNull(daemon)) {
+			return daemon.getContext().getExecutorService();
+		}
+		synchronized (this) {
+			if (executor == null) {
+				executor = executorServiceFactory != null ? executorServiceFactory.get() 
+						: new BoundedExecutorService("SSH-EXECUTOR", 0, Integer.MAX_VALUE, 60, 0, 1000, () -> { });
+				ownsExecutor = true;
 				Runtime.getRuntime().addShutdownHook(new Thread() {
 					public void run() {
 						shutdown();
 					}
 				});
 			}
-			SshContext.executor = executor;
+			return executor;
 		}
-		return executor;
 	}
 
-	public void shutdown() {
-		if(executor != null) {
+	/**
+	 * Shutdown the executor this context created for itself, when it is not
+	 * attached to an engine. An executor passed to {@link #setExecutorService(ExecutorService)}
+	 * is left running, and the engine's executor is shut down when the engine is shut down.
+	 */
+	public synchronized void shutdown() {
+		if(executor != null && ownsExecutor) {
 			executor.shutdownNow();
 			executor = null;
+			ownsExecutor = false;
 		}
 	}
 
-	public synchronized ByteBufferPool getByteBufferPool() {
-		if (byteBufferPool == null) {
-			byteBufferPool = new ByteBufferPool(getMaximumPacketLength(),
-					getEngine().getContext().isUsingDirectBuffers());
+	/**
+	 * Get the pool of packets used to build outgoing messages. The pool is shared
+	 * by all connections of the engine.
+	 * 
+	 * @return PacketPool
+	 */
+	public PacketPool getPacketPool() {
+		return getEngine().getContext().getPacketPool();
+	}
+
+	public ByteBufferPool getByteBufferPool() {
+		ByteBufferPool pool = byteBufferPool;
+		if (pool == null) {
+			/**
+			 * The engine returns the same pool for the same capacity, so threads 
+			 * that race here all store the same instance.
+			 */
+			byteBufferPool = pool = getEngine().getContext().getBufferPool(getMaximumPacketLength());
+		}
+		return pool;
+	}
+
+	public PayloadPool getPayloadPool() {
+		PayloadPool pool = payloadPool;
+		if (pool == null) {
+			synchronized (this) {
+				pool = payloadPool;
+				if (pool == null) {
+					payloadPool = pool = new PayloadPool(getMaximumPacketLength() + 64, 
+							maximumPooledPayloads);
+				}
+			}
 		}
-		return byteBufferPool;
+		return pool;
+	}
+	
+	/**
+	 * Is incoming packet data decoded in place into pooled buffers?
+	 * 
+	 * @return boolean
+	 */
+	public boolean isInPlaceDecoding() {
+		return inPlaceDecoding;
+	}
+
+	/**
+	 * Decode incoming packets in place into buffers taken from the {@link PayloadPool}. Channel
+	 * data is then passed to the channel without copying the payload into a new array and the
+	 * buffer is returned to the pool once the channel has consumed it. When enabled, 
+	 * {@link com.sshtools.common.ssh.ChannelEventListener}s must not retain the data
+	 * buffer passed to them after the callback returns.
+	 * 
+	 * @param inPlaceDecoding
+	 */
+	public void setInPlaceDecoding(boolean inPlaceDecoding) {
+		this.inPlaceDecoding = inPlaceDecoding;
+	}
+	
+	/**
+	 * Get the number of free buffers retained by the payload pool for each buffer size.
+	 * 
+	 * @return int
+	 */
+	public int getMaximumPooledPayloads() {
+		return maximumPooledPayloads;
+	}
+
+	/**
+	 * Set the number of free buffers retained by the payload pool for each buffer size.
+	 * 
+	 * @param maximumPooledPayloads
+	 */
+	public void setMaximumPooledPayloads(int maximumPooledPayloads) {
+		this.maximumPooledPayloads = maximumPooledPayloads;
+	}
+	
+	/**
+	 * Are several outgoing packets packed into a single socket write?
+	 * 
+	 * @return boolean
+	 */
+	public boolean isWriteCoalescing() {
+		return writeCoalescing;
+	}
+
+	/**
+	 * Pack as many queued messages as will fit into the outgoing buffer on each socket
+	 * write rather than writing a single packet at a time. This reduces the number of
+	 * writes for workloads that send many small messages.
+	 * 
+	 * @param writeCoalescing
+	 */
+	public void setWriteCoalescing(boolean writeCoalescing) {
+		this.writeCoalescing = writeCoalescing;
 	}
 
 	public SshEngineContext getDaemonContext() {
@@ -31,7 +31,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.StringTokenizer;
 import java.util.UUID;
@@ -59,7 +58,6 @@ import com.sshtools.common.ssh.compression.SshCompression;
 import com.sshtools.common.sshd.SshMessage;
 import com.sshtools.common.util.ByteArrayReader;
 import com.sshtools.common.util.ByteArrayWriter;
-import com.sshtools.common.util.UnsignedInteger64;
 import com.sshtools.common.util.Utils;
 import com.sshtools.synergy.nio.ConnectRequestFuture;
 import com.sshtools.synergy.nio.DisconnectRequestFuture;
@@ -85,6 +83,7 @@ public abstract class TransportProtocol<T extends SshContext>
 	SecureRandom rnd = new SecureRandom();
 	
 	byte[] incomingSwap;
+	byte[] defaultIncomingSwap;
 	
 	protected String localIdentification = "SSH-2.0-";
 	protected StringBuffer remoteIdentification = new StringBuffer();
@@ -98,8 +97,7 @@ public abstract class TransportProtocol<T extends SshContext>
 	protected boolean hasExtensionCapability = false;
 	protected boolean enableExtensionCapability = true;
 	
-	LinkedList<SshMessage> outgoingQueue = new LinkedList<SshMessage>();
-	LinkedList<SshMessage> kexQueue = new LinkedList<SshMessage>();
+	OutgoingMessageQueue outgoingQueue = new OutgoingMessageQueue();
 
 	protected Service activeService;
 	List<TransportProtocolListener> transportListeners = new ArrayList<>();
@@ -122,9 +120,17 @@ public abstract class TransportProtocol<T extends SshContext>
 	boolean expectPacket = true;
 	int expectedBytes = 0;
 	byte[] payloadIncoming;
+	PooledPayload pooledPayloadIncoming;
+	int payloadIncomingLength;
 	byte[] packet;
 	int offsetIncoming = 0;
 
+	// Binary packet header is the packet length followed by the padding length
+	static final int PACKET_HEADER_LENGTH = 5;
+	
+	// Random padding scratch buffers, indexed by padding length
+	byte[][] outgoingPadding = new byte[256][];
+
 	int numOutgoingBytesSinceKEX;
 	int numOutgoingPacketsSinceKEX;
 	int numIncomingBytesSinceKEX;
@@ -134,7 +140,7 @@ public abstract class TransportProtocol<T extends SshContext>
 	long lastIdleEvent = System.currentTimeMillis();
 	boolean closed = false;
 	
-	protected boolean completedFirstKeyExchange = false;
+	protected volatile boolean completedFirstKeyExchange = false;
 	protected Date disconnectStarted = null;
 	
 	private static final String STRICT_KEX_CLIENT = "kex-strict-c-v00@openssh.com";
@@ -153,7 +159,6 @@ public abstract class TransportProtocol<T extends SshContext>
 		transport.currentState = currentState;
 		transport.lastActivity = lastActivity;
 		transport.outgoingQueue.addAll(outgoingQueue);
-		transport.kexQueue.addAll(kexQueue);
 		transport.socketConnection = socketConnection;
 		transport.postedIdentification = postedIdentification;
 		transport.onSocketConnect(socketConnection);
@@ -194,7 +199,7 @@ public abstract class TransportProtocol<T extends SshContext>
 	 */
 	public final static int DISCONNECTED = 4;
 
-	int currentState = TransportProtocol.NEGOTIATING_PROTOCOL;
+	volatile int currentState = TransportProtocol.NEGOTIATING_PROTOCOL;
 	SshKeyExchange<T> keyExchange;
 	SshCipher encryption;
 	SshCipher decryption;
@@ -308,7 +313,7 @@ public abstract class TransportProtocol<T extends SshContext>
 		this.ignoreMessage = new IgnoreMessage();
 		this.connectFuture = connectFuture;
 		this.uuid = UUID.randomUUID();
-		this.incomingSwap = new byte[sshContext.getMaximumPacketLength()];
+		this.incomingSwap = this.defaultIncomingSwap = new byte[sshContext.getMaximumPacketLength()];
 	}
 
 	public SocketConnection getSocketConnection() {
@@ -648,7 +653,11 @@ public abstract class TransportProtocol<T extends SshContext>
 				if (hasMessage) {
 					// Process the message
 					try {
-						processMessage(payloadIncoming, incomingSequence++);
+						if(pooledPayloadIncoming!=null) {
+							processMessage(pooledPayloadIncoming, incomingSequence++);
+						} else {
+							processMessage(payloadIncoming, incomingSequence++);
+						}
 					} catch (WriteOperationRequest x) {
 						requiresWriteOperation = true;
 					} finally {
@@ -657,9 +666,9 @@ public abstract class TransportProtocol<T extends SshContext>
 							incomingSequence = 0;
 						}
 
-						incomingBytes += payloadIncoming.length;
+						incomingBytes += payloadIncomingLength;
 
-						numIncomingBytesSinceKEX += payloadIncoming.length;
+						numIncomingBytesSinceKEX += payloadIncomingLength;
 						numIncomingPacketsSinceKEX++;
 
 						// if done alot of communication then change keys
@@ -675,6 +684,7 @@ public abstract class TransportProtocol<T extends SshContext>
 						expectedBytes = 0;
 						offsetIncoming = 0;
 						payloadIncoming = null;
+						pooledPayloadIncoming = null;
 						hasMessage = false;
 					}
 				}
@@ -724,7 +734,7 @@ public abstract class TransportProtocol<T extends SshContext>
 
 			// Work out the message length, payload, padding and
 			// remaining bytes
-			msglen = (int) cipher.readPacketLength(incomingSwap, new UnsignedInteger64(incomingSequence));
+			msglen = (int) cipher.readPacketLength(incomingSwap, incomingSequence);
 
 			if (msglen <= 0)
 				throw new IOException(
@@ -750,6 +760,7 @@ public abstract class TransportProtocol<T extends SshContext>
 			expectedBytes = remaining + incomingMacLength;
 			expectPacket = false;
 			offsetIncoming += 4;
+			prepareIncomingSwap();
 			
 		}
 		
@@ -792,18 +803,7 @@ public abstract class TransportProtocol<T extends SshContext>
 				
 				
 				padlen = (incomingSwap[4] & 0xFF);
-				payloadIncoming = new byte[msglen - padlen - 1];
-
-				// Copy the payload into the final output buffer
-				System.arraycopy(incomingSwap, 5, payloadIncoming,
-						0, msglen - padlen - 1);
-
-				// Uncompress the message payload if necersary
-				if (incomingCompression != null) {
-					payloadIncoming = incomingCompression
-							.uncompress(payloadIncoming, 0,
-									payloadIncoming.length);
-				}
+				completeIncomingPayload();
 
 				return true;
 
@@ -854,6 +854,7 @@ public abstract class TransportProtocol<T extends SshContext>
 			expectedBytes = remaining + incomingMacLength;
 			expectPacket = false;
 			offsetIncoming += 4;
+			prepareIncomingSwap();
 
 		}
 
@@ -909,18 +910,7 @@ public abstract class TransportProtocol<T extends SshContext>
 				}
 				
 				padlen = (incomingSwap[4] & 0xFF);
-				payloadIncoming = new byte[msglen - padlen - 1];
-
-				// Copy the payload into the final output buffer
-				System.arraycopy(incomingSwap, 5, payloadIncoming,
-						0, msglen - padlen - 1);
-
-				// Uncompress the message payload if necersary
-				if (incomingCompression != null) {
-					payloadIncoming = incomingCompression
-							.uncompress(payloadIncoming, 0,
-									payloadIncoming.length);
-				}
+				completeIncomingPayload();
 
 				return true;
 
@@ -980,6 +970,7 @@ public abstract class TransportProtocol<T extends SshContext>
 			// message
 			expectPacket = false;
 			offsetIncoming += incomingCipherLength;
+			prepareIncomingSwap();
 
 		}
 
@@ -1038,18 +1029,7 @@ public abstract class TransportProtocol<T extends SshContext>
 					}
 				}
 
-				payloadIncoming = new byte[msglen - padlen - 1];
-				
-				// Copy the payload into the final output buffer
-				System.arraycopy(incomingSwap, 5, payloadIncoming,
-						0, msglen - padlen - 1);
-
-				// Uncompress the message payload if necersary
-				if (incomingCompression != null) {
-					payloadIncoming = incomingCompression
-							.uncompress(payloadIncoming, 0,
-									payloadIncoming.length);
-				}
+				completeIncomingPayload();
 
 				return true;
 
@@ -1059,20 +1039,73 @@ public abstract class TransportProtocol<T extends SshContext>
 		return false;
 	}
 
-	public boolean wantsToWrite() {
-		synchronized (kexlockOut) {
-			if (currentState == PERFORMING_KEYEXCHANGE
-					&& completedFirstKeyExchange) {
-				return kexQueue.size() > 0;
+	/**
+	 * When decoding in place, read the remainder of the packet into a pooled buffer 
+	 * large enough for it, carrying over the header bytes already read.
+	 */
+	private void prepareIncomingSwap() {
+		if(sshContext.isInPlaceDecoding()) {
+			byte[] swap = sshContext.getPayloadPool().get(
+					Math.max(msglen + 4 + incomingMacLength, offsetIncoming));
+			System.arraycopy(incomingSwap, 0, swap, 0, offsetIncoming);
+			incomingSwap = swap;
+		}
+	}
+	
+	/**
+	 * Extract the payload of the decoded packet. Channel data decoded into a pooled buffer is 
+	 * passed on without copying, otherwise the payload is copied into its own array.
+	 */
+	private void completeIncomingPayload() throws IOException {
+		
+		payloadIncomingLength = msglen - padlen - 1;
+		
+		byte[] swap = incomingSwap;
+		boolean pooled = swap != defaultIncomingSwap;
+		
+		if(pooled) {
+			incomingSwap = defaultIncomingSwap;
+			if(incomingCompression == null 
+					&& payloadIncomingLength > 0
+					&& currentState == CONNECTED
+					&& (swap[5] == ConnectionProtocol.SSH_MSG_CHANNEL_DATA 
+						|| swap[5] == ConnectionProtocol.SSH_MSG_CHANNEL_EXTENDED_DATA)) {
+				pooledPayloadIncoming = new PooledPayload(swap, 5, 
+						payloadIncomingLength, sshContext.getPayloadPool());
+				return;
 			}
-			return outgoingQueue.size() > 0 || kexQueue.size() > 0;
+		}
+		
+		payloadIncoming = new byte[payloadIncomingLength];
+
+		// Copy the payload into the final output buffer
+		System.arraycopy(swap, 5, payloadIncoming,
+				0, payloadIncomingLength);
+
+		if(pooled) {
+			sshContext.getPayloadPool().release(swap);
+		}
+		
+		// Uncompress the message payload if necersary
+		if (incomingCompression != null) {
+			payloadIncoming = incomingCompression
+					.uncompress(payloadIncoming, 0,
+							payloadIncoming.length);
+			payloadIncomingLength = payloadIncoming.length;
 		}
 	}
 
+	public boolean wantsToWrite() {
+		return outgoingQueue.hasMessages(isKeyExchangeOnly());
+	}
+
 	public int getQueueSizes() {
-		synchronized (kexlockOut) {
-			return outgoingQueue.size() + kexQueue.size();
-		}
+		return outgoingQueue.size();
+	}
+	
+	private boolean isKeyExchangeOnly() {
+		return currentState == PERFORMING_KEYEXCHANGE
+				&& completedFirstKeyExchange;
 	}
 
 	/**
@@ -1154,68 +1187,34 @@ public abstract class TransportProtocol<T extends SshContext>
 		if(Log.isTraceEnabled())
 			Log.debug("Processing APPLICATION WRITE event");
 
-		final SshMessage msg;
-
 		try {
 
-			final Long sequenceNo = outgoingSequence;
-			
+			/**
+			 * Producers post to the queue without locking; the lock is only
+			 * held here so that the keys cannot change whilst a packet is
+			 * being encoded.
+			 */
 			synchronized (kexlockOut) {
-				if ((kexQueue.size() > 0 || outgoingQueue.size() > 0)) {
-
-					// Get the next message and write into the buffer
-					if (currentState == PERFORMING_KEYEXCHANGE
-							&& completedFirstKeyExchange) {
-						if (kexQueue.size() > 0) {
-							msg = (SshMessage) kexQueue.getFirst();
-							if (msg.writeMessageIntoBuffer(outgoingMessage))
-								kexQueue.removeFirst();
-						} else {
-							// Simply return there are no key exchange messages
-							// to send
-							// socketConnection.setWriteState(wantsToWrite());
-							return null;
-						}
-					} else {
-						synchronized (outgoingQueue) {
-							msg = (SshMessage) outgoingQueue.getFirst();
-							if (msg.writeMessageIntoBuffer(outgoingMessage)) {
-								outgoingQueue.removeFirst();
-							}
-						}
-					}
-
-					if (currentState != TransportProtocol.NEGOTIATING_PROTOCOL) {
-
-						outgoingMessage.flip();
-						
-						if(encryption!=null && encryption instanceof ChaCha20Poly1305) {
-							encodeChaCha20Poly1305FormatPacket(outgoingMessage);
-						} else if(outgoingMac!=null && outgoingMac.isETM()) {
-							encodeETMFormatPacket(outgoingMessage);
-						} else {
-							encodeOriginalFormatPacket(outgoingMessage);
-						}
-
-						numOutgoingBytesSinceKEX += outgoingMessage.position();
-						numOutgoingPacketsSinceKEX++;
-
-						outgoingSequence++;
+				
+				final List<SshMessage> sent = new ArrayList<>();
+				final List<Long> sequenceNos = new ArrayList<>();
+				
+				SshMessage msg = outgoingQueue.peek(isKeyExchangeOnly());
+				while (msg != null) {
 
-						if (outgoingSequence >= 4294967296L) {
-							outgoingSequence = 0;
-						}
+					sequenceNos.add(outgoingSequence);
+					sent.add(msg);
+					writePacket(msg, outgoingMessage);
+					
+					// if sent lots of bytes or packets then change keys
+					if (numOutgoingBytesSinceKEX >= getContext()
+							.getKeyExchangeTransferLimit()
+							|| numOutgoingPacketsSinceKEX >= getContext()
+									.getKeyExchangePacketLimit()) {
+						sendKeyExchangeInit();
 					}
-				} else {
-					msg = null;
-				}
-
-				// if sent lots of bytes or packets then change keys
-				if (numOutgoingBytesSinceKEX >= getContext()
-						.getKeyExchangeTransferLimit()
-						|| numOutgoingPacketsSinceKEX >= getContext()
-								.getKeyExchangePacketLimit()) {
-					sendKeyExchangeInit();
+					
+					msg = nextCoalescedMessage(outgoingMessage);
 				}
 
 				return new SocketWriteCallback() {
@@ -1223,8 +1222,8 @@ public abstract class TransportProtocol<T extends SshContext>
 					public void completedWrite() {
 						
 							try {
-								if (msg != null) {
-									msg.messageSent(sequenceNo);
+								for(int i=0;i<sent.size();i++) {
+									sent.get(i).messageSent(sequenceNos.get(i));
 								}
 							} catch (SshException e) {
 								Log.error("Failed during messageSent", e);
@@ -1249,70 +1248,125 @@ public abstract class TransportProtocol<T extends SshContext>
 
 	}
 	
-	private void encodeChaCha20Poly1305FormatPacket(ByteBuffer outgoingMessage) throws IOException {
+	/**
+	 * Write a single message into the buffer as the next packet.
+	 */
+	private void writePacket(SshMessage msg, ByteBuffer outgoingMessage) throws IOException {
+		
+		/**
+		 * Binary packets are framed in place so reserve space for the 
+		 * packet header in front of the message payload.
+		 */
+		int packetStart = outgoingMessage.position();
+		boolean binaryPacket = currentState != TransportProtocol.NEGOTIATING_PROTOCOL;
+		if(binaryPacket) {
+			outgoingMessage.position(packetStart + PACKET_HEADER_LENGTH);
+		}
+		
+		if (msg.writeMessageIntoBuffer(outgoingMessage)) {
+			outgoingQueue.remove(msg);
+		}
+
+		if (binaryPacket) {
+
+			if(encryption!=null && encryption instanceof ChaCha20Poly1305) {
+				encodeChaCha20Poly1305FormatPacket(outgoingMessage, packetStart);
+			} else if(outgoingMac!=null && outgoingMac.isETM()) {
+				encodeETMFormatPacket(outgoingMessage, packetStart);
+			} else {
+				encodeOriginalFormatPacket(outgoingMessage, packetStart);
+			}
+
+			numOutgoingBytesSinceKEX += outgoingMessage.position() - packetStart;
+			numOutgoingPacketsSinceKEX++;
+
+			outgoingSequence++;
+
+			if (outgoingSequence >= 4294967296L) {
+				outgoingSequence = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Get the next message to pack into the same socket write as the packets already in the
+	 * buffer. Packets are only packed once the connection is established and outside of a 
+	 * key exchange, since a change of keys takes effect only after the write completes, and 
+	 * only for messages that report how much space they need.
+	 */
+	private SshMessage nextCoalescedMessage(ByteBuffer outgoingMessage) {
+		
+		if(currentState != CONNECTED || outgoingCompression != null 
+				|| !getContext().isWriteCoalescing()) {
+			return null;
+		}
+		
+		SshMessage msg = outgoingQueue.peekMessage();
+		if(msg == null) {
+			return null;
+		}
+		
+		int length = msg.getMaximumLength();
+		if(length < 0) {
+			return null;
+		}
+		
+		int cipherlen = encryption == null ? 8 : encryption.getBlockSize();
+		int overhead = PACKET_HEADER_LENGTH + 4 + cipherlen;
+		if(encryption != null && encryption.isMAC()) {
+			overhead += encryption.getMacLength();
+		}
+		if(outgoingMac != null) {
+			overhead += outgoingMac.getMacLength();
+		}
+		
+		return outgoingMessage.remaining() >= length + overhead ? msg : null;
+	}
+	
+	/**
+	 * Each of the encode methods expects the message payload to have been written into
+	 * the buffer after a reserved header at packetStart. The packet is framed, padded,
+	 * encrypted and MAC'd in place and the buffer is left positioned after the packet.
+	 */
+	private void encodeChaCha20Poly1305FormatPacket(ByteBuffer outgoingMessage, int packetStart) throws IOException {
 		
 		ChaCha20Poly1305 cipher = (ChaCha20Poly1305) encryption;
 		
-		byte[] payload = new byte[outgoingMessage.remaining()];
-		outgoingMessage.get(payload);
-		outgoingMessage.clear();
+		int payloadLength = outgoingMessage.position() - packetStart - PACKET_HEADER_LENGTH;
 
 		int padding = 4;
 		int cipherlen = 8;
 		
 		// Compress the payload if necersary
-		if (outgoingCompression != null) {
-			payload = outgoingCompression.compress(payload, 0,
-					payload.length);
-		}
+		payloadLength = compressPayload(outgoingMessage, packetStart, payloadLength);
 
 		// Determine the padding length
-		padding += ((cipherlen - ((payload.length + 1 + padding) % cipherlen)) % cipherlen);
+		padding += ((cipherlen - ((payloadLength + 1 + padding) % cipherlen)) % cipherlen);
 
+		int msglen = payloadLength + 1 + padding;
+		
 		// Write the packet length field
-		outgoingMessage.put(cipher.writePacketLength(payload.length + 1 + padding, new UnsignedInteger64(outgoingSequence)));
+		outgoingMessage.position(packetStart);
+		cipher.writePacketLength(msglen, outgoingSequence, outgoingMessage);
 
 		// Write the padding length
 		outgoingMessage.put((byte) padding);
 
-		// Write the message payload
-		outgoingMessage.put(payload, 0, payload.length);
-		outgoingBytes += payload.length + padding + 1 + cipher.getMacLength() + 4;
+		// Write the padding after the message payload
+		outgoingMessage.position(packetStart + PACKET_HEADER_LENGTH + payloadLength);
+		writePadding(outgoingMessage, padding);
+		outgoingBytes += payloadLength + padding + 1 + cipher.getMacLength() + 4;
 
-		// Create some random data for the padding
-		byte[] pad = new byte[padding];
-		rnd.nextBytes(pad);
-
-		// Write the padding
-		outgoingMessage.put(pad);
+		// Encrypt and append the authentication tag
+		cipher.transform(outgoingMessage, packetStart + 4, msglen + cipher.getMacLength());
 
-		outgoingMessage.flip();
-		
-		// Get the unencrypted packet data
-		byte[] packet = new byte[outgoingMessage.remaining() + encryption.getMacLength()];
-		
-		outgoingMessage.get(packet, 0, outgoingMessage.remaining());
-		
-		cipher.transform(packet, 4, packet, 4, packet.length-4);
-
-		// Reset the message
-		outgoingMessage.clear();
-
-		// Write the packet data
-		outgoingMessage.put(packet);
-		
+		outgoingMessage.position(packetStart + 4 + msglen + cipher.getMacLength());
 		
 	}	
 
-	private void encodeETMFormatPacket(ByteBuffer outgoingMessage) throws IOException {
+	private void encodeETMFormatPacket(ByteBuffer outgoingMessage, int packetStart) throws IOException {
 		
-		/**
-		 * Wrap the message payload into the binary packet
-		 * format
-		 */
-		byte[] payload = new byte[outgoingMessage.remaining()];
-		outgoingMessage.get(payload);
-		outgoingMessage.clear();
+		int payloadLength = outgoingMessage.position() - packetStart - PACKET_HEADER_LENGTH;
 
 		int padding = 4;
 		int cipherlen = 8;
@@ -1323,81 +1377,53 @@ public abstract class TransportProtocol<T extends SshContext>
 		}
 
 		// Compress the payload if necersary
-		if (outgoingCompression != null) {
-			payload = outgoingCompression.compress(payload, 0,
-					payload.length);
-		}
+		payloadLength = compressPayload(outgoingMessage, packetStart, payloadLength);
 
 		// Determine the padding length
-		padding += ((cipherlen - ((payload.length + 1 + padding) % cipherlen)) % cipherlen);
-
-		// Write the packet length field
-		outgoingMessage.putInt(payload.length + 1 + padding);
-
-		// Write the padding length
-		outgoingMessage.put((byte) padding);
-
-		// Write the message payload
-		outgoingMessage.put(payload, 0, payload.length);
-		outgoingBytes += payload.length + padding + 1;
+		padding += ((cipherlen - ((payloadLength + 1 + padding) % cipherlen)) % cipherlen);
 
-		// Create some random data for the padding
-		byte[] pad = new byte[padding];
-		rnd.nextBytes(pad);
+		int msglen = payloadLength + 1 + padding;
+		
+		// Write the packet length field and padding length
+		outgoingMessage.putInt(packetStart, msglen);
+		outgoingMessage.put(packetStart + 4, (byte) padding);
 
-		// Write the padding
-		outgoingMessage.put(pad);
+		// Write the padding after the message payload
+		outgoingMessage.position(packetStart + PACKET_HEADER_LENGTH + payloadLength);
+		writePadding(outgoingMessage, padding);
+		outgoingBytes += payloadLength + padding + 1;
 
-		outgoingMessage.flip();
-		
-		// Get the unencrypted packet data
-		byte[] packet;
+		int packetLength = msglen + 4;
 		if(encryption!=null && encryption.isMAC()) {
-			packet = new byte[outgoingMessage.remaining() + encryption.getMacLength()];
-		} else {
-			packet = new byte[outgoingMessage.remaining()];
+			packetLength += encryption.getMacLength();
 		}
-		
-		outgoingMessage.get(packet);
-		byte[] mac = null;
 
 		// Perfrom encrpytion
 		if (encryption != null) {
-			encryption.transform(packet, 4, packet, 4, packet.length-4);
+			encryption.transform(outgoingMessage, packetStart + 4, packetLength - 4);
 		}
 		
-		// Generate the MAC
-		if (outgoingMac != null) {
-			mac = new byte[outgoingMac.getMacLength()];
-			outgoingMac.generate(outgoingSequence, packet, 0,
-					packet.length, mac, 0);
-		}
-
-		// Reset the message
-		outgoingMessage.clear();
-
-		// Write the packet data
-		outgoingMessage.put(packet);
-
-		// Combine the packet and MAC
-		if (mac != null && mac.length > 0) {
-			outgoingMessage.put(mac);
-			outgoingBytes += mac.length;
+		outgoingMessage.position(packetStart + packetLength);
+		
+		// Generate the MAC over the encrypted packet
+		if (outgoingMac != null && outgoingMac.getMacLength() > 0) {
+			outgoingMac.generate(outgoingSequence, outgoingMessage, packetStart,
+					packetLength, outgoingMessage, packetStart + packetLength);
+			outgoingMessage.position(packetStart + packetLength + outgoingMac.getMacLength());
+			outgoingBytes += outgoingMac.getMacLength();
 		}
 		
 	}
 
-	private void encodeOriginalFormatPacket(ByteBuffer outgoingMessage) throws IOException {
+	private void encodeOriginalFormatPacket(ByteBuffer outgoingMessage, int packetStart) throws IOException {
 		
-		/**
-		 * Wrap the message payload into the binary packet
-		 * format
-		 */
-		byte[] payload = new byte[outgoingMessage.remaining()];
-		outgoingMessage.get(payload);
-		outgoingMessage.clear();
+		int payloadLength = outgoingMessage.position() - packetStart - PACKET_HEADER_LENGTH;
 
 		if(Log.isTraceEnabled()) {
+			byte[] payload = new byte[payloadLength];
+			ByteBuffer dup = outgoingMessage.duplicate();
+			dup.position(packetStart + PACKET_HEADER_LENGTH);
+			dup.get(payload);
 			Log.raw(Level.TRACE, Utils.bytesToHex(payload, 0, payload.length, 32, true, true), true);
 		}
 		
@@ -1410,76 +1436,89 @@ public abstract class TransportProtocol<T extends SshContext>
 		}
 
 		// Compress the payload if necersary
-		if (outgoingCompression != null) {
-			payload = outgoingCompression.compress(payload, 0,
-					payload.length);
-		}
+		payloadLength = compressPayload(outgoingMessage, packetStart, payloadLength);
 
 		// Determine the padding length
 		if(encryption!=null && encryption.isMAC()) {
-			padding += ((cipherlen - ((payload.length + 1 + padding) % cipherlen)) % cipherlen);
+			padding += ((cipherlen - ((payloadLength + 1 + padding) % cipherlen)) % cipherlen);
 		} else {
-			padding += ((cipherlen - ((payload.length + 5 + padding) % cipherlen)) % cipherlen);
+			padding += ((cipherlen - ((payloadLength + 5 + padding) % cipherlen)) % cipherlen);
 		}
 		
-		// Write the packet length field
-		int msglen = payload.length + 1 + padding;
-		outgoingMessage.putInt(msglen);
+		// Write the packet length field and padding length
+		int msglen = payloadLength + 1 + padding;
+		outgoingMessage.putInt(packetStart, msglen);
+		outgoingMessage.put(packetStart + 4, (byte) padding);
 
-		// Write the padding length
-		outgoingMessage.put((byte) padding);
-
-		// Write the message payload
-		outgoingMessage.put(payload, 0, payload.length);
-		outgoingBytes += payload.length + padding + 5;
-
-		// Create some random data for the padding
-		byte[] pad = new byte[padding];
-		rnd.nextBytes(pad);
+		// Write the padding after the message payload
+		outgoingMessage.position(packetStart + PACKET_HEADER_LENGTH + payloadLength);
+		writePadding(outgoingMessage, padding);
+		outgoingBytes += payloadLength + padding + 5;
 
-		// Write the padding
-		outgoingMessage.put(pad);
-
-		outgoingMessage.flip();
-		// Get the unencrypted packet data
-		byte[] packet;
-		
+		int packetLength = msglen + 4;
 		if(encryption!=null && encryption.isMAC()) {
-			packet = new byte[outgoingMessage.remaining() + encryption.getMacLength()];
-		} else {
-			packet = new byte[outgoingMessage.remaining()];
+			packetLength += encryption.getMacLength();
 		}
-		outgoingMessage.get(packet, 0, outgoingMessage.remaining());
-		byte[] mac = null;
 
-		// Generate the MAC
-		if (outgoingMac != null) {
-			mac = new byte[outgoingMac.getMacLength()];
-			outgoingMac.generate(outgoingSequence, packet, 0,
-					packet.length, mac, 0);
+		// Generate the MAC over the unencrypted packet
+		int macLength = 0;
+		if (outgoingMac != null && outgoingMac.getMacLength() > 0) {
+			macLength = outgoingMac.getMacLength();
+			outgoingMac.generate(outgoingSequence, outgoingMessage, packetStart,
+					packetLength, outgoingMessage, packetStart + packetLength);
+			outgoingBytes += macLength;
 		}
 
 		// Perfrom encrpytion
 		if (encryption != null) {
 			if(encryption.isMAC()) {
-				encryption.transform(packet, 0, packet, 0, msglen+4);
+				encryption.transform(outgoingMessage, packetStart, msglen + 4);
 			} else {
-				encryption.transform(packet);
+				encryption.transform(outgoingMessage, packetStart, packetLength);
 			}
 		}
 
-		// Reset the message
-		outgoingMessage.clear();
-
-		// Write the packet data
-		outgoingMessage.put(packet);
+		outgoingMessage.position(packetStart + packetLength + macLength);
+		
+	}
 
-		// Combine the packet and MAC
-		if (mac != null && mac.length > 0) {
-			outgoingMessage.put(mac);
-			outgoingBytes += mac.length;
+	/**
+	 * Compress the payload in place, returning the new payload length.
+	 */
+	private int compressPayload(ByteBuffer outgoingMessage, int packetStart, int payloadLength) throws IOException {
+		
+		if (outgoingCompression == null) {
+			return payloadLength;
+		}
+		
+		int payloadStart = packetStart + PACKET_HEADER_LENGTH;
+		byte[] compressed;
+		if(outgoingMessage.hasArray()) {
+			compressed = outgoingCompression.compress(outgoingMessage.array(), 
+					outgoingMessage.arrayOffset() + payloadStart, payloadLength);
+		} else {
+			byte[] payload = new byte[payloadLength];
+			ByteBuffer dup = outgoingMessage.duplicate();
+			dup.position(payloadStart);
+			dup.get(payload);
+			compressed = outgoingCompression.compress(payload, 0, payloadLength);
 		}
 		
+		outgoingMessage.position(payloadStart);
+		outgoingMessage.put(compressed);
+		return compressed.length;
+	}
+	
+	private void writePadding(ByteBuffer outgoingMessage, int padding) {
+		
+		byte[] pad = outgoingPadding[padding];
+		if(pad==null) {
+			pad = outgoingPadding[padding] = new byte[padding];
+		}
+		
+		// Create some random data for the padding
+		rnd.nextBytes(pad);
+		outgoingMessage.put(pad);
 	}
 
 	public int getState() {
@@ -1942,6 +1981,22 @@ public abstract class TransportProtocol<T extends SshContext>
 	
 	protected abstract boolean processTransportMessage(int msgid, byte[] msg) throws IOException, SshException;
 	
+	/**
+	 * Give the transport the chance to process a message that was decoded into a pooled
+	 * buffer, as {@link #processTransportMessage(int, byte[])} does for other messages.
+	 * Only channel data is pooled, so this copies the payload and passes it to
+	 * {@link #processTransportMessage(int, byte[])}. Implementations that never process
+	 * channel data there should override this to return <code>false</code> and avoid the copy.
+	 * 
+	 * @param msgid
+	 * @param msg
+	 * @return <code>true</code> if the message was processed by the transport
+	 *         and can be discarded, otherwise <code>false</code>.
+	 */
+	protected boolean processTransportMessage(int msgid, PooledPayload msg) throws IOException, SshException {
+		return processTransportMessage(msgid, msg.toByteArray());
+	}
+	
 	
 	/**
 	 * Process a message. This should be called when reading messages from
@@ -2120,6 +2175,55 @@ public abstract class TransportProtocol<T extends SshContext>
 		}
 	}
 
+	/**
+	 * Process a message that was decoded in place into a pooled buffer. The payload is passed
+	 * to the active service which is responsible for releasing any references it retains; the
+	 * reference held by the transport is released once the service has processed the message.
+	 */
+	protected void processMessage(PooledPayload msg, long sequenceNo) throws SshException, IOException {
+
+		resetIdleState(this);
+
+		if(Log.isTraceEnabled()) {
+			Log.raw(Level.TRACE, Utils.bytesToHex(msg.array(), msg.offset(), msg.length(), 32, true, true), true);
+		}
+		
+		boolean processed;
+		try {
+			processed = processTransportMessage(msg.getMessageId(), msg);
+		} catch(IOException | SshException | RuntimeException e) {
+			msg.release();
+			throw e;
+		}
+		if(processed) {
+			msg.release();
+			return;
+		}
+		
+		if(Log.isTraceEnabled()) {
+			Log.trace("Posting pooled mesage id {} to active service for processing", msg.getMessageId());
+		}
+		
+		addTask(ACTIVE_SERVICE_IN, new ConnectionAwareTask(con) {
+			protected void doTask() {
+				try {
+					if (activeService != null && activeService.processMessage(msg)) {
+						return;
+					}
+
+					if(Log.isDebugEnabled()) {
+						Log.debug("Unimplemented Message id={}", msg.getMessageId());
+					}
+					postMessage(new UnimplementedMessage(sequenceNo));
+				} catch (IOException | SshException e) {
+					disconnect(PROTOCOL_ERROR, e.getMessage());
+				} finally {
+					msg.release();
+				}
+			}
+		});
+	}
+	
 	protected abstract void onNewKeysSent();
 	
 	public void sendNewKeys() {
@@ -2507,7 +2611,7 @@ public abstract class TransportProtocol<T extends SshContext>
 								getExtensionNegotiationString(),
 								isServerMode() ? STRICT_KEX_SERVER : STRICT_KEX_CLIENT);
 
-						kexQueue.clear();
+						outgoingQueue.clearKeyExchange();
 						if(Log.isDebugEnabled())
 							Log.debug("Posting SSH_MSG_KEX_INIT");
 						postMessage(new SshMessage() {
@@ -2649,11 +2753,7 @@ public abstract class TransportProtocol<T extends SshContext>
 			Log.debug("Posting message " + msg.getClass().getName()
 					+ " to queue");
 
-		LinkedList<SshMessage> list = kex && completedFirstKeyExchange ? kexQueue
-				: outgoingQueue;
-		synchronized (kexlockOut) {
-			list.addLast(msg);
-		}
+		outgoingQueue.post(msg, kex && completedFirstKeyExchange);
 		
 		socketConnection.flagWrite();
 	}
@@ -0,0 +1,45 @@
+package com.sshtools.synergy.jdk21;
+
+/*-
+ * #%L
+ * Virtual thread support
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.concurrent.Executors;
+
+import com.sshtools.synergy.ssh.SshContext;
+
+/**
+ * Runs connection tasks on virtual threads. Call {@link #enable()} before the first
+ * client or server is created. Each task gets its own virtual thread, so threads
+ * blocked waiting for channel window space, channel data or SFTP responses no longer
+ * hold a platform thread.
+ */
+public class VirtualThreads {
+
+	/**
+	 * Use a virtual thread per task executor for all connections.
+	 */
+	public static void enable() {
+		SshContext.setExecutorServiceFactory(() -> Executors.newThreadPerTaskExecutor(
+				Thread.ofVirtual().name("ssh-virtual-", 0).factory()));
+	}
+	
+}
@@ -42,6 +42,7 @@ import com.sshtools.synergy.nio.LicenseException;
 import com.sshtools.synergy.nio.SocketConnection;
 import com.sshtools.synergy.ssh.ConnectionStateListener;
 import com.sshtools.synergy.ssh.ConnectionTaskWrapper;
+import com.sshtools.synergy.ssh.PooledPayload;
 import com.sshtools.synergy.ssh.Service;
 import com.sshtools.synergy.ssh.SshContext;
 import com.sshtools.synergy.ssh.TransportProtocol;
@@ -291,6 +292,12 @@ public final class TransportProtocolServer extends TransportProtocol<SshServerCo
 		}
 	}
 
+	@Override
+	protected boolean processTransportMessage(int msgid, PooledPayload msg) {
+		// Only channel data is pooled and it is never a transport message
+		return false;
+	}
+
 	/**
 	 * Request that the remote server starts a transport protocol service.
 	 * 
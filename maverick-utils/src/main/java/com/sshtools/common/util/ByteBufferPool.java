@@ -22,23 +22,62 @@ package com.sshtools.common.util;
  * #L%
  */
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.Cleaner;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  *  This class provides a pool for either direct or non direct ByteBuffers.
+ *  <p>
+ *  Buffers are bucketed into size classes; the powers of two from 1k up to the
+ *  pool capacity and the capacity itself. Each thread keeps a small magazine of 
+ *  free buffers for each size class so that the threads which repeatedly take and 
+ *  return buffers, such as the selector threads, rarely touch the shared free lists. 
+ *  The total size of free buffers on the shared free lists is capped and buffers 
+ *  returned beyond the cap are left to the garbage collector; each thread retains at 
+ *  most the magazine size of buffers per size class in addition to this.
+ *  <p>
+ *  Virtual threads do not keep a magazine. They are usually created for a single
+ *  task, so a magazine would be filled and then lost with the thread, and the
+ *  buffers it held would never be seen by the pool again.
  */
 public class ByteBufferPool
 {
-    private ArrayList<ByteBuffer> pool = new ArrayList<ByteBuffer>();
-    private int capacity = 4096;
-    private int allocated = 0;
-    private long totalDirectMemoryAllocated = 0;
-    
+    static final int MINIMUM_SIZE_CLASS = 10; // 1k
+    public static final int DEFAULT_MAGAZINE_SIZE = 4;
+    public static final long DEFAULT_MAXIMUM_RETAINED_BYTES = 64 * 1024 * 1024;
+
+    private static Cleaner cleaner;
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    private final int capacity;
+    private final boolean direct;
+    private final long maximumRetainedBytes;
+    private final int magazineSize;
+    private final int[] classCapacities;
+    private final ConcurrentLinkedDeque<ByteBuffer>[] buckets;
+    private final ThreadLocal<Magazine> magazines = new ThreadLocal<>();
+
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final AtomicInteger sharedFree = new AtomicInteger();
+    private final AtomicLong sharedBytes = new AtomicLong();
+    private final LongAdder magazineFree = new LongAdder();
+    private final LongAdder magazineBytes = new LongAdder();
+    private final AtomicLong totalMemoryAllocated = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
     /**
      * Create a default pool of ByteBuffers with 4k capacity
      */
     public ByteBufferPool() {
+        this(4096, false);
     }
 
     /**
@@ -48,7 +87,34 @@ public class ByteBufferPool
      * @param direct boolean
      */
     public ByteBufferPool(int capacity, boolean direct) {
-        this.capacity=capacity;
+        this(capacity, direct, DEFAULT_MAXIMUM_RETAINED_BYTES, DEFAULT_MAGAZINE_SIZE);
+    }
+
+    /**
+     * Create a pool of ByteBuffers.
+     *
+     * @param capacity the capacity of buffers returned by {@link #get()} and the largest buffer pooled
+     * @param direct allocate direct buffers
+     * @param maximumRetainedBytes the maximum total capacity of free buffers retained by the pool
+     * @param magazineSize the number of free buffers of each size class cached by each thread
+     */
+    @SuppressWarnings("unchecked")
+    public ByteBufferPool(int capacity, boolean direct, long maximumRetainedBytes, int magazineSize) {
+        this.capacity = capacity;
+        this.direct = direct;
+        this.maximumRetainedBytes = maximumRetainedBytes;
+        this.magazineSize = magazineSize;
+
+        int classes = 1;
+        while(classes + MINIMUM_SIZE_CLASS - 1 < 31 && (1 << (classes + MINIMUM_SIZE_CLASS - 1)) < capacity) {
+            classes++;
+        }
+        classCapacities = new int[classes];
+        buckets = new ConcurrentLinkedDeque[classes];
+        for(int i=0;i<classes;i++) {
+            classCapacities[i] = i == classes - 1 ? capacity : 1 << (i + MINIMUM_SIZE_CLASS);
+            buckets[i] = new ConcurrentLinkedDeque<>();
+        }
     }
 
     /**
@@ -61,12 +127,21 @@ public class ByteBufferPool
     }
 
     /**
-     * Get the number of buffers currently allocated out.
+     * Determine if this pool allocates direct buffers.
+     * 
+     * @return boolean
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Get the number of buffers allocated by this pool.
      *
      * @return int
      */
     public int getAllocatedBuffers() {
-        return allocated;
+        return allocated.get();
     }
 
     /**
@@ -75,7 +150,7 @@ public class ByteBufferPool
      * @return int
      */
     public int getFreeBuffers() {
-        return pool.size();
+        return sharedFree.get() + magazineFree.intValue();
     }
 
     /**
@@ -84,7 +159,7 @@ public class ByteBufferPool
      * @return long
      */
     public long getTotalMemoryInUse() {
-        return totalDirectMemoryAllocated - (pool.size() * capacity);
+        return totalMemoryAllocated.get() - getRetainedBytes();
     }
 
     /**
@@ -92,8 +167,44 @@ public class ByteBufferPool
      *
      * @return long
      */
-    public synchronized long getTotalMemoryAllocated() {
-        return totalDirectMemoryAllocated;
+    public long getTotalMemoryAllocated() {
+        return totalMemoryAllocated.get();
+    }
+
+    /**
+     * Get the total capacity of the free buffers currently retained by this pool.
+     * 
+     * @return long
+     */
+    public long getRetainedBytes() {
+        return sharedBytes.get() + magazineBytes.sum();
+    }
+
+    /**
+     * Get the maximum total capacity of free buffers retained on the shared free lists.
+     * 
+     * @return long
+     */
+    public long getMaximumRetainedBytes() {
+        return maximumRetainedBytes;
+    }
+
+    /**
+     * Get the number of requests that were satisfied with a pooled buffer.
+     * 
+     * @return long
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of requests that required a new buffer to be allocated.
+     * 
+     * @return long
+     */
+    public long getMissCount() {
+        return misses.sum();
     }
 
     /**
@@ -101,17 +212,43 @@ public class ByteBufferPool
      *
      * @return ByteBuffer
      */
-    public synchronized ByteBuffer get() {
-        if (pool.isEmpty()) {
+    public ByteBuffer get() {
+        return get(capacity);
+    }
+
+    /**
+     * Get a free buffer with at least the requested capacity from the pool. Requests
+     * larger than the pool capacity are allocated and not pooled.
+     *
+     * @param size the minimum capacity
+     * @return ByteBuffer
+     */
+    public ByteBuffer get(int size) {
 
-            allocated++;
-            ByteBuffer buf = ByteBuffer.allocate(capacity);
-            totalDirectMemoryAllocated += capacity;
-            return buf;
+        if(size > capacity) {
+            misses.increment();
+            return allocate(size);
         }
 
-        
-        ByteBuffer buffer = (ByteBuffer)pool.remove(pool.size()-1);
+        int idx = sizeClass(size);
+
+        ByteBuffer buffer = null;
+        Magazine magazine = magazines.get();
+        if(magazine != null) {
+            buffer = magazine.pop(idx);
+        }
+
+        if(buffer == null) {
+            buffer = buckets[idx].pollFirst();
+            if(buffer == null) {
+                misses.increment();
+                return allocate(classCapacities[idx]);
+            }
+            sharedFree.decrementAndGet();
+            sharedBytes.addAndGet(-buffer.capacity());
+        }
+
+        hits.increment();
         buffer.clear();
         return buffer;
     }
@@ -121,16 +258,166 @@ public class ByteBufferPool
      *
      * @param buffer ByteBuffer
      */
-    public synchronized void add(ByteBuffer buffer)
+    public void add(ByteBuffer buffer)
     {
-        if(buffer==null)
+        if(buffer==null || buffer.isDirect() != direct || buffer.capacity() > capacity)
             return;
-        if (buffer.capacity()==capacity) {
-            buffer.clear();
-            pool.add(buffer);
+
+        int idx = sizeClass(buffer.capacity());
+        if(classCapacities[idx] != buffer.capacity()) {
+            return;
+        }
+
+        buffer.clear();
+
+        Magazine magazine = getMagazine();
+        if(magazine != null && magazine.push(idx, buffer)) {
+            return;
+        }
+
+        if(reserve(buffer.capacity())) {
+            sharedFree.incrementAndGet();
+            buckets[idx].offerFirst(buffer);
+        }
+    }
+
+    private ByteBuffer allocate(int size) {
+        allocated.incrementAndGet();
+        totalMemoryAllocated.addAndGet(size);
+        return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    private boolean reserve(int size) {
+        long current;
+        do {
+            current = sharedBytes.get();
+            if(current + size > maximumRetainedBytes) {
+                return false;
+            }
+        } while(!sharedBytes.compareAndSet(current, current + size));
+        return true;
+    }
+
+    private int sizeClass(int size) {
+        for(int i=0;i<classCapacities.length;i++) {
+            if(size <= classCapacities[i]) {
+                return i;
+            }
+        }
+        return classCapacities.length - 1;
+    }
+
+    private Magazine getMagazine() {
+        if(magazineSize <= 0 || isVirtual(Thread.currentThread())) {
+            return null;
+        }
+        Magazine magazine = magazines.get();
+        if(magazine == null) {
+            magazine = new Magazine(this, classCapacities.length, magazineSize);
+            magazines.set(magazine);
+            /**
+             * Buffers cached by a thread that has since exited are lost with the
+             * thread, so stop accounting for them once the thread is collected.
+             */
+            getCleaner().register(Thread.currentThread(), new MagazineRelease(this, magazine.state));
+        }
+        return magazine;
+    }
+
+    /**
+     * Thread.isVirtual() is only available from Java 21, so look it up
+     * when running on a JDK that has it.
+     */
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", 
+                    MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
         }
     }
 
+    static boolean isVirtual(Thread thread) {
+        if(IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private static synchronized Cleaner getCleaner() {
+        if(cleaner == null) {
+            cleaner = Cleaner.create();
+        }
+        return cleaner;
+    }
+
+    /**
+     * The buffers cached by a single thread. Only the owning thread modifies
+     * the magazine; its totals are kept separately so that they can be released 
+     * after the thread has exited.
+     */
+    static class Magazine {
+
+        final ByteBufferPool pool;
+        final ByteBuffer[][] stacks;
+        final int[] sizes;
+        final MagazineState state = new MagazineState();
+
+        Magazine(ByteBufferPool pool, int classes, int magazineSize) {
+            this.pool = pool;
+            stacks = new ByteBuffer[classes][magazineSize];
+            sizes = new int[classes];
+        }
 
+        ByteBuffer pop(int idx) {
+            if(sizes[idx] == 0) {
+                return null;
+            }
+            ByteBuffer buffer = stacks[idx][--sizes[idx]];
+            stacks[idx][sizes[idx]] = null;
+            state.buffers--;
+            state.bytes -= buffer.capacity();
+            pool.magazineFree.decrement();
+            pool.magazineBytes.add(-buffer.capacity());
+            return buffer;
+        }
+
+        boolean push(int idx, ByteBuffer buffer) {
+            if(sizes[idx] == stacks[idx].length) {
+                return false;
+            }
+            stacks[idx][sizes[idx]++] = buffer;
+            state.buffers++;
+            state.bytes += buffer.capacity();
+            pool.magazineFree.increment();
+            pool.magazineBytes.add(buffer.capacity());
+            return true;
+        }
+    }
+
+    static class MagazineState {
+        volatile int buffers;
+        volatile long bytes;
+    }
 
+    static class MagazineRelease implements Runnable {
+
+        final ByteBufferPool pool;
+        final MagazineState state;
+
+        MagazineRelease(ByteBufferPool pool, MagazineState state) {
+            this.pool = pool;
+            this.state = state;
+        }
+
+        @Override
+        public void run() {
+            pool.magazineFree.add(-state.buffers);
+            pool.magazineBytes.add(-state.bytes);
+        }
+    }
 }
@@ -0,0 +1,116 @@
+package com.sshtools.common.files.vfs.tests;
+
+/*-
+ * #%L
+ * Virtual File System Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sshtools.common.auth.AuthorizedKeysPublicKeyAuthenticationProvider;
+import com.sshtools.common.files.AbstractFile;
+import com.sshtools.common.files.direct.NioFileFactory.NioFileFactoryBuilder;
+import com.sshtools.common.files.vfs.VirtualFileFactory;
+import com.sshtools.common.files.vfs.VirtualMountTemplate;
+import com.sshtools.common.permissions.PermissionDeniedException;
+import com.sshtools.common.publickey.SshKeyPairGenerator;
+import com.sshtools.common.publickey.SshPublicKeyFileFactory;
+import com.sshtools.common.ssh.SshConnection;
+import com.sshtools.common.ssh.components.SshPublicKey;
+import com.sshtools.common.tests.MockConnection;
+import com.sshtools.common.util.FileUtils;
+
+public class VirtualAuthorizedKeysTests {
+
+	static final FileTime MODIFIED = FileTime.fromMillis(System.currentTimeMillis() - 60000);
+	
+	File base;
+	Map<String, VirtualFileFactory> factories = new HashMap<>();
+	
+	@Before
+	public void setUp() throws IOException {
+		base = Files.createTempDirectory("virtual-authorized-keys").toFile();
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteFolder(base);
+	}
+	
+	@Test
+	public void testUsersWithTheSameVirtualPath() throws Exception {
+		
+		SshPublicKey aliceKey = SshKeyPairGenerator.generateKeyPair(SshKeyPairGenerator.ED25519).getPublicKey();
+		SshPublicKey bobKey = SshKeyPairGenerator.generateKeyPair(SshKeyPairGenerator.ED25519).getPublicKey();
+		
+		SshConnection alice = createUser("alice", aliceKey);
+		SshConnection bob = createUser("bob", bobKey);
+		
+		TestProvider provider = new TestProvider();
+		
+		assertEquals(provider.getFile(alice).getAbsolutePath(), provider.getFile(bob).getAbsolutePath());
+		
+		assertTrue(provider.checkKey(aliceKey, alice));
+		assertFalse("Another user's key was authorized", provider.checkKey(aliceKey, bob));
+		assertTrue(provider.checkKey(bobKey, bob));
+		assertFalse("Another user's key was authorized", provider.checkKey(bobKey, alice));
+	}
+	
+	class TestProvider extends AuthorizedKeysPublicKeyAuthenticationProvider {
+		
+		@Override
+		public AbstractFile getFile(SshConnection con) throws PermissionDeniedException, IOException {
+			return factories.get(con.getUsername()).getDefaultPath().resolveFile(authorizedKeysFile);
+		}
+	}
+	
+	SshConnection createUser(String username, SshPublicKey key) throws IOException, PermissionDeniedException {
+		File home = new File(base, username);
+		Path ssh = home.toPath().resolve(".ssh");
+		Files.createDirectories(ssh);
+		Path authorizedKeys = ssh.resolve("authorized_keys");
+		
+		/**
+		 * Both files have the same size and an old modification time so that
+		 * only the cache key tells them apart.
+		 */
+		Files.write(authorizedKeys, (SshPublicKeyFileFactory.create(key, "key", 
+				SshPublicKeyFileFactory.OPENSSH_FORMAT).toString() + "\n").getBytes(StandardCharsets.US_ASCII));
+		Files.setLastModifiedTime(authorizedKeys, MODIFIED);
+		factories.put(username, new VirtualFileFactory(new VirtualMountTemplate("/", home.getAbsolutePath(), 
+				NioFileFactoryBuilder.create().withHome(home).build(), false)));
+		return new MockConnection(username, username, null, null, null);
+	}
+}
@@ -0,0 +1,106 @@
+package com.sshtools.common.files.vfs.tests;
+
+/*-
+ * #%L
+ * Virtual File System Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sshtools.common.files.direct.NioFileFactory;
+import com.sshtools.common.files.direct.NioFileFactory.NioFileFactoryBuilder;
+import com.sshtools.common.files.vfs.VirtualFileFactory;
+import com.sshtools.common.files.vfs.VirtualMountTemplate;
+import com.sshtools.common.permissions.PermissionDeniedException;
+import com.sshtools.common.util.FileUtils;
+
+/**
+ * Reports the rate of mount lookups against a wide table of per-user mounts and
+ * a deeply nested one.
+ */
+public class VirtualMountTreeBenchmark {
+
+	File baseFolder;
+	NioFileFactory actualFactory;
+	
+	@Before
+	public void setup() throws IOException {
+		baseFolder = Files.createTempDirectory("vfs-mounts").toFile();
+		actualFactory = NioFileFactoryBuilder.create().withHome(baseFolder).withoutSandbox().build();
+	}
+	
+	@After
+	public void clean() {
+		FileUtils.deleteFolder(baseFolder);
+	}
+	
+	private VirtualMountTemplate template(String mount) {
+		return new VirtualMountTemplate(mount, baseFolder.getAbsolutePath(), actualFactory, false);
+	}
+	
+	@Test
+	public void testWideAndDeepMountLookupThroughput() throws IOException, PermissionDeniedException {
+		
+		VirtualFileFactory wide = new VirtualFileFactory(template("/"));
+		long started = System.currentTimeMillis();
+		for(int i = 0; i < 1000; i++) {
+			wide.mount(template("/home/user" + i));
+		}
+		System.out.println(String.format("Mounted 1000 user folders in %dms", System.currentTimeMillis() - started));
+		
+		StringBuilder path = new StringBuilder();
+		String[] deepPaths = new String[32];
+		VirtualFileFactory deep = new VirtualFileFactory(template("/"));
+		for(int i = 0; i < 32; i++) {
+			path.append("/level").append(i);
+			deep.mount(template(path.toString()));
+			deepPaths[i] = path + "/file.txt";
+		}
+		
+		for(int round = 0; round < 2; round++) {
+			
+			started = System.nanoTime();
+			for(int i = 0; i < 500000; i++) {
+				String user = "/home/user" + (i % 1000);
+				assertEquals(user, wide.getMount(user + "/file.txt").getMount());
+			}
+			long wideElapsed = System.nanoTime() - started;
+			
+			started = System.nanoTime();
+			for(int i = 0; i < 500000; i++) {
+				deep.getMount(deepPaths[i % 32]);
+			}
+			long deepElapsed = System.nanoTime() - started;
+			
+			if(round > 0) {
+				System.out.println(String.format("Wide mount lookups %d/s, deep mount lookups %d/s", 
+						500000L * 1000000000L / wideElapsed, 500000L * 1000000000L / deepElapsed));
+			}
+		}
+	}
+}
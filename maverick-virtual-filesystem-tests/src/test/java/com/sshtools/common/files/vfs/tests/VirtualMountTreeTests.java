@@ -0,0 +1,179 @@
+package com.sshtools.common.files.vfs.tests;
+
+/*-
+ * #%L
+ * Virtual File System Tests
+ * %%
+ * Copyright (C) 2002 - 2024 JADAPTIVE Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sshtools.common.files.AbstractFile;
+import com.sshtools.common.files.direct.NioFileFactory;
+import com.sshtools.common.files.direct.NioFileFactory.NioFileFactoryBuilder;
+import com.sshtools.common.files.vfs.VirtualFile;
+import com.sshtools.common.files.vfs.VirtualFileFactory;
+import com.sshtools.common.files.vfs.VirtualMount;
+import com.sshtools.common.files.vfs.VirtualMountTemplate;
+import com.sshtools.common.permissions.PermissionDeniedException;
+import com.sshtools.common.util.FileUtils;
+
+public class VirtualMountTreeTests {
+
+	File baseFolder;
+	NioFileFactory actualFactory;
+	
+	@Before
+	public void setup() throws IOException {
+		baseFolder = Files.createTempDirectory("vfs-mounts").toFile();
+		actualFactory = NioFileFactoryBuilder.create().withHome(baseFolder).withoutSandbox().build();
+	}
+	
+	@After
+	public void clean() {
+		FileUtils.deleteFolder(baseFolder);
+	}
+	
+	private VirtualMountTemplate template(String mount) {
+		return new VirtualMountTemplate(mount, baseFolder.getAbsolutePath(), actualFactory, false);
+	}
+	
+	@Test
+	public void testLongestMountIsResolved() throws IOException, PermissionDeniedException {
+		
+		VirtualFileFactory factory = new VirtualFileFactory(template("/"),
+				template("/home"), template("/home/user1/shared"), template("/homework"));
+		
+		assertEquals("/", factory.getMount("/").getMount());
+		assertEquals("/", factory.getMount("/etc/passwd").getMount());
+		assertEquals("/home", factory.getMount("/home").getMount());
+		assertEquals("/home", factory.getMount("/home/").getMount());
+		assertEquals("/home", factory.getMount("/home/user1/file.txt").getMount());
+		assertEquals("/home/user1/shared", factory.getMount("/home/user1/shared/a/b").getMount());
+		assertEquals("/homework", factory.getMount("/homework/a").getMount());
+		assertEquals("/", factory.getMount("/hom").getMount());
+		
+		assertTrue(factory.isMounted("/home/user1/shared"));
+		assertFalse(factory.isMounted("/home/user1"));
+		
+		VirtualFile intermediate = factory.getFile("/home/user1");
+		assertTrue(intermediate.isMount());
+		assertFalse(intermediate.isWritable());
+		assertTrue(factory.getFile("/home/user1/shared").isWritable());
+		
+		List<String> mounts = new ArrayList<>();
+		for(VirtualMount m : factory.getMounts("/home")) {
+			mounts.add(m.getMount());
+		}
+		Collections.sort(mounts);
+		assertArrayEquals(new String[] { "/", "/home", "/home/user1/shared" }, mounts.toArray(new String[0]));
+	}
+	
+	@Test
+	public void testMountsAreListedAsChildren() throws IOException, PermissionDeniedException {
+		
+		VirtualFileFactory factory = new VirtualFileFactory(template("/"),
+				template("/public/docs"), template("/private"));
+		
+		List<String> names = new ArrayList<>();
+		for(AbstractFile child : factory.getFile("/").getChildren()) {
+			names.add(child.getName());
+		}
+		assertTrue(names.contains("public"));
+		assertTrue(names.contains("private"));
+		
+		AbstractFile publicFolder = factory.getFile("/public");
+		assertEquals(1, publicFolder.getChildren().size());
+		assertEquals("docs", publicFolder.getChildren().get(0).getName());
+	}
+	
+	@Test
+	public void testMountAndUnmount() throws IOException, PermissionDeniedException {
+		
+		VirtualFileFactory factory = new VirtualFileFactory(template("/"));
+		
+		factory.mount(template("/a/b/c"));
+		assertEquals("/a/b/c", factory.getMount("/a/b/c/d").getMount());
+		assertTrue(factory.getFile("/a/b").isMount());
+		
+		try {
+			factory.mount(template("/a/b/c"));
+			fail("Duplicate mount must be rejected");
+		} catch(IOException e) {
+		}
+		
+		factory.mount(template("/a"));
+		assertEquals("/a", factory.getMount("/a/b").getMount());
+		
+		factory.unmount(factory.getMount("/a/b/c"));
+		assertFalse(factory.isMounted("/a/b/c"));
+		assertEquals("/a", factory.getMount("/a/b/c/d").getMount());
+		assertFalse(factory.getFile("/a/b").isMount());
+		
+		factory.unmount(factory.getMount("/a"));
+		assertEquals("/", factory.getMount("/a/b").getMount());
+		assertFalse(factory.getFile("/a").isMount());
+	}
+	
+	@Test(expected = FileNotFoundException.class)
+	public void testNoMount() throws IOException, PermissionDeniedException {
+		new VirtualFileFactory(template("/data")).getMount("/etc");
+	}
+	
+	@Test
+	public void testWideAndDeepMountsAreResolved() throws IOException, PermissionDeniedException {
+		
+		VirtualFileFactory wide = new VirtualFileFactory(template("/"));
+		for(int i = 0; i < 1000; i++) {
+			wide.mount(template("/home/user" + i));
+		}
+		for(int i = 0; i < 1000; i++) {
+			String user = "/home/user" + i;
+			assertEquals(user, wide.getMount(user + "/file.txt").getMount());
+		}
+		
+		StringBuilder path = new StringBuilder();
+		VirtualFileFactory deep = new VirtualFileFactory(template("/"));
+		for(int i = 0; i < 32; i++) {
+			path.append("/level").append(i);
+			deep.mount(template(path.toString()));
+		}
+		path.setLength(0);
+		for(int i = 0; i < 32; i++) {
+			path.append("/level").append(i);
+			assertEquals(path.toString(), deep.getMount(path + "/file.txt").getMount());
+		}
+	}
+}
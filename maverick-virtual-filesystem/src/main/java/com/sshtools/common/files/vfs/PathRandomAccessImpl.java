@@ -82,6 +82,29 @@ public class PathRandomAccessImpl implements AbstractFileRandomAccess {
 	public long getFilePointer() throws IOException {
 		return raf.position();
 	}
+	
+	@Override
+	public int read(long position, byte[] buf, int off, int len) throws IOException {
+		return raf.read(ByteBuffer.wrap(buf, off, len), position);
+	}
+	
+	@Override
+	public boolean isDirectReadSupported() {
+		return true;
+	}
+	
+	@Override
+	public int read(long position, ByteBuffer dst) throws IOException {
+		return raf.read(dst, position);
+	}
+	
+	@Override
+	public void write(long position, byte[] buf, int off, int len) throws IOException {
+		ByteBuffer data = ByteBuffer.wrap(buf, off, len);
+		while(data.hasRemaining()) {
+			position += raf.write(data, position);
+		}
+	}
 
 	@Override
 	public int read() throws IOException {
@@ -26,7 +26,6 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,10 +44,65 @@ public class VirtualFileFactory implements AbstractFileFactory<VirtualFile> {
 	protected boolean cached = true;
 	
 	Map<String,VirtualFile> cache = new HashMap<>();
-	List<VirtualMount> mounts = new ArrayList<VirtualMount>();
-	Map<String,VirtualMountFile> mountCache = new HashMap<>();
+	MountNode mountTree = new MountNode("", "/", null);
 	private VirtualMount defaultMount;
 	
+	/**
+	 * A node in the mount tree. There is a node for each path segment of every
+	 * mount, so the parents of a mount appear as intermediate mount folders. Each
+	 * node holds the {@link VirtualMountFile} returned for its path.
+	 */
+	static class MountNode {
+		
+		final String name;
+		final String path;
+		final MountNode parent;
+		final Map<String,MountNode> children = new HashMap<>();
+		VirtualMount mount;
+		VirtualMountFile file;
+		
+		MountNode(String name, String path, MountNode parent) {
+			this.name = name;
+			this.path = path;
+			this.parent = parent;
+		}
+		
+		MountNode getOrCreateChild(String name) {
+			MountNode child = children.get(name);
+			if(Objects.isNull(child)) {
+				child = new MountNode(name, parent == null ? "/" + name : path + "/" + name, this);
+				children.put(name, child);
+			}
+			return child;
+		}
+		
+		/**
+		 * Find the child named by a segment of a path. Small folders are scanned
+		 * in place to save creating a substring for every segment.
+		 */
+		MountNode getChild(String path, int start, int end) {
+			int len = end - start;
+			if(children.size() <= 8) {
+				for(MountNode child : children.values()) {
+					if(child.name.length() == len && path.regionMatches(start, child.name, 0, len)) {
+						return child;
+					}
+				}
+				return null;
+			}
+			return children.get(path.substring(start, end));
+		}
+		
+		VirtualMount getInheritedMount() {
+			for(MountNode node = parent; node != null; node = node.parent) {
+				if(Objects.nonNull(node.mount)) {
+					return node.mount;
+				}
+			}
+			return null;
+		}
+	}
+	
 	public VirtualFileFactory(VirtualMountTemplate defaultMount,
 			VirtualMountTemplate... additionalMounts) throws IOException, PermissionDeniedException {
 		setupMounts(defaultMount, additionalMounts);
@@ -62,14 +116,53 @@ public class VirtualFileFactory implements AbstractFileFactory<VirtualFile> {
 			return defaultMount;
 		}
 
-		for (VirtualMount mount : mounts) {
-			String mountPath = FileUtils.checkEndsWithSlash(mount.getMount());
-			path = FileUtils.checkEndsWithSlash(path);
-			if (path.startsWith(mountPath)) {
-				return mount;
+		VirtualMount matched = null;
+		if(path.startsWith("/")) {
+			MountNode node = mountTree;
+			matched = node.mount;
+			int idx = 1;
+			while(idx < path.length()) {
+				int next = nextSeparator(path, idx);
+				if(next > idx) {
+					node = node.getChild(path, idx, next);
+					if(Objects.isNull(node)) {
+						break;
+					}
+					if(Objects.nonNull(node.mount)) {
+						matched = node.mount;
+					}
+				}
+				idx = next + 1;
+			}
+		}
+		
+		if(Objects.isNull(matched)) {
+			throw new FileNotFoundException("No mount for " + FileUtils.checkEndsWithSlash(path));
+		}
+		return matched;
+	}
+	
+	private MountNode getNode(String path) {
+		
+		if(!path.startsWith("/")) {
+			return null;
+		}
+		
+		MountNode node = mountTree;
+		int idx = 1;
+		while(Objects.nonNull(node) && idx < path.length()) {
+			int next = nextSeparator(path, idx);
+			if(next > idx) {
+				node = node.getChild(path, idx, next);
 			}
+			idx = next + 1;
 		}
-		throw new FileNotFoundException("No mount for " + path);
+		return node;
+	}
+	
+	private static int nextSeparator(String path, int fromIndex) {
+		int idx = path.indexOf('/', fromIndex);
+		return idx == -1 ? path.length() : idx;
 	}
 	
 	private void setupMounts(VirtualMountTemplate homeMount,
@@ -83,7 +176,7 @@ public class VirtualFileFactory implements AbstractFileFactory<VirtualFile> {
 			if(defaultMount.isCreateMountFolder()) {
 				defaultMount.getActualFileFactory().getFile(defaultMount.getRoot()).createFolder();
 			}
-			mounts.add(defaultMount);
+			addMount(defaultMount);
 		}
 
 		// Add any remaining templates
@@ -97,55 +190,67 @@ public class VirtualFileFactory implements AbstractFileFactory<VirtualFile> {
 			if(vm.isCreateMountFolder()) {
 				vm.getActualFileFactory().getFile(vm.getRoot()).createFolder();
 			}
-			mounts.add(vm);
+			addMount(vm);
 		}
-
-		sort(mounts);
 		
-		rebuildMountCache();
+		updateMountFiles(mountTree, null);
+		
+		if(Log.isDebugEnabled()) {
+			for(VirtualMount m : getMounts("/")) {
+				Log.debug("Mount {} on {}", m.getMount(), m.getRoot());
+			}
+		}
 	}
 	
-	private void rebuildMountCache() throws PermissionDeniedException, IOException {
+	/**
+	 * Add a mount to the tree, returning the highest node that was created for it
+	 * so that its files can be built.
+	 */
+	private MountNode addMount(VirtualMount mount) {
 		
-		mountCache.clear();
-		cache.clear();
-		
-		for(VirtualMount mount : mounts) {
-			String mountPath = FileUtils.addTrailingSlash(mount.getMount());
-			mountCache.put(mountPath, new VirtualMountFile(mountPath, mount, this, false));
-			for(String parentPath : FileUtils.getParentPaths(mountPath)) {
-				/**
-				 * Only write parent paths if an existing path does not exist (should allow 
-				 * for root mounts to be defined by a parent but overwritten by a concrete mount.
-				 */
-				if(!mountCache.containsKey(parentPath)) {
-					mountCache.put(parentPath, new VirtualMountFile(
-							isRoot(parentPath) ? parentPath : FileUtils.checkEndsWithNoSlash(parentPath), 
-								getMount(parentPath), this, true));
+		MountNode node = mountTree;
+		MountNode created = null;
+		String mountPath = mount.getMount();
+		int idx = mountPath.startsWith("/") ? 1 : 0;
+		while(idx < mountPath.length()) {
+			int next = nextSeparator(mountPath, idx);
+			if(next > idx) {
+				String name = mountPath.substring(idx, next);
+				boolean exists = node.children.containsKey(name);
+				node = node.getOrCreateChild(name);
+				if(!exists && Objects.isNull(created)) {
+					created = node;
 				}
 			}
+			idx = next + 1;
 		}
+		node.mount = mount;
+		return Objects.isNull(created) ? node : created;
 	}
-	private void sort(List<VirtualMount> mounts) {
-		Collections.sort(mounts, new Comparator<VirtualMount>() {
-
-			@Override
-			public int compare(VirtualMount o1, VirtualMount o2) {
-				if(o1.isParentOf(o2)) {
-					return 1;
-				} else if(o1.isChildOf(o2)) {
-					return -1;
-				} else {
-					return o2.getMount().compareTo(o1.getMount());
-				}
+	
+	/**
+	 * Build the mount file for a node, and for any of its children that are new or
+	 * intermediate, as these take the mount of their closest mounted parent. Concrete 
+	 * mounts further down the tree are left as they are.
+	 */
+	private void updateMountFiles(MountNode node, VirtualMount inherited) throws PermissionDeniedException, IOException {
+		
+		if(Objects.nonNull(node.mount)) {
+			node.file = new VirtualMountFile(node.path, node.mount, this, false);
+			inherited = node.mount;
+		} else if(node.children.isEmpty()) {
+			node.file = null;
+			return;
+		} else {
+			if(Objects.isNull(inherited)) {
+				throw new FileNotFoundException("No mount for " + FileUtils.checkEndsWithSlash(node.path));
 			}
-			
-		});
+			node.file = new VirtualMountFile(node.path, inherited, this, true);
+		}
 		
-		if(Log.isDebugEnabled()) {
-			Log.debug("Sorting mounts by path and with child relationship preferred");
-			for(VirtualMount m : mounts) {
-				Log.debug("Mount {} on {}", m.getMount(), m.getRoot());
+		for(MountNode child : node.children.values()) {
+			if(Objects.isNull(child.mount) || Objects.isNull(child.file)) {
+				updateMountFiles(child, inherited);
 			}
 		}
 	}
@@ -161,18 +266,43 @@ public class VirtualFileFactory implements AbstractFileFactory<VirtualFile> {
 			return new VirtualMount[] { defaultMount };
 		}
 
-		path = FileUtils.addTrailingSlash(path);
-
 		List<VirtualMount> matched = new ArrayList<VirtualMount>();
-		for (VirtualMount m : mounts) {
-			String mountPath = FileUtils.addTrailingSlash(m.getMount());
-			if (path.startsWith(mountPath) || mountPath.startsWith(path)) {
-				matched.add(m);
+		if(path.startsWith("/")) {
+			MountNode node = mountTree;
+			int idx = 1;
+			while(Objects.nonNull(node)) {
+				if(Objects.nonNull(node.mount)) {
+					matched.add(node.mount);
+				}
+				if(idx >= path.length()) {
+					for(MountNode child : node.children.values()) {
+						collectMounts(child, matched);
+					}
+					break;
+				}
+				int next = nextSeparator(path, idx);
+				if(next > idx) {
+					node = node.getChild(path, idx, next);
+				}
+				idx = next + 1;
 			}
-		}		
+		}
 		
+		/**
+		 * Return the deepest mounts first
+		 */
+		Collections.reverse(matched);
 		return matched.toArray(new VirtualMount[0]);
 	}
+	
+	private void collectMounts(MountNode node, List<VirtualMount> matched) {
+		if(Objects.nonNull(node.mount)) {
+			matched.add(node.mount);
+		}
+		for(MountNode child : node.children.values()) {
+			collectMounts(child, matched);
+		}
+	}
 
 	private boolean isRoot(String path) {
 		return path.equals("/");
@@ -236,20 +366,12 @@ public class VirtualFileFactory implements AbstractFileFactory<VirtualFile> {
 			}
 		}
 		
-		String currentPath = FileUtils.checkEndsWithSlash(parent.getAbsolutePath());
-		for(VirtualMount m : getMounts(currentPath)) {
-			
-			String mountPath = FileUtils.checkEndsWithSlash(m.getMount());
-			
-			if(mountPath.startsWith(currentPath) && !mountPath.equals(currentPath)) {
-				String childPath = FileUtils.checkEndsWithNoSlash(mountPath.substring(currentPath.length()));
-				List<String> childPaths = FileUtils.getParentPaths(childPath);
-				Collections.reverse(childPaths);
-				boolean intermediate = false;
-				if(intermediate = !childPaths.isEmpty()) {
-					childPath = FileUtils.checkEndsWithNoSlash(childPaths.get(0));
-				}
-				files.put(childPath, new VirtualMountFile(currentPath + childPath, parent.getMount(), this, intermediate));
+		MountNode node = getNode(parent.getAbsolutePath());
+		if(Objects.nonNull(node)) {
+			String currentPath = FileUtils.checkEndsWithSlash(parent.getAbsolutePath());
+			for(MountNode child : node.children.values()) {
+				files.put(child.name, new VirtualMountFile(currentPath + child.name, 
+						parent.getMount(), this, Objects.isNull(child.mount)));
 			}
 		}
 		
@@ -269,12 +391,9 @@ public class VirtualFileFactory implements AbstractFileFactory<VirtualFile> {
 			virtualPath = canonicalisePath(path);
 		}
 		
-		if (!virtualPath.equals("") && mountCache.size() > 0) {
-			String mountPath = FileUtils.addTrailingSlash(virtualPath);
-			VirtualFile mountFile = mountCache.get(mountPath);
-			if(Objects.nonNull(mountFile)) {
-				return mountFile;
-			}
+		MountNode node = getNode(virtualPath);
+		if(Objects.nonNull(node) && Objects.nonNull(node.file)) {
+			return node.file;
 		}
 
 		if (!virtualPath.equals("/")) {
@@ -339,28 +458,33 @@ public class VirtualFileFactory implements AbstractFileFactory<VirtualFile> {
 		Log.info("Mounting " + mount.getMount() + " on " + mount.getRoot());
 		
 		// Add the mount
-		mounts.add(mount);
-		sort(mounts);
-		rebuildMountCache();
+		MountNode node = addMount(mount);
+		updateMountFiles(node, node.getInheritedMount());
+		cache.clear();
 		Log.info("Mounted " + mount.getMount() + " on " + mount.getRoot());
 
 	}
 
 	public void unmount(VirtualMount mount) throws IOException, PermissionDeniedException {
 		Log.info("Unmounting " + mount.getMount() + " from " + mount.getRoot());
-		VirtualMount mounted = null;
-		for(VirtualMount m : mounts) {
-			if(FileUtils.checkEndsWithSlash(m.getMount())
-					.equals(FileUtils.checkEndsWithSlash(mount.getMount()))) {
-				mounted = m;
-			}
-		}
-		if(Objects.isNull(mounted)) {
+		MountNode node = getNode(mount.getMount());
+		if(Objects.isNull(node) || Objects.isNull(node.mount)) {
 			throw new IOException(String.format("Could not find mount %s", mount.getMount()));
 		}
-		mounts.remove(mounted);
-		sort(mounts);
-		rebuildMountCache();
+		node.mount = null;
+		
+		/**
+		 * Remove any parents that were only there for this mount, otherwise
+		 * the remaining path becomes an intermediate folder.
+		 */
+		while(Objects.nonNull(node.parent) && Objects.isNull(node.mount) && node.children.isEmpty()) {
+			node.parent.children.remove(node.name);
+			node = node.parent;
+		}
+		if(Objects.isNull(node.mount)) {
+			updateMountFiles(node, node.getInheritedMount());
+		}
+		cache.clear();
 	}
 
 	public VirtualMount getDefaultMount() {
@@ -372,13 +496,8 @@ public class VirtualFileFactory implements AbstractFileFactory<VirtualFile> {
 			return true;
 		}
 
-		for (VirtualMount mount : mounts) {
-			if (FileUtils.addTrailingSlash(mount.getMount()).equals(
-					FileUtils.addTrailingSlash(path))) {
-				return true;
-			}
-		}
-		return false;
+		MountNode node = getNode(path);
+		return Objects.nonNull(node) && Objects.nonNull(node.mount);
 	}
 
 }